@@ -2,14 +2,16 @@ package gml4u.brushes;
 
 import gml4u.drawing.GmlStrokeDrawer;
 import gml4u.model.GmlPoint;
+import gml4u.model.GmlPointCursor;
 import gml4u.model.GmlStroke;
 import processing.core.PGraphics;
-import toxi.geom.Vec3D;
 
 public class CurvesDemo extends GmlStrokeDrawer {
 
 	
 	public static final String ID = "GML4U_STYLE_CURVES0000"; 
+
+	private final GmlPointCursor cursor = new GmlPointCursor();
 	
 	/**
 	 * CurvesDemo constructor
@@ -23,28 +25,30 @@ public class CurvesDemo extends GmlStrokeDrawer {
 	 * Implementation of the abstract method defined in GmlStrokeDrawer
 	 */
 	public void draw(PGraphics g, GmlStroke stroke, float scale, float minTime, float maxTime) {
-			
+
+		cursor.reset(stroke, minTime, maxTime);
+		if (cursor.isEmpty()) {
+			return;
+		}
+
 		g.pushStyle();
 		g.strokeWeight(10);
 		g.noFill();
 		g.beginShape();
-		for (GmlPoint point : stroke.getPoints()) {
-			if (point.time < minTime) continue;
-			if (point.time > maxTime) break;
-			
-			Vec3D v = point.scale(scale);
-			curveVertex(g, v);
+		while (cursor.next()) {
+			GmlPoint point = cursor.getPoint();
+			curveVertex(g, point.x * scale, point.y * scale, point.z * scale);
 		}
 		g.endShape();
 		g.popStyle();
 	}
 	
-	private static void curveVertex(PGraphics g, Vec3D v) {
+	private static void curveVertex(PGraphics g, float x, float y, float z) {
 		if (g.is3D()) {
-			g.curveVertex(v.x, v.y, v.z);
+			g.curveVertex(x, y, z);
 		}
 		else {
-			g.curveVertex(v.x, v.y);
+			g.curveVertex(x, y);
 		}
 	}
 }
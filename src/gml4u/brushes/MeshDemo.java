@@ -4,6 +4,7 @@ import java.util.Iterator;
 
 import gml4u.drawing.GmlStrokeDrawer;
 import gml4u.model.GmlPoint;
+import gml4u.model.GmlPointCursor;
 import gml4u.model.GmlStroke;
 
 import processing.core.PConstants;
@@ -17,6 +18,8 @@ public class MeshDemo extends GmlStrokeDrawer {
 
 	public static final String ID = "GML4U_STYLE_MESH0000"; 
 
+	private final GmlPointCursor cursor = new GmlPointCursor();
+
 	/**
 	 * MeshDemo constructor
 	 */
@@ -26,7 +29,12 @@ public class MeshDemo extends GmlStrokeDrawer {
 
 	public void draw(PGraphics g, GmlStroke stroke, float scale, float minTime, float maxTime) {
 
-		TriangleMesh mesh = buildMesh(stroke, minTime, maxTime);
+		cursor.reset(stroke, minTime, maxTime);
+		if (cursor.isEmpty()) {
+			return;
+		}
+
+		TriangleMesh mesh = buildMesh(stroke, cursor);
 		mesh.scale(scale);
 
 		g.pushMatrix();
@@ -60,25 +68,23 @@ public class MeshDemo extends GmlStrokeDrawer {
 
 
 	// TODO move that to an Helper
-	private static TriangleMesh buildMesh(GmlStroke stroke, float minTime, float maxTime) {
+	private static TriangleMesh buildMesh(GmlStroke stroke, GmlPointCursor cursor) {
 		TriangleMesh mesh = new TriangleMesh("");
 
-		if (stroke.getPoints().size() > 0) {	
+		if (stroke.nbPoints() > 0) {	
 
 			GmlPoint prev = new GmlPoint();
-			GmlPoint pos = new GmlPoint();
+			Vec3D pos = new Vec3D();
 			Vec3D a = new Vec3D();
 			Vec3D b = new Vec3D();
 			Vec3D p = new Vec3D();
 			Vec3D q = new Vec3D();
 			float weight = 0;
 
-			prev.set(stroke.getPoints().get(0));
+			stroke.getPoint(0, prev);
 
-			for (GmlPoint point: stroke.getPoints()) {
-				if (point.time < minTime) continue;
-				if (point.time > maxTime) break;
-				pos.set(point);
+			while (cursor.next()) {
+				pos.set(cursor.getPoint());
 
 				// use distance to previous point as target stroke weight
 				weight += (pos.distanceTo(prev)*4-weight)*0.1;
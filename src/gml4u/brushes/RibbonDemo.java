@@ -3,7 +3,7 @@ package gml4u.brushes;
 import java.util.Iterator;
 
 import gml4u.drawing.GmlStrokeDrawer;
-import gml4u.model.GmlPoint;
+import gml4u.model.GmlPointCursor;
 import gml4u.model.GmlStroke;
 
 import processing.core.PConstants;
@@ -17,6 +17,8 @@ public class RibbonDemo extends GmlStrokeDrawer {
 
 	  public static final String ID = "GML4U_STYLE_RIBBON0000"; 
 
+	  private final GmlPointCursor cursor = new GmlPointCursor();
+
 	  /**
 	   	 * MeshDemo constructor
 	   	 */
@@ -26,7 +28,12 @@ public class RibbonDemo extends GmlStrokeDrawer {
 
 	  public void draw(PGraphics g, GmlStroke stroke, float scale, float minTime, float maxTime) {
 
-	    TriangleMesh mesh = buildMesh(stroke, minTime, maxTime);
+	    cursor.reset(stroke, minTime, maxTime);
+	    if (cursor.isEmpty()) {
+	      return;
+	    }
+
+	    TriangleMesh mesh = buildMesh(cursor);
 	    mesh.scale(scale);
 
 	    g.pushMatrix();
@@ -59,30 +66,25 @@ public class RibbonDemo extends GmlStrokeDrawer {
 
 
 	  // TODO move that to an Helper
-	  private TriangleMesh buildMesh(GmlStroke stroke, float minTime, float maxTime) {
+	  private TriangleMesh buildMesh(GmlPointCursor cursor) {
 	    TriangleMesh mesh = new TriangleMesh("");
 
-	    if (stroke.getPoints().size() > 0) {	
+	    if (!cursor.isEmpty()) {	
 
-	      GmlPoint prev = new GmlPoint();
-	      GmlPoint pos = new GmlPoint();
+	      Vec3D pos = new Vec3D();
 	      Vec3D a = new Vec3D();
 	      Vec3D b = new Vec3D();
 	      Vec3D p = new Vec3D();
 	      Vec3D q = new Vec3D();
 	      float weight = 0;
 
-	      prev.set(stroke.getPoints().get(0));
-
 	      float curPoint = 1;
 
-	      for (GmlPoint point: stroke.getPoints()) {
-	        if (point.time < minTime) continue;
-	        if (point.time > maxTime) break;
-	        pos.set(point);
+	      while (cursor.next()) {
+	        pos.set(cursor.getPoint());
 
 	        // use distance to previous point as target stroke weight
-	        //weight += (pos.distanceTo(prev)*4-weight)*0.1;
+	        //weight += (pos.distanceTo(cursor.getPrevious())*4-weight)*0.1;
 	        weight = 0.025f;
 
 	        // define offset points for the triangle strip
@@ -98,7 +100,6 @@ public class RibbonDemo extends GmlStrokeDrawer {
 	        }
 
 	        // store current points for next iteration
-	        prev.set(pos);
 	        p.set(a);
 	        q.set(b);
 	        ++curPoint;
@@ -2,15 +2,17 @@ package gml4u.brushes;
 
 import gml4u.drawing.GmlStrokeDrawer;
 import gml4u.model.GmlPoint;
+import gml4u.model.GmlPointCursor;
 import gml4u.model.GmlStroke;
 import processing.core.PGraphics;
-import toxi.geom.Vec3D;
 
 public class StrokeFatDemo extends GmlStrokeDrawer {
 
 
 	  public static final String ID = "GML4U_STYLE_STROKEFAT0000"; 
 
+	  private final GmlPointCursor cursor = new GmlPointCursor();
+
 	  /**
 	  * CurvesDemo constructor
 	  */
@@ -24,27 +26,29 @@ public class StrokeFatDemo extends GmlStrokeDrawer {
 	  */
 	  public void draw(PGraphics g, GmlStroke stroke, float scale, float minTime, float maxTime) {
 
+	    cursor.reset(stroke, minTime, maxTime);
+	    if (cursor.isEmpty()) {
+	      return;
+	    }
+
 	    g.pushStyle();
 	    g.strokeWeight(20);
 	    g.noFill();
 	    g.beginShape();
-	    for (GmlPoint point : stroke.getPoints()) {
-	      if (point.time < minTime) continue;
-	      if (point.time > maxTime) break;
-
-	      Vec3D v = point.scale(scale);
-	      curveVertex(g, v);
+	    while (cursor.next()) {
+	      GmlPoint point = cursor.getPoint();
+	      curveVertex(g, point.x * scale, point.y * scale, point.z * scale);
 	    }
 	    g.endShape();
 	    g.popStyle();
 	  }
 
-	  private void curveVertex(PGraphics g, Vec3D v) {
+	  private void curveVertex(PGraphics g, float x, float y, float z) {
 	    if (g.is3D()) {
-	      g.curveVertex(v.x, v.y, v.z);
+	      g.curveVertex(x, y, z);
 	    }
 	    else {
-	      g.curveVertex(v.x, v.y);
+	      g.curveVertex(x, y);
 	    }
 	  }
 	}
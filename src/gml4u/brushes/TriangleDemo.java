@@ -2,6 +2,7 @@ package gml4u.brushes;
 
 import gml4u.drawing.GmlStrokeDrawer;
 import gml4u.model.GmlPoint;
+import gml4u.model.GmlPointCursor;
 import gml4u.model.GmlStroke;
 
 import processing.core.PConstants;
@@ -14,6 +15,8 @@ public class TriangleDemo  extends GmlStrokeDrawer {
 
 	  public static final String ID = "GML4U_STYLE_TRIANGLES0000";
 
+	  private final GmlPointCursor cursor = new GmlPointCursor();
+
 	  public TriangleDemo() {
 	    super(ID);
 	  }
@@ -21,7 +24,12 @@ public class TriangleDemo  extends GmlStrokeDrawer {
 
 	  @Override
 	    public void draw(PGraphics g, GmlStroke stroke, float scale, float minTime, float maxTime) {
-	    TriangleMesh mesh = buildMesh(stroke, minTime, maxTime);
+	    cursor.reset(stroke, minTime, maxTime);
+	    if (cursor.isEmpty()) {
+	      return;
+	    }
+
+	    TriangleMesh mesh = buildMesh(cursor);
 	    mesh.scale(scale);
 
 	    g.pushMatrix();
@@ -48,12 +56,12 @@ public class TriangleDemo  extends GmlStrokeDrawer {
 	  }
 
 	  // TODO move that to an Helper
-	  private TriangleMesh buildMesh(GmlStroke stroke, float minTime, float maxTime) {
+	  private TriangleMesh buildMesh(GmlPointCursor cursor) {
 	    TriangleMesh mesh = new TriangleMesh("");
 
-	    if (stroke.getPoints().size() > 0) {	
+	    if (!cursor.isEmpty()) {	
 
-	      GmlPoint pos = new GmlPoint();
+	      Vec3D pos = new Vec3D();
 	      Vec3D a = new Vec3D();
 	      Vec3D b = new Vec3D();
 	      Vec3D p = new Vec3D();
@@ -62,10 +70,8 @@ public class TriangleDemo  extends GmlStrokeDrawer {
 
 	      float curPoint = 1;
 
-	      for (GmlPoint point: stroke.getPoints()) {
-	        if (point.time < minTime) continue;
-	        if (point.time > maxTime) break;
-
+	      while (cursor.next()) {
+	        GmlPoint point = cursor.getPoint();
 	        pos.set(point);
 
 	        // define offset points for the triangle strip
@@ -74,11 +80,8 @@ public class TriangleDemo  extends GmlStrokeDrawer {
 
 	        float angle = point.rotation.z;
 
-	        Vec3D aShift = new Vec3D(weight/2 * (float) Math.sin(Math.PI * angle - .25f), weight/2 * (float) Math.cos(Math.PI * angle - .25f), (curPoint+1) * .0005f);
-	        Vec3D bShift = new Vec3D(weight/2 * (float) Math.sin(Math.PI * angle + .25f), weight/2 * (float) Math.cos(Math.PI * angle + .25f), (curPoint+1) * .0005f);
-
-	        a.addSelf(aShift);
-	        b.addSelf(bShift);
+	        a.addSelf(weight/2 * (float) Math.sin(Math.PI * angle - .25f), weight/2 * (float) Math.cos(Math.PI * angle - .25f), (curPoint+1) * .0005f);
+	        b.addSelf(weight/2 * (float) Math.sin(Math.PI * angle + .25f), weight/2 * (float) Math.cos(Math.PI * angle + .25f), (curPoint+1) * .0005f);
 
 	        if (!q.isZeroVector() && !p.isZeroVector()) {
 	          // add 2 faces to the mesh
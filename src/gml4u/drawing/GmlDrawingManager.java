@@ -7,11 +7,10 @@ import gml4u.events.GmlEventHandler;
 import gml4u.events.GmlStrokeEndEvent;
 import gml4u.events.GmlStrokeStartEvent;
 import gml4u.model.Gml;
-import gml4u.model.GmlPoint;
 import gml4u.model.GmlStroke;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,14 +23,14 @@ public class GmlDrawingManager {
 	private Gml gml;
 	private GmlEventHandler eventHandler;
 	private boolean started = false;	
-	private ArrayList<String> stagedStrokesIds;
+	private Set<String> stagedStrokesIds;
 
 	/**
 	 * Creates a new GmlDrawingManager
 	 */
 	public GmlDrawingManager() {
 		eventHandler = new GmlEventHandler();
-		stagedStrokesIds = new ArrayList<String>();
+		stagedStrokesIds = new HashSet<String>();
 	}
 	
 	/**
@@ -93,7 +92,7 @@ public class GmlDrawingManager {
 	 * @param time - float
 	 */
 	public void pulse(float time) {
-		pulse(Float.MIN_VALUE, time);
+		pulse(-Float.MAX_VALUE, time);
 	}
 	
 	/**
@@ -132,17 +131,18 @@ public class GmlDrawingManager {
 					stagedStrokesIds.add(stroke.getID());
 				}
 				
-				// Get the list of points for every stroke
-				List<GmlPoint> points = stroke.getPoints(timeMin, timeMax);
+				// Get the range of points for every stroke (binary search, nothing is copied)
+				int start = stroke.getStartIndex(timeMin);
+				int end = stroke.getEndIndex(timeMax);
 				// Checks if it contains points
-				if (points.size() > 0) {
+				if (end > start) {
 					// Fire new GmlDrawingEvent
 					GmlDrawingEvent event = new GmlDrawingEvent(stroke, timeMin, timeMax);
 					eventHandler.fireNewEvent(event);
 				}
 				
 				// Checks if stroke still has points to draw
-				if (stroke.nbPoints() == points.size()) {
+				if (stroke.nbPoints() == end - start) {
 					LOGGER.log(Level.FINEST, "Stroke end");
 					// Fire new GmlStrokeEndEvent
 					GmlStrokeEndEvent event = new GmlStrokeEndEvent(stroke);
@@ -61,7 +61,7 @@ public abstract class GmlStrokeDrawer {
 	public final void draw(PGraphics g, List<Gml>  gmls, float scale) {
 		for (Gml gml : gmls) {
 			for (GmlStroke stroke : gml.getStrokes()) {
-				draw(g, stroke, scale, Float.MIN_VALUE, Float.MAX_VALUE);
+				draw(g, stroke, scale, -Float.MAX_VALUE, Float.MAX_VALUE);
 			}
 		}
 	}
@@ -76,7 +76,7 @@ public abstract class GmlStrokeDrawer {
 	public final void draw(PGraphics g, List<Gml>  gmls, float scale, float time) {
 		for (Gml gml : gmls) {
 			for (GmlStroke stroke : gml.getStrokes()) {
-				draw(g, stroke, scale, Float.MIN_VALUE, time);
+				draw(g, stroke, scale, -Float.MAX_VALUE, time);
 			}
 		}
 	}
@@ -105,7 +105,7 @@ public abstract class GmlStrokeDrawer {
 	 */
 	public final void draw(PGraphics g, Gml  gml, float scale) {
 		for (GmlStroke stroke : gml.getStrokes()) {
-			draw(g, stroke, scale, Float.MIN_VALUE, Float.MAX_VALUE);
+			draw(g, stroke, scale, -Float.MAX_VALUE, Float.MAX_VALUE);
 		}
 	}
 	
@@ -118,7 +118,7 @@ public abstract class GmlStrokeDrawer {
 	 */
 	public final void draw(PGraphics g, Gml  gml, float scale, float time) {
 		for (GmlStroke stroke : gml.getStrokes()) {
-			draw(g, stroke, scale, Float.MIN_VALUE, time);
+			draw(g, stroke, scale, -Float.MAX_VALUE, time);
 		}
 	}
 	
@@ -143,7 +143,7 @@ public abstract class GmlStrokeDrawer {
 	 * @param scale - float
 	 */
 	public final void draw(PGraphics g, GmlStroke  stroke, float scale) {
-		draw(g, stroke, scale, Float.MIN_VALUE, Float.MAX_VALUE);
+		draw(g, stroke, scale, -Float.MAX_VALUE, Float.MAX_VALUE);
 	}
 	
 	/**
@@ -154,7 +154,7 @@ public abstract class GmlStrokeDrawer {
 	 * @param time - float
 	 */
 	public final void draw(PGraphics g, GmlStroke  stroke, float scale, float time) {
-		draw(g, stroke, scale, Float.MIN_VALUE, time);
+		draw(g, stroke, scale, -Float.MAX_VALUE, time);
 	}
 	
 	/**
@@ -1,11 +1,16 @@
 package gml4u.drawing;
 
 import gml4u.model.GmlPoint;
+import gml4u.model.GmlPointCursor;
 import gml4u.model.GmlStroke;
 import processing.core.PGraphics;
 
 public abstract class GmlStrokeDrawerBasic extends GmlStrokeDrawer {
 
+	// Reused from one draw to the other
+	private final GmlPointCursor cursor = new GmlPointCursor();
+	private final GmlPoint prev = new GmlPoint();
+	private final GmlPoint cur = new GmlPoint();
 	
 	/**
 	 * GmlStrokeDrawerBasic constructor
@@ -35,21 +40,17 @@ public abstract class GmlStrokeDrawerBasic extends GmlStrokeDrawer {
 	 */	
 	public final void draw(PGraphics g, GmlStroke stroke, float scale, float minTime, float maxTime) {
 
-		GmlPoint prev = new GmlPoint();
-		GmlPoint cur = new GmlPoint();
-
-		for (GmlPoint point: stroke.getPoints()) {
-			if (point.time < minTime) continue;
-			if (point.time > maxTime) break;
-
-			if (prev.isZeroVector()) {
-				prev.set(point.scale(scale));
+		cursor.reset(stroke, minTime, maxTime);
+		while (cursor.next()) {
+			GmlPoint point = cursor.getPoint();
+			cur.set(point.x * scale, point.y * scale, point.z * scale);
+			if (cursor.isFirst()) {
+				prev.set(cur.x, cur.y, cur.z);
 			}
-			cur.set(point.scale(scale));
 
 			draw(g, prev, cur);
 			
-			prev.set(cur);
+			prev.set(cur.x, cur.y, cur.z);
 		}
 	}
 
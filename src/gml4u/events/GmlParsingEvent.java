@@ -5,6 +5,10 @@ import gml4u.model.Gml;
 public class GmlParsingEvent extends GmlEvent {
 
 	public Gml gml;
+	public String location;
+	public long parsingTime;  // Time spent parsing (in nanoseconds)
+	public long waitingTime;  // Time spent in the queue before parsing started (in nanoseconds)
+	public int queueSize;     // Number of files still waiting once this one was parsed
 	
 	/**
 	 * Creates a new GmlParsingEvent using the given Gml
@@ -13,4 +17,20 @@ public class GmlParsingEvent extends GmlEvent {
 	public GmlParsingEvent(Gml gml) {
 		this.gml = gml;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Creates a new GmlParsingEvent using the given Gml, location and parsing statistics
+	 * @param gml - Gml
+	 * @param location - String
+	 * @param parsingTime - long (nanoseconds)
+	 * @param waitingTime - long (nanoseconds)
+	 * @param queueSize - int
+	 */
+	public GmlParsingEvent(Gml gml, String location, long parsingTime, long waitingTime, int queueSize) {
+		this.gml = gml;
+		this.location = location;
+		this.parsingTime = parsingTime;
+		this.waitingTime = waitingTime;
+		this.queueSize = queueSize;
+	}
+}
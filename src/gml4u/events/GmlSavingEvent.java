@@ -4,6 +4,10 @@ public class GmlSavingEvent extends GmlEvent {
 	
 	public String location;
 	public boolean successful;
+	public long bytes;        // Bytes written (-1 if unknown or failed)
+	public long savingTime;   // Time spent writing the file (in nanoseconds)
+	public long waitingTime;  // Time between the save request and the start of writing (in nanoseconds)
+	public int coalesced;     // Number of earlier save requests to the same location replaced by this one
 	
 	/**
 	 * Creates a new GmlSavingEvent using the given location
@@ -11,7 +15,24 @@ public class GmlSavingEvent extends GmlEvent {
 	 * @param successful - boolean
 	 */
 	public GmlSavingEvent(String location, boolean successful) {
+		this(location, successful, -1, 0, 0, 0);
+	}
+
+	/**
+	 * Creates a new GmlSavingEvent using the given location and saving statistics
+	 * @param location - String
+	 * @param successful - boolean
+	 * @param bytes - long
+	 * @param savingTime - long (nanoseconds)
+	 * @param waitingTime - long (nanoseconds)
+	 * @param coalesced - int
+	 */
+	public GmlSavingEvent(String location, boolean successful, long bytes, long savingTime, long waitingTime, int coalesced) {
 		this.location = location;
 		this.successful = successful;
+		this.bytes = bytes;
+		this.savingTime = savingTime;
+		this.waitingTime = waitingTime;
+		this.coalesced = coalesced;
 	}
-}
\ No newline at end of file
+}
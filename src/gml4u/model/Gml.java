@@ -7,6 +7,7 @@ import java.util.Collection;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,6 +27,18 @@ public class Gml {
 	public GmlClient client;
 	private SortedMap<Integer, ArrayList<GmlStroke>> layers = new TreeMap<Integer, ArrayList<GmlStroke>>();
 
+	// Incremented each time strokes are added or removed
+	private int version = 0;
+	// Incremented by the strokes when their points change, shared with copies as they share strokes
+	private AtomicInteger strokeChanges = new AtomicInteger();
+	// Statistics cached by updateStatistics, along with the counters they were computed for
+	private int statisticsVersion = -1;
+	private int statisticsStrokeChanges;
+	private float duration;
+	private float startTime;
+	private int strokeCount;
+	private int pointCount;
+
 	/**
 	 * Creates a new Gml using the given screenBounds
 	 * @param screenBounds - Vec3D
@@ -71,7 +84,7 @@ public class Gml {
 	 * Returns a copy of all strokes
 	 * @return Collection<GmlStroke>
 	 */
-	public Collection<GmlStroke> getStrokes() {
+	public synchronized Collection<GmlStroke> getStrokes() {
 		Collection<GmlStroke> strokes = new ArrayList<GmlStroke>();
 		Set<Integer> keys = layers.keySet();
 		for (Integer key : keys) {
@@ -85,7 +98,7 @@ public class Gml {
 	 * @param layer - int
 	 * @return Collection<GmlStroke>
 	 */
-	public Collection<GmlStroke> getStrokes(int layer) {
+	public synchronized Collection<GmlStroke> getStrokes(int layer) {
 		Collection<GmlStroke> strokes = new ArrayList<GmlStroke>();
 		if (null != layers.get(layer)) {
 			strokes.addAll(layers.get(layer));
@@ -110,7 +123,7 @@ public class Gml {
 	 * Returns all layers' Ids
 	 * @return Collection<Integer>
 	 */
-	public Collection<Integer> getLayerIds() {
+	public synchronized Collection<Integer> getLayerIds() {
 		Collection<Integer> keys = new ArrayList<Integer>();
 		keys.addAll(layers.keySet());
 		return keys;
@@ -131,11 +144,13 @@ public class Gml {
 	 * Adds a new stroke
 	 * @param stroke - GmlStroke
 	 */
-	public void addStroke(GmlStroke stroke) {
+	public synchronized void addStroke(GmlStroke stroke) {
 		if (null != stroke && stroke.totalPoints() > 0) { 
 			int layer = stroke.getLayer();
 			addLayer(layer);
 			layers.get(layer).add(stroke);
+			stroke.addOwner(strokeChanges);
+			version++;
 		}
 		else {
 			LOGGER.log(Level.FINEST, "Stroke wasn't added. Reason: Null or empty stroke");
@@ -146,7 +161,7 @@ public class Gml {
 	 * Adds new strokes
 	 * @param strokes - Collection<GmlStroke>
 	 */
-	public void addStrokes(Collection<GmlStroke> strokes) {
+	public synchronized void addStrokes(Collection<GmlStroke> strokes) {
 		for(GmlStroke stroke : strokes) {
 			addStroke(stroke);
 		}
@@ -156,7 +171,7 @@ public class Gml {
 	 * Replaces all strokes with new ones
 	 * @param strokes - Collection<GmlStroke>
 	 */
-	public void replaceStrokes(Collection<GmlStroke> strokes) {
+	public synchronized void replaceStrokes(Collection<GmlStroke> strokes) {
 		removeStrokes();
 		addStrokes(strokes);
 	}
@@ -165,24 +180,28 @@ public class Gml {
 	 * Removes all strokes from a specific layer
 	 * @param layer - int
 	 */
-	public void removeStrokes(int layer) {
-		layers.remove(layer);
+	public synchronized void removeStrokes(int layer) {
+		if (null != layers.remove(layer)) {
+			version++;
+		}
 	}
 
 	/**
 	 * Removes all strokes
 	 */
-	public void removeStrokes() {
+	public synchronized void removeStrokes() {
 		layers.clear();
+		version++;
 	}
 
 	/**
 	 * Removes the last stroke from a specific layer
 	 * @param layer - int
 	 */
-	public void removeLastStroke(int layer) {
+	public synchronized void removeLastStroke(int layer) {
 		try {
 			layers.get(layer).remove(layers.get(layer).size()-1);
+			version++;
 			// Also remove the layer if it doesn't contain any stroke
 			if (layers.get(layer).size() == 0) {
 				layers.remove(layer);
@@ -206,20 +225,64 @@ public class Gml {
 	 * Gets the bounding box of the Gml (including all strokes);
 	 * @return AABB
 	 */
-	public AABB getBoundingBox() {
+	public synchronized AABB getBoundingBox() {
+		Vec3D min = new Vec3D(Vec3D.MAX_VALUE);
+		Vec3D max = new Vec3D(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+		boolean found = false;
+		for (ArrayList<GmlStroke> strokes : layers.values()) {
+			found |= addBounds(strokes, min, max);
+		}
+		// TODO choose what to return (0 or center) when there is no stroke
+		if (!found) {
+			return new PointCloud().getBoundingBox();
+		}
+		return AABB.fromMinMax(min, max);
+	}
 
-		PointCloud pointCloud = new PointCloud();
-		ArrayList<Vec3D> list = new ArrayList<Vec3D>();
+	/**
+	 * Gets the bounding box of the given layer
+	 * @param layer - int
+	 * @return AABB
+	 */
+	public synchronized AABB getBoundingBox(int layer) {
+		ArrayList<GmlStroke> strokes = layers.get(layer);
+		return getBoundingBox(null == strokes ? new ArrayList<GmlStroke>() : strokes);
+	}
 
-		// TODO choose what to return (0 or center) when there is no stroke
-		for (GmlStroke stroke : getStrokes()) {
-			AABB bounds = stroke.getBoundingBox();
-			list.add(bounds.getMin());
-			list.add(bounds.getMax());
+	/**
+	 * Gets the bounding box of the given strokes
+	 * @param strokes - Collection<GmlStroke>
+	 * @return AABB
+	 */
+	static AABB getBoundingBox(Collection<GmlStroke> strokes) {
+		Vec3D min = new Vec3D(Vec3D.MAX_VALUE);
+		Vec3D max = new Vec3D(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+		if (!addBounds(strokes, min, max)) {
+			return new PointCloud().getBoundingBox();
 		}
+		return AABB.fromMinMax(min, max);
+	}
 
-		pointCloud.addAll(list);
-		return pointCloud.getBoundingBox();
+	/**
+	 * Extends min and max with the bounds of the given strokes (empty strokes are ignored),
+	 * returns false if there are no points
+	 * @param strokes - Collection<GmlStroke>
+	 * @param min - Vec3D
+	 * @param max - Vec3D
+	 * @return boolean
+	 */
+	private static boolean addBounds(Collection<GmlStroke> strokes, Vec3D min, Vec3D max) {
+		boolean found = false;
+		for (GmlStroke stroke : strokes) {
+			if (stroke.nbPoints() > 0) {
+				// Stroke bounds are cached, only the box is created
+				AABB bounds = stroke.getBoundingBox();
+				min.minSelf(bounds.getMin());
+				max.maxSelf(bounds.getMax());
+				found = true;
+			}
+		}
+		return found;
 	}
 
 	/**
@@ -235,15 +298,8 @@ public class Gml {
 	 * Gets the duration
 	 * @return float 
 	 */
-	public float getDuration() {
-		float duration = 0;
-		for (GmlStroke stroke : getStrokes()) {
-			float tmpDuration = stroke.getDuration();
-			if (tmpDuration > duration) {
-				duration = tmpDuration;
-			}
-		}
-		return duration;
+	public synchronized float getDuration() {
+		return updateStatistics().duration;
 	}
 
 
@@ -251,25 +307,84 @@ public class Gml {
 	 * Gets the start time of the drawing
 	 * @return float 
 	 */
-	public float getStartTime() {
-		float start = Float.MAX_VALUE;
-		for (GmlStroke stroke : getStrokes()) {
-			float tmpStart = stroke.getStartTime();
-			if (tmpStart < start) {
-				start = tmpStart;
+	public synchronized float getStartTime() {
+		return updateStatistics().startTime;
+	}
+
+	/**
+	 * Returns the number of times strokes were added or removed.<br/>
+	 * Note: changes made to the strokes themselves aren't counted
+	 * @return int
+	 */
+	public synchronized int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Computes duration, start time and totals again if strokes were added or removed
+	 * or if the points of any stroke changed since last time, else only reads two counters.<br/>
+	 * Strokes increment the change counter of the Gml holding them (see GmlStroke.addOwner).
+	 * Strokes removed since keep it, their changes then only cause a needless update.
+	 * To be called holding the lock on this Gml.
+	 * @return Gml - this
+	 */
+	private Gml updateStatistics() {
+		// Read first: changes made while computing cause another update
+		int changes = strokeChanges.get();
+		if (statisticsVersion == version && statisticsStrokeChanges == changes) {
+			return this;
+		}
+		duration = 0;
+		startTime = Float.MAX_VALUE;
+		strokeCount = 0;
+		pointCount = 0;
+		for (ArrayList<GmlStroke> strokes : layers.values()) {
+			for (GmlStroke stroke : strokes) {
+				duration = Math.max(duration, stroke.getDuration());
+				startTime = Math.min(startTime, stroke.getStartTime());
+				pointCount += stroke.nbPoints();
 			}
+			strokeCount += strokes.size();
 		}
-		if (start == Float.MAX_VALUE) {
-			start = 0;
+		if (startTime == Float.MAX_VALUE) {
+			startTime = 0;
 		}
-		return start;
+		statisticsVersion = version;
+		statisticsStrokeChanges = changes;
+		return this;
+	}
+
+	/**
+	 * Returns the duration of the given strokes
+	 * @param strokes - Collection<GmlStroke>
+	 * @return float
+	 */
+	static float getDuration(Collection<GmlStroke> strokes) {
+		float duration = 0;
+		for (GmlStroke stroke : strokes) {
+			duration = Math.max(duration, stroke.getDuration());
+		}
+		return duration;
+	}
+
+	/**
+	 * Returns the start time of the given strokes, 0 if there is none
+	 * @param strokes - Collection<GmlStroke>
+	 * @return float
+	 */
+	static float getStartTime(Collection<GmlStroke> strokes) {
+		float start = Float.MAX_VALUE;
+		for (GmlStroke stroke : strokes) {
+			start = Math.min(start, stroke.getStartTime());
+		}
+		return start == Float.MAX_VALUE ? 0 : start;
 	}
 	
 	/**
 	 * Returns the number of layers
 	 * @return int
 	 */
-	public int totalLayers() {
+	public synchronized int totalLayers() {
 		return layers.size();
 	}
 
@@ -277,52 +392,88 @@ public class Gml {
 	 * Returns the total number of strokes
 	 * @return int
 	 */
-	public int totalStrokes() {
-		return getStrokes().size();
+	public synchronized int totalStrokes() {
+		return updateStatistics().strokeCount;
 	}
 
 	/**
 	 * Returns the total number of strokes in the given layer
 	 * @return int
 	 */
-	public int totalStrokes(int layer) {
-		return getStrokes(layer).size();
+	public synchronized int totalStrokes(int layer) {
+		ArrayList<GmlStroke> strokes = layers.get(layer);
+		return null == strokes ? 0 : strokes.size();
 	}
 
 	/**
 	 * Returns the total number of points including all layers
 	 * @return int
 	 */
-	public int totalPoints() {
-		int totalNbPoints = 0;
-
-		for (GmlStroke stroke : getStrokes()) {
-			totalNbPoints += stroke.nbPoints();
-		}
-		return totalNbPoints;
+	public synchronized int totalPoints() {
+		return updateStatistics().pointCount;
 	}
 
 	/**
 	 * Returns the total number of points in the given layer
 	 * @return int
 	 */
-	public int totalPoints(int layer) {
+	public synchronized int totalPoints(int layer) {
 		int totalNbPoints = 0;
-		for (GmlStroke stroke : getStrokes(layer)) {
-			totalNbPoints += stroke.nbPoints();
+		ArrayList<GmlStroke> strokes = layers.get(layer);
+		if (null != strokes) {
+			for (GmlStroke stroke : strokes) {
+				totalNbPoints += stroke.nbPoints();
+			}
 		}
 		return totalNbPoints;
 	}
 
 	/**
-	 * Returns a copy of the Gml
+	 * Returns a copy of the Gml<br/>
+	 * Strokes, client and environment are shared, but strokes can be added to or removed
+	 * from the copy without changing this Gml
+	 * @return Gml
+	 */
+	public synchronized Gml copy() {
+		Gml newGml = emptyCopy();
+		for (Integer layer : layers.keySet()) {
+			newGml.layers.put(layer, new ArrayList<GmlStroke>(layers.get(layer)));
+		}
+		return newGml;
+	}
+
+	/**
+	 * Returns a deep copy of the Gml: strokes, points, client and environment are all copied,<br/>
+	 * so changes made to the copy don't affect this Gml
+	 * @return Gml
+	 */
+	public synchronized Gml deepCopy() {
+		Gml newGml = new Gml();
+		newGml.client = this.client.copy();
+		newGml.environment = this.environment.copy();
+		for (Integer layer : layers.keySet()) {
+			ArrayList<GmlStroke> strokes = layers.get(layer);
+			ArrayList<GmlStroke> newStrokes = new ArrayList<GmlStroke>(strokes.size());
+			for (GmlStroke stroke : strokes) {
+				GmlStroke newStroke = stroke.copy();
+				newStroke.addOwner(newGml.strokeChanges);
+				newStrokes.add(newStroke);
+			}
+			newGml.layers.put(layer, newStrokes);
+		}
+		return newGml;
+	}
+
+	/**
+	 * Returns a Gml without strokes sharing client, environment and stroke change counter with this Gml,
+	 * to be filled with the same strokes (see copy)
 	 * @return Gml
 	 */
-	public Gml copy() {
+	Gml emptyCopy() {
 		Gml newGml = new Gml();
 		newGml.client = this.client;
 		newGml.environment = this.environment;
-		newGml.layers.putAll(this.layers);
+		newGml.strokeChanges = this.strokeChanges;
 		return newGml;
 	}
 }
\ No newline at end of file
@@ -78,4 +78,14 @@ public class GmlBrush extends GmlGenericContainer {
 		brush.setParameters(this.getParameters());
 		setParameters(brush.getParameters());
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns a deep copy of the brush
+	 * @return GmlBrush
+	 */
+	public GmlBrush copy() {
+		GmlBrush copy = new GmlBrush();
+		copyParametersTo(copy);
+		return copy;
+	}
+}
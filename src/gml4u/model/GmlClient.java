@@ -52,4 +52,14 @@ public class GmlClient extends GmlGenericContainer {
 			set(KEYWORDS, GmlConstants.DEFAULT_CLIENT_KEYWORDS);
 		}	
 	}
+
+	/**
+	 * Returns a deep copy of the client
+	 * @return GmlClient
+	 */
+	public GmlClient copy() {
+		GmlClient copy = new GmlClient();
+		copyParametersTo(copy);
+		return copy;
+	}
 }
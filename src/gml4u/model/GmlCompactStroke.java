@@ -0,0 +1,193 @@
+package gml4u.model;
+
+import toxi.geom.Vec3D;
+
+/**
+ * GmlStroke storing its points as columns of floats (x, y, z, time, pressure, thickness and,
+ * only when used, rotation and direction) instead of one GmlPoint per point.<br/>
+ * A point then takes 24 bytes (48 with rotation and direction) instead of about 150,
+ * and point values can be read by index without creating any object.<br/>
+ * <br/>
+ * GmlPoints are only created on demand: the points returned by getPoints, getPoint,
+ * getFirstPoint and getLastPoint are detached copies, changing them doesn't change the stroke.
+ * Use setPoint or replacePoints to write changes back.<br/>
+ * <br/>
+ * Usage:<br/>
+ * <code>
+ * GmlStroke stroke = new GmlCompactStroke(recordedStroke);<br/>
+ * for (int i=0; i&lt;stroke.nbPoints(); i++) { stroke.getX(i) ... }
+ * </code>
+ */
+public class GmlCompactStroke extends GmlStroke {
+
+	private final GmlPointColumns columns;
+
+	/**
+	 * Creates a new GmlCompactStroke
+	 */
+	public GmlCompactStroke() {
+		this(Integer.MIN_VALUE);
+	}
+
+	/**
+	 * Creates a new GmlCompactStroke using the given layer
+	 * @param layer - int
+	 */
+	public GmlCompactStroke(int layer) {
+		this(layer, new GmlPointColumns());
+	}
+
+	/**
+	 * Creates a new GmlCompactStroke holding a copy of the given stroke (points, brush and info)<br/>
+	 * The copy gets its own ID
+	 * @param stroke - GmlStroke
+	 */
+	public GmlCompactStroke(GmlStroke stroke) {
+		this(stroke.getLayer(), new GmlPointColumns(stroke.nbPoints()));
+		setIsDrawing(stroke.getIsDrawing());
+		setBrush(stroke.getBrush().copy());
+		if (null != stroke.getInfo()) {
+			setInfo(stroke.getInfo().copy());
+		}
+		addPoints(stroke.getPointsView());
+	}
+
+	/**
+	 * Creates a new GmlCompactStroke using the given layer and columns
+	 * @param layer - int
+	 * @param columns - GmlPointColumns
+	 */
+	private GmlCompactStroke(int layer, GmlPointColumns columns) {
+		super(layer, columns);
+		this.columns = columns;
+	}
+
+	@Override
+	public GmlPoint getPoint(int index, GmlPoint point) {
+		return columns.get(index, point);
+	}
+
+	/**
+	 * Replaces the given point with the values of the given GmlPoint<br/>
+	 * Note: the stroke length isn't updated
+	 * @param index - int
+	 * @param point - GmlPoint
+	 */
+	public void setPoint(int index, GmlPoint point) {
+		columns.set(index, point);
+		pointsChanged();
+	}
+
+	/**
+	 * Returns the x value of the given point
+	 * @param index - int
+	 * @return float
+	 */
+	public float getX(int index) {
+		return columns.getX(index);
+	}
+
+	/**
+	 * Returns the y value of the given point
+	 * @param index - int
+	 * @return float
+	 */
+	public float getY(int index) {
+		return columns.getY(index);
+	}
+
+	/**
+	 * Returns the z value of the given point
+	 * @param index - int
+	 * @return float
+	 */
+	public float getZ(int index) {
+		return columns.getZ(index);
+	}
+
+	/**
+	 * Returns the time of the given point
+	 * @param index - int
+	 * @return float
+	 */
+	public float getTime(int index) {
+		return columns.getTime(index);
+	}
+
+	/**
+	 * Returns the pressure of the given point
+	 * @param index - int
+	 * @return float
+	 */
+	public float getPressure(int index) {
+		return columns.getPressure(index);
+	}
+
+	/**
+	 * Returns the thickness of the given point
+	 * @param index - int
+	 * @return float
+	 */
+	public float getThickness(int index) {
+		return columns.getThickness(index);
+	}
+
+	/**
+	 * Releases the memory reserved for points not added yet, typically once a stroke is complete
+	 */
+	public void trimToSize() {
+		columns.trimToSize();
+	}
+
+	@Override
+	public float getDuration() {
+		synchronized (columns) {
+			int size = columns.size();
+			return size > 0 ? columns.getTime(size - 1) : 0;
+		}
+	}
+
+	@Override
+	public float getStartTime() {
+		synchronized (columns) {
+			return columns.size() > 0 ? columns.getTime(0) : 0;
+		}
+	}
+
+	/**
+	 * Returns a deep copy of the stroke, stored as columns as well<br/>
+	 * The copy gets its own ID
+	 * @return GmlStroke
+	 */
+	@Override
+	public GmlStroke copy() {
+		GmlCompactStroke copy = new GmlCompactStroke(this);
+		copy.trimToSize();
+		return copy;
+	}
+
+	@Override
+	boolean computeBounds(Vec3D min, Vec3D max) {
+		return columns.getBounds(min, max);
+	}
+
+	@Override
+	void pointsHandedOut() {
+		// Points handed out are copies
+	}
+
+	@Override
+	void forEachPoint(int start, int end, GmlPointVisitor visitor) {
+		columns.forEach(start, end, visitor);
+	}
+
+	@Override
+	float getTimeAt(int index) {
+		return columns.getTime(index);
+	}
+
+	@Override
+	float distanceFromLast(Vec3D v) {
+		return columns.distanceFromLast(v);
+	}
+}
@@ -71,4 +71,33 @@ public class GmlEnvironment {
 			LOGGER.log(Level.FINEST, "Skipping "+name+": field doesn't exist");
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns a deep copy of the environment
+	 * @return GmlEnvironment
+	 */
+	public GmlEnvironment copy() {
+		GmlEnvironment copy = new GmlEnvironment(screenBounds);
+		copy.offset = copy(offset);
+		copy.rotation = copy(rotation);
+		copy.up = copy(up);
+		copy.screenScale = screenScale;
+		copy.origin = copy(origin);
+		copy.realScale = copy(realScale);
+		copy.realScaleUnit = realScaleUnit;
+		copy.originalOriginShift = copy(originalOriginShift);
+		copy.originalAspectRatio = copy(originalAspectRatio);
+		copy.normalizedOriginShift = copy(normalizedOriginShift);
+		copy.normalizedAspectRatio = copy(normalizedAspectRatio);
+		return copy;
+	}
+
+	/**
+	 * Copies a vector, null safe
+	 * @param v - Vec3D
+	 * @return Vec3D
+	 */
+	private static Vec3D copy(Vec3D v) {
+		return null == v ? null : new Vec3D(v);
+	}
+}
@@ -7,6 +7,7 @@ import java.util.logging.Logger;
 
 
 
+import toxi.geom.Vec2D;
 import toxi.geom.Vec3D;
 
 public abstract class GmlGenericContainer {
@@ -192,4 +193,27 @@ public abstract class GmlGenericContainer {
 		params.putAll(map);
 		return params;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Replaces the given container's parameters with a copy of this container's ones<br/>
+	 * Mutable values (vectors, locations) are copied as well
+	 * @param container - GmlGenericContainer
+	 */
+	protected final void copyParametersTo(GmlGenericContainer container) {
+		container.map.clear();
+		for (Map.Entry<String, Object> entry : map.entrySet()) {
+			Object value = entry.getValue();
+			if (value instanceof Vec3D) {
+				value = new Vec3D((Vec3D) value);
+			}
+			else if (value instanceof Vec2D) {
+				value = new Vec2D((Vec2D) value);
+			}
+			else if (value instanceof GmlLocation) {
+				GmlLocation location = (GmlLocation) value;
+				value = new GmlLocation(location.getLat(), location.getLon(), location.getAlt());
+			}
+			container.map.put(entry.getKey(), value);
+		}
+	}
+}
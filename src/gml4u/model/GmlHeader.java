@@ -0,0 +1,33 @@
+package gml4u.model;
+
+public class GmlHeader {
+
+	// Leaving this public as Gml does
+	public GmlClient client;
+	public GmlEnvironment environment;
+	public int totalStrokes;  // -1 if not counted
+	public int totalPoints;   // -1 if not counted
+
+	/**
+	 * Creates a new GmlHeader using the given client and environment, without stroke and point counts
+	 * @param client - GmlClient
+	 * @param environment - GmlEnvironment
+	 */
+	public GmlHeader(GmlClient client, GmlEnvironment environment) {
+		this(client, environment, -1, -1);
+	}
+
+	/**
+	 * Creates a new GmlHeader using the given client, environment, and stroke and point counts
+	 * @param client - GmlClient
+	 * @param environment - GmlEnvironment
+	 * @param totalStrokes - int
+	 * @param totalPoints - int
+	 */
+	public GmlHeader(GmlClient client, GmlEnvironment environment, int totalStrokes, int totalPoints) {
+		this.client = client;
+		this.environment = environment;
+		this.totalStrokes = totalStrokes;
+		this.totalPoints = totalPoints;
+	}
+}
@@ -25,4 +25,14 @@ public class GmlInfo extends GmlGenericContainer {
 		this();
 		setParameters(map);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Returns a deep copy of the info
+	 * @return GmlInfo
+	 */
+	public GmlInfo copy() {
+		GmlInfo copy = new GmlInfo();
+		copyParametersTo(copy);
+		return copy;
+	}
+}
@@ -0,0 +1,400 @@
+package gml4u.model;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import toxi.geom.Vec3D;
+
+/**
+ * Point storage of a GmlCompactStroke: one float array per point value instead of one GmlPoint
+ * (and its rotation and direction vectors) per point.<br/>
+ * Rotation and direction columns are only allocated once a non zero vector is stored.<br/>
+ * Points returned by get are detached copies, set must be used to change a stored point.<br/>
+ * Methods are synchronized on the list itself, as with Collections.synchronizedList.
+ */
+class GmlPointColumns extends AbstractList<GmlPoint> implements RandomAccess {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int size;
+	private float[] x;
+	private float[] y;
+	private float[] z;
+	private float[] time;
+	private float[] pressure;
+	private float[] thickness;
+	private float[] rotation;  // x, y, z per point, null until needed
+	private float[] direction; // x, y, z per point, null until needed
+
+	/**
+	 * Creates a new empty GmlPointColumns
+	 */
+	GmlPointColumns() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a new empty GmlPointColumns able to hold the given number of points before growing
+	 * @param capacity - int
+	 */
+	GmlPointColumns(int capacity) {
+		allocate(Math.max(capacity, 1));
+	}
+
+	@Override
+	public synchronized int size() {
+		return size;
+	}
+
+	@Override
+	public synchronized GmlPoint get(int index) {
+		return get(index, new GmlPoint());
+	}
+
+	/**
+	 * Copies the given point's values into the given GmlPoint and returns it
+	 * @param index - int
+	 * @param point - GmlPoint
+	 * @return GmlPoint
+	 */
+	synchronized GmlPoint get(int index, GmlPoint point) {
+		checkIndex(index);
+		point.x = x[index];
+		point.y = y[index];
+		point.z = z[index];
+		point.time = time[index];
+		point.preasure = pressure[index];
+		point.thickness = thickness[index];
+		point.rotation = getVector(rotation, index, point.rotation);
+		point.direction = getVector(direction, index, point.direction);
+		return point;
+	}
+
+	@Override
+	public synchronized GmlPoint set(int index, GmlPoint point) {
+		GmlPoint previous = get(index);
+		store(index, point);
+		return previous;
+	}
+
+	@Override
+	public synchronized void add(int index, GmlPoint point) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+		}
+		if (null == point) {
+			throw new NullPointerException("Null points can't be stored");
+		}
+		if (size == x.length) {
+			grow(size + 1);
+		}
+		if (index < size) {
+			shift(index, index + 1, size - index);
+		}
+		size++;
+		modCount++;
+		store(index, point);
+	}
+
+	@Override
+	public synchronized GmlPoint remove(int index) {
+		GmlPoint previous = get(index);
+		if (index < size - 1) {
+			shift(index + 1, index, size - index - 1);
+		}
+		size--;
+		modCount++;
+		return previous;
+	}
+
+	@Override
+	public synchronized void clear() {
+		size = 0;
+		rotation = null;
+		direction = null;
+		modCount++;
+	}
+
+	@Override
+	public synchronized Object[] toArray() {
+		return super.toArray();
+	}
+
+	@Override
+	public synchronized <T> T[] toArray(T[] a) {
+		return super.toArray(a);
+	}
+
+	/**
+	 * Returns the x value of the given point
+	 * @param index - int
+	 * @return float
+	 */
+	synchronized float getX(int index) {
+		checkIndex(index);
+		return x[index];
+	}
+
+	/**
+	 * Returns the y value of the given point
+	 * @param index - int
+	 * @return float
+	 */
+	synchronized float getY(int index) {
+		checkIndex(index);
+		return y[index];
+	}
+
+	/**
+	 * Returns the z value of the given point
+	 * @param index - int
+	 * @return float
+	 */
+	synchronized float getZ(int index) {
+		checkIndex(index);
+		return z[index];
+	}
+
+	/**
+	 * Returns the time of the given point
+	 * @param index - int
+	 * @return float
+	 */
+	synchronized float getTime(int index) {
+		checkIndex(index);
+		return time[index];
+	}
+
+	/**
+	 * Returns the pressure of the given point
+	 * @param index - int
+	 * @return float
+	 */
+	synchronized float getPressure(int index) {
+		checkIndex(index);
+		return pressure[index];
+	}
+
+	/**
+	 * Returns the thickness of the given point
+	 * @param index - int
+	 * @return float
+	 */
+	synchronized float getThickness(int index) {
+		checkIndex(index);
+		return thickness[index];
+	}
+
+	/**
+	 * Calls the visitor with the values of the points from start to end (excluded)
+	 * @param start - int
+	 * @param end - int
+	 * @param visitor - GmlPointVisitor
+	 */
+	synchronized void forEach(int start, int end, GmlPointVisitor visitor) {
+		if (start < 0 || end > size) {
+			throw new IndexOutOfBoundsException("Range: "+start+"-"+end+", Size: "+size);
+		}
+		for (int i=start; i<end; i++) {
+			visitor.visit(i, x[i], y[i], z[i], time[i], pressure[i], thickness[i]);
+		}
+	}
+
+	/**
+	 * Returns the distance between the last point and the given vector, 0 if empty
+	 * @param v - Vec3D
+	 * @return float
+	 */
+	synchronized float distanceFromLast(Vec3D v) {
+		if (size == 0) {
+			return 0;
+		}
+		float dx = v.x - x[size - 1];
+		float dy = v.y - y[size - 1];
+		float dz = v.z - z[size - 1];
+		return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	/**
+	 * Sets min and max to the bounds of the points, returns false if empty
+	 * @param min - Vec3D
+	 * @param max - Vec3D
+	 * @return boolean
+	 */
+	synchronized boolean getBounds(Vec3D min, Vec3D max) {
+		if (size == 0) {
+			return false;
+		}
+		min.set(x[0], y[0], z[0]);
+		max.set(min);
+		for (int i=1; i<size; i++) {
+			min.x = Math.min(min.x, x[i]);
+			min.y = Math.min(min.y, y[i]);
+			min.z = Math.min(min.z, z[i]);
+			max.x = Math.max(max.x, x[i]);
+			max.y = Math.max(max.y, y[i]);
+			max.z = Math.max(max.z, z[i]);
+		}
+		return true;
+	}
+
+	/**
+	 * Releases the unused capacity
+	 */
+	synchronized void trimToSize() {
+		if (size < x.length) {
+			resize(Math.max(size, 1));
+		}
+	}
+
+	/**
+	 * Stores the given point's values at the given index
+	 * @param index - int
+	 * @param point - GmlPoint
+	 */
+	private void store(int index, GmlPoint point) {
+		x[index] = point.x;
+		y[index] = point.y;
+		z[index] = point.z;
+		time[index] = point.time;
+		pressure[index] = point.preasure;
+		thickness[index] = point.thickness;
+		if (null != rotation || !isZero(point.rotation)) {
+			if (null == rotation) {
+				rotation = new float[x.length * 3];
+			}
+			setVector(rotation, index, point.rotation);
+		}
+		if (null != direction || !isZero(point.direction)) {
+			if (null == direction) {
+				direction = new float[x.length * 3];
+			}
+			setVector(direction, index, point.direction);
+		}
+	}
+
+	/**
+	 * Returns true if the given vector is null or exactly zero
+	 * @param v - Vec3D
+	 * @return boolean
+	 */
+	private static boolean isZero(Vec3D v) {
+		return null == v || (v.x == 0 && v.y == 0 && v.z == 0);
+	}
+
+	/**
+	 * Copies a vector from the given column into v (created if null), zero if the column isn't allocated
+	 * @param column - float[]
+	 * @param index - int
+	 * @param v - Vec3D
+	 * @return Vec3D
+	 */
+	private static Vec3D getVector(float[] column, int index, Vec3D v) {
+		if (null == v) {
+			v = new Vec3D();
+		}
+		if (null == column) {
+			v.clear();
+		}
+		else {
+			v.set(column[index * 3], column[index * 3 + 1], column[index * 3 + 2]);
+		}
+		return v;
+	}
+
+	/**
+	 * Copies a vector into the given column, null vectors are stored as zero
+	 * @param column - float[]
+	 * @param index - int
+	 * @param v - Vec3D
+	 */
+	private static void setVector(float[] column, int index, Vec3D v) {
+		column[index * 3] = null == v ? 0 : v.x;
+		column[index * 3 + 1] = null == v ? 0 : v.y;
+		column[index * 3 + 2] = null == v ? 0 : v.z;
+	}
+
+	/**
+	 * Moves count points from one index to another
+	 * @param from - int
+	 * @param to - int
+	 * @param count - int
+	 */
+	private void shift(int from, int to, int count) {
+		System.arraycopy(x, from, x, to, count);
+		System.arraycopy(y, from, y, to, count);
+		System.arraycopy(z, from, z, to, count);
+		System.arraycopy(time, from, time, to, count);
+		System.arraycopy(pressure, from, pressure, to, count);
+		System.arraycopy(thickness, from, thickness, to, count);
+		if (null != rotation) {
+			System.arraycopy(rotation, from * 3, rotation, to * 3, count * 3);
+		}
+		if (null != direction) {
+			System.arraycopy(direction, from * 3, direction, to * 3, count * 3);
+		}
+	}
+
+	/**
+	 * Grows the columns by half their capacity, or more if needed
+	 * @param minCapacity - int
+	 */
+	private void grow(int minCapacity) {
+		resize(Math.max(minCapacity, x.length + (x.length >> 1)));
+	}
+
+	/**
+	 * Allocates empty columns
+	 * @param capacity - int
+	 */
+	private void allocate(int capacity) {
+		x = new float[capacity];
+		y = new float[capacity];
+		z = new float[capacity];
+		time = new float[capacity];
+		pressure = new float[capacity];
+		thickness = new float[capacity];
+	}
+
+	/**
+	 * Copies the columns into arrays of the given capacity
+	 * @param capacity - int
+	 */
+	private void resize(int capacity) {
+		x = copyOf(x, capacity, 1);
+		y = copyOf(y, capacity, 1);
+		z = copyOf(z, capacity, 1);
+		time = copyOf(time, capacity, 1);
+		pressure = copyOf(pressure, capacity, 1);
+		thickness = copyOf(thickness, capacity, 1);
+		if (null != rotation) {
+			rotation = copyOf(rotation, capacity, 3);
+		}
+		if (null != direction) {
+			direction = copyOf(direction, capacity, 3);
+		}
+	}
+
+	/**
+	 * Returns a column of the given capacity holding the used part of the given one
+	 * @param column - float[]
+	 * @param capacity - int
+	 * @param stride - int (values per point)
+	 * @return float[]
+	 */
+	private float[] copyOf(float[] column, int capacity, int stride) {
+		float[] copy = new float[capacity * stride];
+		System.arraycopy(column, 0, copy, 0, Math.min(size, capacity) * stride);
+		return copy;
+	}
+
+	/**
+	 * Throws an IndexOutOfBoundsException if the index isn't valid
+	 * @param index - int
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+		}
+	}
+}
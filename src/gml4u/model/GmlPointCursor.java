@@ -0,0 +1,139 @@
+package gml4u.model;
+
+/**
+ * Reusable cursor reading the points of a stroke, or of a time window of a stroke, into two
+ * GmlPoints owned by the cursor: once created, reading points allocates nothing.<br/>
+ * The points returned by getPoint and getPrevious are overwritten by the next call to next(),
+ * they must be copied to be kept.<br/>
+ * Points must not be removed from the stroke while it is being read.<br/>
+ * <br/>
+ * Usage:<br/>
+ * <code>
+ * GmlPointCursor cursor = new GmlPointCursor(); // Kept and reused<br/>
+ * cursor.reset(stroke, minTime, maxTime);<br/>
+ * while (cursor.next()) {<br/>
+ * &nbsp;&nbsp;GmlPoint point = cursor.getPoint();<br/>
+ * &nbsp;&nbsp;...<br/>
+ * }
+ * </code>
+ */
+public class GmlPointCursor {
+
+	private GmlStroke stroke;
+	private int start;
+	private int end;
+	private int index;
+	private GmlPoint point = new GmlPoint();
+	private GmlPoint previous = new GmlPoint();
+
+	/**
+	 * Creates a new GmlPointCursor, reset must be called before reading points
+	 */
+	public GmlPointCursor() {
+	}
+
+	/**
+	 * Creates a new GmlPointCursor reading all the points of the given stroke
+	 * @param stroke - GmlStroke
+	 */
+	public GmlPointCursor(GmlStroke stroke) {
+		reset(stroke);
+	}
+
+	/**
+	 * Moves the cursor before the first point of the given stroke
+	 * @param stroke - GmlStroke
+	 */
+	public void reset(GmlStroke stroke) {
+		resetIndexes(stroke, 0, stroke.nbPoints());
+	}
+
+	/**
+	 * Moves the cursor before the first point of the given stroke within [minTime, maxTime]
+	 * (see GmlStroke.getStartIndex), only the points of this time window will be read
+	 * @param stroke - GmlStroke
+	 * @param minTime - float
+	 * @param maxTime - float
+	 */
+	public void reset(GmlStroke stroke, float minTime, float maxTime) {
+		int first = stroke.getStartIndex(minTime);
+		resetIndexes(stroke, first, Math.max(first, stroke.getEndIndex(maxTime)));
+	}
+
+	/**
+	 * Moves the cursor before the given point of the given stroke, only points
+	 * from start to end (excluded) will be read
+	 * @param stroke - GmlStroke
+	 * @param start - int
+	 * @param end - int
+	 */
+	public void resetIndexes(GmlStroke stroke, int start, int end) {
+		this.stroke = stroke;
+		this.start = start;
+		this.end = end;
+		this.index = start - 1;
+	}
+
+	/**
+	 * Returns the number of points to read
+	 * @return int
+	 */
+	public int size() {
+		return end - start;
+	}
+
+	/**
+	 * Returns true if there is no point to read
+	 * @return boolean
+	 */
+	public boolean isEmpty() {
+		return end <= start;
+	}
+
+	/**
+	 * Reads the next point, returns false once all points have been read
+	 * @return boolean
+	 */
+	public boolean next() {
+		if (index + 1 >= end) {
+			return false;
+		}
+		GmlPoint swap = previous;
+		previous = point;
+		point = swap;
+		stroke.getPoint(++index, point);
+		return true;
+	}
+
+	/**
+	 * Returns the current point
+	 * @return GmlPoint
+	 */
+	public GmlPoint getPoint() {
+		return point;
+	}
+
+	/**
+	 * Returns the point read before the current one, or the current one if it is the first read
+	 * @return GmlPoint
+	 */
+	public GmlPoint getPrevious() {
+		return isFirst() ? point : previous;
+	}
+
+	/**
+	 * Returns true if the current point is the first one read since the last reset
+	 * @return boolean
+	 */
+	public boolean isFirst() {
+		return index == start;
+	}
+
+	/**
+	 * Returns the index of the current point in the stroke
+	 * @return int
+	 */
+	public int getIndex() {
+		return index;
+	}
+}
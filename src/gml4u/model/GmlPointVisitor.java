@@ -0,0 +1,20 @@
+package gml4u.model;
+
+/**
+ * Callback receiving the values of each point of a stroke (see GmlStroke.forEachPoint),
+ * without any GmlPoint being created
+ */
+public interface GmlPointVisitor {
+
+	/**
+	 * Called for each visited point, in order
+	 * @param index - int (index of the point in the stroke)
+	 * @param x - float
+	 * @param y - float
+	 * @param z - float
+	 * @param time - float
+	 * @param pressure - float
+	 * @param thickness - float
+	 */
+	public void visit(int index, float x, float y, float z, float time, float pressure, float thickness);
+}
@@ -1,9 +1,10 @@
 package gml4u.model;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,6 +26,13 @@ public class GmlStroke {
 	private UUID uuid;
 	private float length;
 	private AABB boundingBox = AABB.fromMinMax(new Vec3D(0, 0, 0),new Vec3D(1, 1, 1));
+	// Bounds of the points, updated as points are added
+	private final Vec3D min = new Vec3D();
+	private final Vec3D max = new Vec3D();
+	private boolean boundsValid = true;
+	// Change counters of the Gml holding the stroke, incremented when points change (see Gml statistics)
+	private static final AtomicInteger[] NO_OWNERS = new AtomicInteger[0];
+	private AtomicInteger[] owners = NO_OWNERS;
 	
 	/**
 	 * Creates a new GmlStroke
@@ -32,7 +40,7 @@ public class GmlStroke {
 	public GmlStroke() {
 		this.isDrawing = true;
 		this.layer = Integer.MIN_VALUE;
-		this.points = Collections.synchronizedList(new LinkedList<GmlPoint>());
+		this.points = Collections.synchronizedList(new ArrayList<GmlPoint>());
 		this.uuid = UUID.randomUUID();
 		this.brush = new GmlBrush();
 		this.length = 0;
@@ -56,6 +64,17 @@ public class GmlStroke {
 		addPoints(points);
 	}
 	
+	/**
+	 * Creates a new GmlStroke using the given layer and storing its points in the given list<br/>
+	 * The list must synchronize its methods on itself, as Collections.synchronizedList does
+	 * @param layer - int
+	 * @param points - List<GmlPoint>
+	 */
+	GmlStroke(int layer, List<GmlPoint> points) {
+		this(layer);
+		this.points = points;
+	}
+
 	/**
 	 * Creates a new GmlStroke using the the given layer and points
 	 * @param points - List<GmlPoint>
@@ -63,7 +82,7 @@ public class GmlStroke {
 	 */
 	public GmlStroke(List<GmlPoint> points, int layer) {
 		this(layer);
-		this.points.addAll(points);
+		addPoints(points);
 	}
 	
 	/**
@@ -75,13 +94,82 @@ public class GmlStroke {
 	}
 
 	/**
-	 * Returns the stroke's bounding box
+	 * Returns the stroke's bounding box<br/>
+	 * Bounds are kept up to date as points are added, points are only read again once replaced
+	 * or handed out by getPoints (see getPoints).
 	 * @return AABB - boundingBox
 	 */
 	public AABB getBoundingBox() {
-		PointCloud pointCloud = new PointCloud();
-		pointCloud.addAll(points);
-		return pointCloud.getBoundingBox();
+		synchronized (points) {
+			if (points.isEmpty()) {
+				return new PointCloud().getBoundingBox();
+			}
+			if (!boundsValid) {
+				boundsValid = computeBounds(min, max);
+			}
+			return AABB.fromMinMax(min, max);
+		}
+	}
+
+	/**
+	 * Reads all points to set min and max to their bounds, returns false if the stroke is empty
+	 * @param min - Vec3D
+	 * @param max - Vec3D
+	 * @return boolean
+	 */
+	boolean computeBounds(Vec3D min, Vec3D max) {
+		synchronized (points) {
+			if (points.isEmpty()) {
+				return false;
+			}
+			min.set(points.get(0));
+			max.set(min);
+			for (GmlPoint point : points) {
+				min.minSelf(point);
+				max.maxSelf(point);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * To be called when stored points are changed: bounds will be computed again
+	 */
+	void pointsChanged() {
+		synchronized (points) {
+			boundsValid = false;
+			notifyOwners();
+		}
+	}
+
+	/**
+	 * Adds the change counter of a Gml holding the stroke, if not already known.<br/>
+	 * The counter is then incremented each time points are added, replaced, removed or handed out by getPoints
+	 * @param changes - AtomicInteger
+	 */
+	void addOwner(AtomicInteger changes) {
+		synchronized (points) {
+			for (AtomicInteger owner : owners) {
+				if (owner == changes) {
+					return;
+				}
+			}
+			AtomicInteger[] newOwners = new AtomicInteger[owners.length + 1];
+			System.arraycopy(owners, 0, newOwners, 0, owners.length);
+			newOwners[owners.length] = changes;
+			owners = newOwners;
+		}
+	}
+
+	/**
+	 * Increments the change counters of the Gml holding the stroke
+	 */
+	private void notifyOwners() {
+		synchronized (points) {
+			for (AtomicInteger owner : owners) {
+				owner.incrementAndGet();
+			}
+		}
 	}
 
 	/**
@@ -226,12 +314,19 @@ public class GmlStroke {
 	 * @return GmlPoint
 	 */
 	public GmlPoint getFirstPoint() {
-		if (points.size() >=1) {
-			GmlPoint firstPoint = new GmlPoint();
-			firstPoint.set(points.get(0));
-			return firstPoint;
+		return getFirstPoint(new GmlPoint());
+	}
+
+	/**
+	 * Copies the first point's values into the given GmlPoint and returns it (see getPoint(int, GmlPoint)).
+	 * Returns null if the stroke is empty
+	 * @param point - GmlPoint
+	 * @return GmlPoint
+	 */
+	public GmlPoint getFirstPoint(GmlPoint point) {
+		synchronized (points) {
+			return points.isEmpty() ? null : getPoint(0, point);
 		}
-		return null;
 	}
 	
 	/**
@@ -240,65 +335,238 @@ public class GmlStroke {
 	 * @return GmlPoint
 	 */
 	public GmlPoint getLastPoint() {
-		if (points.size() >=1) {
-			GmlPoint lastPoint = new GmlPoint();
-			lastPoint.set(points.get(points.size()-1));
-			return lastPoint;
+		return getLastPoint(new GmlPoint());
+	}
+
+	/**
+	 * Copies the last point's values into the given GmlPoint and returns it (see getPoint(int, GmlPoint)).
+	 * Returns null if the stroke is empty
+	 * @param point - GmlPoint
+	 * @return GmlPoint
+	 */
+	public GmlPoint getLastPoint(GmlPoint point) {
+		synchronized (points) {
+			return points.isEmpty() ? null : getPoint(points.size() - 1, point);
 		}
-		return null;
 	}
 
 	/**
-	 * Returns a copy of the the stroke's points
+	 * Returns a copy of the the stroke's points<br/>
+	 * The list is a copy, points are the stored ones: bounds are read again once they are requested.
+	 * Points changed after that have to be handed out again, or written back using replacePoints.
 	 * @return List<GmlPoint>
 	 */
 	public List<GmlPoint> getPoints() {
-		List<GmlPoint> pts = new LinkedList<GmlPoint>();
-		if (null != points) {
-			pts.addAll(points);
+		synchronized (points) {
+			pointsHandedOut();
+			return new ArrayList<GmlPoint>(points);
 		}
-		return pts;
 	}
 
 	/**
-	 * Returns a filtered list of points based on a given time value
+	 * Called when stored points are handed out by getPoints, as they may then be changed:
+	 * bounds will be computed again
+	 */
+	void pointsHandedOut() {
+		pointsChanged();
+	}
+
+	/**
+	 * Returns a copy of the given point
+	 * @param index - int
+	 * @return GmlPoint
+	 */
+	public GmlPoint getPoint(int index) {
+		return getPoint(index, new GmlPoint());
+	}
+
+	/**
+	 * Copies the given point's values into the given GmlPoint and returns it.<br/>
+	 * Allows to read all the points of a stroke with a single GmlPoint (see GmlPointCursor).
+	 * @param index - int
+	 * @param point - GmlPoint
+	 * @return GmlPoint
+	 */
+	public GmlPoint getPoint(int index, GmlPoint point) {
+		GmlPoint stored = points.get(index);
+		point.x = stored.x;
+		point.y = stored.y;
+		point.z = stored.z;
+		point.time = stored.time;
+		point.preasure = stored.preasure;
+		point.thickness = stored.thickness;
+		point.rotation = copyVector(stored.rotation, point.rotation);
+		point.direction = copyVector(stored.direction, point.direction);
+		return point;
+	}
+
+	/**
+	 * Copies a vector into another one (created if null), null vectors are copied as zero
+	 * @param from - Vec3D
+	 * @param to - Vec3D
+	 * @return Vec3D
+	 */
+	private static Vec3D copyVector(Vec3D from, Vec3D to) {
+		if (null == to) {
+			to = new Vec3D();
+		}
+		if (null == from) {
+			to.clear();
+		}
+		else {
+			to.set(from);
+		}
+		return to;
+	}
+
+	/**
+	 * Returns a read-only view of the stroke's points, nothing is copied.<br/>
+	 * Points returned by the view must not be changed (see getPoints).
+	 * The view must not be used anymore once points are added or removed.
+	 * @return List<GmlPoint>
+	 */
+	public List<GmlPoint> getPointsView() {
+		return Collections.unmodifiableList(points);
+	}
+
+	/**
+	 * Calls the visitor with the values of every point, in order, without creating any object
+	 * @param visitor - GmlPointVisitor
+	 */
+	public void forEachPoint(GmlPointVisitor visitor) {
+		synchronized (points) {
+			forEachPoint(0, points.size(), visitor);
+		}
+	}
+
+	/**
+	 * Calls the visitor with the values of every point within the given time interval, in order,
+	 * without creating any object
+	 * @param start - float beginning of time interval
+	 * @param end - float end of time interval
+	 * @param visitor - GmlPointVisitor
+	 */
+	public void forEachPoint(float start, float end, GmlPointVisitor visitor) {
+		synchronized (points) {
+			int first = getStartIndex(start);
+			forEachPoint(first, Math.max(first, getEndIndex(end)), visitor);
+		}
+	}
+
+	/**
+	 * Calls the visitor with the values of the points from start to end (excluded)
+	 * @param start - int
+	 * @param end - int
+	 * @param visitor - GmlPointVisitor
+	 */
+	void forEachPoint(int start, int end, GmlPointVisitor visitor) {
+		synchronized (points) {
+			for (int i=start; i<end; i++) {
+				GmlPoint point = points.get(i);
+				visitor.visit(i, point.x, point.y, point.z, point.time, point.preasure, point.thickness);
+			}
+		}
+	}
+
+	/**
+	 * Returns a filtered list of points based on a given time value (see getPoints)
 	 * @param time
 	 * @return List<GmlPoint>
 	 */
 	public List<GmlPoint> getPoints(float time) {
-		List<GmlPoint> pts = new LinkedList<GmlPoint>();
-		for (GmlPoint point : points) {
-			if (point.time <= time) {
-				pts.add(point);
-			}
-			else {
-				return pts;
-			}
+		synchronized (points) {
+			pointsHandedOut();
+			return new ArrayList<GmlPoint>(points.subList(0, getEndIndex(time)));
 		}
-		return pts;
 	}
 	
 	/**
-	 * Returns a filtered list of points based on a given time interval
+	 * Returns a filtered list of points based on a given time interval (see getPoints)
 	 * @param start - float beginning of time interval
 	 * @param end - float end of time interval
 	 * @return List<GmlPoint>
 	 */
 	public List<GmlPoint> getPoints(float start, float end) {
-		
+		synchronized (points) {
+			pointsHandedOut();
+			return new ArrayList<GmlPoint>(getPointsView(start, end));
+		}
+	}
+
+	/**
+	 * Returns a read-only view of the points within the given time interval, nothing is copied.<br/>
+	 * The view must not be used anymore once points are added or removed.<br/>
+	 * Note: points are expected in time order, as recorded
+	 * @param start - float beginning of time interval
+	 * @param end - float end of time interval
+	 * @return List<GmlPoint>
+	 */
+	public List<GmlPoint> getPointsView(float start, float end) {
 		if (end < start) {
 			LOGGER.log(Level.WARNING, "Interval start occurs after interavl end: doing nothing ");
+			return Collections.emptyList();
+		}
+		synchronized (points) {
+			return Collections.unmodifiableList(points.subList(getStartIndex(start), getEndIndex(end)));
 		}
-		List<GmlPoint> pts = new LinkedList<GmlPoint>();
-		for (GmlPoint point : points) {
-			if (point.time >= start && point.time <= end) {
-				pts.add(point);
+	}
+
+	/**
+	 * Returns the index of the first point whose time is at least the given time,
+	 * the number of points if there is none.<br/>
+	 * Points from getStartIndex(start) to getEndIndex(end) (excluded) are those within [start, end].<br/>
+	 * Note: points are expected in time order, as recorded
+	 * @param time - float
+	 * @return int
+	 */
+	public int getStartIndex(float time) {
+		synchronized (points) {
+			int low = 0;
+			int high = points.size();
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (getTimeAt(middle) < time) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
 			}
-			else {
-				return pts;
+			return low;
+		}
+	}
+
+	/**
+	 * Returns the index following the last point whose time is at most the given time,
+	 * 0 if there is none.<br/>
+	 * Note: points are expected in time order, as recorded
+	 * @param time - float
+	 * @return int
+	 */
+	public int getEndIndex(float time) {
+		synchronized (points) {
+			int low = 0;
+			int high = points.size();
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (getTimeAt(middle) <= time) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
 			}
+			return low;
 		}
-		return pts;
+	}
+
+	/**
+	 * Returns the time of the given point
+	 * @param index - int
+	 * @return float
+	 */
+	float getTimeAt(int index) {
+		return points.get(index).time;
 	}
 
 	/**
@@ -310,12 +578,13 @@ public class GmlStroke {
 	}
 
 	/**
-	 * Replaces the existing points
+	 * Replaces the existing points<br/>
+	 * Also to be used to write back points obtained with getPoints once changed
 	 * @param pts - List<GmlPoint>
 	 */
 	public void replacePoints(List<GmlPoint> pts) {
 		clearPoints();
-		points.addAll(pts);
+		addPoints(pts);
 	}
 
 	/**
@@ -323,6 +592,7 @@ public class GmlStroke {
 	 * Points are added even if outside of the bounding box.<br/>
 	 * The normalization util might be run to fix that afterward.<br/>
 	 * This allows more flexibility when loading GML which doesn't comply with the 0-1 limit<br/>
+	 * The point itself is stored: changing it afterwards requires a replacePoints.
 	 * @param point - GmlPoint
 	 */
 	public void addPoint(GmlPoint point) {
@@ -330,14 +600,34 @@ public class GmlStroke {
 			LOGGER.log(Level.FINEST, "GmlPoint "+ point +" wasn't added. Reason: null");	
 			return;
 		}
-		if (!point.isInAABB(boundingBox)) {
+		if (LOGGER.isLoggable(Level.FINEST) && !point.isInAABB(boundingBox)) {
 			LOGGER.log(Level.FINEST, "Inconsistent GmlPoint "+ point +". Reason: outside "+ boundingBox);
 		}
-		GmlPoint last = getLastPoint();
-		if (null != last) {
-			length += last.distanceTo(point); 
+		synchronized (points) {
+			length += distanceFromLast(point);
+			if (points.isEmpty()) {
+				min.set(point);
+				max.set(point);
+			}
+			else {
+				min.minSelf(point);
+				max.maxSelf(point);
+			}
+			points.add(point);
+			notifyOwners();
+		}
+	}
+
+	/**
+	 * Returns the distance between the last point and the given vector, 0 if the stroke is empty
+	 * @param v - Vec3D
+	 * @return float
+	 */
+	float distanceFromLast(Vec3D v) {
+		synchronized (points) {
+			int size = points.size();
+			return size == 0 ? 0 : points.get(size - 1).distanceTo(v);
 		}
-		points.add(point);
 	}
 	
 	/**
@@ -359,7 +649,31 @@ public class GmlStroke {
 	 * Clears all points of the stroke and sets its length to 0
 	 */
 	public void clearPoints() {
-		points.clear();
-		length = 0;
+		synchronized (points) {
+			points.clear();
+			length = 0;
+			boundsValid = true;
+			notifyOwners();
+		}
+	}
+
+	/**
+	 * Returns a deep copy of the stroke (points, brush and info are copied as well)<br/>
+	 * The copy gets its own ID
+	 * @return GmlStroke
+	 */
+	public GmlStroke copy() {
+		GmlStroke copy = new GmlStroke(layer);
+		copy.isDrawing = isDrawing;
+		copy.brush = brush.copy();
+		copy.info = null == info ? null : info.copy();
+		synchronized (points) {
+			for (GmlPoint point : points) {
+				copy.points.add(new GmlPoint(point));
+			}
+		}
+		copy.length = length;
+		copy.boundsValid = false;
+		return copy;
 	}
 }
@@ -0,0 +1,572 @@
+package gml4u.model;
+
+import gml4u.utils.ByteBufferInputStream;
+import gml4u.utils.FileUtils;
+import gml4u.utils.GmlStaxParsingHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import toxi.geom.AABB;
+
+/**
+ * Gml whose strokes are only decoded when asked for.<br/>
+ * Opening a LazyGml reads the header and records where each &lt;stroke&gt; element is located
+ * in the document, along with its layer and number of points. Stroke points are decoded when
+ * getStrokes() or getStrokes(layer) is called, and kept through soft references so they can be
+ * reclaimed under memory pressure and decoded again later.<br/>
+ * <br/>
+ * Notes:<br/>
+ * - the document is read as is: neither client specific fixes (GmlHomogenizer) nor normalization are applied<br/>
+ * - changes made to strokes may be lost once they are reclaimed, call materialize() first to keep them
+ * (adding or removing strokes does it automatically)<br/>
+ * - duration, start time and bounding boxes are computed once from the document and then cached,
+ * they only follow changes made to strokes once materialized<br/>
+ * - only ASCII compatible encodings (UTF-8, ISO-8859-x, ...) are supported
+ */
+public class LazyGml extends Gml {
+
+	private static final Logger LOGGER = Logger.getLogger(LazyGml.class.getName());
+
+	private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._-]+)[\"']");
+	private static final Pattern LAYER = Pattern.compile("\\slayer\\s*=\\s*[\"']([^\"']*)[\"']");
+
+	private ByteBuffer buffer;
+	private String encoding;
+	private int[] starts;
+	private int[] ends;
+	private int[] strokeLayers;
+	private int[] strokePoints;
+	private StrokeReference[] strokes;
+	private SortedMap<Integer, List<Integer>> layerIndex = new TreeMap<Integer, List<Integer>>();
+	private boolean materialized;
+
+	// Statistics computed once while not materialized, as they require decoding strokes
+	private boolean statisticsComputed;
+	private float duration;
+	private float startTime;
+	private AABB boundingBox;
+	private Map<Integer, AABB> layerBoundingBoxes = new HashMap<Integer, AABB>();
+
+	/*
+	 * Typed soft reference, so that an array of them can be created
+	 */
+	private static class StrokeReference extends SoftReference<GmlStroke> {
+		StrokeReference(GmlStroke stroke) {
+			super(stroke);
+		}
+	}
+
+	/**
+	 * Opens the given Gml file lazily.<br/>
+	 * Local files are memory mapped, remote and compressed ones are read in memory first.
+	 * @param file - String
+	 * @throws IOException
+	 */
+	public LazyGml(String file) throws IOException {
+		super();
+		File localFile = new File(file);
+		if (localFile.isFile()) {
+			buffer = FileUtils.map(localFile);
+		}
+		if (null == buffer || isCompressed(buffer)) {
+			buffer = ByteBuffer.wrap(readFully(FileUtils.openInputStream(file)));
+		}
+		index();
+	}
+
+	/**
+	 * Opens the given Gml document lazily
+	 * @param bytes - byte[]
+	 * @throws IOException
+	 */
+	public LazyGml(byte[] bytes) throws IOException {
+		super();
+		buffer = ByteBuffer.wrap(bytes);
+		if (isCompressed(buffer)) {
+			buffer = ByteBuffer.wrap(readFully(FileUtils.decompress(new ByteArrayInputStream(bytes))));
+		}
+		index();
+	}
+
+	/**
+	 * Reads the header and records the strokes' location
+	 * @throws IOException
+	 */
+	private void index() throws IOException {
+		checkEncoding();
+
+		GmlHeader header = GmlStaxParsingHelper.scanHeader(new ByteBufferInputStream(buffer.duplicate()), false);
+		if (null == header) {
+			throw new IOException("Not a Gml document");
+		}
+		client = header.client;
+		environment = header.environment;
+
+		List<int[]> found = new ArrayList<int[]>();
+		scanStrokes(found);
+
+		int size = found.size();
+		starts = new int[size];
+		ends = new int[size];
+		strokeLayers = new int[size];
+		strokePoints = new int[size];
+		strokes = new StrokeReference[size];
+		for (int i=0; i<size; i++) {
+			int[] stroke = found.get(i);
+			starts[i] = stroke[0];
+			ends[i] = stroke[1];
+			strokeLayers[i] = stroke[2];
+			strokePoints[i] = stroke[3];
+			List<Integer> indexes = layerIndex.get(stroke[2]);
+			if (null == indexes) {
+				indexes = new ArrayList<Integer>();
+				layerIndex.put(stroke[2], indexes);
+			}
+			indexes.add(i);
+		}
+		LOGGER.log(Level.FINEST, size+" strokes indexed");
+	}
+
+	/**
+	 * Checks the document can be scanned byte per byte and reads its declared encoding
+	 * @throws IOException
+	 */
+	private void checkEncoding() throws IOException {
+		int length = Math.min(buffer.limit(), 256);
+		byte[] head = new byte[length];
+		buffer.duplicate().get(head);
+		if (length >= 2 && (head[0] == 0 || head[1] == 0 || (head[0] & 0xFF) == 0xFE || (head[0] & 0xFF) == 0xFF)) {
+			throw new IOException("Lazy loading only supports ASCII compatible encodings");
+		}
+		Matcher matcher = ENCODING.matcher(new String(head, "ISO-8859-1"));
+		encoding = matcher.find() ? matcher.group(1) : "UTF-8";
+	}
+
+	/**
+	 * Finds stroke elements with at least one point.<br/>
+	 * Each stroke is stored as {start offset, end offset, layer, number of points}
+	 * @param found - List<int[]>
+	 */
+	private void scanStrokes(List<int[]> found) {
+		int limit = buffer.limit();
+		int i = 0;
+		int[] stroke = null;
+		while (i < limit) {
+			if (buffer.get(i) != '<') {
+				i++;
+				continue;
+			}
+			// Comments, CDATA, processing instructions, doctype
+			if (startsWith(i, "<!--")) {
+				i = indexOf(i + 4, "-->") + 3;
+			}
+			else if (startsWith(i, "<![CDATA[")) {
+				i = indexOf(i + 9, "]]>") + 3;
+			}
+			else if (startsWith(i, "<?")) {
+				i = indexOf(i + 2, "?>") + 2;
+			}
+			else if (startsWith(i, "<!")) {
+				i = indexOf(i + 2, ">") + 1;
+			}
+			else if (null == stroke && isTag(i + 1, "stroke")) {
+				int end = indexOf(i, ">");
+				if (end < limit && buffer.get(end - 1) != '/') {
+					stroke = new int[] { i, 0, readLayer(i, end), 0 };
+				}
+				i = end + 1;
+			}
+			else if (null != stroke && isTag(i + 1, "pt")) {
+				stroke[3]++;
+				i += 3;
+			}
+			else if (null != stroke && isTag(i + 2, "stroke") && buffer.get(i + 1) == '/') {
+				i = indexOf(i, ">") + 1;
+				stroke[1] = i;
+				// Empty strokes are dropped, as Gml.addStroke does
+				if (stroke[3] > 0) {
+					found.add(stroke);
+				}
+				stroke = null;
+			}
+			else {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the given tag name is found at the given offset, followed by a delimiter
+	 * @param offset - int
+	 * @param name - String
+	 * @return boolean
+	 */
+	private boolean isTag(int offset, String name) {
+		if (!startsWith(offset, name)) {
+			return false;
+		}
+		int next = offset + name.length();
+		if (next >= buffer.limit()) {
+			return false;
+		}
+		byte b = buffer.get(next);
+		return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	/**
+	 * Returns true if the given ASCII String is found at the given offset
+	 * @param offset - int
+	 * @param s - String
+	 * @return boolean
+	 */
+	private boolean startsWith(int offset, String s) {
+		if (offset + s.length() > buffer.limit()) {
+			return false;
+		}
+		for (int i=0; i<s.length(); i++) {
+			if (buffer.get(offset + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the offset of the given ASCII String, or the buffer's limit if not found
+	 * @param from - int
+	 * @param s - String
+	 * @return int
+	 */
+	private int indexOf(int from, String s) {
+		int limit = buffer.limit() - s.length();
+		for (int i=from; i<=limit; i++) {
+			if (startsWith(i, s)) {
+				return i;
+			}
+		}
+		return buffer.limit();
+	}
+
+	/**
+	 * Reads the layer attribute of the start tag located between the given offsets
+	 * @param start - int
+	 * @param end - int
+	 * @return int
+	 */
+	private int readLayer(int start, int end) {
+		byte[] tag = new byte[end - start];
+		for (int i=0; i<tag.length; i++) {
+			tag[i] = buffer.get(start + i);
+		}
+		Matcher matcher = LAYER.matcher(new String(tag));
+		if (matcher.find()) {
+			try {
+				return Integer.parseInt(matcher.group(1));
+			}
+			catch (NumberFormatException e) {
+				// Same as the parser
+			}
+		}
+		return Integer.MIN_VALUE;
+	}
+
+	/**
+	 * Returns the given stroke, decoding it if it isn't in memory anymore
+	 * @param index - int
+	 * @return GmlStroke
+	 */
+	private synchronized GmlStroke getStroke(int index) {
+		GmlStroke stroke = null == strokes[index] ? null : strokes[index].get();
+		if (null == stroke) {
+			ByteBuffer slice = buffer.duplicate();
+			slice.limit(ends[index]);
+			slice.position(starts[index]);
+			try {
+				stroke = GmlStaxParsingHelper.parseStroke(new ByteBufferInputStream(slice), encoding);
+			}
+			catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Couldn't decode stroke "+index+". Reason: "+e.getMessage());
+				stroke = new GmlStroke(strokeLayers[index]);
+			}
+			strokes[index] = new StrokeReference(stroke);
+		}
+		return stroke;
+	}
+
+	/**
+	 * Decodes all strokes and keeps them in memory, the Gml then behaves as a regular one
+	 */
+	public synchronized void materialize() {
+		if (materialized) {
+			return;
+		}
+		for (List<Integer> indexes : layerIndex.values()) {
+			for (int index : indexes) {
+				super.addStroke(getStroke(index));
+			}
+		}
+		materialized = true;
+		buffer = null;
+		strokes = null;
+		layerIndex.clear();
+		boundingBox = null;
+		layerBoundingBoxes.clear();
+	}
+
+	/**
+	 * Returns true if the strokes have all been decoded and are kept in memory
+	 * @return boolean
+	 */
+	public synchronized boolean isMaterialized() {
+		return materialized;
+	}
+
+	/**
+	 * Returns the number of strokes currently decoded
+	 * @return int
+	 */
+	public synchronized int decodedStrokes() {
+		if (materialized) {
+			return super.totalStrokes();
+		}
+		int decoded = 0;
+		for (int i=0; i<strokes.length; i++) {
+			if (null != strokes[i] && null != strokes[i].get()) {
+				decoded++;
+			}
+		}
+		return decoded;
+	}
+
+	@Override
+	public synchronized Collection<GmlStroke> getStrokes() {
+		if (materialized) {
+			return super.getStrokes();
+		}
+		Collection<GmlStroke> result = new ArrayList<GmlStroke>();
+		for (List<Integer> indexes : layerIndex.values()) {
+			for (int index : indexes) {
+				result.add(getStroke(index));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized Collection<GmlStroke> getStrokes(int layer) {
+		if (materialized) {
+			return super.getStrokes(layer);
+		}
+		Collection<GmlStroke> result = new ArrayList<GmlStroke>();
+		List<Integer> indexes = layerIndex.get(layer);
+		if (null != indexes) {
+			for (int index : indexes) {
+				result.add(getStroke(index));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized Collection<Integer> getLayerIds() {
+		if (materialized) {
+			return super.getLayerIds();
+		}
+		return new ArrayList<Integer>(layerIndex.keySet());
+	}
+
+	@Override
+	public synchronized int totalLayers() {
+		if (materialized) {
+			return super.totalLayers();
+		}
+		return layerIndex.size();
+	}
+
+	@Override
+	public synchronized int totalStrokes() {
+		if (materialized) {
+			return super.totalStrokes();
+		}
+		return starts.length;
+	}
+
+	@Override
+	public synchronized int totalStrokes(int layer) {
+		if (materialized) {
+			return super.totalStrokes(layer);
+		}
+		List<Integer> indexes = layerIndex.get(layer);
+		return null == indexes ? 0 : indexes.size();
+	}
+
+	@Override
+	public synchronized int totalPoints() {
+		if (materialized) {
+			return super.totalPoints();
+		}
+		int total = 0;
+		for (int i=0; i<strokePoints.length; i++) {
+			total += strokePoints[i];
+		}
+		return total;
+	}
+
+	@Override
+	public synchronized int totalPoints(int layer) {
+		if (materialized) {
+			return super.totalPoints(layer);
+		}
+		int total = 0;
+		List<Integer> indexes = layerIndex.get(layer);
+		if (null != indexes) {
+			for (int index : indexes) {
+				total += strokePoints[index];
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Decodes all strokes once to compute duration, start time and bounding box
+	 */
+	private void computeStatistics() {
+		if (statisticsComputed) {
+			return;
+		}
+		Collection<GmlStroke> all = getStrokes();
+		duration = getDuration(all);
+		startTime = getStartTime(all);
+		boundingBox = getBoundingBox(all);
+		statisticsComputed = true;
+	}
+
+	@Override
+	public synchronized float getDuration() {
+		if (materialized) {
+			return super.getDuration();
+		}
+		computeStatistics();
+		return duration;
+	}
+
+	@Override
+	public synchronized float getStartTime() {
+		if (materialized) {
+			return super.getStartTime();
+		}
+		computeStatistics();
+		return startTime;
+	}
+
+	@Override
+	public synchronized AABB getBoundingBox() {
+		if (materialized) {
+			return super.getBoundingBox();
+		}
+		computeStatistics();
+		return boundingBox.copy();
+	}
+
+	@Override
+	public synchronized AABB getBoundingBox(int layer) {
+		if (materialized) {
+			return super.getBoundingBox(layer);
+		}
+		AABB box = layerBoundingBoxes.get(layer);
+		if (null == box) {
+			box = getBoundingBox(getStrokes(layer));
+			layerBoundingBoxes.put(layer, box);
+		}
+		return box.copy();
+	}
+
+	@Override
+	public synchronized void addStroke(GmlStroke stroke) {
+		materialize();
+		super.addStroke(stroke);
+	}
+
+	@Override
+	public synchronized void removeStrokes(int layer) {
+		materialize();
+		super.removeStrokes(layer);
+	}
+
+	@Override
+	public synchronized void removeStrokes() {
+		materialize();
+		super.removeStrokes();
+	}
+
+	@Override
+	public synchronized void removeLastStroke(int layer) {
+		materialize();
+		super.removeLastStroke(layer);
+	}
+
+	@Override
+	public Gml copy() {
+		Gml newGml = emptyCopy();
+		newGml.addStrokes(getStrokes());
+		return newGml;
+	}
+
+	@Override
+	public Gml deepCopy() {
+		Gml newGml = new Gml();
+		newGml.client = this.client.copy();
+		newGml.environment = this.environment.copy();
+		for (GmlStroke stroke : getStrokes()) {
+			newGml.addStroke(stroke.copy());
+		}
+		return newGml;
+	}
+
+	/**
+	 * Returns true if the buffer starts with the GZIP magic bytes
+	 * @param buffer - ByteBuffer
+	 * @return boolean
+	 */
+	private static boolean isCompressed(ByteBuffer buffer) {
+		return buffer.limit() >= 2 && (buffer.get(0) & 0xFF) == 0x1f && (buffer.get(1) & 0xFF) == 0x8b;
+	}
+
+	/**
+	 * Reads the whole stream and closes it
+	 * @param in - InputStream
+	 * @return byte[]
+	 * @throws IOException
+	 */
+	private static byte[] readFully(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8192];
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				out.write(chunk, 0, read);
+			}
+			return out.toByteArray();
+		}
+		finally {
+			FileUtils.close(in);
+		}
+	}
+}
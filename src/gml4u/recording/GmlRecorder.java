@@ -3,11 +3,14 @@ package gml4u.recording;
 import gml4u.model.Gml;
 import gml4u.model.GmlBrush;
 import gml4u.model.GmlClient;
+import gml4u.model.GmlCompactStroke;
 import gml4u.model.GmlConstants;
 import gml4u.model.GmlPoint;
 import gml4u.model.GmlStroke;
+import gml4u.utils.GmlJournal;
 import gml4u.utils.Vec3DUtils;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentHashMap;
@@ -30,6 +33,8 @@ public class GmlRecorder {
 	private AABB boundingBox = AABB.fromMinMax(new Vec3D(0, 0, 0),new Vec3D(1, 1, 1));
 	private ConcurrentHashMap<Integer, GmlStroke> strokes = new ConcurrentHashMap<Integer, GmlStroke>();
 	private Vec3D normalizer;
+	private GmlJournal journal;
+	private boolean compactStrokes;
 	
 	/**
 	 * Creates a new GmlRecorder using the given screen size, minimum stroke length and minimum points distance
@@ -77,8 +82,47 @@ public class GmlRecorder {
 	 */
 	public void setClient(GmlClient client) {
 		gml.client = client;
+		journalHeader();
+	}
+
+	/**
+	 * Sets the journal finished strokes are appended to, null to stop journaling<br/>
+	 * The client and environment are written first if the journal doesn't hold them yet.<br/>
+	 * Use GmlJournal.replay before setting the journal to restore a previous session.
+	 * @param journal - GmlJournal
+	 */
+	public void setJournal(GmlJournal journal) {
+		this.journal = journal;
+		if (null != journal && !journal.hasHeader()) {
+			journalHeader();
+		}
+	}
+
+	/**
+	 * Returns the journal, null if none
+	 * @return GmlJournal
+	 */
+	public GmlJournal getJournal() {
+		return journal;
 	}
 	
+	/**
+	 * Sets whether new strokes store their points as columns of floats (see GmlCompactStroke),
+	 * which takes a lot less memory for long recordings
+	 * @param compactStrokes - boolean
+	 */
+	public void setCompactStrokes(boolean compactStrokes) {
+		this.compactStrokes = compactStrokes;
+	}
+
+	/**
+	 * Returns true if new strokes store their points as columns of floats
+	 * @return boolean
+	 */
+	public boolean isCompactStrokes() {
+		return compactStrokes;
+	}
+
 	// TODO setEnvironment(GmlEnvironment environment) Useful ?
 	// Also resets the screen and normalizer values
 	
@@ -121,6 +165,14 @@ public class GmlRecorder {
 	public void clear() {		
 		gml.removeStrokes();
 		strokes.clear();
+		if (null != journal) {
+			try {
+				journal.writeClear();
+			}
+			catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Couldn't write to journal. Reason: "+e.getMessage());
+			}
+		}
 	}
 	
 	/**
@@ -161,7 +213,7 @@ public class GmlRecorder {
 	public void beginStroke(int sessionID, int layer, final GmlBrush brush) {
 		
 		LOGGER.log(Level.FINEST, "Start recording");
-		GmlStroke stroke = new GmlStroke();
+		GmlStroke stroke = compactStrokes ? new GmlCompactStroke() : new GmlStroke();
 		stroke.setLayer(layer);
 		stroke.setBrush(brush);	
 		strokes.put(sessionID, stroke);
@@ -234,9 +286,8 @@ public class GmlRecorder {
 			if (null != strokes.get(sessionID)) {
 				
 				// Check minimum distance from last point
-				if (null != strokes.get(sessionID).getLastPoint()) {
-					GmlPoint prev = new GmlPoint();
-					prev.set(strokes.get(sessionID).getLastPoint());
+				GmlPoint prev = strokes.get(sessionID).getLastPoint();
+				if (null != prev) {
 					if (prev.distanceTo(v) > minPointsDistance) {
 						strokes.get(sessionID).addPoint(new GmlPoint(v, time, pressure, rotation, direction, thickness));
 					}
@@ -260,7 +311,7 @@ public class GmlRecorder {
 		GmlStroke stroke = strokes.get(sessionID);
 		// Add the stroke only if significant (at least a certain length)
 		if (null != stroke && stroke.getLength() > minStrokeLength) {
-			gml.addStroke(stroke);
+			addStroke(stroke);
 		}
 		strokes.remove(sessionID);
 	}
@@ -274,18 +325,38 @@ public class GmlRecorder {
 			GmlStroke stroke = strokes.get(sessionID);
 			// Add the stroke only if significant (at least a certain length)
 			if (null != stroke && stroke.getLength() > minStrokeLength) {
-				gml.addStroke(stroke);
+				addStroke(stroke);
 			}			
 		}
 		strokes.clear();
 	}
 
+	/**
+	 * Adds a finished stroke to the Gml and the journal
+	 * @param stroke - GmlStroke
+	 */
+	private void addStroke(GmlStroke stroke) {
+		if (stroke instanceof GmlCompactStroke) {
+			((GmlCompactStroke) stroke).trimToSize();
+		}
+		gml.addStroke(stroke);
+		journalStroke(stroke);
+	}
+
 	/**
 	 * Removes the last GmlStroke from the given layer
 	 * @param layer
 	 */
 	public void removeLastStroke(final int layer) {
 		gml.removeLastStroke(layer);
+		if (null != journal) {
+			try {
+				journal.writeRemoveLastStroke(layer);
+			}
+			catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Couldn't write to journal. Reason: "+e.getMessage());
+			}
+		}
 	}
 	
 	/**
@@ -307,7 +378,7 @@ public class GmlRecorder {
 	 */
 	public Gml getGml() {
 		Gml gmlCopy = gml.copy();
-		gml.addStrokes(strokes.values());
+		gmlCopy.addStrokes(strokes.values());
 		return gmlCopy;
 	}
 
@@ -319,5 +390,46 @@ public class GmlRecorder {
 		this.gml = gml;
 		// TODO test screen or screenbounds consistency
 		initGml(gml.environment.screenBounds);
+		if (null != journal) {
+			try {
+				journal.writeClear();
+				journal.writeHeader(gml.client, gml.environment);
+				for (GmlStroke stroke : gml.getStrokes()) {
+					journal.writeStroke(stroke);
+				}
+			}
+			catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Couldn't write to journal. Reason: "+e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Appends the client and environment to the journal, if any
+	 */
+	private void journalHeader() {
+		if (null != journal) {
+			try {
+				journal.writeHeader(gml.client, gml.environment);
+			}
+			catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Couldn't write to journal. Reason: "+e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Appends a finished stroke to the journal, if any
+	 * @param stroke - GmlStroke
+	 */
+	private void journalStroke(GmlStroke stroke) {
+		if (null != journal) {
+			try {
+				journal.writeStroke(stroke);
+			}
+			catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Couldn't write to journal. Reason: "+e.getMessage());
+			}
+		}
 	}
 }
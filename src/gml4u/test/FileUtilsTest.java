@@ -0,0 +1,141 @@
+package gml4u.test;
+
+import gml4u.model.Gml;
+import gml4u.utils.ByteBufferInputStream;
+import gml4u.utils.FileUtils;
+import gml4u.utils.GmlParsingHelper;
+import gml4u.utils.GmlSavingHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class FileUtilsTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.FileUtilsTest");
+
+	private static final String GML =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+		"<gml spec=\"1.0\"><tag><header><client><name>Test</name></client></header><drawing>" +
+		"<stroke><pt><x>0.1</x><y>0.2</y><t>0.5</t></pt><pt><x>0.3</x><y>0.4</y><t>0.6</t></pt></stroke>" +
+		"</drawing></tag></gml>";
+
+	private File file;
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("gml4u-file", ".gml");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(GML.getBytes("UTF-8"));
+		out.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testMappedFile() throws IOException {
+		long threshold = FileUtils.getMmapThreshold();
+		try {
+			FileUtils.setMmapThreshold(0);
+			InputStream in = FileUtils.openInputStream(file.getPath());
+			assertTrue("mapped", in instanceof ByteBufferInputStream);
+			assertEquals("available", file.length(), in.available());
+			in.close();
+			assertEquals("released", -1, in.read());
+
+			Gml mapped = GmlParsingHelper.getGml(file.getPath(), false);
+			FileUtils.setMmapThreshold(-1);
+			Gml streamed = GmlParsingHelper.getGml(file.getPath(), false);
+			assertEquals("points", streamed.totalPoints(), mapped.totalPoints());
+			assertEquals("points", streamed.getStrokes().iterator().next().getPoints().toString(), mapped.getStrokes().iterator().next().getPoints().toString());
+		}
+		finally {
+			FileUtils.setMmapThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void testNotMapped() throws IOException {
+		long threshold = FileUtils.getMmapThreshold();
+		try {
+			FileUtils.setMmapThreshold(-1);
+			InputStream in = FileUtils.openInputStream(file.getPath());
+			assertFalse("not mapped", in instanceof ByteBufferInputStream);
+			in.close();
+
+			FileUtils.setMmapThreshold(file.length() + 1);
+			in = FileUtils.openInputStream(file.getPath());
+			assertFalse("below threshold", in instanceof ByteBufferInputStream);
+			in.close();
+		}
+		finally {
+			FileUtils.setMmapThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void testCompressedRoundTrip() throws IOException {
+		Gml gml = GmlParsingHelper.getGml(file.getPath(), false);
+		File compressed = new File(file.getPath()+FileUtils.GZIP_EXTENSION);
+		try {
+			assertTrue("saved", GmlSavingHelper.save(gml, compressed.getPath()));
+
+			// Written with the GZIP magic bytes
+			FileInputStream in = new FileInputStream(compressed);
+			assertEquals("magic", 0x1f, in.read());
+			assertEquals("magic", 0x8b, in.read());
+			in.close();
+
+			Gml parsed = GmlParsingHelper.getGml(compressed.getPath(), false);
+			assertEquals("points", gml.totalPoints(), parsed.totalPoints());
+			assertEquals("points", gml.getStrokes().iterator().next().getPoints().toString(), parsed.getStrokes().iterator().next().getPoints().toString());
+		}
+		finally {
+			compressed.delete();
+		}
+	}
+
+	@Test
+	public void testReplace() throws IOException {
+		File temp = File.createTempFile("gml4u-replace", ".tmp", file.getParentFile());
+		try {
+			FileOutputStream out = new FileOutputStream(temp);
+			out.write(1);
+			out.close();
+			FileUtils.replace(temp, file);
+			assertFalse("renamed", temp.exists());
+			assertEquals("replaced", 1, file.length());
+
+			// Nothing to put in place: the previous file is moved back
+			try {
+				FileUtils.replace(temp, file);
+				fail("missing file replaced");
+			}
+			catch (IOException e) {
+				LOGGER.log(Level.FINEST, e.getMessage());
+			}
+			assertEquals("restored", 1, file.length());
+			assertFalse("no backup", new File(temp.getPath()+".bak").exists());
+		}
+		finally {
+			temp.delete();
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package gml4u.test;
+
+import gml4u.utils.FloatUtils;
+import gml4u.utils.GmlParsingHelper;
+
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compares FloatUtils.parseFloat with the previous String + Float.parseFloat path,
+ * FloatUtils.formatFloat with Float.toString, then the JDom and StAX parsers on the given Gml files.<br/>
+ * Not part of the test suite, run it with: java gml4u.test.FloatUtilsBenchmark [file.gml ...]
+ */
+public class FloatUtilsBenchmark {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.FloatUtilsBenchmark");
+
+	private static final int VALUES = 100000;
+	private static final int ROUNDS = 20;
+
+	public static void main(String[] args) {
+		LOGGER.setLevel(Level.INFO);
+
+		// Point coordinates as written by Gml applications
+		Random random = new Random(0);
+		StringBuilder builder = new StringBuilder();
+		int[] offsets = new int[VALUES];
+		int[] lengths = new int[VALUES];
+		for (int i=0; i<VALUES; i++) {
+			String value = Float.toString(random.nextFloat());
+			offsets[i] = builder.length();
+			lengths[i] = value.length();
+			builder.append(value);
+		}
+		char[] chars = builder.toString().toCharArray();
+
+		float sum = 0;
+		for (int round=0; round<ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i=0; i<VALUES; i++) {
+				sum += Float.parseFloat(new String(chars, offsets[i], lengths[i]));
+			}
+			long jdk = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i=0; i<VALUES; i++) {
+				sum += FloatUtils.parseFloat(chars, offsets[i], lengths[i]);
+			}
+			long fast = System.nanoTime() - start;
+
+			LOGGER.log(Level.INFO, "Round "+round+": Float.parseFloat "+(jdk/VALUES)+"ns/value, FloatUtils.parseFloat "+(fast/VALUES)+"ns/value");
+		}
+
+		float[] floats = new float[VALUES];
+		for (int i=0; i<VALUES; i++) {
+			floats[i] = random.nextFloat();
+		}
+		char[] buffer = new char[FloatUtils.FORMAT_LENGTH];
+		long length = 0;
+		for (int round=0; round<ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i=0; i<VALUES; i++) {
+				length += (""+floats[i]).length();
+			}
+			long jdk = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i=0; i<VALUES; i++) {
+				length += FloatUtils.formatFloat(floats[i], 4, buffer, 0);
+			}
+			long fast = System.nanoTime() - start;
+
+			LOGGER.log(Level.INFO, "Round "+round+": Float.toString "+(jdk/VALUES)+"ns/value, FloatUtils.formatFloat (4 decimals) "+(fast/VALUES)+"ns/value");
+		}
+
+		for (int i=0; i<args.length; i++) {
+			for (int round=0; round<ROUNDS; round++) {
+				long start = System.nanoTime();
+				GmlParsingHelper.getGml(args[i], false, GmlParsingHelper.PARSER_JDOM);
+				long jdom = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				GmlParsingHelper.getGml(args[i], false, GmlParsingHelper.PARSER_STAX);
+				long stax = System.nanoTime() - start;
+
+				LOGGER.log(Level.INFO, args[i]+" round "+round+": JDom "+(jdom/1000)+"us, StAX "+(stax/1000)+"us");
+			}
+		}
+
+		// Keeps the JIT from removing the loops
+		LOGGER.log(Level.FINEST, "Checksum "+sum+" "+length);
+	}
+}
@@ -0,0 +1,139 @@
+package gml4u.test;
+
+import gml4u.utils.FloatUtils;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class FloatUtilsTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.FloatUtilsTest");
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	/*
+	 * Parses the string with both parsers and checks both results (or exceptions) are the same
+	 */
+	private void assertSameAsJdk(String value) {
+		char[] chars = ("#"+value+"#").toCharArray();
+		float expected;
+		try {
+			expected = Float.parseFloat(value);
+		}
+		catch (NumberFormatException e) {
+			try {
+				FloatUtils.parseFloat(chars, 1, value.length());
+				fail("NumberFormatException expected for \""+value+"\"");
+			}
+			catch (NumberFormatException ex) {
+				// Expected
+			}
+			return;
+		}
+		float actual = FloatUtils.parseFloat(chars, 1, value.length());
+		assertEquals("\""+value+"\"", Float.floatToRawIntBits(expected), Float.floatToRawIntBits(actual));
+	}
+
+	@Test
+	public void testSpecialValues() {
+		String[] values = {
+			"0", "-0", "+0", "0.0", "-0.0", ".5", "5.", "-.5e1", "1e0", "1E+2", "1e-2", " 0.25 ", "\t1\n",
+			"000123.4500", "0.000000000000000000000000000001", "1e22", "1e23", "1e-22", "1e-23",
+			"3.4028235e38", "3.4028236e38", "1e39", "1.4e-45", "1e-46", "1.17549435E-38",
+			"16777216", "16777217", "16777218", "16777219", "33554435", "0.1", "0.2", "0.3",
+			"9007199254740991", "9007199254740993", "123456789012345678901234567890",
+			"NaN", "-Infinity", "Infinity", "0x1p3", "1f", "2.5d", "1e", "1e+", ".", "-", "", " ", "1.2.3", "1e5x", "abc"
+		};
+		for (int i=0; i<values.length; i++) {
+			assertSameAsJdk(values[i]);
+		}
+	}
+
+	@Test
+	public void testRandomDecimals() {
+		Random random = new Random(42);
+		for (int i=0; i<200000; i++) {
+			// Random digits with a random decimal point and exponent
+			int digits = 1 + random.nextInt(18);
+			StringBuilder builder = new StringBuilder();
+			if (random.nextBoolean()) {
+				builder.append('-');
+			}
+			int point = random.nextInt(digits + 1);
+			for (int j=0; j<digits; j++) {
+				if (j == point) {
+					builder.append('.');
+				}
+				builder.append((char) ('0' + random.nextInt(10)));
+			}
+			if (random.nextInt(4) == 0) {
+				builder.append('e').append(random.nextInt(60) - 30);
+			}
+			assertSameAsJdk(builder.toString());
+		}
+	}
+
+	@Test
+	public void testRandomFloats() {
+		Random random = new Random(7);
+		for (int i=0; i<200000; i++) {
+			float f = random.nextFloat();
+			assertSameAsJdk(Float.toString(f));
+			assertSameAsJdk(Double.toString(f));
+			// Midpoints between two consecutive floats
+			assertSameAsJdk(new BigDecimal((double) f).add(new BigDecimal((double) Math.ulp(f) / 2)).toPlainString());
+		}
+	}
+
+	/*
+	 * Formats the value and returns it as a String
+	 */
+	private String format(float value, int decimals) {
+		char[] chars = new char[FloatUtils.FORMAT_LENGTH + 1];
+		chars[0] = '#';
+		return new String(chars, 1, FloatUtils.formatFloat(value, decimals, chars, 1));
+	}
+
+	@Test
+	public void testFormatFloat() {
+		assertEquals("0.5", format(0.5f, 3));
+		assertEquals("1", format(1f, 3));
+		assertEquals("0", format(0f, 3));
+		assertEquals("0", format(-0.0004f, 3));
+		assertEquals("-0.001", format(-0.0006f, 3));
+		assertEquals("0.05", format(0.05f, 2));
+		assertEquals("12.3457", format(12.345678f, 4));
+		assertEquals("-800", format(-800f, 0));
+		assertEquals("0.000001", format(0.000001f, 9));
+		assertEquals(Float.toString(0.1f), format(0.1f, FloatUtils.FULL_PRECISION));
+		assertEquals("NaN", format(Float.NaN, 3));
+		assertEquals("-Infinity", format(Float.NEGATIVE_INFINITY, 3));
+		assertEquals(Float.toString(3e20f), format(3e20f, 3));
+	}
+
+	@Test
+	public void testFormatRoundTrip() {
+		Random random = new Random(3);
+		char[] chars = new char[FloatUtils.FORMAT_LENGTH];
+		for (int decimals=0; decimals<=6; decimals++) {
+			double tolerance = 0.5 / Math.pow(10, decimals);
+			for (int i=0; i<50000; i++) {
+				float value = random.nextInt(4) == 0 ? (random.nextFloat() - 0.5f) * 2000 : random.nextFloat();
+				int length = FloatUtils.formatFloat(value, decimals, chars, 0);
+				float parsed = FloatUtils.parseFloat(chars, 0, length);
+				assertTrue(value+" with "+decimals+" decimals: "+parsed,
+						Math.abs(parsed - value) <= tolerance + Math.ulp(value));
+			}
+		}
+	}
+}
@@ -13,6 +13,22 @@ public class Gml4uTestSuite  extends TestCase {
 		TestSuite suite = new TestSuite(); 
 		// Grab everything: 
 		suite.addTestSuite(GmlUtilsTest.class);
+		suite.addTestSuite(GmlParsingHelperTest.class);
+		suite.addTestSuite(GmlStrokeReaderTest.class);
+		suite.addTestSuite(GmlParserTest.class);
+		suite.addTestSuite(FileUtilsTest.class);
+		suite.addTestSuite(FloatUtilsTest.class);
+		suite.addTestSuite(GmlCacheTest.class);
+		suite.addTestSuite(GmlFollowerTest.class);
+		suite.addTestSuite(GmlWriterTest.class);
+		suite.addTestSuite(GmlBinaryTest.class);
+		suite.addTestSuite(GmlSaverTest.class);
+		suite.addTestSuite(GmlJournalTest.class);
+		suite.addTestSuite(GmlArchiveTest.class);
+		suite.addTestSuite(GmlJsonTest.class);
+		suite.addTestSuite(GmlCompactStrokeTest.class);
+		suite.addTestSuite(GmlStrokeTest.class);
+		suite.addTestSuite(GmlTest.class);
 		suite.addTestSuite(Vec2DUtilsTest.class);
 		suite.addTestSuite(Vec3DUtilsTest.class);
 
@@ -0,0 +1,132 @@
+package gml4u.test;
+
+import gml4u.events.GmlEvent;
+import gml4u.events.GmlMultiParsingEvent;
+import gml4u.model.Gml;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlStroke;
+import gml4u.utils.GmlArchive;
+import gml4u.utils.GmlArchiveEntry;
+import gml4u.utils.GmlParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import toxi.geom.Vec3D;
+
+public class GmlArchiveTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlArchiveTest");
+
+	/*
+	 * Keeps the result of a parseArchive call
+	 */
+	public static class Listener {
+		public volatile GmlMultiParsingEvent event;
+
+		public void gmlEvent(GmlEvent event) {
+			if (event instanceof GmlMultiParsingEvent) {
+				this.event = (GmlMultiParsingEvent) event;
+			}
+		}
+	}
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	/*
+	 * Creates a Gml with the given number of strokes of 10 points
+	 */
+	private Gml createGml(int strokes) {
+		Gml gml = new Gml(new Vec3D(640, 480, 0));
+		gml.client.set("name", "Archiver");
+		for (int s=0; s<strokes; s++) {
+			GmlStroke stroke = new GmlStroke();
+			for (int i=0; i<10; i++) {
+				GmlPoint point = new GmlPoint();
+				point.set(i / 10f, s / (float) strokes, 0);
+				point.time = s + i / 10f;
+				stroke.addPoint(point);
+			}
+			gml.addStroke(stroke);
+		}
+		return gml;
+	}
+
+	@Test
+	public void testArchive() throws IOException {
+		File folder = new File(System.getProperty("java.io.tmpdir"), "gml4u-archive-"+System.nanoTime());
+		String location = new File(folder, "tags.gmla").getPath();
+
+		GmlArchive archive = new GmlArchive(location);
+		for (int i=1; i<=20; i++) {
+			archive.setEncoding(i % 2 == 0 ? GmlArchive.XML : GmlArchive.BINARY);
+			archive.append("tag"+i, createGml(i));
+		}
+		archive.append("tag1", createGml(3));
+		assertTrue("removed", archive.remove("tag2"));
+		archive.close();
+
+		archive = new GmlArchive(location, true);
+		assertEquals("entries", 19, archive.size());
+		assertFalse("tag2", archive.contains("tag2"));
+		GmlArchiveEntry entry = archive.getEntry("tag1");
+		assertEquals("client", "Archiver", entry.clientName);
+		assertEquals("strokes", 3, entry.totalStrokes);
+		assertEquals("points", 30, entry.totalPoints);
+		assertEquals("duration", 2.9f, entry.duration, 1e-5);
+		assertEquals("max x", 0.9f, entry.max.x, 1e-6);
+		assertEquals("xml", GmlArchive.XML, archive.getEntry("tag4").encoding);
+
+		Gml gml = archive.getGml("tag7", false);
+		assertEquals("strokes", 7, gml.totalStrokes());
+		assertEquals("points", 70, gml.totalPoints());
+		assertEquals("xml points", 40, archive.getGml("tag4", false).totalPoints());
+		assertTrue("wasted", archive.getWastedBytes() > 0);
+		archive.close();
+
+		// Compaction gives back the room of the replaced and removed entries
+		archive = new GmlArchive(location);
+		long size = new File(location).length();
+		long wasted = archive.getWastedBytes();
+		assertEquals("compacted", wasted, archive.compact());
+		assertEquals("no waste", 0, archive.getWastedBytes());
+		assertEquals("size", size - wasted, new File(location).length());
+		assertEquals("points", 190, archive.getGml("tag19", false).totalPoints());
+		archive.close();
+
+		// Lost index
+		RandomAccessFile file = new RandomAccessFile(location, "rw");
+		file.setLength(file.length() - 1);
+		file.close();
+		archive = new GmlArchive(location);
+		assertEquals("rebuilt", 19, archive.size());
+		assertEquals("points", 30, archive.getGml("tag1", false).totalPoints());
+		archive.close();
+
+		// Parse the whole archive
+		Listener listener = new Listener();
+		GmlParser parser = new GmlParser("archive", listener, 2);
+		parser.parseArchive(location, false);
+		long start = System.currentTimeMillis();
+		while (null == listener.event && System.currentTimeMillis() - start < 10000) {
+			Thread.yield();
+		}
+		parser.quit();
+		assertNotNull("parsed", listener.event);
+		assertEquals("parsed", 19, listener.event.gmlList.size());
+
+		new File(location).delete();
+		folder.delete();
+	}
+}
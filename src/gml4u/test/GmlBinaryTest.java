@@ -0,0 +1,140 @@
+package gml4u.test;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlInfo;
+import gml4u.model.GmlLocation;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlStroke;
+import gml4u.utils.GmlBinaryReader;
+import gml4u.utils.GmlBinaryWriter;
+import gml4u.utils.GmlWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import toxi.geom.Vec3D;
+
+public class GmlBinaryTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlBinaryTest");
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	/*
+	 * Creates a normalized Gml with random points
+	 */
+	private Gml createGml() {
+		Random random = new Random(1);
+		Gml gml = new Gml(new Vec3D(1024, 768, 100));
+		gml.client.set("name", "Test");
+		gml.client.set("location", new GmlLocation(48, 2, 35));
+		gml.environment.realScaleUnit = "cm";
+		for (int s=0; s<10; s++) {
+			GmlStroke stroke = new GmlStroke(s - 5);
+			stroke.setIsDrawing(s != 3);
+			stroke.getBrush().set("width", 2.5f);
+			stroke.getBrush().set("color", 0xFF00FF);
+			if (s == 0) {
+				stroke.setInfo(new GmlInfo());
+				stroke.getInfo().set("comment", "\u00e9t\u00e9");
+			}
+			for (int i=0; i<100; i++) {
+				GmlPoint point = new GmlPoint();
+				point.set(random.nextFloat(), random.nextFloat(), s == 2 ? random.nextFloat() : 0);
+				point.time = s + i / 100f;
+				point.rotation = new Vec3D(random.nextFloat(), 0, 1);
+				// NaN can't be quantized, the stroke falls back to raw floats
+				point.preasure = s == 9 && i == 0 ? Float.NaN : random.nextFloat();
+				stroke.addPoint(point);
+			}
+			gml.addStroke(stroke);
+		}
+		return gml;
+	}
+
+	/*
+	 * Writes the Gml with the given precision, reads it back and checks every value is within tolerance
+	 * Returns the binary size
+	 */
+	private int assertRoundTrip(Gml gml, int precision, double tolerance) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GmlBinaryWriter.write(gml, out, precision);
+		Gml read = GmlBinaryReader.readGml(new ByteArrayInputStream(out.toByteArray()));
+
+		assertEquals("client", "Test", read.client.getString("name"));
+		assertEquals("location", 35, ((GmlLocation) read.client.get("location")).getAlt());
+		assertEquals("unit", "cm", read.environment.realScaleUnit);
+		assertEquals("screenBounds", gml.environment.screenBounds, read.environment.screenBounds);
+		assertEquals("strokes", gml.totalStrokes(), read.totalStrokes());
+		Iterator<GmlStroke> strokes = read.getStrokes().iterator();
+		for (GmlStroke stroke : gml.getStrokes()) {
+			GmlStroke actual = strokes.next();
+			assertEquals("layer", stroke.getLayer(), actual.getLayer());
+			assertEquals("drawing", stroke.getIsDrawing(), actual.getIsDrawing());
+			assertEquals("brush", stroke.getBrush().getFloat("width"), actual.getBrush().getFloat("width"));
+			assertEquals("color", stroke.getBrush().getColor("color"), actual.getBrush().getColor("color"));
+			assertEquals("info", null == stroke.getInfo(), null == actual.getInfo());
+			if (null != stroke.getInfo()) {
+				assertEquals("comment", stroke.getInfo().getString("comment"), actual.getInfo().getString("comment"));
+			}
+			List<GmlPoint> expectedPoints = stroke.getPoints();
+			List<GmlPoint> points = actual.getPoints();
+			assertEquals("points", expectedPoints.size(), points.size());
+			for (int i=0; i<points.size(); i++) {
+				GmlPoint expected = expectedPoints.get(i);
+				GmlPoint point = points.get(i);
+				assertEquals("x", expected.x, point.x, tolerance);
+				assertEquals("y", expected.y, point.y, tolerance);
+				assertEquals("z", expected.z, point.z, tolerance);
+				assertEquals("t", expected.time, point.time, tolerance);
+				assertEquals("rot", expected.rotation.x, point.rotation.x, tolerance);
+				assertEquals("pres", expected.preasure, point.preasure, tolerance);
+				assertEquals("thickness", expected.thickness, point.thickness, tolerance);
+			}
+		}
+		return out.size();
+	}
+
+	@Test
+	public void testLossless() throws IOException {
+		assertRoundTrip(createGml(), GmlBinaryWriter.LOSSLESS, 0);
+	}
+
+	@Test
+	public void testQuantized() throws IOException {
+		Gml gml = createGml();
+		int lossless = assertRoundTrip(gml, GmlBinaryWriter.LOSSLESS, 0);
+		int quantized = assertRoundTrip(gml, 4, 0.5e-4 + 1e-6);
+
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		GmlWriter.write(gml, xml, 4);
+		LOGGER.log(Level.FINEST, "Xml "+xml.size()+" bytes, lossless "+lossless+" bytes, 4 decimals "+quantized+" bytes");
+		assertTrue("smaller than xml", lossless < xml.size() / 2);
+		assertTrue("smaller than lossless", quantized < lossless);
+	}
+
+	@Test
+	public void testBadMagic() {
+		try {
+			new GmlBinaryReader(new ByteArrayInputStream("<gml></gml>".getBytes()));
+			fail("not a binary file");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+}
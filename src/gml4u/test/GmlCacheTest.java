@@ -0,0 +1,89 @@
+package gml4u.test;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlStroke;
+import gml4u.utils.GmlCache;
+import gml4u.utils.GmlParsingHelper;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class GmlCacheTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlCacheTest");
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	/*
+	 * Creates a single stroke Gml document whose first point x is the given value
+	 */
+	private String createGml(float x) {
+		return "<gml spec=\"1.0\"><tag><header><client><name>Test</name></client>" +
+			"<environment><screenBounds><x>640</x><y>480</y><z>0</z></screenBounds></environment></header><drawing><stroke>" +
+			"<pt><x>"+x+"</x><y>0.2</y><t>0</t></pt><pt><x>0.5</x><y>0.6</y><t>1</t></pt>" +
+			"</stroke></drawing></tag></gml>";
+	}
+
+	@Test
+	public void testHitsAndCopies() {
+		GmlCache cache = new GmlCache(10, GmlCache.DEFAULT_MAX_BYTES);
+		String input = createGml(0.1f);
+
+		Gml first = cache.getGmlFromString(input, false, GmlParsingHelper.PARSER_STAX);
+		Gml second = cache.getGmlFromString(input, false, GmlParsingHelper.PARSER_STAX);
+		cache.getGmlFromString(input, true, GmlParsingHelper.PARSER_STAX);
+
+		assertEquals("misses", 2, cache.getMisses());
+		assertEquals("hits", 1, cache.getHits());
+		assertEquals("size", 2, cache.size());
+		assertNotSame("copy", first, second);
+
+		// Modifying a returned Gml doesn't affect the cache
+		GmlStroke stroke = first.getStrokes().iterator().next();
+		GmlPoint point = stroke.getPoints().get(0);
+		assertEquals("x", 0.1f, point.x);
+		point.x = 0.9f;
+		first.client.set("name", "changed");
+
+		Gml third = cache.getGmlFromString(input, false, GmlParsingHelper.PARSER_STAX);
+		assertEquals("cached x", 0.1f, third.getStrokes().iterator().next().getPoints().get(0).x);
+		assertFalse("cached client", "changed".equals(third.client.getString("name")));
+	}
+
+	@Test
+	public void testEviction() {
+		GmlCache cache = new GmlCache(2, GmlCache.DEFAULT_MAX_BYTES);
+		String a = createGml(0.1f);
+		String b = createGml(0.2f);
+		String c = createGml(0.3f);
+
+		cache.getGmlFromString(a, false, GmlParsingHelper.PARSER_STAX);
+		cache.getGmlFromString(b, false, GmlParsingHelper.PARSER_STAX);
+		// a becomes the most recently used one
+		cache.getGmlFromString(a, false, GmlParsingHelper.PARSER_STAX);
+		cache.getGmlFromString(c, false, GmlParsingHelper.PARSER_STAX);
+
+		assertEquals("evictions", 1, cache.getEvictions());
+		assertEquals("size", 2, cache.size());
+
+		long misses = cache.getMisses();
+		cache.getGmlFromString(a, false, GmlParsingHelper.PARSER_STAX);
+		assertEquals("a still cached", misses, cache.getMisses());
+		cache.getGmlFromString(b, false, GmlParsingHelper.PARSER_STAX);
+		assertEquals("b evicted", misses + 1, cache.getMisses());
+
+		// Bounded by memory as well
+		GmlCache small = new GmlCache(10, 1);
+		small.getGmlFromString(a, false, GmlParsingHelper.PARSER_STAX);
+		assertEquals("too big", 0, small.size());
+	}
+}
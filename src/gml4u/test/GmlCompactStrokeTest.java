@@ -0,0 +1,95 @@
+package gml4u.test;
+
+import gml4u.model.GmlCompactStroke;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlStroke;
+
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import toxi.geom.Vec3D;
+
+public class GmlCompactStrokeTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlCompactStrokeTest");
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	/*
+	 * Creates a stroke with random points, rotation is only set on some of them
+	 */
+	private GmlStroke createStroke() {
+		Random random = new Random(1);
+		GmlStroke stroke = new GmlStroke(2);
+		for (int i=0; i<100; i++) {
+			GmlPoint point = new GmlPoint(random.nextFloat(), random.nextFloat(), random.nextFloat(), i / 10f);
+			point.preasure = random.nextFloat();
+			point.thickness = random.nextFloat();
+			if (i > 50) {
+				point.rotation = new Vec3D(random.nextFloat(), 0, 1);
+			}
+			stroke.addPoint(point);
+		}
+		return stroke;
+	}
+
+	@Test
+	public void testSameAsStroke() {
+		GmlStroke stroke = createStroke();
+		GmlCompactStroke compact = new GmlCompactStroke(stroke);
+
+		assertEquals("layer", stroke.getLayer(), compact.getLayer());
+		assertEquals("points", stroke.nbPoints(), compact.nbPoints());
+		assertEquals("length", stroke.getLength(), compact.getLength());
+		assertEquals("duration", stroke.getDuration(), compact.getDuration());
+		assertEquals("bounding box", stroke.getBoundingBox().getMin(), compact.getBoundingBox().getMin());
+		assertEquals("bounding box", stroke.getBoundingBox().getMax(), compact.getBoundingBox().getMax());
+
+		List<GmlPoint> points = stroke.getPoints();
+		List<GmlPoint> compactPoints = compact.getPoints();
+		GmlPoint reused = new GmlPoint();
+		for (int i=0; i<points.size(); i++) {
+			GmlPoint expected = points.get(i);
+			assertEquals("point", expected.toString(), compactPoints.get(i).toString());
+			assertEquals("reused", expected.toString(), compact.getPoint(i, reused).toString());
+			assertEquals("x", expected.x, compact.getX(i));
+			assertEquals("time", expected.time, compact.getTime(i));
+			assertEquals("pressure", expected.preasure, compact.getPressure(i));
+		}
+
+		GmlStroke copy = compact.copy();
+		assertTrue("copy", copy instanceof GmlCompactStroke);
+		assertEquals("copy", compact.getLastPoint().toString(), copy.getLastPoint().toString());
+	}
+
+	@Test
+	public void testDetachedPoints() {
+		GmlCompactStroke compact = new GmlCompactStroke(createStroke());
+		GmlPoint point = compact.getPoint(0);
+		point.x = 5;
+		assertFalse("detached", 5 == compact.getX(0));
+
+		compact.setPoint(0, point);
+		assertEquals("set", 5f, compact.getX(0));
+
+		List<GmlPoint> points = compact.getPoints();
+		points.remove(0);
+		compact.replacePoints(points);
+		assertEquals("replaced", 99, compact.nbPoints());
+		assertEquals("replaced", points.get(0).x, compact.getX(0));
+
+		compact.clearPoints();
+		assertEquals("cleared", 0, compact.nbPoints());
+		assertNull("cleared", compact.getLastPoint());
+	}
+}
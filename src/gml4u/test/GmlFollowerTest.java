@@ -0,0 +1,108 @@
+package gml4u.test;
+
+import gml4u.events.GmlEvent;
+import gml4u.events.GmlStrokeEndEvent;
+import gml4u.events.GmlStrokeStartEvent;
+import gml4u.model.Gml;
+import gml4u.model.GmlStroke;
+import gml4u.utils.GmlFollower;
+import gml4u.utils.GmlStaxParsingHelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class GmlFollowerTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlFollowerTest");
+
+	private static final String GML =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+		"<gml spec=\"1.0\"><tag>" +
+		"<header><client><name>Test</name></client>" +
+		"<environment><screenBounds><x>640</x><y>480</y><z>0</z></screenBounds></environment></header>" +
+		"<drawing>\n" +
+		"<stroke layer=\"1\"><brush><width>2</width></brush>\n" +
+		"<pt><x>0.1</x><y>0.2</y><t>0.5</t></pt>\n" +
+		"<!-- <pt><x>1</x><y>1</y></pt> -->\n" +
+		"<pt><x>0.15</x><y>0.25</y><t>0.6</t><rot><x>1</x><y>0</y><z>0</z></rot></pt>\n" +
+		"<pt><x>0.2</x><y>0.3</y><t>0.7</t></pt>\n" +
+		"</stroke>\n" +
+		"<stroke><pt><x>0.9</x><y>0.8</y><t>1.5</t></pt><pt><x>0.7</x><y>0.6</y><t>1.8</t></pt></stroke>\n" +
+		"</drawing>" +
+		"</tag></gml>";
+
+	/*
+	 * Records stroke events
+	 */
+	public static class Listener {
+		public List<String> events = new ArrayList<String>();
+
+		public void gmlEvent(GmlEvent event) {
+			if (event instanceof GmlStrokeStartEvent) {
+				events.add("start");
+			}
+			else if (event instanceof GmlStrokeEndEvent) {
+				events.add("end");
+			}
+		}
+	}
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	/*
+	 * Whatever the chunks the document is written in, the result is the same as parsing it at once
+	 */
+	@Test
+	public void testFollowChunks() throws IOException {
+		Gml expected = GmlStaxParsingHelper.parseGmlFromString(GML);
+		byte[] bytes = GML.getBytes("UTF-8");
+		File file = File.createTempFile("gml4u", ".gml");
+		file.deleteOnExit();
+
+		for (int chunk : new int[] {1, 7, 64, bytes.length}) {
+			FileOutputStream out = new FileOutputStream(file);
+			Listener listener = new Listener();
+			GmlFollower follower = new GmlFollower(file.getPath(), listener);
+			int points = 0;
+			try {
+				for (int i=0; i<bytes.length; i+=chunk) {
+					out.write(bytes, i, Math.min(chunk, bytes.length - i));
+					out.flush();
+					points += follower.poll();
+				}
+			}
+			finally {
+				out.close();
+			}
+
+			Gml gml = follower.getGml();
+			assertTrue("complete", follower.isComplete());
+			assertEquals("points", expected.totalPoints(), points);
+			assertEquals("strokes", expected.totalStrokes(), gml.totalStrokes());
+			assertEquals("client", "Test", gml.client.getString("name"));
+			assertEquals("events", "[start, end, start, end]", listener.events.toString());
+
+			Iterator<GmlStroke> strokes = gml.getStrokes().iterator();
+			for (GmlStroke stroke : expected.getStrokes()) {
+				GmlStroke actual = strokes.next();
+				assertEquals("layer", stroke.getLayer(), actual.getLayer());
+				assertEquals("brush", stroke.getBrush().getParameters(), actual.getBrush().getParameters());
+				assertEquals("points", stroke.getPoints().toString(), actual.getPoints().toString());
+			}
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package gml4u.test;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlClient;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlStroke;
+import gml4u.recording.GmlRecorder;
+import gml4u.utils.FloatUtils;
+import gml4u.utils.GmlJournal;
+import gml4u.utils.GmlStaxParsingHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import toxi.geom.Vec3D;
+
+public class GmlJournalTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlJournalTest");
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	/*
+	 * Records the given number of strokes, on two layers
+	 */
+	private void record(GmlRecorder recorder, int strokes) {
+		for (int s=0; s<strokes; s++) {
+			recorder.beginStroke(s, s % 2);
+			for (int i=0; i<20; i++) {
+				recorder.addPoint(s, new Vec3D(i / 20f, (s + 1) / (float) (strokes + 1), 0), s + i / 20f);
+			}
+			recorder.endStroke(s);
+		}
+	}
+
+	/*
+	 * Checks both Gml hold the same strokes and points
+	 */
+	private void assertSameStrokes(Gml expected, Gml actual) {
+		assertEquals("strokes", expected.totalStrokes(), actual.totalStrokes());
+		Iterator<GmlStroke> strokes = actual.getStrokes().iterator();
+		for (GmlStroke stroke : expected.getStrokes()) {
+			GmlStroke other = strokes.next();
+			assertEquals("layer", stroke.getLayer(), other.getLayer());
+			List<GmlPoint> points = other.getPoints();
+			assertEquals("points", stroke.nbPoints(), points.size());
+			for (int i=0; i<points.size(); i++) {
+				GmlPoint point = stroke.getPoints().get(i);
+				assertEquals("x", point.x, points.get(i).x, 0);
+				assertEquals("y", point.y, points.get(i).y, 0);
+				assertEquals("t", point.time, points.get(i).time, 0);
+			}
+		}
+	}
+
+	@Test
+	public void testReplayAndCompact() throws IOException {
+		File folder = new File(System.getProperty("java.io.tmpdir"), "gml4u-journal-"+System.nanoTime());
+		String location = new File(folder, "session.gmlj").getPath();
+		String gmlLocation = new File(folder, "session.gml").getPath();
+
+		GmlRecorder recorder = new GmlRecorder(new Vec3D(640, 480, 0), 0, 0);
+		GmlJournal journal = new GmlJournal(location);
+		recorder.setJournal(journal);
+		recorder.getGml().client.set(GmlClient.USERNAME, "tester");
+		recorder.setClient(recorder.getGml().client);
+		record(recorder, 10);
+		recorder.removeLastStroke(1);
+		Gml expected = recorder.getGml();
+		assertEquals("strokes", 9, expected.totalStrokes());
+
+		// Crash while appending a record
+		journal.close();
+		RandomAccessFile file = new RandomAccessFile(location, "rw");
+		long size = file.length();
+		file.seek(size);
+		file.write(new byte[] {0, 0, 1, 0, 1, 2, 3});
+		file.close();
+
+		// Restart
+		journal = new GmlJournal(location);
+		assertEquals("torn record dropped", size, journal.getSize());
+		GmlRecorder restored = new GmlRecorder(new Vec3D(640, 480, 0), 0, 0);
+		assertEquals("replayed", 9, journal.replay(restored));
+		restored.setJournal(journal);
+		assertEquals("username", "tester", restored.getGml().client.getString(GmlClient.USERNAME));
+		assertSameStrokes(expected, restored.getGml());
+
+		// Keep recording, then compact
+		record(restored, 3);
+		expected = restored.getGml();
+		assertEquals("strokes", 12, expected.totalStrokes());
+		assertTrue("bytes", journal.compact(gmlLocation, FloatUtils.FULL_PRECISION) > 0);
+		assertFalse("journal deleted", new File(location).exists());
+		assertSameStrokes(expected, GmlStaxParsingHelper.parseGml(gmlLocation));
+
+		new File(gmlLocation).delete();
+		folder.delete();
+	}
+}
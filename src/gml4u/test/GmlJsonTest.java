@@ -0,0 +1,123 @@
+package gml4u.test;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlInfo;
+import gml4u.model.GmlLocation;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlStroke;
+import gml4u.utils.GmlJsonReader;
+import gml4u.utils.GmlJsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import toxi.geom.Vec3D;
+
+public class GmlJsonTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlJsonTest");
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	/*
+	 * Creates a Gml with random points
+	 */
+	private Gml createGml() {
+		Random random = new Random(1);
+		Gml gml = new Gml(new Vec3D(1024, 768, 100));
+		gml.client.set("name", "Test \"quoted\"\n");
+		gml.client.set("location", new GmlLocation(48, 2, 35));
+		gml.environment.realScale = new Vec3D(20, 15, 1);
+		gml.environment.realScaleUnit = "cm";
+		for (int s=0; s<5; s++) {
+			GmlStroke stroke = new GmlStroke(s);
+			stroke.setIsDrawing(s != 3);
+			stroke.getBrush().set("width", 2.5f);
+			stroke.getBrush().set("color", 0xFF00FF);
+			if (s == 0) {
+				stroke.setInfo(new GmlInfo());
+				stroke.getInfo().set("comment", "\u00e9t\u00e9");
+			}
+			for (int i=0; i<50; i++) {
+				GmlPoint point = new GmlPoint();
+				point.set(random.nextFloat(), random.nextFloat(), 0);
+				point.time = s + i / 50f;
+				point.rotation = new Vec3D(random.nextFloat(), 0, 1);
+				point.preasure = s == 4 && i == 0 ? Float.NaN : random.nextFloat();
+				stroke.addPoint(point);
+			}
+			gml.addStroke(stroke);
+		}
+		return gml;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		Gml gml = createGml();
+		StringWriter out = new StringWriter();
+		GmlJsonWriter.write(gml, out);
+		Gml read = GmlJsonReader.readGml(new StringReader(out.toString()));
+
+		assertEquals("client", "Test \"quoted\"\n", read.client.getString("name"));
+		assertEquals("location", 35, ((GmlLocation) read.client.get("location")).getAlt());
+		assertEquals("unit", "cm", read.environment.realScaleUnit);
+		assertEquals("screenBounds", gml.environment.screenBounds, read.environment.screenBounds);
+		assertEquals("strokes", gml.totalStrokes(), read.totalStrokes());
+		Iterator<GmlStroke> strokes = read.getStrokes().iterator();
+		for (GmlStroke stroke : gml.getStrokes()) {
+			GmlStroke actual = strokes.next();
+			assertEquals("layer", stroke.getLayer(), actual.getLayer());
+			assertEquals("drawing", stroke.getIsDrawing(), actual.getIsDrawing());
+			assertEquals("brush", stroke.getBrush().getFloat("width"), actual.getBrush().getFloat("width"));
+			assertEquals("color", stroke.getBrush().getColor("color"), actual.getBrush().getColor("color"));
+			if (null != stroke.getInfo()) {
+				assertEquals("comment", stroke.getInfo().getString("comment"), actual.getInfo().getString("comment"));
+			}
+			List<GmlPoint> expectedPoints = stroke.getPoints();
+			List<GmlPoint> points = actual.getPoints();
+			assertEquals("points", expectedPoints.size(), points.size());
+			for (int i=0; i<points.size(); i++) {
+				GmlPoint expected = expectedPoints.get(i);
+				GmlPoint point = points.get(i);
+				assertEquals("x", expected.x, point.x, 0);
+				assertEquals("y", expected.y, point.y, 0);
+				assertEquals("t", expected.time, point.time, 0);
+				assertEquals("rot", expected.rotation, point.rotation);
+				assertEquals("pres", expected.preasure, point.preasure, 0);
+			}
+		}
+	}
+
+	@Test
+	public void testLenientInput() throws IOException {
+		String json = "{\"tag\":[{\"header\":{\"client\":{\"name\":\"Json\"}},"
+			+"\"drawing\":{\"stroke\":{\"layer\":\"2\",\"pt\":[{\"x\":\"0.5\",\"y\":1e-1,\"time\":3,\"extra\":[true,null]},{\"x\":1,\"y\":0}]}}}]}";
+		GmlJsonReader reader = new GmlJsonReader(new StringReader(json));
+		assertEquals("client", "Json", reader.getHeader().client.getString("name"));
+		assertTrue("stroke", reader.hasNext());
+		GmlStroke stroke = reader.next();
+		assertFalse("single stroke", reader.hasNext());
+		assertEquals("layer", 2, stroke.getLayer());
+		GmlPoint point = stroke.getPoints().get(0);
+		assertEquals("x", 0.5f, point.x, 0);
+		assertEquals("y", 0.1f, point.y, 0);
+		assertEquals("time", 3f, point.time, 0);
+		assertEquals("pressure", GmlPoint.DEFAULT_PRESSURE, point.preasure, 0);
+
+		assertNull("not json", GmlJsonReader.readGmlFromString("<gml></gml>"));
+	}
+}
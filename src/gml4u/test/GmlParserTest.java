@@ -0,0 +1,324 @@
+package gml4u.test;
+
+import gml4u.events.GmlEvent;
+import gml4u.events.GmlMultiParsingEvent;
+import gml4u.events.GmlParsingEvent;
+import gml4u.model.Gml;
+import gml4u.utils.GmlParser;
+import gml4u.utils.GmlSubscriber;
+import gml4u.utils.GmlSubscription;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class GmlParserTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlParserTest");
+
+	private static final String GML =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+		"<gml spec=\"1.0\"><tag><header><client><name>Test</name></client></header><drawing>" +
+		"<stroke><pt><x>0.1</x><y>0.2</y><t>0.5</t></pt><pt><x>0.3</x><y>0.4</y><t>0.6</t></pt></stroke>" +
+		"</drawing></tag></gml>";
+
+	private File folder;
+
+	/*
+	 * Keeps the events sent back by a GmlParser
+	 */
+	public static class Listener {
+		public final List<GmlParsingEvent> events = new ArrayList<GmlParsingEvent>();
+		public volatile GmlMultiParsingEvent multiEvent;
+		public volatile int multiEvents;
+
+		public void gmlEvent(GmlEvent event) {
+			if (event instanceof GmlParsingEvent) {
+				synchronized (events) {
+					events.add((GmlParsingEvent) event);
+				}
+				onParsed((GmlParsingEvent) event);
+			}
+			else if (event instanceof GmlMultiParsingEvent) {
+				multiEvent = (GmlMultiParsingEvent) event;
+				multiEvents++;
+			}
+		}
+
+		protected void onParsed(GmlParsingEvent event) {
+		}
+
+		public int size() {
+			synchronized (events) {
+				return events.size();
+			}
+		}
+	}
+
+	/*
+	 * Records what a GmlPublisher sends, requesting files one at a time
+	 */
+	public static class Subscriber implements GmlSubscriber {
+		public final List<Gml> received = new ArrayList<Gml>();
+		public volatile GmlSubscription subscription;
+		public volatile Throwable error;
+		public volatile boolean completed;
+		public int cancelAfter = Integer.MAX_VALUE;
+
+		public void onSubscribe(GmlSubscription subscription) {
+			this.subscription = subscription;
+		}
+
+		public void onNext(Gml gml) {
+			received.add(gml);
+			if (received.size() >= cancelAfter) {
+				subscription.cancel();
+			}
+			else {
+				subscription.request(1);
+			}
+		}
+
+		public void onError(Throwable error) {
+			this.error = error;
+		}
+
+		public void onComplete() {
+			completed = true;
+		}
+
+		public boolean isDone() {
+			return completed || null != error;
+		}
+	}
+
+	/*
+	 * Keeps the only worker busy until the parser is quit
+	 */
+	public static class BlockingListener extends Listener {
+		public GmlParser parser;
+
+		protected void onParsed(GmlParsingEvent event) {
+			long start = System.currentTimeMillis();
+			while (parser.isRunning() && System.currentTimeMillis() - start < 10000) {
+				Thread.yield();
+			}
+		}
+	}
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		folder = new File(System.getProperty("java.io.tmpdir"), "gml4u-parser-"+System.nanoTime());
+		folder.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		File[] files = folder.listFiles();
+		if (null != files) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		folder.delete();
+	}
+
+	/**
+	 * Writes the given number of Gml files and returns their locations
+	 */
+	private List<String> writeFiles(int count) throws IOException {
+		List<String> files = new ArrayList<String>();
+		for (int i=0; i<count; i++) {
+			File file = new File(folder, "tag"+i+".gml");
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(GML.getBytes("UTF-8"));
+			out.close();
+			files.add(file.getPath());
+		}
+		return files;
+	}
+
+	private static void waitFor(Listener listener, int events) throws InterruptedException {
+		long start = System.currentTimeMillis();
+		while ((null == listener.multiEvent || listener.size() < events) && System.currentTimeMillis() - start < 10000) {
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void testCountersAndEvents() throws Exception {
+		List<String> files = writeFiles(10);
+		files.add(new File(folder, "missing.gml").getPath());
+
+		Listener listener = new Listener();
+		GmlParser parser = new GmlParser("test", listener, 2, 3);
+		parser.parseFiles(files, false);
+		waitFor(listener, 10);
+		parser.quit();
+
+		assertNotNull("multi event", listener.multiEvent);
+		assertEquals("multi event", 10, listener.multiEvent.gmlList.size());
+		assertEquals("events", 10, listener.size());
+		assertEquals("completed", 10, parser.getCompletedJobs());
+		assertEquals("failed", 1, parser.getFailedJobs());
+		assertTrue("parsing time", parser.getTotalParsingTime() > 0);
+		assertTrue("bounded queue", parser.getPeakQueueSize() <= 3);
+		for (GmlParsingEvent event : listener.events) {
+			assertTrue("location", files.contains(event.location));
+			assertNotNull("gml", event.gml);
+			assertTrue("parsing time", event.parsingTime > 0);
+			assertTrue("waiting time", event.waitingTime >= 0);
+			assertTrue("queue size", event.queueSize >= 0 && event.queueSize <= 3);
+		}
+	}
+
+	@Test
+	public void testParseFromCallback() throws Exception {
+		final List<String> files = writeFiles(6);
+		final GmlParser[] parser = new GmlParser[1];
+		Listener listener = new Listener() {
+			protected void onParsed(GmlParsingEvent event) {
+				// More files than the queue can hold, from the worker thread
+				if (event.location.equals(files.get(0))) {
+					parser[0].parseFiles(files.subList(1, files.size()), false);
+				}
+			}
+		};
+		parser[0] = new GmlParser("test", listener, 1, 1);
+		parser[0].parse(files.get(0), false);
+		waitFor(listener, 6);
+		parser[0].quit();
+
+		assertEquals("events", 6, listener.size());
+		assertNotNull("multi event", listener.multiEvent);
+	}
+
+	@Test
+	public void testQuitDuringList() throws Exception {
+		List<String> files = writeFiles(5);
+		BlockingListener listener = new BlockingListener();
+		listener.parser = new GmlParser("test", listener, 1, 10);
+		listener.parser.parseFiles(files, false);
+		long start = System.currentTimeMillis();
+		while (listener.size() == 0 && System.currentTimeMillis() - start < 10000) {
+			Thread.sleep(5);
+		}
+		listener.parser.quit();
+		waitFor(listener, 1);
+
+		assertNotNull("multi event", listener.multiEvent);
+		assertEquals("multi event", 1, listener.multiEvents);
+		assertEquals("parsed before quit", 1, listener.multiEvent.gmlList.size());
+	}
+
+	@Test
+	public void testParseAsync() throws Exception {
+		List<String> files = writeFiles(1);
+		GmlParser parser = new GmlParser("test", 2);
+		Future<Gml> future = parser.parseAsync(files.get(0), false);
+		assertEquals("parsed", 2, future.get(10, TimeUnit.SECONDS).totalPoints());
+
+		Future<Gml> missing = parser.parseAsync(new File(folder, "missing.gml").getPath(), false);
+		try {
+			missing.get(10, TimeUnit.SECONDS);
+			fail("missing file");
+		}
+		catch (ExecutionException e) {
+			// Expected
+		}
+		parser.quit();
+
+		Future<Gml> quit = parser.parseAsync(files.get(0), false);
+		assertTrue("quit", quit.isCancelled());
+	}
+
+	@Test
+	public void testQuitCancelsWaitingJobs() throws Exception {
+		List<String> files = writeFiles(3);
+		BlockingListener listener = new BlockingListener();
+		listener.parser = new GmlParser("test", listener, 1, 10);
+		listener.parser.parse(files.get(0), false);
+
+		// Waiting behind the busy worker
+		Future<Gml> future = listener.parser.parseAsync(files.get(1), false);
+		Subscriber subscriber = new Subscriber();
+		listener.parser.publishFiles(files.subList(1, 3), false).subscribe(subscriber);
+		subscriber.subscription.request(1);
+
+		listener.parser.quit();
+		assertTrue("cancelled", future.isCancelled());
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail("cancelled");
+		}
+		catch (CancellationException e) {
+			// Expected
+		}
+		assertTrue("publication failed", subscriber.error instanceof CancellationException);
+		assertFalse("not completed", subscriber.completed);
+	}
+
+	@Test
+	public void testPublisher() throws Exception {
+		List<String> files = writeFiles(4);
+		GmlParser parser = new GmlParser("test", 2);
+
+		// Complete
+		Subscriber subscriber = new Subscriber();
+		parser.publishFiles(files, false).subscribe(subscriber);
+		subscriber.subscription.request(1);
+		waitFor(subscriber);
+		assertTrue("completed", subscriber.completed);
+		assertEquals("received", 4, subscriber.received.size());
+
+		// Cancelled
+		Subscriber cancelling = new Subscriber();
+		cancelling.cancelAfter = 2;
+		parser.publishFiles(files, false).subscribe(cancelling);
+		cancelling.subscription.request(1);
+		long start = System.currentTimeMillis();
+		while (cancelling.received.size() < 2 && System.currentTimeMillis() - start < 10000) {
+			Thread.sleep(5);
+		}
+		Thread.sleep(100);
+		assertEquals("cancelled", 2, cancelling.received.size());
+		assertFalse("cancelled", cancelling.isDone());
+
+		// Error
+		Subscriber failing = new Subscriber();
+		parser.publishFiles(files, false).subscribe(failing);
+		failing.subscription.request(0);
+		assertTrue("error", failing.error instanceof IllegalArgumentException);
+
+		// Nothing to publish
+		Subscriber empty = new Subscriber();
+		parser.publishFiles(new ArrayList<String>(), false).subscribe(empty);
+		assertTrue("empty", empty.completed);
+		parser.quit();
+	}
+
+	private static void waitFor(Subscriber subscriber) throws InterruptedException {
+		long start = System.currentTimeMillis();
+		while (!subscriber.isDone() && System.currentTimeMillis() - start < 10000) {
+			Thread.sleep(5);
+		}
+	}
+}
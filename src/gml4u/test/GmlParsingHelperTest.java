@@ -0,0 +1,243 @@
+package gml4u.test;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlBrush;
+import gml4u.model.GmlHeader;
+import gml4u.model.GmlLocation;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlStroke;
+import gml4u.model.LazyGml;
+import gml4u.utils.GmlParsingHelper;
+import gml4u.utils.GmlStaxParsingHelper;
+import gml4u.utils.GmlValueDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.jdom.Element;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import toxi.geom.Vec3D;
+
+public class GmlParsingHelperTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlParsingHelperTest");
+
+	private static final String GML =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+		"<gml spec=\"1.0\"><tag>" +
+		"<header>" +
+		"<client><name>Test</name><version>1.0</version><keywords>a,b</keywords></client>" +
+		"<environment><screenBounds><x>640</x><y>480</y><z>10</z></screenBounds><up><x>0</x><y>-1</y><z>0</z></up></environment>" +
+		"</header>" +
+		"<drawing>" +
+		"<stroke layer=\"2\"><brush><uniqueStyleID>STYLE</uniqueStyleID><width>2.5</width><color><r>10</r><g>20</g><b>30</b></color></brush>" +
+		"<pt><x>0.1</x><y>0.2</y><z>0.3</z><t>0.5</t></pt>" +
+		"<pt><y>0.25</y><x>0.15</x><time>0.6</time><pres>0.4</pres><rot><x>1</x><y>0</y><z>0.5</z></rot></pt>" +
+		"<pt><x>0.2</x><y>0.3</y><t>0.7</t><thick>0.2</thick><dir><x>0</x><y>1</y><z>0</z></dir></pt>" +
+		"</stroke>" +
+		"<stroke isDrawing=\"false\"><info><curved>true</curved></info>" +
+		"<pt><x>0.9</x><y>0.8</y><t>1.5</t></pt><pt><x>0.7</x><y>0.6</y><t>1.8</t></pt>" +
+		"</stroke>" +
+		"</drawing>" +
+		"</tag></gml>";
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	/*
+	 * JDom and StAX parsers give the same results
+	 *
+	 */
+
+	@Test
+	public void testStaxMatchesJdom() {
+		int defaultParser = GmlParsingHelper.getParser();
+		try {
+			GmlParsingHelper.setParser(GmlParsingHelper.PARSER_JDOM);
+			Gml jdom = GmlParsingHelper.getGmlFromString(GML, false);
+			GmlParsingHelper.setParser(GmlParsingHelper.PARSER_STAX);
+			Gml stax = GmlParsingHelper.getGmlFromString(GML, false);
+
+			assertEquals("client", jdom.client.getParameters(), stax.client.getParameters());
+			assertEquals("screenBounds", jdom.environment.screenBounds, stax.environment.screenBounds);
+			assertEquals("up", jdom.environment.up, stax.environment.up);
+			assertEquals("layers", jdom.getLayerIds(), stax.getLayerIds());
+
+			List<GmlStroke> jdomStrokes = new ArrayList<GmlStroke>(jdom.getStrokes());
+			List<GmlStroke> staxStrokes = new ArrayList<GmlStroke>(stax.getStrokes());
+			assertEquals("strokes", jdomStrokes.size(), staxStrokes.size());
+
+			for (int i=0; i<jdomStrokes.size(); i++) {
+				GmlStroke a = jdomStrokes.get(i);
+				GmlStroke b = staxStrokes.get(i);
+				assertEquals("isDrawing", a.getIsDrawing(), b.getIsDrawing());
+				assertEquals("brush", a.getBrush().getParameters(), b.getBrush().getParameters());
+				assertEquals("info", a.getInfo().getParameters(), b.getInfo().getParameters());
+				assertEquals("points", a.nbPoints(), b.nbPoints());
+				for (int j=0; j<a.nbPoints(); j++) {
+					assertEquals("point", a.getPoints().get(j).toString(), b.getPoints().get(j).toString());
+				}
+			}
+		}
+		finally {
+			GmlParsingHelper.setParser(defaultParser);
+		}
+	}
+
+	@Test
+	public void testStaxPointValues() {
+		Gml gml = GmlParsingHelper.getGml("does/not/exist.gml", false, GmlParsingHelper.PARSER_STAX);
+		assertNull("missing file", gml);
+
+		int defaultParser = GmlParsingHelper.getParser();
+		try {
+			GmlParsingHelper.setParser(GmlParsingHelper.PARSER_STAX);
+			gml = GmlParsingHelper.getGmlFromString(GML, false);
+		}
+		finally {
+			GmlParsingHelper.setParser(defaultParser);
+		}
+
+		GmlStroke stroke = gml.getStrokes(2).iterator().next();
+		GmlPoint second = stroke.getPoints().get(1);
+		assertTrue("xy in any order", second.equals(new Vec3D(0.15f, 0.25f, 0)));
+		assertEquals("legacy time", 0.6f, second.time);
+		assertEquals("pressure", 0.4f, second.preasure);
+		assertTrue("rotation", second.rotation.equals(new Vec3D(1, 0, 0.5f)));
+		GmlPoint third = stroke.getPoints().get(2);
+		assertEquals("thickness", 0.2f, third.thickness);
+		assertTrue("direction", third.direction.equals(new Vec3D(0, 1, 0)));
+	}
+
+	@Test
+	public void testScanHeader() throws UnsupportedEncodingException {
+		GmlHeader header = GmlStaxParsingHelper.scanHeader(new ByteArrayInputStream(GML.getBytes("UTF-8")), true);
+		assertEquals("client", "Test", header.client.getString("name"));
+		assertTrue("screenBounds", header.environment.screenBounds.equals(new Vec3D(640, 480, 10)));
+		assertEquals("strokes", 2, header.totalStrokes);
+		assertEquals("points", 5, header.totalPoints);
+
+		header = GmlStaxParsingHelper.scanHeader(new ByteArrayInputStream(GML.getBytes("UTF-8")), false);
+		assertEquals("client", "Test", header.client.getString("name"));
+		assertEquals("not counted", -1, header.totalPoints);
+	}
+
+	@Test
+	public void testLazyGml() throws IOException {
+		Gml gml = GmlStaxParsingHelper.parseGmlFromString(GML);
+		LazyGml lazy = new LazyGml(GML.getBytes("UTF-8"));
+
+		// Counts don't need decoding
+		assertEquals("strokes", gml.totalStrokes(), lazy.totalStrokes());
+		assertEquals("points", gml.totalPoints(), lazy.totalPoints());
+		assertEquals("layers", gml.getLayerIds(), lazy.getLayerIds());
+		assertEquals("decoded", 0, lazy.decodedStrokes());
+
+		// Only the requested layer is decoded
+		GmlStroke stroke = lazy.getStrokes(2).iterator().next();
+		assertEquals("decoded", 1, lazy.decodedStrokes());
+		GmlStroke expected = gml.getStrokes(2).iterator().next();
+		for (int i=0; i<expected.nbPoints(); i++) {
+			assertEquals("point", expected.getPoints().get(i).toString(), stroke.getPoints().get(i).toString());
+		}
+		assertEquals("brush", expected.getBrush().getParameters(), stroke.getBrush().getParameters());
+
+		// Statistics are computed once, boxes are copies
+		assertEquals("duration", gml.getDuration(), lazy.getDuration());
+		assertEquals("start time", gml.getStartTime(), lazy.getStartTime());
+		assertEquals("bounds", gml.getBoundingBox().getMin(), lazy.getBoundingBox().getMin());
+		assertEquals("bounds", gml.getBoundingBox(2).getMax(), lazy.getBoundingBox(2).getMax());
+		lazy.getBoundingBox().addSelf(1, 1, 1);
+		assertEquals("copy", gml.getBoundingBox().getMin(), lazy.getBoundingBox().getMin());
+
+		lazy.materialize();
+		assertTrue("materialized", lazy.isMaterialized());
+		assertEquals("points", gml.totalPoints(), lazy.totalPoints());
+	}
+
+	@Test
+	public void testTypedValues() {
+		String gmlString = GML.replace("<width>2.5</width>",
+				"<width>2.5</width><offset><z>3</z><y>2</y><x>1</x></offset><tint><b>3</b><g>2</g><r>1</r></tint>" +
+				"<place><lon>20</lon><alt>30</alt><lat>10</lat></place><span><min>1</min><max>2</max></span>");
+
+		GmlValueDecoder decoder = new GmlValueDecoder() {
+			public Object decode(List<Element> elements) {
+				return elements.size();
+			}
+		};
+		GmlParsingHelper.registerValueType(new String[] {"min", "max"}, decoder);
+		try {
+			Gml gml = GmlStaxParsingHelper.parseGmlFromString(gmlString);
+			GmlBrush brush = gml.getStrokes(2).iterator().next().getBrush();
+
+			// Children in any order
+			assertEquals("vec3D", new Vec3D(1, 2, 3), brush.getVec3D("offset"));
+			assertEquals("color", Integer.valueOf((255<<24)|(1<<16)|(2<<8)|3), brush.getColor("tint"));
+			GmlLocation location = (GmlLocation) brush.get("place");
+			assertEquals("lat", 10, location.getLat());
+			assertEquals("lon", 20, location.getLon());
+			assertEquals("alt", 30, location.getAlt());
+
+			// Registered type
+			assertEquals("registered", Integer.valueOf(2), brush.get("span"));
+		}
+		finally {
+			GmlParsingHelper.unregisterValueType(decoder);
+		}
+
+		// Not decoded anymore
+		Gml gml = GmlStaxParsingHelper.parseGmlFromString(gmlString);
+		assertFalse("unregistered", gml.getStrokes(2).iterator().next().getBrush().get("span") instanceof Integer);
+		assertFalse("unregistered", GmlParsingHelper.unregisterValueType(decoder));
+	}
+
+	/*
+	 * Decodes any matching element to the given value
+	 */
+	private static GmlValueDecoder constantDecoder(final String value) {
+		return new GmlValueDecoder() {
+			public Object decode(List<Element> elements) {
+				return value;
+			}
+		};
+	}
+
+	@Test
+	public void testTypedValuesOrder() {
+		String gmlString = GML.replace("<width>2.5</width>",
+				"<width>2.5</width><five><q>1</q><p>2</p><u>3</u><t>4</t><s>5</s></five>" +
+				"<six><p>1</p><q>2</q><s>3</s><t>4</t><u>5</u><v>6</v></six>");
+
+		GmlValueDecoder first = constantDecoder("first");
+		GmlValueDecoder second = constantDecoder("second");
+		GmlValueDecoder larger = constantDecoder("larger");
+		GmlParsingHelper.registerValueType(new String[] {"p", "q", "s", "t", "u"}, first);
+		GmlParsingHelper.registerValueType(new String[] {"u", "t", "s", "q", "p"}, second);
+		// Larger than any other type, registered last
+		GmlParsingHelper.registerValueType(new String[] {"p", "q", "s", "t", "u", "v"}, larger);
+		try {
+			GmlBrush brush = GmlStaxParsingHelper.parseGmlFromString(gmlString).getStrokes(2).iterator().next().getBrush();
+
+			// Most names first, then the first registered one
+			assertEquals("larger", "larger", brush.get("six"));
+			assertEquals("first registered", "first", brush.get("five"));
+		}
+		finally {
+			GmlParsingHelper.unregisterValueType(first);
+			GmlParsingHelper.unregisterValueType(second);
+			GmlParsingHelper.unregisterValueType(larger);
+		}
+	}
+}
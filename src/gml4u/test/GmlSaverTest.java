@@ -0,0 +1,135 @@
+package gml4u.test;
+
+import gml4u.events.GmlEvent;
+import gml4u.events.GmlSavingEvent;
+import gml4u.model.Gml;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlStroke;
+import gml4u.utils.GmlParsingHelper;
+import gml4u.utils.GmlSaver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import toxi.geom.Vec3D;
+
+public class GmlSaverTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlSaverTest");
+
+	/*
+	 * Records saving events
+	 */
+	public static class Listener {
+		public List<GmlSavingEvent> events = new ArrayList<GmlSavingEvent>();
+
+		public void gmlEvent(GmlEvent event) {
+			if (event instanceof GmlSavingEvent) {
+				events.add((GmlSavingEvent) event);
+			}
+		}
+	}
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	/*
+	 * Creates a Gml whose single stroke has the given number of points
+	 */
+	private Gml createGml(int points) {
+		Gml gml = new Gml(new Vec3D(640, 480, 0));
+		GmlStroke stroke = new GmlStroke();
+		for (int i=0; i<points; i++) {
+			GmlPoint point = new GmlPoint();
+			point.set(i / (float) points, 0.5f, 0);
+			point.time = i;
+			stroke.addPoint(point);
+		}
+		gml.addStroke(stroke);
+		return gml;
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		File folder = new File(System.getProperty("java.io.tmpdir"), "gml4u-saver-"+System.nanoTime());
+		String location = new File(folder, "tag.gml").getPath();
+
+		Listener listener = new Listener();
+		GmlSaver saver = new GmlSaver("test", listener, 1);
+		int requests = 50;
+		for (int i=1; i<=requests; i++) {
+			saver.save(createGml(i * 10), location);
+		}
+		saver.quit();
+		assertTrue("terminated", saver.awaitTermination(10000));
+
+		// Every request is either written or replaced by a later one
+		int coalesced = 0;
+		for (GmlSavingEvent event : listener.events) {
+			assertTrue("successful", event.successful);
+			assertTrue("bytes", event.bytes > 0);
+			coalesced += event.coalesced;
+		}
+		assertEquals("requests", requests, listener.events.size() + coalesced);
+		assertEquals("coalesced", coalesced, saver.getCoalescedSaves());
+		assertEquals("completed", listener.events.size(), saver.getCompletedSaves());
+
+		// The latest Gml is the one saved, without temporary files left
+		Gml gml = GmlParsingHelper.getGml(location, false);
+		assertEquals("points", requests * 10, gml.totalPoints());
+		assertEquals("files", 1, folder.listFiles().length);
+
+		new File(location).delete();
+		folder.delete();
+	}
+
+	/*
+	 * Saves more locations than the queue can hold from the worker thread, on the first event
+	 */
+	public static class ChainingListener extends Listener {
+		public GmlSaver saver;
+		public File folder;
+		public Gml gml;
+
+		public void gmlEvent(GmlEvent event) {
+			super.gmlEvent(event);
+			if (events.size() == 1) {
+				for (int i=0; i<5; i++) {
+					saver.save(gml, new File(folder, "copy"+i+".gml").getPath());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSaveFromCallback() throws Exception {
+		ChainingListener listener = new ChainingListener();
+		listener.folder = new File(System.getProperty("java.io.tmpdir"), "gml4u-saver-"+System.nanoTime());
+		listener.gml = createGml(10);
+		listener.saver = new GmlSaver("test", listener, 1, 1);
+		GmlSaver saver = listener.saver;
+		saver.save(listener.gml, new File(listener.folder, "tag.gml").getPath());
+		long start = System.currentTimeMillis();
+		while (saver.getCompletedSaves() < 6 && System.currentTimeMillis() - start < 10000) {
+			Thread.sleep(5);
+		}
+		saver.quit();
+		assertTrue("terminated", saver.awaitTermination(10000));
+		assertEquals("completed", 6, saver.getCompletedSaves());
+
+		for (File file : listener.folder.listFiles()) {
+			file.delete();
+		}
+		listener.folder.delete();
+	}
+}
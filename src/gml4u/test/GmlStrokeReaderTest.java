@@ -0,0 +1,82 @@
+package gml4u.test;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlHeader;
+import gml4u.model.GmlStroke;
+import gml4u.utils.GmlParsingHelper;
+import gml4u.utils.GmlStrokeReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import toxi.geom.Vec3D;
+
+public class GmlStrokeReaderTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlStrokeReaderTest");
+
+	private static final String GML =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+		"<gml spec=\"1.0\"><tag>" +
+		"<header>" +
+		"<client><name>Test</name></client>" +
+		"<environment><screenBounds><x>640</x><y>480</y><z>10</z></screenBounds></environment>" +
+		"</header>" +
+		"<drawing>" +
+		"<stroke layer=\"1\"><pt><x>0.1</x><y>0.2</y><t>0.5</t></pt><pt><x>0.3</x><y>0.4</y><t>0.6</t></pt></stroke>" +
+		"<stroke><brush><uniqueStyleID>EMPTY</uniqueStyleID></brush></stroke>" +
+		"<stroke/>" +
+		"<stroke layer=\"1\"><pt><x>0.5</x><y>0.6</y><t>0.7</t></pt></stroke>" +
+		"<stroke></stroke>" +
+		"</drawing>" +
+		"</tag></gml>";
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	@Test
+	public void testSameStrokesAsParsed() throws IOException {
+		Gml gml = GmlParsingHelper.getGmlFromString(GML, false);
+		List<GmlStroke> expected = new ArrayList<GmlStroke>(gml.getStrokes());
+
+		GmlStrokeReader reader = new GmlStrokeReader(new ByteArrayInputStream(GML.getBytes("UTF-8")));
+		GmlHeader header = reader.getHeader();
+		assertEquals("client", "Test", header.client.getString("name"));
+		assertEquals("screenBounds", new Vec3D(640, 480, 10), header.environment.screenBounds);
+
+		List<GmlStroke> strokes = new ArrayList<GmlStroke>();
+		for (GmlStroke stroke : reader) {
+			strokes.add(stroke);
+		}
+		assertFalse("closed", reader.hasNext());
+
+		// Empty strokes are dropped by both
+		assertEquals("strokes", expected.size(), strokes.size());
+		for (int i=0; i<strokes.size(); i++) {
+			assertEquals("layer", expected.get(i).getLayer(), strokes.get(i).getLayer());
+			assertEquals("points", expected.get(i).getPoints().toString(), strokes.get(i).getPoints().toString());
+		}
+	}
+
+	@Test
+	public void testNotGml() throws IOException {
+		try {
+			new GmlStrokeReader(new ByteArrayInputStream("<svg></svg>".getBytes("UTF-8")));
+			fail("not a gml document");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+}
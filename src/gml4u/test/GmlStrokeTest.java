@@ -0,0 +1,174 @@
+package gml4u.test;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlCompactStroke;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlPointCursor;
+import gml4u.model.GmlPointVisitor;
+import gml4u.model.GmlStroke;
+
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import toxi.geom.Vec3D;
+
+public class GmlStrokeTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlStrokeTest");
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	/*
+	 * Creates a stroke with random points, rotation is only set on some of them
+	 */
+	private GmlStroke createStroke() {
+		Random random = new Random(1);
+		GmlStroke stroke = new GmlStroke(2);
+		for (int i=0; i<100; i++) {
+			GmlPoint point = new GmlPoint(random.nextFloat(), random.nextFloat(), random.nextFloat(), i / 10f);
+			point.preasure = random.nextFloat();
+			point.thickness = random.nextFloat();
+			if (i > 50) {
+				point.rotation = new Vec3D(random.nextFloat(), 0, 1);
+			}
+			stroke.addPoint(point);
+		}
+		return stroke;
+	}
+
+	@Test
+	public void testTimeWindows() {
+		GmlStroke stroke = createStroke(); // Times from 0 to 9.9, 0.1 apart
+		GmlStroke compact = new GmlCompactStroke(stroke);
+		for (GmlStroke s : new GmlStroke[] {stroke, compact}) {
+			assertEquals("start", 0, s.getStartIndex(-1));
+			assertEquals("start", 10, s.getStartIndex(1));
+			assertEquals("end", 11, s.getEndIndex(1));
+			assertEquals("end", 100, s.getEndIndex(100));
+			assertEquals("end", 0, s.getEndIndex(-1));
+
+			List<GmlPoint> window = s.getPointsView(1, 2);
+			assertEquals("window", 11, window.size());
+			assertEquals("window", 1f, window.get(0).time);
+			assertEquals("window", 2f, window.get(10).time);
+			assertEquals("copy", window.size(), s.getPoints(1, 2).size());
+			assertEquals("until", 21, s.getPoints(2).size());
+			try {
+				window.remove(0);
+				fail("read-only");
+			}
+			catch (UnsupportedOperationException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void testCursorAndVisitor() {
+		GmlStroke stroke = createStroke();
+		GmlStroke compact = new GmlCompactStroke(stroke);
+		final List<GmlPoint> points = stroke.getPoints();
+		GmlPointCursor cursor = new GmlPointCursor();
+		for (GmlStroke s : new GmlStroke[] {stroke, compact}) {
+			cursor.reset(s, 1, 2);
+			assertEquals("size", 11, cursor.size());
+			while (cursor.next()) {
+				GmlPoint expected = points.get(cursor.getIndex());
+				assertEquals("point", expected.toString(), cursor.getPoint().toString());
+				assertEquals("previous", points.get(cursor.isFirst() ? 10 : cursor.getIndex() - 1).x, cursor.getPrevious().x);
+			}
+			assertEquals("last", 20, cursor.getIndex());
+
+			cursor.reset(s, 20, 30);
+			assertTrue("empty", cursor.isEmpty());
+			assertFalse("empty", cursor.next());
+
+			final int[] count = new int[1];
+			s.forEachPoint(new GmlPointVisitor() {
+				public void visit(int index, float x, float y, float z, float time, float pressure, float thickness) {
+					GmlPoint expected = points.get(index);
+					assertEquals("x", expected.x, x);
+					assertEquals("time", expected.time, time);
+					assertEquals("thickness", expected.thickness, thickness);
+					count[0]++;
+				}
+			});
+			assertEquals("visited", 100, count[0]);
+			assertEquals("view", 100, s.getPointsView().size());
+		}
+	}
+
+	@Test
+	public void testFirstAndLastPoints() {
+		GmlStroke stroke = createStroke();
+		GmlStroke compact = new GmlCompactStroke(stroke);
+		List<GmlPoint> points = stroke.getPoints();
+		GmlPoint reused = new GmlPoint();
+		for (GmlStroke s : new GmlStroke[] {stroke, compact}) {
+			// Every value is copied, not only the position
+			GmlPoint last = s.getLastPoint();
+			assertEquals("last", points.get(99).toString(), last.toString());
+			assertEquals("time", points.get(99).time, last.time);
+			assertEquals("pressure", points.get(99).preasure, last.preasure);
+			assertEquals("thickness", points.get(99).thickness, last.thickness);
+			assertEquals("rotation", points.get(99).rotation, last.rotation);
+			assertNotSame("copy", points.get(99), last);
+
+			assertSame("reused", reused, s.getFirstPoint(reused));
+			assertEquals("first", points.get(0).toString(), reused.toString());
+			assertSame("reused", reused, s.getLastPoint(reused));
+			assertEquals("last", points.get(99).thickness, reused.thickness);
+		}
+
+		stroke.clearPoints();
+		assertNull("empty", stroke.getFirstPoint());
+		assertNull("empty", stroke.getLastPoint(reused));
+	}
+
+	@Test
+	public void testBoundsFollowChanges() {
+		GmlStroke stroke = new GmlStroke(0);
+		stroke.addPoint(new GmlPoint(new Vec3D(.2f, .3f, 0), 0, 1, new Vec3D(), new Vec3D()));
+		stroke.addPoint(new GmlPoint(new Vec3D(.6f, .1f, .5f), .1f, 1, new Vec3D(), new Vec3D()));
+		assertTrue("min", new Vec3D(.2f, .1f, 0).equalsWithTolerance(stroke.getBoundingBox().getMin(), 0.000001f));
+
+		// Points handed out are the stored ones, bounds are read again once requested
+		stroke.getPoints().get(0).x = -1;
+		assertEquals("changed min", -1f, stroke.getBoundingBox().getMin().x, 0.000001f);
+		List<GmlPoint> points = stroke.getPoints();
+		assertSame("stored", points.get(0), stroke.getPointsView().get(0));
+		assertEquals("changed min", -1f, stroke.getBoundingBox().getMin().x, 0.000001f);
+		// Changed after the bounds were read: written back
+		points.get(1).y = 5;
+		stroke.replacePoints(points);
+		assertEquals("replaced max", 5f, stroke.getBoundingBox().getMax().y, 0.000001f);
+		points.get(1).y = .1f;
+		stroke.replacePoints(points);
+
+		GmlCompactStroke compact = new GmlCompactStroke(stroke);
+		compact.getPoints().get(1).y = 5;
+		assertEquals("copies", .3f, compact.getBoundingBox().getMax().y, 0.000001f);
+		GmlPoint point = compact.getPoint(1);
+		point.y = 5;
+		compact.setPoint(1, point);
+		assertEquals("set", 5f, compact.getBoundingBox().getMax().y, 0.000001f);
+
+		Gml gml = new Gml();
+		gml.addStroke(stroke);
+		compact.setLayer(1);
+		gml.addStroke(compact);
+		assertEquals("layer", .3f, gml.getBoundingBox(0).getMax().y, 0.000001f);
+		assertEquals("gml", 5f, gml.getBoundingBox().getMax().y, 0.000001f);
+		assertEquals("gml", -1f, gml.getBoundingBox().getMin().x, 0.000001f);
+	}
+}
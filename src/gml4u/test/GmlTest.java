@@ -0,0 +1,75 @@
+package gml4u.test;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlCompactStroke;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlStroke;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class GmlTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlTest");
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	@Test
+	public void testGmlStatistics() {
+		Gml gml = new Gml();
+		GmlStroke stroke = new GmlStroke(0);
+		stroke.addPoint(new GmlPoint(.1f, .1f, 0, .5f));
+		stroke.addPoint(new GmlPoint(.2f, .1f, 0, 1));
+		gml.addStroke(stroke);
+		assertEquals("duration", 1f, gml.getDuration());
+		assertEquals("start", .5f, gml.getStartTime());
+		assertEquals("points", 2, gml.totalPoints());
+
+		// Stroke changes are seen by the Gml
+		stroke.addPoint(new GmlPoint(.3f, .1f, 0, 2));
+		assertEquals("duration", 2f, gml.getDuration());
+		assertEquals("points", 3, gml.totalPoints());
+
+		// Points handed out can be changed
+		stroke.getPoints().get(2).time = 3;
+		assertEquals("changed", 3f, gml.getDuration());
+		List<GmlPoint> points = stroke.getPoints();
+		assertEquals("changed", 3f, gml.getDuration());
+		points.get(2).time = 4;
+		stroke.replacePoints(points);
+		assertEquals("replaced", 4f, gml.getDuration());
+		points.get(2).time = 3;
+		stroke.replacePoints(points);
+
+		// Strokes added to a copy aren't added to the original
+		Gml copy = gml.copy();
+		copy.addStroke(new GmlCompactStroke(stroke));
+		assertEquals("copy", 2, copy.totalStrokes());
+		assertEquals("original", 1, gml.totalStrokes());
+		assertEquals("version", 1, gml.getVersion());
+
+		// Changes to shared strokes are seen by both, deep copies have their own strokes
+		Gml deep = gml.deepCopy();
+		stroke.addPoint(new GmlPoint(.4f, .1f, 0, 5));
+		assertEquals("shared", 5f, gml.getDuration());
+		assertEquals("shared", 5f, copy.getDuration());
+		assertEquals("deep", 3f, deep.getDuration());
+		deep.getStrokes().iterator().next().addPoint(new GmlPoint(.5f, .1f, 0, 6));
+		assertEquals("deep", 6f, deep.getDuration());
+		assertEquals("deep", 5f, gml.getDuration());
+
+		gml.removeLastStroke(0);
+		assertEquals("removed", 0, gml.totalStrokes());
+		assertEquals("removed", 0f, gml.getDuration());
+		assertEquals("copy", 7, copy.totalPoints());
+	}
+}
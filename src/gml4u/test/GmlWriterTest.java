@@ -0,0 +1,154 @@
+package gml4u.test;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlStroke;
+import gml4u.utils.GmlParsingHelper;
+import gml4u.utils.GmlSavingHelper;
+import gml4u.utils.GmlStaxParsingHelper;
+import gml4u.utils.GmlWriter;
+import gml4u.utils.UrlEncodingOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import toxi.geom.Vec3D;
+
+public class GmlWriterTest extends TestCase {
+
+	private static final Logger LOGGER = Logger.getLogger("gml4u.test.GmlWriterTest");
+
+	@BeforeClass
+	public void init() {
+		LOGGER.setLevel(Level.FINEST);
+	}
+
+	/*
+	 * Creates a normalized Gml with random points
+	 */
+	private Gml createGml() {
+		Random random = new Random(1);
+		Gml gml = new Gml(new Vec3D(1024, 768, 100));
+		gml.client.set("name", "Test");
+		for (int s=0; s<10; s++) {
+			GmlStroke stroke = new GmlStroke(s % 2);
+			stroke.getBrush().set("width", 2.5f);
+			for (int i=0; i<100; i++) {
+				GmlPoint point = new GmlPoint();
+				point.set(random.nextFloat(), random.nextFloat(), random.nextFloat());
+				point.time = s + i / 100f;
+				point.rotation = new Vec3D(random.nextFloat(), 0, 1);
+				point.preasure = random.nextFloat();
+				stroke.addPoint(point);
+			}
+			gml.addStroke(stroke);
+		}
+		return gml;
+	}
+
+	/*
+	 * Writes the Gml with the given precision, reads it back and checks every point value is within tolerance
+	 * Returns the document size
+	 */
+	private int assertRoundTrip(Gml gml, int precision, double tolerance) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GmlWriter.write(gml, out, precision);
+		Gml read = GmlStaxParsingHelper.parseGmlFromString(out.toString("UTF-8"));
+
+		assertEquals("client", "Test", read.client.getString("name"));
+		assertEquals("strokes", gml.totalStrokes(), read.totalStrokes());
+		Iterator<GmlStroke> strokes = read.getStrokes().iterator();
+		for (GmlStroke stroke : gml.getStrokes()) {
+			GmlStroke actual = strokes.next();
+			assertEquals("layer", stroke.getLayer(), actual.getLayer());
+			assertEquals("brush", stroke.getBrush().getFloat("width"), actual.getBrush().getFloat("width"));
+			List<GmlPoint> points = actual.getPoints();
+			assertEquals("points", stroke.nbPoints(), points.size());
+			for (int i=0; i<points.size(); i++) {
+				GmlPoint expected = stroke.getPoints().get(i);
+				GmlPoint point = points.get(i);
+				assertEquals("x", expected.x, point.x, tolerance);
+				assertEquals("y", expected.y, point.y, tolerance);
+				assertEquals("z", expected.z, point.z, tolerance);
+				assertEquals("t", expected.time, point.time, tolerance);
+				assertEquals("rot", expected.rotation.x, point.rotation.x, tolerance);
+				assertEquals("pres", expected.preasure, point.preasure, tolerance);
+			}
+		}
+		return out.size();
+	}
+
+	@Test
+	public void testFullPrecision() throws IOException {
+		assertRoundTrip(createGml(), -1, 0);
+	}
+
+	@Test
+	public void testPrecision() throws IOException {
+		Gml gml = createGml();
+		int full = assertRoundTrip(gml, -1, 0);
+		int rounded = assertRoundTrip(gml, 4, 0.5e-4 + 1e-7);
+		LOGGER.log(Level.FINEST, "Full precision "+full+" bytes, 4 decimals "+rounded+" bytes");
+		// Markup takes most of the room, only numbers get shorter
+		assertTrue("smaller", rounded < full * 0.9);
+	}
+
+	@Test
+	public void testStreaming() throws IOException {
+		Gml gml = createGml();
+		gml.client.set("keywords", "\u00e9t\u00e9, tag & test");
+		String expected = GmlSavingHelper.getStringFromGml(gml);
+
+		StringBuilder builder = new StringBuilder();
+		assertTrue("appendable", GmlSavingHelper.save(gml, builder));
+		assertEquals("appendable", expected, builder.toString());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue("channel", GmlSavingHelper.save(gml, Channels.newChannel(out)));
+		assertEquals("channel", expected, out.toString("UTF-8"));
+
+		out.reset();
+		UrlEncodingOutputStream encoder = new UrlEncodingOutputStream(out);
+		assertTrue("url encoded", GmlSavingHelper.save(gml, encoder));
+		encoder.close();
+		assertEquals("url encoded", URLEncoder.encode(expected, "UTF-8"), out.toString("UTF-8"));
+	}
+
+	@Test
+	public void testSaveAtomically() throws IOException {
+		File folder = new File(System.getProperty("java.io.tmpdir"), "gml4u-writer-"+System.nanoTime());
+		String location = new File(folder, "tag.gml").getPath();
+		try {
+			Gml gml = createGml();
+			assertTrue("created", GmlSavingHelper.saveAtomically(gml, location, -1, false) > 0);
+			gml.removeLastStroke(1);
+			assertTrue("replaced", GmlSavingHelper.saveAtomically(gml, location, -1, true) > 0);
+
+			// Only the new file is left, without temporary or backup files
+			assertEquals("files", 1, folder.listFiles().length);
+			assertEquals("points", gml.totalPoints(), GmlParsingHelper.getGml(location, false).totalPoints());
+		}
+		finally {
+			File[] files = folder.listFiles();
+			if (null != files) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			folder.delete();
+		}
+	}
+}
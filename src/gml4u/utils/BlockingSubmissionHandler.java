@@ -0,0 +1,35 @@
+package gml4u.utils;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Waits for room in the queue instead of rejecting the job (GmlParser, GmlSaver).<br/>
+ * Jobs submitted by the pool's own workers (typically from a gmlEvent callback) are run right away
+ * instead: a worker waiting for room in its own queue could wait forever.
+ */
+class BlockingSubmissionHandler implements RejectedExecutionHandler {
+
+	public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+		if (executor.isShutdown()) {
+			throw new RejectedExecutionException("Pool was quit");
+		}
+		if (executor.getThreadFactory() instanceof WorkerThreadFactory
+				&& ((WorkerThreadFactory) executor.getThreadFactory()).isWorkerThread()) {
+			r.run();
+			return;
+		}
+		try {
+			executor.getQueue().put(r);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted while waiting for the queue");
+		}
+		// Quit while waiting: the job would never run
+		if (executor.isShutdown() && executor.remove(r)) {
+			throw new RejectedExecutionException("Pool was quit");
+		}
+	}
+}
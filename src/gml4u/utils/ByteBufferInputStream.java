@@ -0,0 +1,78 @@
+package gml4u.utils;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * InputStream reading from a ByteBuffer, typically a memory mapped file.<br/>
+ * Reads are plain copies from the buffer: no system call is made.<br/>
+ * Closing the stream drops its reference to the buffer, so that a mapping only used by this stream
+ * can be released as soon as possible (mappings are only released once garbage collected).
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	private static final ByteBuffer CLOSED = ByteBuffer.allocate(0);
+
+	private ByteBuffer buffer;
+
+	/**
+	 * Creates a new ByteBufferInputStream reading the given buffer from its position to its limit
+	 * @param buffer - ByteBuffer
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		return buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) {
+		if (length == 0) {
+			return 0;
+		}
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		length = Math.min(length, buffer.remaining());
+		buffer.get(bytes, offset, length);
+		return length;
+	}
+
+	@Override
+	public long skip(long n) {
+		int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public void close() {
+		buffer = CLOSED;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readLimit) {
+		buffer.mark();
+	}
+
+	@Override
+	public synchronized void reset() {
+		buffer.reset();
+	}
+}
@@ -1,6 +1,17 @@
 package gml4u.utils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -8,6 +19,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 
 public class FileUtils {
@@ -17,6 +30,35 @@ public class FileUtils {
 	public static final String GML_FILE_REGEX = "^.*\\.gml$";
 	public static final String XML_FILE_REGEX = "^.*\\.xml$";
 	public static final String GML_XML_FILE_REGEX = "^.*\\.(x|g)ml$";
+	public static final String GML_GZ_FILE_REGEX = "^.*\\.gml(\\.gz)?$";
+
+	public static final String GZIP_EXTENSION = ".gz";
+
+	private static final int BUFFER_SIZE = 8192;
+
+	// Mapped files can't be replaced nor deleted on Windows until the mapping is garbage collected
+	public static final long DEFAULT_MMAP_THRESHOLD = isWindows() ? -1 : 1024 * 1024;
+
+	private static volatile long mmapThreshold = DEFAULT_MMAP_THRESHOLD;
+
+	/**
+	 * Sets the size from which local files are memory mapped instead of read through a buffered stream.<br/>
+	 * Use a negative value to never map files (default on Windows).<br/>
+	 * Note: a mapping is only released once garbage collected, even after its stream is closed.
+	 * Until then, Windows doesn't allow to replace or delete the file (GmlSaver, GmlArchive rewrites).
+	 * @param threshold - long (bytes)
+	 */
+	public static void setMmapThreshold(long threshold) {
+		mmapThreshold = threshold;
+	}
+
+	/**
+	 * Returns the size from which local files are memory mapped
+	 * @return long (bytes)
+	 */
+	public static long getMmapThreshold() {
+		return mmapThreshold;
+	}
 	
 	/**
 	 * Lists and filters files inside the given folder using a regular expression
@@ -60,6 +102,188 @@ public class FileUtils {
 		return scanFolder(folder, GML_FILE_REGEX);
 	}
 	
+	/**
+	 * Opens the given location for reading<br/>
+	 * The location can either be a local file or an URL (http resource, ...)<br/>
+	 * Local files larger than the mmap threshold are memory mapped.<br/>
+	 * GZIP compressed content is detected and uncompressed on the fly.
+	 * @param location - String
+	 * @return InputStream
+	 * @throws IOException
+	 */
+	public static InputStream openInputStream(String location) throws IOException {
+		return decompress(openRawInputStream(location));
+	}
+
+	/**
+	 * Opens the given location for reading, as is
+	 * @param location - String
+	 * @return InputStream
+	 * @throws IOException
+	 */
+	private static InputStream openRawInputStream(String location) throws IOException {
+		File file = new File(location);
+		if (file.isFile()) {
+			long threshold = mmapThreshold;
+			long length = file.length();
+			if (threshold >= 0 && length >= threshold && length <= Integer.MAX_VALUE) {
+				return new ByteBufferInputStream(map(file));
+			}
+			return new BufferedInputStream(new FileInputStream(file));
+		}
+		return new BufferedInputStream(new URL(location).openStream());
+	}
+
+	/**
+	 * Returns a stream uncompressing the given one if it starts with the GZIP magic bytes,
+	 * or the given stream otherwise (buffered if it doesn't support mark)
+	 * @param in - InputStream
+	 * @return InputStream
+	 * @throws IOException
+	 */
+	public static InputStream decompress(InputStream in) throws IOException {
+		if (!in.markSupported()) {
+			in = new BufferedInputStream(in);
+		}
+		in.mark(2);
+		int b1 = in.read();
+		int b2 = in.read();
+		in.reset();
+		if (b1 != (GZIPInputStream.GZIP_MAGIC & 0xFF) || b2 != (GZIPInputStream.GZIP_MAGIC >> 8)) {
+			return in;
+		}
+		try {
+			return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE));
+		}
+		catch (IOException e) {
+			close(in);
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens the given file for writing, compressed with GZIP if its name ends with .gz
+	 * @param location - String
+	 * @return OutputStream
+	 * @throws IOException
+	 */
+	public static OutputStream openOutputStream(String location) throws IOException {
+		return openOutputStream(new File(location), isCompressed(location));
+	}
+
+	/**
+	 * Opens the given file for writing, compressed with GZIP if asked
+	 * @param file - File
+	 * @param compress - boolean
+	 * @return OutputStream
+	 * @throws IOException
+	 */
+	public static OutputStream openOutputStream(File file, boolean compress) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		if (compress) {
+			try {
+				out = new GZIPOutputStream(out, BUFFER_SIZE);
+			}
+			catch (IOException e) {
+				close(out);
+				throw e;
+			}
+		}
+		return new BufferedOutputStream(out, BUFFER_SIZE);
+	}
+
+	/**
+	 * Returns true if the given location has to be GZIP compressed (.gz extension)
+	 * @param location - String
+	 * @return boolean
+	 */
+	public static boolean isCompressed(String location) {
+		return null != location && location.toLowerCase().endsWith(GZIP_EXTENSION);
+	}
+
+	/**
+	 * Memory maps the given file, read only.<br/>
+	 * The mapping stays valid once the file is closed, until the buffer is garbage collected.
+	 * Buffers shouldn't be kept longer than needed: on Windows, the file can't be replaced nor deleted meanwhile.
+	 * @param file - File
+	 * @return MappedByteBuffer
+	 * @throws IOException
+	 */
+	public static MappedByteBuffer map(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Replaces the target file with the given temporary file, which is renamed.<br/>
+	 * Where renaming doesn't replace existing files (Windows), the target is first moved to a backup file
+	 * and moved back if the temporary file can't be put in place: this isn't atomic, readers may briefly find no file.<br/>
+	 * On failure the temporary file is deleted, unless neither file could be moved back in place:
+	 * both are then kept and their paths given in the IOException.
+	 * @param temp - File
+	 * @param target - File
+	 * @throws IOException
+	 */
+	public static void replace(File temp, File target) throws IOException {
+		if (temp.renameTo(target)) {
+			return;
+		}
+		File backup = new File(temp.getPath()+".bak");
+		// True when the temporary file holds the only copy of the new content
+		boolean keepTemp = false;
+		try {
+			if (!target.renameTo(backup)) {
+				throw new IOException("Couldn't replace "+target);
+			}
+			if (!temp.renameTo(target)) {
+				if (!backup.renameTo(target)) {
+					keepTemp = true;
+					throw new IOException("Couldn't replace "+target+": previous file kept as "+backup+", new one as "+temp);
+				}
+				throw new IOException("Couldn't replace "+target);
+			}
+			keepTemp = true;
+			if (!backup.delete()) {
+				LOGGER.log(Level.FINE, "Couldn't delete "+backup);
+			}
+		}
+		finally {
+			if (!keepTemp && !temp.delete()) {
+				LOGGER.log(Level.FINE, "Couldn't delete "+temp);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if running on Windows
+	 * @return boolean
+	 */
+	private static boolean isWindows() {
+		String os = System.getProperty("os.name");
+		return null != os && os.toLowerCase().startsWith("windows");
+	}
+
+	/**
+	 * Closes the given stream, reader or writer if not null, ignoring any error
+	 * @param closeable - Closeable
+	 */
+	public static void close(Closeable closeable) {
+		if (null != closeable) {
+			try {
+				closeable.close();
+			}
+			catch (IOException e) {
+				LOGGER.log(Level.FINEST, "Couldn't close stream: "+e.getMessage());
+			}
+		}
+	}
+
 	/**
 	 * Generates a random name for GML4U files
 	 * @return String
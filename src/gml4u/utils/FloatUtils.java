@@ -0,0 +1,249 @@
+package gml4u.utils;
+
+/**
+ * Parses and formats floats straight from/to a char buffer, without creating intermediate Strings.<br/>
+ * Parsing results are bit-identical to Float.parseFloat.<br/>
+ * Plain decimal numbers (as found in Gml point coordinates) whose digits fit in 53 bits
+ * and with a decimal exponent between -22 and 22 are computed directly, anything else
+ * (NaN, Infinity, hexadecimal, f/d suffixes, long mantissas, ...) is handed over to Float.parseFloat.<br/>
+ * Formatting rounds to a fixed number of decimals, see formatFloat.
+ */
+public class FloatUtils {
+
+	// Powers of ten which are exactly represented as doubles
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	/**
+	 * Formats floats using as many digits as Float.toString does
+	 */
+	public static final int FULL_PRECISION = -1;
+
+	/**
+	 * Largest number of decimals supported by formatFloat
+	 */
+	public static final int MAX_DECIMALS = 9;
+
+	/**
+	 * Buffer size needed by formatFloat
+	 */
+	public static final int FORMAT_LENGTH = 32;
+
+	// Largest rounded value formatted directly
+	private static final double MAX_ROUNDED = 1e18;
+
+	// Largest mantissa exactly represented as a double
+	private static final long MAX_EXACT_MANTISSA = (1L << 53) - 1;
+
+	// Mantissa bits a double has over a float
+	private static final int EXTRA_BITS = 52 - 23;
+	private static final long EXTRA_BITS_MASK = (1L << EXTRA_BITS) - 1;
+	private static final long HALF_FLOAT_ULP = 1L << (EXTRA_BITS - 1);
+
+	/**
+	 * Parses the float found in the given chars.<br/>
+	 * Same rules as Float.parseFloat: leading and trailing whitespaces are ignored.
+	 * @param chars - char[]
+	 * @param offset - int
+	 * @param length - int
+	 * @return float
+	 * @throws NumberFormatException
+	 */
+	public static float parseFloat(char[] chars, int offset, int length) {
+		int end = offset + length;
+		int i = offset;
+
+		// Trim, same as String.trim()
+		while (i < end && chars[i] <= ' ') {
+			i++;
+		}
+		while (end > i && chars[end-1] <= ' ') {
+			end--;
+		}
+
+		boolean negative = false;
+		if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+			negative = chars[i] == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;            // Significant digits read
+		int exponent = 0;
+		boolean hasDigits = false;
+		boolean tooManyDigits = false;
+
+		// Integer part
+		for (; i < end; i++) {
+			char c = chars[i];
+			if (c < '0' || c > '9') {
+				break;
+			}
+			hasDigits = true;
+			if (mantissa == 0 && c == '0') {
+				continue;
+			}
+			if (++digits > 18) {
+				tooManyDigits = true;
+			}
+			mantissa = mantissa * 10 + (c - '0');
+		}
+
+		// Fraction part
+		if (i < end && chars[i] == '.') {
+			i++;
+			for (; i < end; i++) {
+				char c = chars[i];
+				if (c < '0' || c > '9') {
+					break;
+				}
+				hasDigits = true;
+				exponent--;
+				if (mantissa == 0 && c == '0') {
+					continue;
+				}
+				if (++digits > 18) {
+					tooManyDigits = true;
+				}
+				mantissa = mantissa * 10 + (c - '0');
+			}
+		}
+
+		// Exponent part
+		if (hasDigits && i < end && (chars[i] == 'e' || chars[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+				negativeExponent = chars[i] == '-';
+				i++;
+			}
+			int value = 0;
+			boolean hasExponentDigits = false;
+			for (; i < end; i++) {
+				char c = chars[i];
+				if (c < '0' || c > '9') {
+					break;
+				}
+				hasExponentDigits = true;
+				if (value < 10000) {
+					value = value * 10 + (c - '0');
+				}
+			}
+			if (!hasExponentDigits) {
+				return fallback(chars, offset, length);
+			}
+			exponent += negativeExponent ? -value : value;
+		}
+
+		// Anything left (suffix, NaN, hexadecimal, garbage, ...) or out of the fast path range
+		if (!hasDigits || i != end || tooManyDigits || mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+			if (hasDigits && i == end && mantissa == 0) {
+				return negative ? -0f : 0f;
+			}
+			return fallback(chars, offset, length);
+		}
+
+		if (mantissa == 0) {
+			return negative ? -0f : 0f;
+		}
+
+		// Both operands are exact, so the double is correctly rounded
+		double d = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+
+		// Rounding the double to a float gives the same result as rounding the decimal value to a float
+		// unless the double lies exactly halfway between two floats
+		if ((Double.doubleToRawLongBits(d) & EXTRA_BITS_MASK) == HALF_FLOAT_ULP) {
+			return fallback(chars, offset, length);
+		}
+
+		float f = (float) d;
+		return negative ? -f : f;
+	}
+
+	/**
+	 * Parses the float found in the given chars using Float.parseFloat
+	 * @param chars - char[]
+	 * @param offset - int
+	 * @param length - int
+	 * @return float
+	 */
+	private static float fallback(char[] chars, int offset, int length) {
+		return Float.parseFloat(new String(chars, offset, length));
+	}
+
+	/**
+	 * Writes the given float, rounded to the given number of decimals, to the given chars
+	 * and returns the number of chars written.<br/>
+	 * Trailing zeros are dropped (0.5 rather than 0.500, 1 rather than 1.000), so the result is
+	 * within half a unit of the last decimal from the value.<br/>
+	 * Values too large to be rounded, NaN, Infinity, or FULL_PRECISION are written as Float.toString does.<br/>
+	 * The chars must have room for FORMAT_LENGTH chars from the offset.
+	 * @param value - float
+	 * @param decimals - int (between 0 and MAX_DECIMALS, or FULL_PRECISION)
+	 * @param chars - char[]
+	 * @param offset - int
+	 * @return int
+	 */
+	public static int formatFloat(float value, int decimals, char[] chars, int offset) {
+		if (decimals < 0 || decimals > MAX_DECIMALS) {
+			return fallback(value, chars, offset);
+		}
+		double scaled = Math.rint(value * POWERS_OF_TEN[decimals]);
+		// Also false for NaN
+		if (!(Math.abs(scaled) < MAX_ROUNDED)) {
+			return fallback(value, chars, offset);
+		}
+
+		long n = (long) scaled;
+		int i = offset;
+		if (n < 0) {
+			chars[i++] = '-';
+			n = -n;
+		}
+
+		// Trailing zeros
+		int fractionDigits = decimals;
+		while (fractionDigits > 0 && n % 10 == 0) {
+			n /= 10;
+			fractionDigits--;
+		}
+
+		int digits = 1;
+		for (long m = n; m >= 10; m /= 10) {
+			digits++;
+		}
+		int integerDigits = Math.max(1, digits - fractionDigits);
+		int end = i + integerDigits + (fractionDigits > 0 ? fractionDigits + 1 : 0);
+
+		// Written from the end
+		int pos = end;
+		for (int k=0; k<fractionDigits; k++) {
+			chars[--pos] = (char) ('0' + n % 10);
+			n /= 10;
+		}
+		if (fractionDigits > 0) {
+			chars[--pos] = '.';
+		}
+		do {
+			chars[--pos] = (char) ('0' + n % 10);
+			n /= 10;
+		} while (n > 0);
+
+		return end - offset;
+	}
+
+	/**
+	 * Writes the given float using Float.toString
+	 * @param value - float
+	 * @param chars - char[]
+	 * @param offset - int
+	 * @return int
+	 */
+	private static int fallback(float value, char[] chars, int offset) {
+		String s = Float.toString(value);
+		s.getChars(0, s.length(), chars, offset);
+		return s.length();
+	}
+}
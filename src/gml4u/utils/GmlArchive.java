@@ -0,0 +1,709 @@
+package gml4u.utils;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import toxi.geom.AABB;
+import toxi.geom.Vec3D;
+
+/**
+ * Single file holding many Gml, each one stored under an id using the XML or binary encoding.<br/>
+ * An index at the end of the file gives the position of each Gml along with a summary
+ * (client name, duration, stroke and point counts, bounding box), so entries can be listed
+ * without reading them, and read one by one from a memory mapping of the file.<br/>
+ * <br/>
+ * New entries are appended, replacing entries with the same id. Replaced and removed entries
+ * keep their room in the file until compact is called.<br/>
+ * The index is written by flush and close. Each Gml is also preceded by its own entry, so if the
+ * application stops before the index is written, the index is rebuilt when opening the archive.<br/>
+ * <br/>
+ * Usage:<br/>
+ * <code>
+ * GmlArchive archive = new GmlArchive("tags.gmla");<br/>
+ * archive.append("tag1", gml);<br/>
+ * Gml gml = archive.getGml("tag1", true);<br/>
+ * archive.close();
+ * </code>
+ */
+public class GmlArchive implements Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(GmlArchive.class.getName());
+
+	/**
+	 * Encodings
+	 */
+	public static final int XML = 0;
+	public static final int BINARY = 1;
+
+	private static final byte[] MAGIC = {'G', 'M', 'L', 'A'};
+	private static final byte[] ENTRY_MAGIC = {'G', 'M', 'L', 'E'};
+	private static final byte[] INDEX_MAGIC = {'G', 'M', 'L', 'I'};
+	private static final byte[] END_MAGIC = {'G', 'M', 'L', 'Z'};
+	private static final int VERSION = 1;
+	private static final int HEADER_LENGTH = MAGIC.length + 1;
+	private static final int FOOTER_LENGTH = 8 + END_MAGIC.length;
+
+	private final File file;
+	private final boolean readOnly;
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	private final Map<String, GmlArchiveEntry> entries = new LinkedHashMap<String, GmlArchiveEntry>();
+	private long dataEnd;           // End of the last entry, where the index starts
+	private long liveBytes;         // Room taken by the entries in the index
+	private boolean dirty;          // Index to be written
+	private ByteBuffer mapping;     // Read only mapping of the entries
+	private int encoding = BINARY;
+	private int precision = FloatUtils.FULL_PRECISION;
+	private final Buffer buffer = new Buffer();
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * Opens the archive at the given location for reading and appending, creating it if needed
+	 * @param location - String
+	 * @throws IOException
+	 */
+	public GmlArchive(String location) throws IOException {
+		this(location, false);
+	}
+
+	/**
+	 * Opens the archive at the given location, read only if asked (it must exist then)
+	 * @param location - String
+	 * @param readOnly - boolean
+	 * @throws IOException
+	 */
+	public GmlArchive(String location, boolean readOnly) throws IOException {
+		this.file = new File(location).getAbsoluteFile();
+		this.readOnly = readOnly;
+		if (!readOnly && !file.getParentFile().isDirectory()) {
+			FileUtils.ensureFolderExists(file.getParent());
+		}
+		open();
+	}
+
+	/**
+	 * Sets the encoding used for new entries (XML or BINARY, default BINARY)
+	 * @param encoding - int
+	 */
+	public synchronized void setEncoding(int encoding) {
+		if (encoding != XML && encoding != BINARY) {
+			throw new IllegalArgumentException("Unknown encoding: "+encoding);
+		}
+		this.encoding = encoding;
+	}
+
+	/**
+	 * Returns the encoding used for new entries
+	 * @return int
+	 */
+	public synchronized int getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Sets the number of decimals point values of new entries are rounded to
+	 * (see GmlWriter.setPrecision and GmlBinaryWriter). Default is FloatUtils.FULL_PRECISION.
+	 * @param precision - int
+	 */
+	public synchronized void setPrecision(int precision) {
+		this.precision = precision;
+	}
+
+	/**
+	 * Returns the number of decimals point values of new entries are rounded to
+	 * @return int
+	 */
+	public synchronized int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Returns the archive location
+	 * @return String
+	 */
+	public String getLocation() {
+		return file.getPath();
+	}
+
+	/**
+	 * Returns the number of entries
+	 * @return int
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns true if the archive holds an entry with the given id
+	 * @param id - String
+	 * @return boolean
+	 */
+	public synchronized boolean contains(String id) {
+		return entries.containsKey(id);
+	}
+
+	/**
+	 * Returns the entry with the given id, null if none
+	 * @param id - String
+	 * @return GmlArchiveEntry
+	 */
+	public synchronized GmlArchiveEntry getEntry(String id) {
+		return entries.get(id);
+	}
+
+	/**
+	 * Returns all entries, in the order they were added
+	 * @return List<GmlArchiveEntry>
+	 */
+	public synchronized List<GmlArchiveEntry> getEntries() {
+		return new ArrayList<GmlArchiveEntry>(entries.values());
+	}
+
+	/**
+	 * Returns all ids, in the order they were added
+	 * @return List<String>
+	 */
+	public synchronized List<String> getIds() {
+		return new ArrayList<String>(entries.keySet());
+	}
+
+	/**
+	 * Returns the room taken by replaced and removed entries (in bytes), given back by compact
+	 * @return long
+	 */
+	public synchronized long getWastedBytes() {
+		return dataEnd - HEADER_LENGTH - liveBytes;
+	}
+
+	/**
+	 * Returns the encoded Gml of the given entry, read from a memory mapping of the archive<br/>
+	 * Returns null if there is no such entry
+	 * @param id - String
+	 * @return InputStream
+	 * @throws IOException
+	 */
+	public InputStream openEntry(String id) throws IOException {
+		GmlArchiveEntry entry = getEntry(id);
+		return null == entry ? null : new ByteBufferInputStream(read(entry));
+	}
+
+	/**
+	 * Reads the Gml with the given id and normalizes it if asked (see GmlParsingHelper.getGml)<br/>
+	 * Returns null if there is no such entry or if it can't be read
+	 * @param id - String
+	 * @param normalize - boolean
+	 * @return Gml
+	 */
+	public Gml getGml(String id, boolean normalize) {
+		GmlArchiveEntry entry = getEntry(id);
+		if (null == entry) {
+			LOGGER.log(Level.WARNING, "No entry "+id+" in "+file);
+			return null;
+		}
+		Gml gml = null;
+		try {
+			InputStream in = new ByteBufferInputStream(read(entry));
+			if (entry.encoding == BINARY) {
+				gml = GmlBinaryReader.readGml(in);
+			}
+			else {
+				gml = GmlStaxParsingHelper.parseGml(in);
+			}
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Couldn't read "+id+" from "+file+". Reason: "+e.getMessage());
+		}
+		if (null == gml) {
+			return null;
+		}
+		gml.setFileName(id);
+		return GmlParsingHelper.cleanGml(gml, normalize);
+	}
+
+	/**
+	 * Reads and normalizes the Gml with the given id
+	 * @param id - String
+	 * @return Gml
+	 */
+	public Gml getGml(String id) {
+		return getGml(id, true);
+	}
+
+	/**
+	 * Appends a Gml under the given id, replacing any entry with the same id
+	 * @param id - String
+	 * @param gml - Gml
+	 * @return GmlArchiveEntry
+	 * @throws IOException
+	 */
+	public synchronized GmlArchiveEntry append(String id, Gml gml) throws IOException {
+		checkWritable();
+
+		// Encode the Gml first, its entry goes in front of it
+		buffer.reset();
+		if (encoding == BINARY) {
+			GmlBinaryWriter.write(gml, buffer, precision);
+		}
+		else {
+			GmlWriter.write(gml, buffer, precision);
+		}
+		byte[] data = buffer.toByteArray();
+		crc.reset();
+		crc.update(data);
+
+		Vec3D min = new Vec3D();
+		Vec3D max = new Vec3D();
+		if (gml.totalStrokes() > 0) {
+			AABB box = gml.getBoundingBox();
+			min = box.getMin();
+			max = box.getMax();
+		}
+		GmlArchiveEntry entry = new GmlArchiveEntry(id, encoding, 0, data.length, (int) crc.getValue(),
+				gml.client.getString(GmlClient.NAME), gml.getDuration(), gml.totalStrokes(), gml.totalPoints(), min, max);
+
+		// The header length doesn't depend on the offset
+		entry = entry.moveTo(dataEnd + getEntryHeader(entry).length);
+		byte[] header = getEntryHeader(entry);
+
+		// Entries are written over the previous index, which is now out of date
+		channel.position(dataEnd);
+		writeFully(channel, new ByteBuffer[] {ByteBuffer.wrap(header), ByteBuffer.wrap(data)});
+		dataEnd += header.length + data.length;
+		dirty = true;
+		put(entry);
+		return entry;
+	}
+
+	/**
+	 * Removes the entry with the given id, returns false if there was none<br/>
+	 * The room it takes is given back by compact
+	 * @param id - String
+	 * @return boolean
+	 * @throws IOException
+	 */
+	public synchronized boolean remove(String id) throws IOException {
+		checkWritable();
+		GmlArchiveEntry entry = entries.remove(id);
+		if (null == entry) {
+			return false;
+		}
+		liveBytes -= getRoom(entry);
+		dirty = true;
+		return true;
+	}
+
+	/**
+	 * Writes the index if entries were added or removed since it was last written
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		if (!dirty || readOnly) {
+			return;
+		}
+		writeIndex(channel, entries.values(), dataEnd);
+		dirty = false;
+	}
+
+	/**
+	 * Rewrites the archive without the room taken by replaced and removed entries<br/>
+	 * The archive is written to a temporary file which then replaces it (see FileUtils.replace).
+	 * If neither file can be moved back in place, both are kept, their paths given in the IOException, and the archive is closed.<br/>
+	 * Returns the number of bytes given back
+	 * @return long
+	 * @throws IOException
+	 */
+	public synchronized long compact() throws IOException {
+		checkWritable();
+		long before = dataEnd;
+		File temp = File.createTempFile("."+file.getName()+".", ".tmp", file.getParentFile());
+		// True once the temporary file is handed to FileUtils.replace
+		boolean keepTemp = false;
+		try {
+			RandomAccessFile out = new RandomAccessFile(temp, "rw");
+			List<GmlArchiveEntry> moved = new ArrayList<GmlArchiveEntry>(entries.size());
+			long position = HEADER_LENGTH;
+			try {
+				FileChannel target = out.getChannel();
+				target.write(ByteBuffer.wrap(getFileHeader()));
+				for (GmlArchiveEntry entry : entries.values()) {
+					GmlArchiveEntry copy = entry.moveTo(position + getEntryHeader(entry).length);
+					byte[] header = getEntryHeader(copy);
+					writeFully(target, new ByteBuffer[] {ByteBuffer.wrap(header), read(entry)});
+					position += header.length + entry.length;
+					moved.add(copy);
+				}
+				writeIndex(target, moved, position);
+				target.force(false);
+			}
+			finally {
+				FileUtils.close(out);
+			}
+
+			// Windows doesn't rename over files still open or mapped
+			closeFile();
+			// From here on, FileUtils.replace deletes or keeps the temporary file
+			keepTemp = true;
+			try {
+				FileUtils.replace(temp, file);
+			}
+			finally {
+				// Either the compacted file or the previous one, unless both were kept aside
+				if (file.isFile()) {
+					open();
+				}
+			}
+		}
+		finally {
+			if (!keepTemp && !temp.delete()) {
+				LOGGER.log(Level.FINE, "Couldn't delete "+temp);
+			}
+		}
+		LOGGER.log(Level.FINE, "Compacted "+file+", "+(before - dataEnd)+" bytes given back");
+		return before - dataEnd;
+	}
+
+	/**
+	 * Writes the index if needed and closes the archive
+	 */
+	public synchronized void close() {
+		if (null == raf) {
+			return;
+		}
+		try {
+			flush();
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Couldn't write the index of "+file+". Reason: "+e.getMessage());
+		}
+		closeFile();
+	}
+
+	/**
+	 * Opens the file and reads or rebuilds the index
+	 * @throws IOException
+	 */
+	private void open() throws IOException {
+		if (readOnly && !file.isFile()) {
+			throw new IOException(file+" not found");
+		}
+		raf = new RandomAccessFile(file, readOnly ? "r" : "rw");
+		channel = raf.getChannel();
+		try {
+			long size = channel.size();
+			if (size == 0 && !readOnly) {
+				channel.write(ByteBuffer.wrap(getFileHeader()));
+				dataEnd = HEADER_LENGTH;
+				return;
+			}
+			DataInputStream in = new DataInputStream(new ByteBufferInputStream(map(0, Math.min(size, HEADER_LENGTH))));
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if (!isMagic(magic, MAGIC)) {
+				throw new IOException("Not a Gml archive: "+file);
+			}
+			int version = in.readByte();
+			if (version != VERSION) {
+				throw new IOException("Unsupported Gml archive version: "+version);
+			}
+			entries.clear();
+			liveBytes = 0;
+			if (!readIndex(size)) {
+				LOGGER.log(Level.WARNING, "No valid index found in "+file+", rebuilding it");
+				rebuildIndex(size);
+			}
+		}
+		catch (IOException e) {
+			closeFile();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the index found at the end of the file, returns false if there is none
+	 * @param size - long
+	 * @return boolean
+	 * @throws IOException
+	 */
+	private boolean readIndex(long size) throws IOException {
+		if (size < HEADER_LENGTH + FOOTER_LENGTH) {
+			return false;
+		}
+		DataInputStream in = new DataInputStream(new ByteBufferInputStream(map(size - FOOTER_LENGTH, FOOTER_LENGTH)));
+		long indexStart = in.readLong();
+		byte[] magic = new byte[END_MAGIC.length];
+		in.readFully(magic);
+		if (!isMagic(magic, END_MAGIC) || indexStart < HEADER_LENGTH || indexStart > size - FOOTER_LENGTH) {
+			return false;
+		}
+
+		in = new DataInputStream(new ByteBufferInputStream(map(indexStart, size - FOOTER_LENGTH - indexStart)));
+		try {
+			magic = new byte[INDEX_MAGIC.length];
+			in.readFully(magic);
+			if (!isMagic(magic, INDEX_MAGIC)) {
+				return false;
+			}
+			int count = in.readInt();
+			for (int i=0; i<count; i++) {
+				GmlArchiveEntry entry = GmlArchiveEntry.read(in);
+				if (entry.offset + entry.length > indexStart) {
+					throw new IOException("Entry "+entry.id+" out of the archive");
+				}
+				put(entry);
+			}
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Invalid index in "+file+". Reason: "+e.getMessage());
+			entries.clear();
+			liveBytes = 0;
+			return false;
+		}
+		dataEnd = indexStart;
+		return true;
+	}
+
+	/**
+	 * Rebuilds the index from the entries found in front of each Gml, dropping an incomplete last one
+	 * @param size - long
+	 * @throws IOException
+	 */
+	private void rebuildIndex(long size) throws IOException {
+		long position = HEADER_LENGTH;
+		byte[] magic = new byte[ENTRY_MAGIC.length];
+		while (position + ENTRY_MAGIC.length + 4 <= size) {
+			DataInputStream in = new DataInputStream(new ByteBufferInputStream(map(position, size - position)));
+			in.readFully(magic);
+			if (!isMagic(magic, ENTRY_MAGIC)) {
+				break;
+			}
+			GmlArchiveEntry entry;
+			try {
+				in.readInt(); // Entry length
+				entry = GmlArchiveEntry.read(in);
+			}
+			catch (IOException e) {
+				break;
+			}
+			if (entry.offset + entry.length > size) {
+				break;
+			}
+			crc.reset();
+			ByteBuffer data = read(entry);
+			byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			crc.update(bytes);
+			if ((int) crc.getValue() != entry.checksum) {
+				LOGGER.log(Level.WARNING, "Corrupted entry "+entry.id+" in "+file);
+				break;
+			}
+			put(entry);
+			position = entry.offset + entry.length;
+		}
+		dataEnd = position;
+		dirty = true;
+		if (!readOnly) {
+			flush();
+		}
+	}
+
+	/**
+	 * Adds or replaces an entry in the index
+	 * @param entry - GmlArchiveEntry
+	 */
+	private void put(GmlArchiveEntry entry) {
+		GmlArchiveEntry previous = entries.remove(entry.id);
+		if (null != previous) {
+			liveBytes -= getRoom(previous);
+		}
+		entries.put(entry.id, entry);
+		liveBytes += getRoom(entry);
+	}
+
+	/**
+	 * Returns the room taken by an entry and its Gml, its header length being stored right before the Gml
+	 * @param entry - GmlArchiveEntry
+	 * @return long
+	 */
+	private long getRoom(GmlArchiveEntry entry) {
+		try {
+			return getEntryHeader(entry).length + entry.length;
+		}
+		catch (IOException e) {
+			return entry.length;
+		}
+	}
+
+	/**
+	 * Returns the encoded Gml of the given entry
+	 * @param entry - GmlArchiveEntry
+	 * @return ByteBuffer
+	 * @throws IOException
+	 */
+	private synchronized ByteBuffer read(GmlArchiveEntry entry) throws IOException {
+		if (null == raf) {
+			throw new IOException("Archive closed: "+file);
+		}
+		return map(entry.offset, entry.length);
+	}
+
+	/**
+	 * Returns a read only view of the given part of the file<br/>
+	 * The entries are mapped once as a whole, when they fit in a single mapping
+	 * @param position - long
+	 * @param length - long
+	 * @return ByteBuffer
+	 * @throws IOException
+	 */
+	private ByteBuffer map(long position, long length) throws IOException {
+		long end = position + length;
+		if (end <= Integer.MAX_VALUE) {
+			if (null == mapping || mapping.capacity() < end) {
+				mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.max(end, Math.min(channel.size(), Integer.MAX_VALUE)));
+			}
+			ByteBuffer view = mapping.duplicate();
+			view.position((int) position);
+			view.limit((int) end);
+			return view.slice();
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+	}
+
+	/**
+	 * Returns the file header
+	 * @return byte[]
+	 */
+	private static byte[] getFileHeader() {
+		byte[] header = new byte[HEADER_LENGTH];
+		System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+		header[MAGIC.length] = VERSION;
+		return header;
+	}
+
+	/**
+	 * Returns the entry header written in front of a Gml
+	 * @param entry - GmlArchiveEntry
+	 * @return byte[]
+	 * @throws IOException
+	 */
+	private static byte[] getEntryHeader(GmlArchiveEntry entry) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		DataOutputStream out = new DataOutputStream(bytes);
+		entry.write(out);
+		out.flush();
+		byte[] info = bytes.toByteArray();
+
+		byte[] header = new byte[ENTRY_MAGIC.length + 4 + info.length];
+		System.arraycopy(ENTRY_MAGIC, 0, header, 0, ENTRY_MAGIC.length);
+		ByteBuffer.wrap(header, ENTRY_MAGIC.length, 4).putInt(info.length);
+		System.arraycopy(info, 0, header, ENTRY_MAGIC.length + 4, info.length);
+		return header;
+	}
+
+	/**
+	 * Returns true if the bytes match the given magic
+	 * @param bytes - byte[]
+	 * @param magic - byte[]
+	 * @return boolean
+	 */
+	private static boolean isMagic(byte[] bytes, byte[] magic) {
+		for (int i=0; i<magic.length; i++) {
+			if (bytes[i] != magic[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the index and footer at the given position, the file ending right after them
+	 * @param target - FileChannel
+	 * @param index - Collection<GmlArchiveEntry>
+	 * @param position - long
+	 * @throws IOException
+	 */
+	private void writeIndex(FileChannel target, Collection<GmlArchiveEntry> index, long position) throws IOException {
+		buffer.reset();
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.write(INDEX_MAGIC);
+		out.writeInt(index.size());
+		for (GmlArchiveEntry entry : index) {
+			entry.write(out);
+		}
+		out.writeLong(position);
+		out.write(END_MAGIC);
+		out.flush();
+
+		target.position(position);
+		writeFully(target, new ByteBuffer[] {ByteBuffer.wrap(buffer.getBuffer(), 0, buffer.size())});
+		target.truncate(position + buffer.size());
+	}
+
+	/**
+	 * Writes the buffers at the channel position
+	 * @param target - FileChannel
+	 * @param buffers - ByteBuffer[]
+	 * @throws IOException
+	 */
+	private static void writeFully(FileChannel target, ByteBuffer[] buffers) throws IOException {
+		ByteBuffer last = buffers[buffers.length - 1];
+		while (last.hasRemaining()) {
+			target.write(buffers);
+		}
+	}
+
+	/**
+	 * Throws an IOException if the archive can't be changed
+	 * @throws IOException
+	 */
+	private void checkWritable() throws IOException {
+		if (null == raf) {
+			throw new IOException("Archive closed: "+file);
+		}
+		if (readOnly) {
+			throw new IOException("Archive opened read only: "+file);
+		}
+	}
+
+	/**
+	 * Closes the file, the mapping being released once garbage collected
+	 */
+	private void closeFile() {
+		FileUtils.close(raf);
+		raf = null;
+		channel = null;
+		mapping = null;
+	}
+
+	/**
+	 * Reusable ByteArrayOutputStream giving access to its buffer
+	 */
+	private static class Buffer extends ByteArrayOutputStream {
+
+		Buffer() {
+			super(8192);
+		}
+
+		byte[] getBuffer() {
+			return buf;
+		}
+	}
+}
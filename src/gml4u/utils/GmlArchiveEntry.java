@@ -0,0 +1,129 @@
+package gml4u.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import toxi.geom.AABB;
+import toxi.geom.Vec3D;
+
+/**
+ * Index entry of a GmlArchive: where a Gml is stored and a summary of it,
+ * available without reading the Gml itself.
+ */
+public class GmlArchiveEntry {
+
+	// Leaving this public as GmlHeader does
+	public final String id;
+	public final int encoding;      // GmlArchive.XML or GmlArchive.BINARY
+	public final long offset;       // Position of the encoded Gml in the archive
+	public final int length;        // Size of the encoded Gml (in bytes)
+	public final int checksum;      // CRC32 of the encoded Gml
+	public final String clientName; // Empty if unknown
+	public final float duration;
+	public final int totalStrokes;
+	public final int totalPoints;
+	public final Vec3D min;         // Bounding box
+	public final Vec3D max;
+
+	/**
+	 * Creates a new GmlArchiveEntry
+	 * @param id - String
+	 * @param encoding - int
+	 * @param offset - long
+	 * @param length - int
+	 * @param checksum - int
+	 * @param clientName - String
+	 * @param duration - float
+	 * @param totalStrokes - int
+	 * @param totalPoints - int
+	 * @param min - Vec3D
+	 * @param max - Vec3D
+	 */
+	public GmlArchiveEntry(String id, int encoding, long offset, int length, int checksum, String clientName,
+			float duration, int totalStrokes, int totalPoints, Vec3D min, Vec3D max) {
+		this.id = id;
+		this.encoding = encoding;
+		this.offset = offset;
+		this.length = length;
+		this.checksum = checksum;
+		this.clientName = null == clientName ? "" : clientName;
+		this.duration = duration;
+		this.totalStrokes = totalStrokes;
+		this.totalPoints = totalPoints;
+		this.min = new Vec3D(min);
+		this.max = new Vec3D(max);
+	}
+
+	/**
+	 * Returns a copy of this entry stored at another offset
+	 * @param offset - long
+	 * @return GmlArchiveEntry
+	 */
+	GmlArchiveEntry moveTo(long offset) {
+		return new GmlArchiveEntry(id, encoding, offset, length, checksum, clientName, duration, totalStrokes, totalPoints, min, max);
+	}
+
+	/**
+	 * Returns the bounding box of the Gml
+	 * @return AABB
+	 */
+	public AABB getBoundingBox() {
+		return AABB.fromMinMax(min, max);
+	}
+
+	/**
+	 * Writes the entry
+	 * @param out - DataOutput
+	 * @throws IOException
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeUTF(id);
+		out.writeByte(encoding);
+		out.writeLong(offset);
+		out.writeInt(length);
+		out.writeInt(checksum);
+		out.writeUTF(clientName);
+		out.writeFloat(duration);
+		out.writeInt(totalStrokes);
+		out.writeInt(totalPoints);
+		out.writeFloat(min.x);
+		out.writeFloat(min.y);
+		out.writeFloat(min.z);
+		out.writeFloat(max.x);
+		out.writeFloat(max.y);
+		out.writeFloat(max.z);
+	}
+
+	/**
+	 * Reads an entry written by write(DataOutput)
+	 * @param in - DataInput
+	 * @return GmlArchiveEntry
+	 * @throws IOException
+	 */
+	static GmlArchiveEntry read(DataInput in) throws IOException {
+		String id = in.readUTF();
+		int encoding = in.readByte();
+		long offset = in.readLong();
+		int length = in.readInt();
+		int checksum = in.readInt();
+		String clientName = in.readUTF();
+		float duration = in.readFloat();
+		int totalStrokes = in.readInt();
+		int totalPoints = in.readInt();
+		Vec3D min = new Vec3D(in.readFloat(), in.readFloat(), in.readFloat());
+		Vec3D max = new Vec3D(in.readFloat(), in.readFloat(), in.readFloat());
+		if (encoding != GmlArchive.XML && encoding != GmlArchive.BINARY) {
+			throw new IOException("Unknown encoding "+encoding+" for "+id);
+		}
+		if (offset < 0 || length < 0) {
+			throw new IOException("Invalid position for "+id);
+		}
+		return new GmlArchiveEntry(id, encoding, offset, length, checksum, clientName, duration, totalStrokes, totalPoints, min, max);
+	}
+
+	@Override
+	public String toString() {
+		return id+" ("+totalStrokes+" strokes, "+totalPoints+" points, "+length+" bytes)";
+	}
+}
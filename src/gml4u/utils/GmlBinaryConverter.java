@@ -0,0 +1,96 @@
+package gml4u.utils;
+
+import gml4u.model.GmlHeader;
+import gml4u.model.GmlStroke;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Converts Gml files between the XML and binary formats, stroke by stroke.<br/>
+ * As with GmlStrokeReader, memory use only depends on the largest stroke.<br/>
+ * Files ending with .gz are read and written GZIP compressed.
+ */
+public class GmlBinaryConverter {
+
+	private static final Logger LOGGER = Logger.getLogger(GmlBinaryConverter.class.getName());
+
+	/**
+	 * Converts a Gml XML file to the binary format<br/>
+	 * Point values are rounded to the given number of decimals, or kept bit for bit using GmlBinaryWriter.LOSSLESS
+	 * @param gmlFile - String
+	 * @param binaryFile - String
+	 * @param precision - int
+	 * @return boolean
+	 */
+	public static boolean toBinary(String gmlFile, String binaryFile, int precision) {
+		GmlStrokeReader reader = null;
+		OutputStream out = null;
+		try {
+			reader = new GmlStrokeReader(gmlFile);
+			out = FileUtils.openOutputStream(binaryFile);
+			GmlBinaryWriter writer = new GmlBinaryWriter(out, precision);
+			GmlHeader header = reader.getHeader();
+			writer.writeStart(header.client, header.environment);
+			for (GmlStroke stroke : reader) {
+				writer.writeStroke(stroke);
+			}
+			writer.writeEnd();
+			out.close();
+			out = null;
+			return true;
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Couldn't convert "+gmlFile+". Reason: "+e.getMessage());
+		}
+		catch (RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Couldn't convert "+gmlFile+". Reason: "+e.getMessage());
+		}
+		finally {
+			FileUtils.close(reader);
+			FileUtils.close(out);
+		}
+		return false;
+	}
+
+	/**
+	 * Converts a binary Gml file to XML<br/>
+	 * Point values are written with the given number of decimals, or full float precision using FloatUtils.FULL_PRECISION
+	 * @param binaryFile - String
+	 * @param gmlFile - String
+	 * @param precision - int
+	 * @return boolean
+	 */
+	public static boolean toXml(String binaryFile, String gmlFile, int precision) {
+		GmlBinaryReader reader = null;
+		OutputStream out = null;
+		try {
+			reader = new GmlBinaryReader(binaryFile);
+			out = FileUtils.openOutputStream(gmlFile);
+			GmlWriter writer = new GmlWriter(out);
+			writer.setPrecision(precision);
+			GmlHeader header = reader.getHeader();
+			writer.writeStart(header.client, header.environment);
+			for (GmlStroke stroke : reader) {
+				writer.writeStroke(stroke);
+			}
+			writer.writeEnd();
+			out.close();
+			out = null;
+			return true;
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Couldn't convert "+binaryFile+". Reason: "+e.getMessage());
+		}
+		catch (RuntimeException e) {
+			LOGGER.log(Level.WARNING, "Couldn't convert "+binaryFile+". Reason: "+e.getMessage());
+		}
+		finally {
+			FileUtils.close(reader);
+			FileUtils.close(out);
+		}
+		return false;
+	}
+}
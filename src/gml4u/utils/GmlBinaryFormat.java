@@ -0,0 +1,74 @@
+package gml4u.utils;
+
+/**
+ * Constants of the binary Gml format, shared by GmlBinaryWriter and GmlBinaryReader.<br/>
+ * <br/>
+ * Layout (version 1), numbers are unsigned LEB128 varints unless noted, signed ones being zigzag encoded first:<br/>
+ * - magic "GMLB", version byte, flags byte (FLAG_LOSSLESS), precision byte (quantized files only)<br/>
+ * - client dictionary<br/>
+ * - environment: presence byte, field mask, Vec3D fields as raw floats, screenScale as raw float, realScaleUnit String<br/>
+ * - strokes, each one starting with STROKE and the whole list ending with END:<br/>
+ * &nbsp;&nbsp;flags byte, signed layer, brush dictionary, info dictionary (if FLAG_INFO), point field mask byte,
+ * number of points, points<br/>
+ * - each point value is the signed difference with the same value of the previous point (0 for the first one),
+ * either of its quantized value (round(value * 10^precision)) or of its raw float bits (lossless files and strokes)<br/>
+ * <br/>
+ * Dictionaries: number of entries, then each key as a String, a type byte and the value.
+ * Strings are a byte length followed by UTF-8 bytes.
+ */
+final class GmlBinaryFormat {
+
+	static final byte[] MAGIC = {'G', 'M', 'L', 'B'};
+	static final int VERSION = 1;
+
+	// File flags
+	static final int FLAG_LOSSLESS = 1;
+
+	// Strokes
+	static final int END = 0;
+	static final int STROKE = 1;
+
+	// Stroke flags
+	static final int STROKE_NOT_DRAWING = 1;
+	static final int STROKE_LOSSLESS = 2;
+	static final int STROKE_INFO = 4;
+
+	// Point fields, besides x and y which are always there
+	static final int FIELD_Z = 1;
+	static final int FIELD_TIME = 2;
+	static final int FIELD_ROTATION = 4;
+	static final int FIELD_DIRECTION = 8;
+	static final int FIELD_PRESSURE = 16;
+	static final int FIELD_THICKNESS = 32;
+
+	// Environment fields
+	static final int ENV_OFFSET = 1;
+	static final int ENV_ROTATION = 2;
+	static final int ENV_UP = 4;
+	static final int ENV_SCREEN_BOUNDS = 8;
+	static final int ENV_ORIGIN = 16;
+	static final int ENV_REAL_SCALE = 32;
+	static final int ENV_ORIGINAL_ORIGIN_SHIFT = 64;
+	static final int ENV_ORIGINAL_ASPECT_RATIO = 128;
+	static final int ENV_NORMALIZED_ORIGIN_SHIFT = 256;
+	static final int ENV_NORMALIZED_ASPECT_RATIO = 512;
+	static final int ENV_REAL_SCALE_UNIT = 1024;
+
+	// Dictionary value types
+	static final int TYPE_STRING = 0;
+	static final int TYPE_FLOAT = 1;
+	static final int TYPE_INT = 2;
+	static final int TYPE_LONG = 3;
+	static final int TYPE_VEC3D = 4;
+	static final int TYPE_VEC2D = 5;
+	static final int TYPE_LOCATION = 6;
+
+	// Largest String, dictionary or stroke accepted when reading
+	static final int MAX_LENGTH = 1 << 24;
+
+	// Largest quantized value
+	static final double MAX_QUANTIZED = 1L << 53;
+
+	private GmlBinaryFormat() {
+	}
+}
@@ -0,0 +1,515 @@
+package gml4u.utils;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlBrush;
+import gml4u.model.GmlClient;
+import gml4u.model.GmlEnvironment;
+import gml4u.model.GmlGenericContainer;
+import gml4u.model.GmlHeader;
+import gml4u.model.GmlInfo;
+import gml4u.model.GmlLocation;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlStroke;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import toxi.geom.Vec2D;
+import toxi.geom.Vec3D;
+
+/**
+ * Reads Gml written by GmlBinaryWriter, stroke by stroke.<br/>
+ * Strokes are returned as found in the file: no normalization is applied.<br/>
+ * <br/>
+ * Usage:<br/>
+ * <code>
+ * GmlBinaryReader reader = new GmlBinaryReader(file);<br/>
+ * GmlHeader header = reader.getHeader();<br/>
+ * for (GmlStroke stroke : reader) { ... }<br/>
+ * reader.close();
+ * </code>
+ */
+public class GmlBinaryReader implements Iterator<GmlStroke>, Iterable<GmlStroke>, Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(GmlBinaryReader.class.getName());
+
+	private InputStream in;
+	private final byte[] buffer = new byte[256];
+	private double scale = 1;
+	private boolean lossless;
+	private boolean hasNext;
+	private GmlHeader header;
+
+	/**
+	 * Creates a new GmlBinaryReader reading from the given file location
+	 * @param file - String
+	 * @throws IOException
+	 */
+	public GmlBinaryReader(String file) throws IOException {
+		this(FileUtils.openInputStream(file));
+	}
+
+	/**
+	 * Creates a new GmlBinaryReader reading from the given InputStream<br/>
+	 * The stream will be closed along with the reader
+	 * @param in - InputStream
+	 * @throws IOException
+	 */
+	public GmlBinaryReader(InputStream in) throws IOException {
+		this.in = new BufferedInputStream(in, 8192);
+		try {
+			readStart();
+			hasNext = readMarker();
+		}
+		catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates a new GmlBinaryReader for single strokes stored without file header (see GmlJournal)
+	 * @param in - InputStream
+	 * @param lossless - boolean
+	 */
+	private GmlBinaryReader(InputStream in, boolean lossless) {
+		this.in = in;
+		this.lossless = lossless;
+	}
+
+	/**
+	 * Reads a stroke written by GmlBinaryWriter.writeStrokeRecord
+	 * @param in - InputStream
+	 * @return GmlStroke
+	 * @throws IOException
+	 */
+	static GmlStroke readStrokeRecord(InputStream in) throws IOException {
+		return new GmlBinaryReader(in, true).readStrokeData();
+	}
+
+	/**
+	 * Reads the whole Gml from the given file location<br/>
+	 * Returns null if the file can't be read
+	 * @param file - String
+	 * @return Gml
+	 */
+	public static Gml readGml(String file) {
+		try {
+			return readGml(FileUtils.openInputStream(file));
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Couldn't read "+file+". Reason: "+e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the whole Gml from the given InputStream, which is closed afterwards
+	 * @param in - InputStream
+	 * @return Gml
+	 * @throws IOException
+	 */
+	public static Gml readGml(InputStream in) throws IOException {
+		GmlBinaryReader reader = new GmlBinaryReader(in);
+		try {
+			GmlHeader header = reader.getHeader();
+			Gml gml = new Gml();
+			gml.client = header.client;
+			gml.environment = header.environment;
+			while (reader.hasNext()) {
+				gml.addStroke(reader.readStroke());
+			}
+			return gml;
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Returns the header (client and environment) found before the first stroke
+	 * @return GmlHeader
+	 */
+	public GmlHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * Returns this reader, which can only be iterated once
+	 * @return Iterator<GmlStroke>
+	 */
+	public Iterator<GmlStroke> iterator() {
+		return this;
+	}
+
+	/**
+	 * Returns true if there is another stroke to read
+	 * @return boolean
+	 */
+	public boolean hasNext() {
+		return hasNext;
+	}
+
+	/**
+	 * Reads and returns the next stroke
+	 * @return GmlStroke
+	 */
+	public GmlStroke next() {
+		if (!hasNext) {
+			throw new NoSuchElementException();
+		}
+		try {
+			return readStroke();
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Stopped reading strokes. Reason: "+e.getMessage());
+			close();
+			throw new NoSuchElementException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Not supported
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException("Strokes cannot be removed from a GmlBinaryReader");
+	}
+
+	/**
+	 * Closes the reader and the underlying stream
+	 */
+	public void close() {
+		hasNext = false;
+		FileUtils.close(in);
+	}
+
+	/**
+	 * Reads the file header, client and environment
+	 * @throws IOException
+	 */
+	private void readStart() throws IOException {
+		readFully(GmlBinaryFormat.MAGIC.length);
+		for (int i=0; i<GmlBinaryFormat.MAGIC.length; i++) {
+			if (buffer[i] != GmlBinaryFormat.MAGIC[i]) {
+				throw new IOException("Not a binary Gml file");
+			}
+		}
+		int version = readByte();
+		if (version != GmlBinaryFormat.VERSION) {
+			throw new IOException("Unsupported binary Gml version: "+version);
+		}
+		int flags = readByte();
+		lossless = (flags & GmlBinaryFormat.FLAG_LOSSLESS) != 0;
+		if (!lossless) {
+			int precision = readByte();
+			if (precision > FloatUtils.MAX_DECIMALS) {
+				throw new IOException("Invalid precision: "+precision);
+			}
+			scale = Math.pow(10, precision);
+		}
+
+		GmlClient client = new GmlClient();
+		readDictionary(client);
+		header = new GmlHeader(client, readEnvironment());
+	}
+
+	/**
+	 * Reads the next stroke marker and returns true if a stroke follows
+	 * @return boolean
+	 * @throws IOException
+	 */
+	private boolean readMarker() throws IOException {
+		int marker = readByte();
+		if (marker == GmlBinaryFormat.END) {
+			return false;
+		}
+		if (marker != GmlBinaryFormat.STROKE) {
+			throw new IOException("Invalid stroke marker: "+marker);
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a stroke and the marker following it
+	 * @return GmlStroke
+	 * @throws IOException
+	 */
+	private GmlStroke readStroke() throws IOException {
+		GmlStroke stroke = readStrokeData();
+		hasNext = readMarker();
+		return stroke;
+	}
+
+	/**
+	 * Reads the flags, layer, brush, info and points of a stroke
+	 * @return GmlStroke
+	 * @throws IOException
+	 */
+	private GmlStroke readStrokeData() throws IOException {
+		int flags = readByte();
+		boolean losslessStroke = lossless || (flags & GmlBinaryFormat.STROKE_LOSSLESS) != 0;
+
+		GmlStroke stroke = new GmlStroke((int) readSigned());
+		stroke.setIsDrawing((flags & GmlBinaryFormat.STROKE_NOT_DRAWING) == 0);
+
+		GmlBrush brush = new GmlBrush();
+		readDictionary(brush);
+		stroke.setBrush(brush);
+		if ((flags & GmlBinaryFormat.STROKE_INFO) != 0) {
+			GmlInfo info = new GmlInfo();
+			readDictionary(info);
+			stroke.setInfo(info);
+		}
+
+		int fields = readByte();
+		int size = readLength();
+		List<GmlPoint> points = new ArrayList<GmlPoint>(Math.min(size, 4096));
+		long[] previous = new long[14];
+		for (int n=0; n<size; n++) {
+			GmlPoint point = new GmlPoint();
+			int i = 0;
+			point.x = readValue(previous, i++, losslessStroke);
+			point.y = readValue(previous, i++, losslessStroke);
+			if ((fields & GmlBinaryFormat.FIELD_Z) != 0) {
+				point.z = readValue(previous, i++, losslessStroke);
+			}
+			if ((fields & GmlBinaryFormat.FIELD_TIME) != 0) {
+				point.time = readValue(previous, i++, losslessStroke);
+			}
+			if ((fields & GmlBinaryFormat.FIELD_ROTATION) != 0) {
+				point.rotation.x = readValue(previous, i++, losslessStroke);
+				point.rotation.y = readValue(previous, i++, losslessStroke);
+				point.rotation.z = readValue(previous, i++, losslessStroke);
+			}
+			if ((fields & GmlBinaryFormat.FIELD_DIRECTION) != 0) {
+				point.direction.x = readValue(previous, i++, losslessStroke);
+				point.direction.y = readValue(previous, i++, losslessStroke);
+				point.direction.z = readValue(previous, i++, losslessStroke);
+			}
+			if ((fields & GmlBinaryFormat.FIELD_PRESSURE) != 0) {
+				point.preasure = readValue(previous, i++, losslessStroke);
+			}
+			if ((fields & GmlBinaryFormat.FIELD_THICKNESS) != 0) {
+				point.thickness = readValue(previous, i, losslessStroke);
+			}
+			points.add(point);
+		}
+		stroke.addPoints(points);
+		return stroke;
+	}
+
+	/**
+	 * Reads a value stored as a difference with the previous one at the given index
+	 * @param previous - long[]
+	 * @param index - int
+	 * @param lossless - boolean
+	 * @return float
+	 * @throws IOException
+	 */
+	private float readValue(long[] previous, int index, boolean lossless) throws IOException {
+		long current = previous[index] + readSigned();
+		previous[index] = current;
+		if (lossless) {
+			return Float.intBitsToFloat((int) current);
+		}
+		return (float) (current / scale);
+	}
+
+	/**
+	 * Reads the environment, null if there is none
+	 * @return GmlEnvironment
+	 * @throws IOException
+	 */
+	private GmlEnvironment readEnvironment() throws IOException {
+		if (readByte() == 0) {
+			return null;
+		}
+		int mask = (int) readUnsigned();
+		Vec3D[] vectors = new Vec3D[10];
+		for (int i=0; i<vectors.length; i++) {
+			if ((mask & (1 << i)) != 0) {
+				vectors[i] = readVec3D();
+			}
+		}
+
+		GmlEnvironment environment = new GmlEnvironment(new Vec3D(1, 1, 1));
+		environment.offset = vectors[0];
+		environment.rotation = vectors[1];
+		environment.up = vectors[2];
+		environment.screenBounds = vectors[3];
+		environment.origin = vectors[4];
+		environment.realScale = vectors[5];
+		environment.originalOriginShift = vectors[6];
+		environment.originalAspectRatio = vectors[7];
+		environment.normalizedOriginShift = vectors[8];
+		environment.normalizedAspectRatio = vectors[9];
+		environment.screenScale = readFloat();
+		if ((mask & GmlBinaryFormat.ENV_REAL_SCALE_UNIT) != 0) {
+			environment.realScaleUnit = readString();
+		}
+		return environment;
+	}
+
+	/**
+	 * Reads parameters into the given client, brush or info
+	 * @param container - GmlGenericContainer
+	 * @throws IOException
+	 */
+	private void readDictionary(GmlGenericContainer container) throws IOException {
+		int size = readLength();
+		for (int i=0; i<size; i++) {
+			String key = readString();
+			int type = readByte();
+			switch (type) {
+			case GmlBinaryFormat.TYPE_STRING:
+				container.set(key, readString());
+				break;
+			case GmlBinaryFormat.TYPE_FLOAT:
+				container.set(key, readFloat());
+				break;
+			case GmlBinaryFormat.TYPE_INT:
+				container.set(key, (int) readSigned());
+				break;
+			case GmlBinaryFormat.TYPE_LONG:
+				container.set(key, readSigned());
+				break;
+			case GmlBinaryFormat.TYPE_VEC3D:
+				container.set(key, readVec3D());
+				break;
+			case GmlBinaryFormat.TYPE_VEC2D:
+				float x = readFloat();
+				container.set(key, new Vec2D(x, readFloat()));
+				break;
+			case GmlBinaryFormat.TYPE_LOCATION:
+				long lat = readSigned();
+				long lon = readSigned();
+				container.set(key, new GmlLocation(lat, lon, readSigned()));
+				break;
+			default:
+				throw new IOException("Unknown value type "+type+" for "+key);
+			}
+		}
+	}
+
+	/**
+	 * Reads a vector stored as three raw floats
+	 * @return Vec3D
+	 * @throws IOException
+	 */
+	private Vec3D readVec3D() throws IOException {
+		float x = readFloat();
+		float y = readFloat();
+		return new Vec3D(x, y, readFloat());
+	}
+
+	/**
+	 * Reads the raw bits of a float, big endian
+	 * @return float
+	 * @throws IOException
+	 */
+	private float readFloat() throws IOException {
+		readFully(4);
+		int bits = (buffer[0] & 0xFF) << 24 | (buffer[1] & 0xFF) << 16 | (buffer[2] & 0xFF) << 8 | (buffer[3] & 0xFF);
+		return Float.intBitsToFloat(bits);
+	}
+
+	/**
+	 * Reads a String stored as its UTF-8 length and bytes
+	 * @return String
+	 * @throws IOException
+	 */
+	private String readString() throws IOException {
+		int length = readLength();
+		byte[] bytes = length <= buffer.length ? buffer : new byte[length];
+		readFully(bytes, length);
+		return new String(bytes, 0, length, "UTF-8");
+	}
+
+	/**
+	 * Reads a length or count, checking it against GmlBinaryFormat.MAX_LENGTH
+	 * @return int
+	 * @throws IOException
+	 */
+	private int readLength() throws IOException {
+		long length = readUnsigned();
+		if (length < 0 || length > GmlBinaryFormat.MAX_LENGTH) {
+			throw new IOException("Invalid length: "+length);
+		}
+		return (int) length;
+	}
+
+	/**
+	 * Reads a zigzag encoded signed value
+	 * @return long
+	 * @throws IOException
+	 */
+	private long readSigned() throws IOException {
+		long value = readUnsigned();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Reads an unsigned value stored 7 bits at a time, lowest bits first
+	 * @return long
+	 * @throws IOException
+	 */
+	private long readUnsigned() throws IOException {
+		long value = 0;
+		for (int shift=0; shift<64; shift+=7) {
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed number");
+	}
+
+	/**
+	 * Reads a single byte
+	 * @return int
+	 * @throws IOException
+	 */
+	private int readByte() throws IOException {
+		int b = in.read();
+		if (b < 0) {
+			throw new EOFException("Unexpected end of binary Gml");
+		}
+		return b;
+	}
+
+	/**
+	 * Reads the given number of bytes into the buffer
+	 * @param length - int
+	 * @throws IOException
+	 */
+	private void readFully(int length) throws IOException {
+		readFully(buffer, length);
+	}
+
+	/**
+	 * Reads the given number of bytes into the given array
+	 * @param bytes - byte[]
+	 * @param length - int
+	 * @throws IOException
+	 */
+	private void readFully(byte[] bytes, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			int read = in.read(bytes, offset, length - offset);
+			if (read < 0) {
+				throw new EOFException("Unexpected end of binary Gml");
+			}
+			offset += read;
+		}
+	}
+}
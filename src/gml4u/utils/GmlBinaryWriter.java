@@ -0,0 +1,486 @@
+package gml4u.utils;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlClient;
+import gml4u.model.GmlEnvironment;
+import gml4u.model.GmlGenericContainer;
+import gml4u.model.GmlLocation;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlPointCursor;
+import gml4u.model.GmlStroke;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import toxi.geom.Vec2D;
+import toxi.geom.Vec3D;
+
+/**
+ * Writes Gml in a compact binary format (see GmlBinaryFormat), read back by GmlBinaryReader.<br/>
+ * Point values are delta encoded, either quantized to a number of decimals or, in lossless mode, as raw float bits
+ * so they are read back bit for bit. Header, brush and info values are always kept as is.<br/>
+ * As GmlWriter does, strokes can be written one by one and memory use doesn't depend on the number of points.<br/>
+ * <br/>
+ * Usage:<br/>
+ * <code>
+ * GmlBinaryWriter.save(gml, "tag.gmlb", 4);
+ * </code>
+ */
+public class GmlBinaryWriter {
+
+	private static final Logger LOGGER = Logger.getLogger(GmlBinaryWriter.class.getName());
+
+	/**
+	 * Precision used to keep point values bit for bit
+	 */
+	public static final int LOSSLESS = FloatUtils.FULL_PRECISION;
+
+	private final OutputStream out;
+	private final int precision;
+	private final double scale;
+	private final byte[] buffer = new byte[10];
+	private final GmlPointCursor cursor = new GmlPointCursor();
+	private boolean started;
+	private boolean ended;
+
+	/**
+	 * Creates a new GmlBinaryWriter writing to the given OutputStream.<br/>
+	 * Point values are rounded to the given number of decimals (between 0 and FloatUtils.MAX_DECIMALS),
+	 * or kept bit for bit if precision is LOSSLESS.
+	 * @param out - OutputStream
+	 * @param precision - int
+	 */
+	public GmlBinaryWriter(OutputStream out, int precision) {
+		this.out = new BufferedOutputStream(out, 8192);
+		this.precision = precision < 0 ? LOSSLESS : Math.min(precision, FloatUtils.MAX_DECIMALS);
+		this.scale = Math.pow(10, Math.max(0, this.precision));
+	}
+
+	/**
+	 * Writes the whole Gml to the given OutputStream, which is flushed but not closed
+	 * @param gml - Gml
+	 * @param out - OutputStream
+	 * @param precision - int (or LOSSLESS)
+	 * @throws IOException
+	 */
+	public static void write(Gml gml, OutputStream out, int precision) throws IOException {
+		new GmlBinaryWriter(out, precision).write(gml);
+	}
+
+	/**
+	 * Saves the Gml to the given location in the binary format.<br/>
+	 * The file is GZIP compressed if its name ends with .gz
+	 * @param gml - Gml
+	 * @param location - String
+	 * @param precision - int (or LOSSLESS)
+	 * @return boolean
+	 */
+	public static boolean save(Gml gml, String location, int precision) {
+		OutputStream out = null;
+		try {
+			out = FileUtils.openOutputStream(location);
+			write(gml, out, precision);
+			// Also finishes the compressed stream, if any
+			out.close();
+			out = null;
+			return true;
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Saving failed. Reason: "+ e.getMessage());
+		}
+		finally {
+			FileUtils.close(out);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of decimals point values are rounded to, or LOSSLESS
+	 * @return int
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Writes the whole Gml
+	 * @param gml - Gml
+	 * @throws IOException
+	 */
+	public void write(Gml gml) throws IOException {
+		writeStart(gml.client, gml.environment);
+		for (GmlStroke stroke : gml.getStrokes()) {
+			writeStroke(stroke);
+		}
+		writeEnd();
+	}
+
+	/**
+	 * Writes the file header, client and environment
+	 * @param client - GmlClient
+	 * @param environment - GmlEnvironment
+	 * @throws IOException
+	 */
+	public void writeStart(GmlClient client, GmlEnvironment environment) throws IOException {
+		if (started) {
+			throw new IllegalStateException("Gml already started");
+		}
+		started = true;
+
+		out.write(GmlBinaryFormat.MAGIC);
+		out.write(GmlBinaryFormat.VERSION);
+		if (precision == LOSSLESS) {
+			out.write(GmlBinaryFormat.FLAG_LOSSLESS);
+		}
+		else {
+			out.write(0);
+			out.write(precision);
+		}
+
+		writeDictionary(client);
+		writeEnvironment(environment);
+	}
+
+	/**
+	 * Writes a stroke, strokes without points are skipped
+	 * @param stroke - GmlStroke
+	 * @throws IOException
+	 */
+	public void writeStroke(GmlStroke stroke) throws IOException {
+		if (!started || ended) {
+			throw new IllegalStateException("Strokes must be written between writeStart and writeEnd");
+		}
+		if (stroke.nbPoints() > 0) {
+			out.write(GmlBinaryFormat.STROKE);
+			writeStrokeData(stroke);
+		}
+	}
+
+	/**
+	 * Writes a stroke without its marker, outside of any Gml (see GmlJournal)
+	 * @param stroke - GmlStroke
+	 * @throws IOException
+	 */
+	void writeStrokeRecord(GmlStroke stroke) throws IOException {
+		writeStrokeData(stroke);
+		out.flush();
+	}
+
+	/**
+	 * Writes the flags, layer, brush, info and points of a stroke
+	 * @param stroke - GmlStroke
+	 * @throws IOException
+	 */
+	private void writeStrokeData(GmlStroke stroke) throws IOException {
+
+		// Both passes read the same points, even if some are added meanwhile
+		int count = stroke.nbPoints();
+
+		// Fields found in the stroke and whether its values can be quantized
+		int fields = 0;
+		boolean lossless = precision == LOSSLESS;
+		cursor.resetIndexes(stroke, 0, count);
+		while (cursor.next()) {
+			GmlPoint point = cursor.getPoint();
+			fields |= getFields(point);
+			lossless = lossless || !isQuantizable(point);
+		}
+
+		int flags = 0;
+		if (!stroke.getIsDrawing()) {
+			flags |= GmlBinaryFormat.STROKE_NOT_DRAWING;
+		}
+		if (lossless) {
+			flags |= GmlBinaryFormat.STROKE_LOSSLESS;
+		}
+		if (null != stroke.getInfo()) {
+			flags |= GmlBinaryFormat.STROKE_INFO;
+		}
+
+		out.write(flags);
+		writeSigned(stroke.getLayer());
+		writeDictionary(stroke.getBrush());
+		if (null != stroke.getInfo()) {
+			writeDictionary(stroke.getInfo());
+		}
+		out.write(fields);
+		writeUnsigned(count);
+
+		long[] previous = new long[14];
+		cursor.resetIndexes(stroke, 0, count);
+		while (cursor.next()) {
+			GmlPoint point = cursor.getPoint();
+			int i = 0;
+			i = writeValue(point.x, previous, i, lossless);
+			i = writeValue(point.y, previous, i, lossless);
+			if ((fields & GmlBinaryFormat.FIELD_Z) != 0) {
+				i = writeValue(point.z, previous, i, lossless);
+			}
+			if ((fields & GmlBinaryFormat.FIELD_TIME) != 0) {
+				i = writeValue(point.time, previous, i, lossless);
+			}
+			if ((fields & GmlBinaryFormat.FIELD_ROTATION) != 0) {
+				i = writeValue(point.rotation.x, previous, i, lossless);
+				i = writeValue(point.rotation.y, previous, i, lossless);
+				i = writeValue(point.rotation.z, previous, i, lossless);
+			}
+			if ((fields & GmlBinaryFormat.FIELD_DIRECTION) != 0) {
+				i = writeValue(point.direction.x, previous, i, lossless);
+				i = writeValue(point.direction.y, previous, i, lossless);
+				i = writeValue(point.direction.z, previous, i, lossless);
+			}
+			if ((fields & GmlBinaryFormat.FIELD_PRESSURE) != 0) {
+				i = writeValue(point.preasure, previous, i, lossless);
+			}
+			if ((fields & GmlBinaryFormat.FIELD_THICKNESS) != 0) {
+				writeValue(point.thickness, previous, i, lossless);
+			}
+		}
+	}
+
+	/**
+	 * Writes the end of the strokes and flushes the output, which isn't closed
+	 * @throws IOException
+	 */
+	public void writeEnd() throws IOException {
+		if (!started || ended) {
+			throw new IllegalStateException("Gml not started or already ended");
+		}
+		ended = true;
+		out.write(GmlBinaryFormat.END);
+		out.flush();
+	}
+
+	/**
+	 * Returns the fields of the given point which differ from a new GmlPoint
+	 * @param point - GmlPoint
+	 * @return int
+	 */
+	private static int getFields(GmlPoint point) {
+		int fields = 0;
+		if (0 != point.z) {
+			fields |= GmlBinaryFormat.FIELD_Z;
+		}
+		if (0 != point.time) {
+			fields |= GmlBinaryFormat.FIELD_TIME;
+		}
+		if (!point.rotation.isZeroVector()) {
+			fields |= GmlBinaryFormat.FIELD_ROTATION;
+		}
+		if (!point.direction.isZeroVector()) {
+			fields |= GmlBinaryFormat.FIELD_DIRECTION;
+		}
+		if (0 != point.preasure) {
+			fields |= GmlBinaryFormat.FIELD_PRESSURE;
+		}
+		if (GmlPoint.DEFAULT_THICKNESS != point.thickness) {
+			fields |= GmlBinaryFormat.FIELD_THICKNESS;
+		}
+		return fields;
+	}
+
+	/**
+	 * Returns true if all the values of the given point can be quantized
+	 * @param point - GmlPoint
+	 * @return boolean
+	 */
+	private boolean isQuantizable(GmlPoint point) {
+		return isQuantizable(point.x) && isQuantizable(point.y) && isQuantizable(point.z) && isQuantizable(point.time)
+			&& isQuantizable(point.rotation.x) && isQuantizable(point.rotation.y) && isQuantizable(point.rotation.z)
+			&& isQuantizable(point.direction.x) && isQuantizable(point.direction.y) && isQuantizable(point.direction.z)
+			&& isQuantizable(point.preasure) && isQuantizable(point.thickness);
+	}
+
+	/**
+	 * Returns true if the given value can be quantized (also false for NaN)
+	 * @param value - float
+	 * @return boolean
+	 */
+	private boolean isQuantizable(float value) {
+		return Math.abs(value * scale) < GmlBinaryFormat.MAX_QUANTIZED;
+	}
+
+	/**
+	 * Writes the difference between the given value and the previous one stored at the given index,
+	 * and returns the next index
+	 * @param value - float
+	 * @param previous - long[]
+	 * @param index - int
+	 * @param lossless - boolean
+	 * @return int
+	 * @throws IOException
+	 */
+	private int writeValue(float value, long[] previous, int index, boolean lossless) throws IOException {
+		long current = lossless ? Float.floatToRawIntBits(value) : Math.round(value * scale);
+		writeSigned(current - previous[index]);
+		previous[index] = current;
+		return index + 1;
+	}
+
+	/**
+	 * Writes the environment fields
+	 * @param environment - GmlEnvironment
+	 * @throws IOException
+	 */
+	private void writeEnvironment(GmlEnvironment environment) throws IOException {
+		if (null == environment) {
+			out.write(0);
+			return;
+		}
+		out.write(1);
+
+		Vec3D[] vectors = getVectors(environment);
+		int mask = 0;
+		for (int i=0; i<vectors.length; i++) {
+			if (null != vectors[i]) {
+				mask |= 1 << i;
+			}
+		}
+		if (null != environment.realScaleUnit) {
+			mask |= GmlBinaryFormat.ENV_REAL_SCALE_UNIT;
+		}
+		writeUnsigned(mask);
+		for (Vec3D v : vectors) {
+			if (null != v) {
+				writeVec3D(v);
+			}
+		}
+		writeFloat(environment.screenScale);
+		if (null != environment.realScaleUnit) {
+			writeString(environment.realScaleUnit);
+		}
+	}
+
+	/**
+	 * Returns the environment vectors in the order of their field bits
+	 * @param environment - GmlEnvironment
+	 * @return Vec3D[]
+	 */
+	static Vec3D[] getVectors(GmlEnvironment environment) {
+		return new Vec3D[] {
+			environment.offset, environment.rotation, environment.up, environment.screenBounds,
+			environment.origin, environment.realScale, environment.originalOriginShift,
+			environment.originalAspectRatio, environment.normalizedOriginShift, environment.normalizedAspectRatio
+		};
+	}
+
+	/**
+	 * Writes the parameters of a client, brush or info
+	 * @param container - GmlGenericContainer
+	 * @throws IOException
+	 */
+	private void writeDictionary(GmlGenericContainer container) throws IOException {
+		Map<String, Object> parameters = container.getParameters();
+		int size = 0;
+		for (Object value : parameters.values()) {
+			if (null != value) {
+				size++;
+			}
+		}
+		writeUnsigned(size);
+
+		for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+			Object o = entry.getValue();
+			if (null == o) {
+				continue;
+			}
+			writeString(entry.getKey());
+			if (o instanceof Vec3D) {
+				out.write(GmlBinaryFormat.TYPE_VEC3D);
+				writeVec3D((Vec3D) o);
+			}
+			else if (o instanceof Vec2D) {
+				out.write(GmlBinaryFormat.TYPE_VEC2D);
+				writeFloat(((Vec2D) o).x);
+				writeFloat(((Vec2D) o).y);
+			}
+			else if (o instanceof Float) {
+				out.write(GmlBinaryFormat.TYPE_FLOAT);
+				writeFloat((Float) o);
+			}
+			else if (o instanceof Integer) {
+				out.write(GmlBinaryFormat.TYPE_INT);
+				writeSigned((Integer) o);
+			}
+			else if (o instanceof Long) {
+				out.write(GmlBinaryFormat.TYPE_LONG);
+				writeSigned((Long) o);
+			}
+			else if (o instanceof GmlLocation) {
+				GmlLocation location = (GmlLocation) o;
+				out.write(GmlBinaryFormat.TYPE_LOCATION);
+				writeSigned(location.getLat());
+				writeSigned(location.getLon());
+				writeSigned(location.getAlt());
+			}
+			else { // Get it as a String
+				out.write(GmlBinaryFormat.TYPE_STRING);
+				writeString(String.valueOf(o));
+			}
+		}
+	}
+
+	/**
+	 * Writes a vector as three raw floats
+	 * @param v - Vec3D
+	 * @throws IOException
+	 */
+	private void writeVec3D(Vec3D v) throws IOException {
+		writeFloat(v.x);
+		writeFloat(v.y);
+		writeFloat(v.z);
+	}
+
+	/**
+	 * Writes the raw bits of a float, big endian
+	 * @param value - float
+	 * @throws IOException
+	 */
+	private void writeFloat(float value) throws IOException {
+		int bits = Float.floatToRawIntBits(value);
+		buffer[0] = (byte) (bits >>> 24);
+		buffer[1] = (byte) (bits >>> 16);
+		buffer[2] = (byte) (bits >>> 8);
+		buffer[3] = (byte) bits;
+		out.write(buffer, 0, 4);
+	}
+
+	/**
+	 * Writes a String as its UTF-8 length and bytes
+	 * @param s - String
+	 * @throws IOException
+	 */
+	private void writeString(String s) throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		writeUnsigned(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Writes a signed value, zigzag encoded so small negative values stay small
+	 * @param value - long
+	 * @throws IOException
+	 */
+	private void writeSigned(long value) throws IOException {
+		writeUnsigned((value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Writes an unsigned value 7 bits at a time, lowest bits first
+	 * @param value - long
+	 * @throws IOException
+	 */
+	private void writeUnsigned(long value) throws IOException {
+		int i = 0;
+		while ((value & ~0x7FL) != 0) {
+			buffer[i++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[i++] = (byte) value;
+		out.write(buffer, 0, i);
+	}
+}
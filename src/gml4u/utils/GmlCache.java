@@ -0,0 +1,245 @@
+package gml4u.utils;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlStroke;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * LRU cache of parsed (and cleaned/normalized) Gml.<br/>
+ * Local files are keyed by path, last modification time and size, Strings by a hash of their content,
+ * both along with the normalize flag. Remote resources (http, ...) are never cached.<br/>
+ * The cache is bounded both by a number of entries and by an estimation of the memory used,
+ * the least recently used entries are evicted first.<br/>
+ * Gml are returned as deep copies: they can be modified without affecting the cache.<br/>
+ * <br/>
+ * Usage:<br/>
+ * <code>
+ * GmlParsingHelper.setCache(new GmlCache(100, 64*1024*1024));
+ * </code>
+ */
+public class GmlCache {
+
+	private static final Logger LOGGER = Logger.getLogger(GmlCache.class.getName());
+
+	public static final int DEFAULT_MAX_ENTRIES = 64;
+	public static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+
+	// Rough memory footprint estimations
+	private static final int GML_BYTES = 2048;
+	private static final int STROKE_BYTES = 512;
+	private static final int POINT_BYTES = 120;
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Creates a new GmlCache using default limits
+	 */
+	public GmlCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Creates a new GmlCache using the given limits
+	 * @param maxEntries - int
+	 * @param maxBytes - long (estimated memory)
+	 */
+	public GmlCache(int maxEntries, long maxBytes) {
+		this.maxEntries = Math.max(1, maxEntries);
+		this.maxBytes = Math.max(0, maxBytes);
+	}
+
+	/**
+	 * Returns a copy of the cached Gml for the given file, parses and caches it if needed.<br/>
+	 * Returns null if the file couldn't be parsed.
+	 * @param file - String
+	 * @param normalize - boolean
+	 * @param parser - int (used on cache miss)
+	 * @return Gml
+	 */
+	public Gml getGml(String file, boolean normalize, int parser) {
+		File localFile = new File(file);
+		if (!localFile.isFile()) {
+			// Remote resources can't be checked for changes
+			return GmlParsingHelper.getGml(file, normalize, parser);
+		}
+		String key = "file:"+localFile.getAbsolutePath()+"|"+localFile.lastModified()+"|"+localFile.length()+"|"+normalize;
+		Gml gml = get(key);
+		if (null == gml) {
+			gml = GmlParsingHelper.getGml(file, normalize, parser);
+			put(key, gml);
+		}
+		return gml;
+	}
+
+	/**
+	 * Returns a copy of the cached Gml for the given String, parses and caches it if needed.<br/>
+	 * Returns null if the String couldn't be parsed.
+	 * @param inputString - String
+	 * @param normalize - boolean
+	 * @param parser - int (used on cache miss)
+	 * @return Gml
+	 */
+	public Gml getGmlFromString(String inputString, boolean normalize, int parser) {
+		String key = "string:"+hash(inputString)+"|"+inputString.length()+"|"+normalize;
+		Gml gml = get(key);
+		if (null == gml) {
+			gml = GmlParsingHelper.parseGmlFromString(inputString, normalize, parser);
+			put(key, gml);
+		}
+		return gml;
+	}
+
+	/**
+	 * Removes all entries, counters are kept
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Returns the number of cached Gml
+	 * @return int
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the estimated memory used by the cached Gml
+	 * @return long
+	 */
+	public synchronized long getEstimatedBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the number of requests served from the cache
+	 * @return long
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of requests which needed parsing
+	 * @return long
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of entries evicted to respect the limits
+	 * @return long
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns a copy of the cached Gml or null if not found
+	 * @param key - String
+	 * @return Gml
+	 */
+	private Gml get(String key) {
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (null == entry) {
+				misses++;
+				return null;
+			}
+			hits++;
+		}
+		// Copy outside of the lock, cached Gml are never modified
+		return entry.gml.deepCopy();
+	}
+
+	/**
+	 * Caches a copy of the given Gml and evicts old entries if needed
+	 * @param key - String
+	 * @param gml - Gml
+	 */
+	private void put(String key, Gml gml) {
+		if (null == gml) {
+			return;
+		}
+		Entry entry = new Entry(gml.deepCopy());
+		if (entry.bytes > maxBytes) {
+			LOGGER.log(Level.FINEST, "Not caching "+key+". Reason: bigger than the cache");
+			return;
+		}
+		synchronized (this) {
+			Entry previous = entries.put(key, entry);
+			if (null != previous) {
+				bytes -= previous.bytes;
+			}
+			bytes += entry.bytes;
+
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+			while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+				Map.Entry<String, Entry> eldest = iterator.next();
+				bytes -= eldest.getValue().bytes;
+				iterator.remove();
+				evictions++;
+				LOGGER.log(Level.FINEST, "Evicted "+eldest.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Returns the SHA-1 of the given String as an hexadecimal String
+	 * @param s - String
+	 * @return String
+	 */
+	private static String hash(String s) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes("UTF-8"));
+			StringBuilder builder = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return builder.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			return String.valueOf(s.hashCode());
+		}
+		catch (UnsupportedEncodingException e) {
+			return String.valueOf(s.hashCode());
+		}
+	}
+
+	/**
+	 * A cached Gml with its estimated size
+	 */
+	private static class Entry {
+
+		final Gml gml;
+		final long bytes;
+
+		Entry(Gml gml) {
+			this.gml = gml;
+			long size = GML_BYTES;
+			for (GmlStroke stroke : gml.getStrokes()) {
+				size += STROKE_BYTES + (long) stroke.nbPoints() * POINT_BYTES;
+			}
+			this.bytes = size;
+		}
+	}
+}
@@ -0,0 +1,502 @@
+package gml4u.utils;
+
+import gml4u.events.GmlEventHandler;
+import gml4u.events.GmlStrokeEndEvent;
+import gml4u.events.GmlStrokeStartEvent;
+import gml4u.model.Gml;
+import gml4u.model.GmlHeader;
+import gml4u.model.GmlStroke;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Follows a Gml file while it is being written (like tail -f), parsing only what was appended since the last call.<br/>
+ * Each call to poll() reads the new bytes, adds the complete &lt;pt&gt; elements found to the current stroke
+ * and fires a GmlStrokeStartEvent when a stroke gets its first points and a GmlStrokeEndEvent once it is closed.
+ * The document doesn't need to be complete, unfinished elements are kept until the next call.<br/>
+ * poll() doesn't block and only checks the file's length when nothing was written, so it can be called
+ * from the draw loop: strokes show up in the frame following their writing.<br/>
+ * <br/>
+ * Notes:<br/>
+ * - the file is expected to grow, if it gets shorter the Gml is cleared and the file is read again from the start<br/>
+ * - the document is read as is: neither client specific fixes (GmlHomogenizer) nor normalization are applied<br/>
+ * - a stroke's brush and info must come before its points to be taken into account<br/>
+ * - only ASCII compatible encodings (UTF-8, ISO-8859-x, ...) are supported<br/>
+ * - not thread safe, poll() should always be called from the same thread<br/>
+ * <br/>
+ * Usage:<br/>
+ * <code>
+ * GmlFollower follower = new GmlFollower(file, this);<br/>
+ * ...<br/>
+ * void draw() {<br/>
+ * &nbsp;&nbsp;follower.poll();<br/>
+ * &nbsp;&nbsp;// draw follower.getGml()<br/>
+ * }
+ * </code>
+ */
+public class GmlFollower {
+
+	private static final Logger LOGGER = Logger.getLogger(GmlFollower.class.getName());
+
+	private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._-]+)[\"']");
+	private static final byte[] STROKE_END = {'<', '/', 's', 't', 'r', 'o', 'k', 'e', '>'};
+
+	// Reading states
+	private static final int HEADER = 0;
+	private static final int DRAWING = 1;
+	private static final int STROKE = 2;
+	private static final int DONE = 3;
+
+	private final File file;
+	private final Gml gml;
+	private final boolean ownGml;
+	private GmlEventHandler eventHandler;
+	private GmlHeader header;
+	private String encoding;
+
+	private int state;
+	private long position;          // File offset of the end of the pending bytes
+	private byte[] pending = new byte[8192];
+	private int length;             // Pending bytes
+	private int scan;               // Where scanning resumes in the pending bytes
+
+	private byte[] strokeTag;       // Start tag of the current stroke
+	private int bodyStart;          // Start of the stroke content not decoded yet
+	private int pointsEnd;          // End of the last complete point
+	private GmlStroke stroke;
+
+	/**
+	 * Creates a new GmlFollower reading the given file into a new Gml
+	 * @param file - String
+	 */
+	public GmlFollower(String file) {
+		this(file, null, null);
+	}
+
+	/**
+	 * Creates a new GmlFollower reading the given file into a new Gml and registers for callback in the meantime
+	 * @param file - String
+	 * @param listener - Object implementing a public gmlEvent(GmlEvent) method
+	 */
+	public GmlFollower(String file, Object listener) {
+		this(file, null, listener);
+	}
+
+	/**
+	 * Creates a new GmlFollower adding the strokes read from the given file to the given Gml.<br/>
+	 * The Gml's client and environment are kept.
+	 * @param file - String
+	 * @param gml - Gml
+	 * @param listener - Object implementing a public gmlEvent(GmlEvent) method (may be null)
+	 */
+	public GmlFollower(String file, Gml gml, Object listener) {
+		this.file = new File(file);
+		this.ownGml = null == gml;
+		this.gml = ownGml ? new Gml() : gml;
+		eventHandler = new GmlEventHandler();
+		if (null != listener) {
+			register(listener);
+		}
+	}
+
+	/**
+	 * Registers a listener to receive GmlStrokeStartEvent and GmlStrokeEndEvent
+	 * Note: the Object passed must implement a public gmlEvent(GmlEvent event) method
+	 * @param listener - Object
+	 */
+	public void register(final Object listener) {
+		eventHandler.addListener(listener);
+	}
+
+	/**
+	 * Unregisters a listener
+	 * @param listener - Object
+	 */
+	public void unregister(final Object listener) {
+		eventHandler.removeListener(listener);
+	}
+
+	/**
+	 * Returns the Gml strokes are added to
+	 * @return Gml
+	 */
+	public Gml getGml() {
+		return gml;
+	}
+
+	/**
+	 * Returns the header (client and environment) or null if the drawing wasn't reached yet
+	 * @return GmlHeader
+	 */
+	public GmlHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * Returns true once the end of the drawing was read
+	 * @return boolean
+	 */
+	public boolean isComplete() {
+		return state == DONE;
+	}
+
+	/**
+	 * Returns the number of bytes read so far
+	 * @return long
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Reads what was appended to the file since the last call.<br/>
+	 * Returns the number of points added to the Gml.
+	 * @return int
+	 */
+	public int poll() {
+		long fileLength = file.length();
+		if (fileLength < position) {
+			LOGGER.log(Level.INFO, file+" got shorter, reading it again");
+			reset();
+		}
+		if (fileLength == position || state == DONE) {
+			return 0;
+		}
+		try {
+			read(fileLength);
+			return parse();
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Couldn't follow "+file+". Reason: "+e.getMessage());
+			return 0;
+		}
+	}
+
+	/**
+	 * Forgets everything read so far and clears the Gml's strokes
+	 */
+	public void reset() {
+		state = HEADER;
+		position = 0;
+		length = 0;
+		scan = 0;
+		strokeTag = null;
+		stroke = null;
+		header = null;
+		gml.removeStrokes();
+	}
+
+	/**
+	 * Appends the bytes found between the current position and the given file length to the pending ones
+	 * @param fileLength - long
+	 * @throws IOException
+	 */
+	private void read(long fileLength) throws IOException {
+		int available = (int) Math.min(fileLength - position, Integer.MAX_VALUE - length);
+		if (length + available > pending.length) {
+			byte[] grown = new byte[Math.max(length + available, pending.length * 2)];
+			System.arraycopy(pending, 0, grown, 0, length);
+			pending = grown;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(position);
+			int read = 0;
+			while (read < available) {
+				int n = raf.read(pending, length + read, available - read);
+				if (n < 0) {
+					break;
+				}
+				read += n;
+			}
+			length += read;
+			position += read;
+		}
+		finally {
+			FileUtils.close(raf);
+		}
+	}
+
+	/**
+	 * Scans the pending bytes, stops at the first incomplete element.<br/>
+	 * Returns the number of points added.
+	 * @return int
+	 * @throws IOException
+	 */
+	private int parse() throws IOException {
+		int added = 0;
+		int i = scan;
+		scanning:
+		while (i < length && state != DONE) {
+			if (pending[i] != '<') {
+				i++;
+				continue;
+			}
+			// Comments, CDATA, processing instructions, doctype
+			int skipped = skipMarkup(i);
+			if (skipped < 0) {
+				break;
+			}
+			if (skipped > i) {
+				i = skipped;
+				continue;
+			}
+			int end = indexOf(i, ">");
+			if (end < 0) {
+				break;
+			}
+			boolean closing = pending[i + 1] == '/';
+			boolean empty = pending[end - 1] == '/';
+
+			switch (state) {
+			case HEADER:
+				if (!closing && isTag(i + 1, "drawing")) {
+					readHeader(end + 1);
+					i = end + 1;
+					state = empty ? DONE : DRAWING;
+					compact(i);
+					i = 0;
+				}
+				else {
+					i = end + 1;
+				}
+				break;
+
+			case DRAWING:
+				if (closing && isTag(i + 2, "drawing")) {
+					state = DONE;
+				}
+				else if (!closing && !empty && isTag(i + 1, "stroke")) {
+					strokeTag = new byte[end + 1 - i];
+					System.arraycopy(pending, i, strokeTag, 0, strokeTag.length);
+					bodyStart = end + 1;
+					pointsEnd = bodyStart;
+					state = STROKE;
+				}
+				i = end + 1;
+				break;
+
+			case STROKE:
+				if (closing && isTag(i + 2, "stroke")) {
+					added += flush();
+					if (null != stroke) {
+						eventHandler.fireNewEvent(new GmlStrokeEndEvent(stroke));
+					}
+					stroke = null;
+					strokeTag = null;
+					state = DRAWING;
+					i = end + 1;
+				}
+				else if (closing || empty) {
+					i = end + 1;
+				}
+				else {
+					// Child element, wait until it is complete
+					String name = isTag(i + 1, "pt") ? "pt" : tagName(i + 1, end);
+					int close = indexOf(end + 1, "</"+name);
+					int closeEnd = close < 0 ? -1 : indexOf(close, ">");
+					if (closeEnd < 0) {
+						break scanning;
+					}
+					i = closeEnd + 1;
+					if ("pt".equals(name)) {
+						pointsEnd = i;
+					}
+				}
+				break;
+			}
+		}
+		scan = i;
+
+		if (state == STROKE) {
+			added += flush();
+			compact(bodyStart);
+		}
+		else if (state != HEADER) {
+			compact(scan);
+		}
+		return added;
+	}
+
+	/**
+	 * Reads the client and environment found before the given offset (the end of the drawing start tag)
+	 * @param end - int
+	 * @throws IOException
+	 */
+	private void readHeader(int end) throws IOException {
+		if (length >= 2 && (pending[0] == 0 || pending[1] == 0 || (pending[0] & 0xFF) == 0xFE || (pending[0] & 0xFF) == 0xFF)) {
+			state = DONE;
+			throw new IOException("Only ASCII compatible encodings are supported");
+		}
+		Matcher matcher = ENCODING.matcher(new String(pending, 0, Math.min(end, 256), "ISO-8859-1"));
+		encoding = matcher.find() ? matcher.group(1) : "UTF-8";
+
+		header = GmlStaxParsingHelper.scanHeader(new ByteArrayInputStream(pending, 0, end), false);
+		if (null == header) {
+			state = DONE;
+			throw new IOException("Not a Gml document");
+		}
+		if (ownGml) {
+			gml.client = header.client;
+			gml.environment = header.environment;
+		}
+	}
+
+	/**
+	 * Decodes the points read since the last call and adds them to the current stroke.<br/>
+	 * Returns the number of points added.
+	 * @return int
+	 */
+	private int flush() {
+		if (pointsEnd <= bodyStart) {
+			return 0;
+		}
+		InputStream in = new SequenceInputStream(
+				new SequenceInputStream(new ByteArrayInputStream(strokeTag), new ByteArrayInputStream(pending, bodyStart, pointsEnd - bodyStart)),
+				new ByteArrayInputStream(STROKE_END));
+		bodyStart = pointsEnd;
+
+		GmlStroke decoded;
+		try {
+			decoded = GmlStaxParsingHelper.parseStroke(in, encoding);
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Skipped unreadable points. Reason: "+e.getMessage());
+			return 0;
+		}
+
+		int added = decoded.nbPoints();
+		if (null == stroke) {
+			stroke = decoded;
+			gml.addStroke(stroke);
+			eventHandler.fireNewEvent(new GmlStrokeStartEvent(stroke));
+		}
+		else {
+			stroke.addPoints(decoded.getPoints());
+		}
+		return added;
+	}
+
+	/**
+	 * Drops the pending bytes located before the given offset
+	 * @param from - int
+	 */
+	private void compact(int from) {
+		if (from <= 0) {
+			return;
+		}
+		System.arraycopy(pending, from, pending, 0, length - from);
+		length -= from;
+		scan -= from;
+		bodyStart -= from;
+		pointsEnd -= from;
+	}
+
+	/**
+	 * Returns the offset following the comment, CDATA, processing instruction or doctype
+	 * found at the given offset, the offset itself if there is none, or -1 if it is incomplete
+	 * @param i - int
+	 * @return int
+	 */
+	private int skipMarkup(int i) {
+		if (i + 1 >= length) {
+			return -1;
+		}
+		if (pending[i + 1] == '?') {
+			int end = indexOf(i + 2, "?>");
+			return end < 0 ? -1 : end + 2;
+		}
+		if (pending[i + 1] != '!') {
+			return i;
+		}
+		if (i + 4 > length) {
+			return -1;
+		}
+		if (startsWith(i, "<!--")) {
+			int end = indexOf(i + 4, "-->");
+			return end < 0 ? -1 : end + 3;
+		}
+		if (pending[i + 2] == '[') {
+			int end = indexOf(i + 3, "]]>");
+			return end < 0 ? -1 : end + 3;
+		}
+		int end = indexOf(i + 2, ">");
+		return end < 0 ? -1 : end + 1;
+	}
+
+	/**
+	 * Returns true if the given tag name is found at the given offset, followed by a delimiter
+	 * @param offset - int
+	 * @param name - String
+	 * @return boolean
+	 */
+	private boolean isTag(int offset, String name) {
+		if (!startsWith(offset, name)) {
+			return false;
+		}
+		int next = offset + name.length();
+		if (next >= length) {
+			return false;
+		}
+		byte b = pending[next];
+		return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r';
+	}
+
+	/**
+	 * Returns the name of the tag starting at the given offset
+	 * @param offset - int
+	 * @param end - int (end of the tag)
+	 * @return String
+	 * @throws IOException
+	 */
+	private String tagName(int offset, int end) throws IOException {
+		int i = offset;
+		while (i < end && pending[i] != '/' && pending[i] > ' ') {
+			i++;
+		}
+		return new String(pending, offset, i - offset, "ISO-8859-1");
+	}
+
+	/**
+	 * Returns true if the given ASCII String is found at the given offset
+	 * @param offset - int
+	 * @param s - String
+	 * @return boolean
+	 */
+	private boolean startsWith(int offset, String s) {
+		if (offset + s.length() > length) {
+			return false;
+		}
+		for (int i=0; i<s.length(); i++) {
+			if (pending[offset + i] != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the offset of the given ASCII String, or -1 if not found
+	 * @param from - int
+	 * @param s - String
+	 * @return int
+	 */
+	private int indexOf(int from, String s) {
+		int limit = length - s.length();
+		for (int i=from; i<=limit; i++) {
+			if (startsWith(i, s)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
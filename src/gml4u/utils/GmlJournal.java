@@ -0,0 +1,441 @@
+package gml4u.utils;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlClient;
+import gml4u.model.GmlEnvironment;
+import gml4u.model.GmlHeader;
+import gml4u.model.GmlStroke;
+import gml4u.recording.GmlRecorder;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of a recording session.<br/>
+ * Each finished stroke is appended as one record, so writing costs time proportional to the stroke,
+ * not to the whole session. After a crash, the journal is replayed to get the session back, and compacted
+ * into a regular Gml file once done.<br/>
+ * <br/>
+ * Records are framed with their length and a CRC32 checksum, using the lossless binary encoding (see GmlBinaryWriter).
+ * An incomplete or corrupted record at the end of the file, left by a crash during a write, is dropped when opening.<br/>
+ * <br/>
+ * Usage:<br/>
+ * <code>
+ * GmlJournal journal = new GmlJournal("session.gmlj");<br/>
+ * journal.replay(recorder); // Restores the previous session, if any<br/>
+ * recorder.setJournal(journal);<br/>
+ * ...<br/>
+ * journal.compact("session.gml", FloatUtils.FULL_PRECISION);
+ * </code>
+ */
+public class GmlJournal implements Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(GmlJournal.class.getName());
+
+	private static final byte[] MAGIC = {'G', 'M', 'L', 'J'};
+	private static final int VERSION = 1;
+	private static final int FILE_HEADER_LENGTH = MAGIC.length + 1;
+
+	// Record length and checksum
+	private static final int FRAME_LENGTH = 8;
+
+	// Record types
+	private static final int RECORD_HEADER = 1;
+	private static final int RECORD_STROKE = 2;
+	private static final int RECORD_CLEAR = 3;
+	private static final int RECORD_REMOVE_LAST_STROKE = 4;
+
+	private final File file;
+	private RandomAccessFile output;
+	private final RecordBuffer buffer = new RecordBuffer();
+	private final GmlBinaryWriter strokeWriter = new GmlBinaryWriter(buffer, GmlBinaryWriter.LOSSLESS);
+	private final CRC32 checksum = new CRC32();
+	private long length;
+	private int records;
+	private boolean hasHeader;
+	private boolean sync;
+
+	/**
+	 * Opens the journal at the given location, creating it if needed<br/>
+	 * Existing records are checked and kept, new ones are appended after them
+	 * @param location - String
+	 * @throws IOException
+	 */
+	public GmlJournal(String location) throws IOException {
+		file = new File(location).getAbsoluteFile();
+		File folder = file.getParentFile();
+		if (!folder.isDirectory()) {
+			FileUtils.ensureFolderExists(folder.getPath());
+		}
+
+		output = new RandomAccessFile(file, "rw");
+		try {
+			if (output.length() == 0) {
+				output.write(MAGIC);
+				output.write(VERSION);
+				length = FILE_HEADER_LENGTH;
+			}
+			else {
+				byte[] header = new byte[FILE_HEADER_LENGTH];
+				if (output.length() < FILE_HEADER_LENGTH) {
+					throw new IOException("Not a Gml journal: "+file);
+				}
+				output.readFully(header);
+				for (int i=0; i<MAGIC.length; i++) {
+					if (header[i] != MAGIC[i]) {
+						throw new IOException("Not a Gml journal: "+file);
+					}
+				}
+				if (header[MAGIC.length] != VERSION) {
+					throw new IOException("Unsupported Gml journal version: "+header[MAGIC.length]);
+				}
+
+				length = output.length();
+				long end = readRecords(null);
+				if (end < length) {
+					LOGGER.log(Level.WARNING, "Dropping "+(length - end)+" bytes of incomplete records from "+file);
+					output.setLength(end);
+					length = end;
+				}
+				output.seek(length);
+			}
+		}
+		catch (IOException e) {
+			FileUtils.close(output);
+			throw e;
+		}
+	}
+
+	/**
+	 * Sets whether each record is forced to the storage device before returning<br/>
+	 * Safer against power loss, but much slower. Default is false.
+	 * @param sync - boolean
+	 */
+	public void setSync(boolean sync) {
+		this.sync = sync;
+	}
+
+	/**
+	 * Returns true if each record is forced to the storage device
+	 * @return boolean
+	 */
+	public boolean isSync() {
+		return sync;
+	}
+
+	/**
+	 * Returns the journal location
+	 * @return String
+	 */
+	public String getLocation() {
+		return file.getPath();
+	}
+
+	/**
+	 * Returns the journal size in bytes
+	 * @return long
+	 */
+	public synchronized long getSize() {
+		return length;
+	}
+
+	/**
+	 * Returns the number of records in the journal
+	 * @return int
+	 */
+	public synchronized int getRecords() {
+		return records;
+	}
+
+	/**
+	 * Returns true if the journal holds a client and environment
+	 * @return boolean
+	 */
+	public synchronized boolean hasHeader() {
+		return hasHeader;
+	}
+
+	/**
+	 * Appends the client and environment, replacing previous ones when replayed
+	 * @param client - GmlClient
+	 * @param environment - GmlEnvironment
+	 * @throws IOException
+	 */
+	public synchronized void writeHeader(GmlClient client, GmlEnvironment environment) throws IOException {
+		buffer.startRecord(RECORD_HEADER);
+		GmlBinaryWriter writer = new GmlBinaryWriter(buffer, GmlBinaryWriter.LOSSLESS);
+		writer.writeStart(client, environment);
+		writer.writeEnd();
+		append();
+		hasHeader = true;
+	}
+
+	/**
+	 * Appends a finished stroke
+	 * @param stroke - GmlStroke
+	 * @throws IOException
+	 */
+	public synchronized void writeStroke(GmlStroke stroke) throws IOException {
+		buffer.startRecord(RECORD_STROKE);
+		strokeWriter.writeStrokeRecord(stroke);
+		append();
+	}
+
+	/**
+	 * Appends the removal of all strokes
+	 * @throws IOException
+	 */
+	public synchronized void writeClear() throws IOException {
+		buffer.startRecord(RECORD_CLEAR);
+		append();
+	}
+
+	/**
+	 * Appends the removal of the last stroke of the given layer
+	 * @param layer - int
+	 * @throws IOException
+	 */
+	public synchronized void writeRemoveLastStroke(int layer) throws IOException {
+		buffer.startRecord(RECORD_REMOVE_LAST_STROKE);
+		buffer.write(layer >>> 24);
+		buffer.write(layer >>> 16);
+		buffer.write(layer >>> 8);
+		buffer.write(layer);
+		append();
+	}
+
+	/**
+	 * Reads the journal and returns the Gml it holds
+	 * @return Gml
+	 * @throws IOException
+	 */
+	public synchronized Gml read() throws IOException {
+		Gml gml = new Gml();
+		readRecords(gml);
+		return gml;
+	}
+
+	/**
+	 * Replays the journal into the given GmlRecorder, replacing its Gml<br/>
+	 * Does nothing if the journal is empty. Returns the number of strokes restored.
+	 * @param recorder - GmlRecorder
+	 * @return int
+	 * @throws IOException
+	 */
+	public int replay(GmlRecorder recorder) throws IOException {
+		if (getRecords() == 0) {
+			return 0;
+		}
+		Gml gml = read();
+		// The recorder sets its default username, the restored one is kept
+		Object username = gml.client.get(GmlClient.USERNAME);
+		// The journal already holds what is being restored
+		GmlJournal journal = recorder.getJournal();
+		recorder.setJournal(null);
+		recorder.setGml(gml);
+		if (null != username) {
+			gml.client.set(GmlClient.USERNAME, username);
+		}
+		recorder.setJournal(journal);
+		LOGGER.log(Level.FINE, "Restored "+gml.totalStrokes()+" strokes from "+file);
+		return gml.totalStrokes();
+	}
+
+	/**
+	 * Saves the journal content as a regular Gml file, then closes and deletes the journal<br/>
+	 * Returns the number of bytes written
+	 * @param location - String
+	 * @param precision - int (see GmlWriter.setPrecision)
+	 * @return long
+	 * @throws IOException
+	 */
+	public synchronized long compact(String location, int precision) throws IOException {
+		long bytes = GmlSavingHelper.saveAtomically(read(), location, precision, sync);
+		close();
+		if (!file.delete()) {
+			LOGGER.log(Level.WARNING, "Couldn't delete "+file);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Closes the journal, records can't be appended anymore
+	 */
+	public synchronized void close() {
+		FileUtils.close(output);
+		output = null;
+	}
+
+	/**
+	 * Frames the record in the buffer and appends it with a single write
+	 * @throws IOException
+	 */
+	private void append() throws IOException {
+		if (null == output) {
+			throw new IOException("Journal closed: "+file);
+		}
+		byte[] record = buffer.getBuffer();
+		int size = buffer.size() - FRAME_LENGTH;
+		checksum.reset();
+		checksum.update(record, FRAME_LENGTH, size);
+		writeInt(record, 0, size);
+		writeInt(record, 4, (int) checksum.getValue());
+
+		try {
+			output.write(record, 0, buffer.size());
+			if (sync) {
+				output.getFD().sync();
+			}
+		}
+		catch (IOException e) {
+			// Don't leave a partial record behind
+			try {
+				output.setLength(length);
+				output.seek(length);
+			}
+			catch (IOException ignored) {
+				LOGGER.log(Level.FINE, "Couldn't truncate "+file);
+			}
+			throw e;
+		}
+		length += buffer.size();
+		records++;
+	}
+
+	/**
+	 * Reads the records up to the current length, applying them to the given Gml if not null<br/>
+	 * Stops at the first incomplete or corrupted record and returns the offset where it starts
+	 * @param gml - Gml
+	 * @return long
+	 * @throws IOException
+	 */
+	private long readRecords(Gml gml) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8192));
+		try {
+			in.readFully(new byte[FILE_HEADER_LENGTH]);
+			long offset = FILE_HEADER_LENGTH;
+			int count = 0;
+			byte[] payload = new byte[256];
+			CRC32 crc = new CRC32();
+			while (offset + FRAME_LENGTH <= length) {
+				int size = in.readInt();
+				int expected = in.readInt();
+				if (size <= 0 || size > length - offset - FRAME_LENGTH) {
+					break;
+				}
+				if (payload.length < size) {
+					payload = new byte[size];
+				}
+				in.readFully(payload, 0, size);
+				crc.reset();
+				crc.update(payload, 0, size);
+				if ((int) crc.getValue() != expected) {
+					LOGGER.log(Level.WARNING, "Corrupted record at "+offset+" in "+file);
+					break;
+				}
+				apply(gml, payload, size);
+				offset += FRAME_LENGTH + size;
+				count++;
+			}
+			if (null == gml) {
+				records = count;
+			}
+			return offset;
+		}
+		catch (EOFException e) {
+			throw new IOException("Journal truncated while reading: "+file);
+		}
+		finally {
+			FileUtils.close(in);
+		}
+	}
+
+	/**
+	 * Applies a record to the given Gml, or only notes whether it holds a header if the Gml is null
+	 * @param gml - Gml
+	 * @param payload - byte[]
+	 * @param size - int
+	 * @throws IOException
+	 */
+	private void apply(Gml gml, byte[] payload, int size) throws IOException {
+		int type = payload[0];
+		if (null == gml) {
+			hasHeader = hasHeader || type == RECORD_HEADER;
+			return;
+		}
+		ByteArrayInputStream in = new ByteArrayInputStream(payload, 1, size - 1);
+		switch (type) {
+		case RECORD_HEADER:
+			GmlHeader header = new GmlBinaryReader(in).getHeader();
+			gml.client = header.client;
+			gml.environment = header.environment;
+			break;
+		case RECORD_STROKE:
+			gml.addStroke(GmlBinaryReader.readStrokeRecord(in));
+			break;
+		case RECORD_CLEAR:
+			gml.removeStrokes();
+			break;
+		case RECORD_REMOVE_LAST_STROKE:
+			gml.removeLastStroke(readInt(payload, 1));
+			break;
+		default:
+			LOGGER.log(Level.WARNING, "Skipping unknown record type "+type+" in "+file);
+		}
+	}
+
+	/**
+	 * Stores an int big endian at the given offset
+	 * @param bytes - byte[]
+	 * @param offset - int
+	 * @param value - int
+	 */
+	private static void writeInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * Reads a big endian int at the given offset
+	 * @param bytes - byte[]
+	 * @param offset - int
+	 * @return int
+	 */
+	private static int readInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+			| (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+	}
+
+	/**
+	 * Reusable record buffer, leaving room for the frame in front of the payload
+	 */
+	private static class RecordBuffer extends ByteArrayOutputStream {
+
+		RecordBuffer() {
+			super(1024);
+		}
+
+		void startRecord(int type) {
+			reset();
+			count = FRAME_LENGTH;
+			write(type);
+		}
+
+		byte[] getBuffer() {
+			return buf;
+		}
+	}
+}
@@ -0,0 +1,896 @@
+package gml4u.utils;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlBrush;
+import gml4u.model.GmlClient;
+import gml4u.model.GmlEnvironment;
+import gml4u.model.GmlHeader;
+import gml4u.model.GmlInfo;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlStroke;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jdom.Element;
+
+import toxi.geom.Vec3D;
+
+/**
+ * Reads Gml written as JSON (see GmlJsonWriter) stroke by stroke, without building a document tree.<br/>
+ * The JSON is pulled from the input as strokes are requested: memory use only depends on the largest stroke.<br/>
+ * Both {"gml":{"tag":{...}}} and {"tag":{...}} roots are accepted, as well as single objects where
+ * arrays are expected (ie: a single stroke or point). Numbers may be written as Strings.<br/>
+ * Client, brush and info values are typed as the XML parsers do. The header must come before the drawing.<br/>
+ * <br/>
+ * Usage:<br/>
+ * <code>
+ * GmlJsonReader reader = new GmlJsonReader(file);<br/>
+ * GmlHeader header = reader.getHeader();<br/>
+ * for (GmlStroke stroke : reader) { ... }<br/>
+ * reader.close();
+ * </code>
+ */
+public class GmlJsonReader implements Iterator<GmlStroke>, Iterable<GmlStroke>, Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(GmlJsonReader.class.getName());
+
+	private Reader in;
+	private final char[] buffer = new char[8192];
+	private int position;
+	private int limit;
+	private long offset; // Characters read before the buffer, for error messages
+
+	// Reused for keys and numbers
+	private char[] text = new char[32];
+	private int textLength;
+
+	private boolean hasNext;
+	private boolean strokeArray; // false if the drawing holds a single stroke object
+	private List<Element> clientElements = new ArrayList<Element>();
+	private List<Element> environmentElements = new ArrayList<Element>();
+	private GmlHeader header;
+
+	/**
+	 * Creates a new GmlJsonReader reading from the given file location
+	 * @param file - String
+	 * @throws IOException
+	 */
+	public GmlJsonReader(String file) throws IOException {
+		this(FileUtils.openInputStream(file));
+	}
+
+	/**
+	 * Creates a new GmlJsonReader reading UTF-8 from the given InputStream<br/>
+	 * The stream will be closed along with the reader
+	 * @param in - InputStream
+	 * @throws IOException
+	 */
+	public GmlJsonReader(InputStream in) throws IOException {
+		this(new InputStreamReader(in, "UTF-8"));
+	}
+
+	/**
+	 * Creates a new GmlJsonReader reading from the given Reader<br/>
+	 * The reader will be closed along with this one
+	 * @param in - Reader
+	 * @throws IOException
+	 */
+	public GmlJsonReader(Reader in) throws IOException {
+		this.in = in;
+		try {
+			if (peek() != '{') {
+				throw error("Not a Gml document. Reason: a JSON object is expected");
+			}
+			hasNext = moveToStrokes();
+			if (!hasNext) {
+				close();
+			}
+		}
+		catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the whole Gml from the given file location.<br/>
+	 * Returns null if the file couldn't be read.
+	 * @param file - String
+	 * @return Gml
+	 */
+	public static Gml readGml(String file) {
+		try {
+			return readGml(new GmlJsonReader(file));
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Couldn't read "+file+". Reason: "+e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the whole Gml from the given InputStream, which is closed once done
+	 * @param in - InputStream
+	 * @return Gml
+	 * @throws IOException
+	 */
+	public static Gml readGml(InputStream in) throws IOException {
+		return readGml(new GmlJsonReader(in));
+	}
+
+	/**
+	 * Reads the whole Gml from the given Reader, which is closed once done
+	 * @param in - Reader
+	 * @return Gml
+	 * @throws IOException
+	 */
+	public static Gml readGml(Reader in) throws IOException {
+		return readGml(new GmlJsonReader(in));
+	}
+
+	/**
+	 * Reads the whole Gml from the given JSON String.<br/>
+	 * Returns null if the String couldn't be read.
+	 * @param json - String
+	 * @return Gml
+	 */
+	public static Gml readGmlFromString(String json) {
+		try {
+			return readGml(new StringReader(json));
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the remaining strokes of the given reader into a Gml
+	 * @param reader - GmlJsonReader
+	 * @return Gml
+	 * @throws IOException
+	 */
+	private static Gml readGml(GmlJsonReader reader) throws IOException {
+		try {
+			GmlHeader header = reader.getHeader();
+			Gml gml = new Gml();
+			gml.client = header.client;
+			gml.environment = header.environment;
+			while (reader.hasNext()) {
+				gml.addStroke(reader.readStroke());
+			}
+			return gml;
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Returns the header (client and environment) found before the first stroke
+	 * @return GmlHeader
+	 */
+	public GmlHeader getHeader() {
+		if (null == header) {
+			GmlClient client = new GmlClient();
+			GmlParsingHelper.setGmlGenericContainer(clientElements, client);
+			GmlEnvironment environment = GmlParsingHelper.getGmlEnvironment(environmentElements);
+			header = new GmlHeader(client, environment);
+		}
+		return header;
+	}
+
+	/**
+	 * Returns this reader, which can only be iterated once
+	 * @return Iterator<GmlStroke>
+	 */
+	public Iterator<GmlStroke> iterator() {
+		return this;
+	}
+
+	/**
+	 * Returns true if there is another stroke to read
+	 * @return boolean
+	 */
+	public boolean hasNext() {
+		return hasNext;
+	}
+
+	/**
+	 * Reads and returns the next stroke
+	 * @return GmlStroke
+	 */
+	public GmlStroke next() {
+		if (!hasNext) {
+			throw new NoSuchElementException();
+		}
+		try {
+			return readStroke();
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Stopped reading strokes. Reason: "+e.getMessage());
+			close();
+			throw new NoSuchElementException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Not supported
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException("Strokes cannot be removed from a GmlJsonReader");
+	}
+
+	/**
+	 * Closes the reader and the underlying input
+	 */
+	public void close() {
+		hasNext = false;
+		FileUtils.close(in);
+		in = null;
+	}
+
+	/**
+	 * Reads the next stroke and moves to the following one
+	 * @return GmlStroke
+	 * @throws IOException
+	 */
+	private GmlStroke readStroke() throws IOException {
+		GmlStroke stroke = readStrokeObject();
+		hasNext = strokeArray && nextItem();
+		if (!hasNext) {
+			// Nothing of interest after the drawing
+			close();
+		}
+		return stroke;
+	}
+
+	/**
+	 * Reads the members of the root object until the first stroke, returns false if there is none
+	 * @return boolean
+	 * @throws IOException
+	 */
+	private boolean moveToStrokes() throws IOException {
+		expect('{');
+		while (nextMember()) {
+			if (keyEquals("gml") && peek() == '{') {
+				return moveToStrokes();
+			}
+			else if (keyEquals("tag")) {
+				// Only the first tag is read
+				if (peek() == '[') {
+					expect('[');
+					if (!nextItem()) {
+						return false;
+					}
+				}
+				return moveToTagStrokes();
+			}
+			else {
+				skipValue();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the members of a tag object until the first stroke, returns false if there is none
+	 * @return boolean
+	 * @throws IOException
+	 */
+	private boolean moveToTagStrokes() throws IOException {
+		expect('{');
+		while (nextMember()) {
+			if (keyEquals("header") && peek() == '{') {
+				expect('{');
+				while (nextMember()) {
+					if (keyEquals("client")) {
+						readChildren(clientElements);
+					}
+					else if (keyEquals("environment")) {
+						readChildren(environmentElements);
+					}
+					else {
+						skipValue();
+					}
+				}
+			}
+			// Legacy location
+			else if (keyEquals("environment")) {
+				readChildren(environmentElements);
+			}
+			else if (keyEquals("drawing") && peek() == '{') {
+				expect('{');
+				while (nextMember()) {
+					if (keyEquals("stroke")) {
+						if (peek() == '[') {
+							expect('[');
+							strokeArray = true;
+							if (nextItem()) {
+								return true;
+							}
+						}
+						else if (peek() == '{') {
+							return true;
+						}
+						else {
+							skipValue();
+						}
+					}
+					else {
+						skipValue();
+					}
+				}
+			}
+			else {
+				skipValue();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads a stroke object
+	 * @return GmlStroke
+	 * @throws IOException
+	 */
+	private GmlStroke readStrokeObject() throws IOException {
+		GmlStroke stroke = new GmlStroke();
+		List<Element> infoElements = null;
+		List<Element> brushElements = null;
+		List<GmlPoint> points = new ArrayList<GmlPoint>();
+
+		expect('{');
+		while (nextMember()) {
+			if (keyEquals("pt")) {
+				if (peek() == '[') {
+					expect('[');
+					while (nextItem()) {
+						points.add(readPoint());
+					}
+				}
+				else {
+					points.add(readPoint());
+				}
+			}
+			else if (keyEquals("isDrawing")) {
+				String isDrawing = readScalar();
+				if ("false".equalsIgnoreCase(isDrawing)) {
+					stroke.setIsDrawing(false);
+				}
+			}
+			else if (keyEquals("layer")) {
+				try {
+					stroke.setLayer(Integer.parseInt(readScalar()));
+				}
+				catch (NumberFormatException ex) {
+					stroke.setLayer(Integer.MIN_VALUE);
+				}
+			}
+			// Only the first info and brush objects are used
+			else if (keyEquals("info") && null == infoElements) {
+				infoElements = new ArrayList<Element>();
+				readChildren(infoElements);
+			}
+			else if (keyEquals("brush") && null == brushElements) {
+				brushElements = new ArrayList<Element>();
+				readChildren(brushElements);
+			}
+			else {
+				skipValue();
+			}
+		}
+
+		GmlInfo info = new GmlInfo();
+		if (null != infoElements && infoElements.size() > 0) {
+			GmlParsingHelper.setGmlGenericContainer(infoElements, info);
+		}
+		stroke.setInfo(info);
+
+		GmlBrush brush = new GmlBrush();
+		if (null != brushElements && brushElements.size() > 0) {
+			GmlParsingHelper.setGmlGenericContainer(brushElements, brush);
+		}
+		stroke.setBrush(brush);
+
+		stroke.addPoints(points);
+		return stroke;
+	}
+
+	/**
+	 * Reads a point object, with the same defaults as the XML parsers
+	 * @return GmlPoint
+	 * @throws IOException
+	 */
+	private GmlPoint readPoint() throws IOException {
+		GmlPoint point = new GmlPoint();
+		point.preasure = GmlPoint.DEFAULT_PRESSURE;
+		point.thickness = GmlPoint.DEFAULT_THICKNESS;
+		boolean hasTime = false;
+
+		expect('{');
+		while (nextMember()) {
+			if (textLength == 1 && isAxis(text[0])) {
+				setAxis(point, text[0]);
+			}
+			// "t" always wins over "time"
+			else if (keyEquals("t")) {
+				hasTime = true;
+				point.time = readFloat(0);
+			}
+			else if (keyEquals("time") && !hasTime) {
+				point.time = readFloat(0);
+			}
+			else if (keyEquals("rot")) {
+				readVec3D(point.rotation);
+			}
+			else if (keyEquals("dir")) {
+				readVec3D(point.direction);
+			}
+			else if (keyEquals("pres")) {
+				point.preasure = readFloat(GmlPoint.DEFAULT_PRESSURE);
+			}
+			else if (keyEquals("thick")) {
+				point.thickness = readFloat(GmlPoint.DEFAULT_THICKNESS);
+			}
+			else {
+				skipValue();
+			}
+		}
+		return point;
+	}
+
+	/**
+	 * Reads the x, y and z members of an object into the given vector
+	 * @param v - Vec3D
+	 * @throws IOException
+	 */
+	private void readVec3D(Vec3D v) throws IOException {
+		if (peek() != '{') {
+			skipValue();
+			return;
+		}
+		expect('{');
+		while (nextMember()) {
+			if (textLength == 1 && isAxis(text[0])) {
+				setAxis(v, text[0]);
+			}
+			else {
+				skipValue();
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the given key is an axis name (x, y or z, any case)
+	 * @param c - char
+	 * @return boolean
+	 */
+	private static boolean isAxis(char c) {
+		c = Character.toLowerCase(c);
+		return c == 'x' || c == 'y' || c == 'z';
+	}
+
+	/**
+	 * Sets the given axis of a vector from the current value, a warning is logged if the value is not a number
+	 * @param v - Vec3D
+	 * @param axis - char
+	 * @throws IOException
+	 */
+	private void setAxis(Vec3D v, char axis) throws IOException {
+		try {
+			float f = readFloat();
+			switch (Character.toLowerCase(axis)) {
+			case 'x': v.x = f; break;
+			case 'y': v.y = f; break;
+			default : v.z = f; break;
+			}
+		}
+		catch (NumberFormatException ex) {
+			LOGGER.log(Level.WARNING, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the current value as a float and returns the default value if it is not a number
+	 * @param defaultValue - float
+	 * @return float
+	 * @throws IOException
+	 */
+	private float readFloat(float defaultValue) throws IOException {
+		try {
+			return readFloat();
+		}
+		catch (NumberFormatException ex) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Reads the current value, a number or a String, as a float.<br/>
+	 * The value is copied to the text buffer and parsed from there, no String is created.
+	 * @return float
+	 * @throws IOException
+	 * @throws NumberFormatException
+	 */
+	private float readFloat() throws IOException {
+		int c = peek();
+		if (c == '"') {
+			readText();
+		}
+		else if (c == '-' || (c >= '0' && c <= '9')) {
+			readNumber();
+		}
+		else {
+			skipValue();
+			throw new NumberFormatException("Number expected at character "+(offset + position));
+		}
+		return FloatUtils.parseFloat(text, 0, textLength);
+	}
+
+	/**
+	 * Reads the members of an object (or the items of an array of objects) as JDom elements,
+	 * other values are skipped
+	 * @param elements - List<Element>
+	 * @throws IOException
+	 */
+	private void readChildren(List<Element> elements) throws IOException {
+		int c = peek();
+		if (c == '{') {
+			expect('{');
+			while (nextMember()) {
+				readElements(new String(text, 0, textLength), elements);
+			}
+		}
+		else if (c == '[') {
+			expect('[');
+			while (nextItem()) {
+				readChildren(elements);
+			}
+		}
+		else {
+			skipValue();
+		}
+	}
+
+	/**
+	 * Reads the current value as JDom elements with the given name: one per item for arrays, one otherwise
+	 * @param name - String
+	 * @param elements - List<Element>
+	 * @throws IOException
+	 */
+	private void readElements(String name, List<Element> elements) throws IOException {
+		if (peek() == '[') {
+			expect('[');
+			while (nextItem()) {
+				readElements(name, elements);
+			}
+			return;
+		}
+
+		Element element;
+		try {
+			element = new Element(name);
+		}
+		catch (IllegalArgumentException ex) {
+			LOGGER.log(Level.WARNING, "Skipping "+name+". Reason: "+ex.getMessage());
+			skipValue();
+			return;
+		}
+
+		if (peek() == '{') {
+			List<Element> children = new ArrayList<Element>();
+			readChildren(children);
+			for (Element child : children) {
+				element.addContent(child);
+			}
+		}
+		else {
+			element.setText(readScalar());
+		}
+		elements.add(element);
+	}
+
+	/**
+	 * Reads a String, number or literal value as a String (null values are returned as an empty String)
+	 * @return String
+	 * @throws IOException
+	 */
+	private String readScalar() throws IOException {
+		int c = peek();
+		if (c == '"') {
+			readText();
+		}
+		else if (c == '-' || (c >= '0' && c <= '9')) {
+			readNumber();
+		}
+		else if (c == '{' || c == '[') {
+			throw error("Unexpected '"+(char) c+"'");
+		}
+		else {
+			String literal = readLiteral();
+			return "null".equals(literal) ? "" : literal;
+		}
+		return new String(text, 0, textLength);
+	}
+
+	/**
+	 * Moves to the next member of the current object and reads its key into the text buffer.<br/>
+	 * Returns false once the end of the object is reached
+	 * @return boolean
+	 * @throws IOException
+	 */
+	private boolean nextMember() throws IOException {
+		int c = peek();
+		if (c == '}') {
+			position++;
+			return false;
+		}
+		if (c == ',') {
+			position++;
+			c = peek();
+		}
+		if (c != '"') {
+			throw error("Member name expected");
+		}
+		readText();
+		expect(':');
+		return true;
+	}
+
+	/**
+	 * Moves to the next item of the current array, returns false once the end of the array is reached
+	 * @return boolean
+	 * @throws IOException
+	 */
+	private boolean nextItem() throws IOException {
+		int c = peek();
+		if (c == ']') {
+			position++;
+			return false;
+		}
+		if (c == ',') {
+			position++;
+			if (peek() == ']') {
+				throw error("Value expected");
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the key read last equals the given name
+	 * @param name - String
+	 * @return boolean
+	 */
+	private boolean keyEquals(String name) {
+		if (name.length() != textLength) {
+			return false;
+		}
+		for (int i=0; i<textLength; i++) {
+			if (name.charAt(i) != text[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Skips the current value and its content
+	 * @throws IOException
+	 */
+	private void skipValue() throws IOException {
+		int c = peek();
+		switch (c) {
+		case '{':
+			position++;
+			while (nextMember()) {
+				skipValue();
+			}
+			break;
+		case '[':
+			position++;
+			while (nextItem()) {
+				skipValue();
+			}
+			break;
+		case '"':
+			readText();
+			break;
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				readNumber();
+			}
+			else {
+				readLiteral();
+			}
+		}
+	}
+
+	/**
+	 * Reads a number into the text buffer
+	 * @throws IOException
+	 */
+	private void readNumber() throws IOException {
+		textLength = 0;
+		while (true) {
+			if (position == limit && !fill()) {
+				break;
+			}
+			char c = buffer[position];
+			if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+				appendText(c);
+				position++;
+			}
+			else {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reads true, false or null
+	 * @return String
+	 * @throws IOException
+	 */
+	private String readLiteral() throws IOException {
+		textLength = 0;
+		while (true) {
+			if (position == limit && !fill()) {
+				break;
+			}
+			char c = buffer[position];
+			if (c >= 'a' && c <= 'z') {
+				appendText(c);
+				position++;
+			}
+			else {
+				break;
+			}
+		}
+		if (keyEquals("true") || keyEquals("false") || keyEquals("null")) {
+			return new String(text, 0, textLength);
+		}
+		throw error("Unexpected value");
+	}
+
+	/**
+	 * Reads a quoted String into the text buffer, unescaping it
+	 * @throws IOException
+	 */
+	private void readText() throws IOException {
+		expect('"');
+		textLength = 0;
+		while (true) {
+			char c = read();
+			if (c == '"') {
+				return;
+			}
+			if (c == '\\') {
+				c = read();
+				switch (c) {
+				case 'b': c = '\b'; break;
+				case 'f': c = '\f'; break;
+				case 'n': c = '\n'; break;
+				case 'r': c = '\r'; break;
+				case 't': c = '\t'; break;
+				case 'u':
+					int value = 0;
+					for (int i=0; i<4; i++) {
+						int digit = Character.digit(read(), 16);
+						if (digit < 0) {
+							throw error("Invalid escape sequence");
+						}
+						value = (value << 4) | digit;
+					}
+					c = (char) value;
+					break;
+				case '"':
+				case '\\':
+				case '/':
+					break;
+				default:
+					throw error("Invalid escape sequence");
+				}
+			}
+			appendText(c);
+		}
+	}
+
+	/**
+	 * Appends a char to the text buffer
+	 * @param c - char
+	 */
+	private void appendText(char c) {
+		if (textLength == text.length) {
+			char[] grown = new char[text.length * 2];
+			System.arraycopy(text, 0, grown, 0, textLength);
+			text = grown;
+		}
+		text[textLength++] = c;
+	}
+
+	/**
+	 * Skips whitespaces and checks the next char is the expected one
+	 * @param expected - char
+	 * @throws IOException
+	 */
+	private void expect(char expected) throws IOException {
+		if (peek() != expected) {
+			throw error("'"+expected+"' expected");
+		}
+		position++;
+	}
+
+	/**
+	 * Skips whitespaces and returns the next char without consuming it, -1 at the end of the input
+	 * @return int
+	 * @throws IOException
+	 */
+	private int peek() throws IOException {
+		while (true) {
+			if (position == limit && !fill()) {
+				return -1;
+			}
+			char c = buffer[position];
+			if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == 0xFEFF) {
+				position++;
+			}
+			else {
+				return c;
+			}
+		}
+	}
+
+	/**
+	 * Returns the next char, whitespaces included
+	 * @return char
+	 * @throws IOException
+	 */
+	private char read() throws IOException {
+		if (position == limit && !fill()) {
+			throw error("Unexpected end of input");
+		}
+		return buffer[position++];
+	}
+
+	/**
+	 * Refills the buffer, returns false at the end of the input
+	 * @return boolean
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException {
+		if (null == in) {
+			return false;
+		}
+		offset += limit;
+		position = 0;
+		limit = 0;
+		int count = in.read(buffer);
+		if (count <= 0) {
+			return false;
+		}
+		limit = count;
+		return true;
+	}
+
+	/**
+	 * Returns an IOException for the current position
+	 * @param message - String
+	 * @return IOException
+	 */
+	private IOException error(String message) {
+		return new IOException(message+" at character "+(offset + position));
+	}
+}
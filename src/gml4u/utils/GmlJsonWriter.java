@@ -0,0 +1,473 @@
+package gml4u.utils;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlClient;
+import gml4u.model.GmlEnvironment;
+import gml4u.model.GmlGenericContainer;
+import gml4u.model.GmlLocation;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlPointCursor;
+import gml4u.model.GmlStroke;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import toxi.geom.Vec3D;
+
+/**
+ * Writes Gml as JSON, using the same structure as the XML (see GmlWriter):<br/>
+ * <code>{"gml":{"spec":"1.0","tag":{"header":{"client":{...},"environment":{...}},"drawing":{"stroke":[{"layer":0,"brush":{...},"pt":[{"x":0.1,"y":0.2,"z":0,"t":0.5},...]},...]}}}}</code><br/>
+ * Attributes of the XML (spec, isDrawing, layer) become members. Output is written as it goes:
+ * nothing is built in memory, and strokes can be written one by one.<br/>
+ * <br/>
+ * Usage:<br/>
+ * <code>
+ * GmlJsonWriter.write(gml, out);
+ * </code>
+ */
+public class GmlJsonWriter {
+
+	private static final Logger LOGGER = Logger.getLogger(GmlJsonWriter.class.getName());
+
+	private final Writer out;
+	private final char[] buffer = new char[8192];
+	private int count;
+	private final char[] chars = new char[FloatUtils.FORMAT_LENGTH];
+	private final GmlPointCursor cursor = new GmlPointCursor();
+	private int precision = FloatUtils.FULL_PRECISION;
+	private boolean started;
+	private boolean ended;
+	private boolean firstStroke;
+
+	/**
+	 * Creates a new GmlJsonWriter writing UTF-8 to the given OutputStream
+	 * @param out - OutputStream
+	 * @throws IOException
+	 */
+	public GmlJsonWriter(OutputStream out) throws IOException {
+		this(new OutputStreamWriter(out, "UTF-8"));
+	}
+
+	/**
+	 * Creates a new GmlJsonWriter writing to the given Writer
+	 * @param out - Writer
+	 */
+	public GmlJsonWriter(Writer out) {
+		this.out = out;
+	}
+
+	/**
+	 * Writes the whole Gml to the given OutputStream, which is flushed but not closed
+	 * @param gml - Gml
+	 * @param out - OutputStream
+	 * @throws IOException
+	 */
+	public static void write(Gml gml, OutputStream out) throws IOException {
+		new GmlJsonWriter(out).write(gml);
+	}
+
+	/**
+	 * Writes the whole Gml to the given OutputStream, which is flushed but not closed.<br/>
+	 * Point values are rounded to the given number of decimals, see setPrecision
+	 * @param gml - Gml
+	 * @param out - OutputStream
+	 * @param precision - int
+	 * @throws IOException
+	 */
+	public static void write(Gml gml, OutputStream out, int precision) throws IOException {
+		GmlJsonWriter writer = new GmlJsonWriter(out);
+		writer.setPrecision(precision);
+		writer.write(gml);
+	}
+
+	/**
+	 * Writes the whole Gml to the given Writer, which is flushed but not closed
+	 * @param gml - Gml
+	 * @param out - Writer
+	 * @throws IOException
+	 */
+	public static void write(Gml gml, Writer out) throws IOException {
+		new GmlJsonWriter(out).write(gml);
+	}
+
+	/**
+	 * Sets the number of decimals point values are rounded to (see GmlWriter.setPrecision)
+	 * @param precision - int
+	 */
+	public void setPrecision(int precision) {
+		if (precision > FloatUtils.MAX_DECIMALS) {
+			LOGGER.log(Level.WARNING, "Precision "+precision+" not supported, using "+FloatUtils.MAX_DECIMALS+" decimals");
+			precision = FloatUtils.MAX_DECIMALS;
+		}
+		this.precision = precision < 0 ? FloatUtils.FULL_PRECISION : precision;
+	}
+
+	/**
+	 * Returns the number of decimals point values are rounded to, FloatUtils.FULL_PRECISION if not rounded
+	 * @return int
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Writes the whole Gml
+	 * @param gml - Gml
+	 * @throws IOException
+	 */
+	public void write(Gml gml) throws IOException {
+		writeStart(gml.client, gml.environment);
+		for (GmlStroke stroke : gml.getStrokes()) {
+			writeStroke(stroke);
+		}
+		writeEnd();
+	}
+
+	/**
+	 * Writes everything found before the strokes and opens the stroke array
+	 * @param client - GmlClient
+	 * @param environment - GmlEnvironment
+	 * @throws IOException
+	 */
+	public void writeStart(GmlClient client, GmlEnvironment environment) throws IOException {
+		if (started) {
+			throw new IllegalStateException("Gml already started");
+		}
+		started = true;
+		firstStroke = true;
+
+		append("{\"gml\":{\"spec\":\"1.0\",\"tag\":{\"header\":{\"client\":");
+		writeParameters(client);
+		if (null != environment) {
+			append(",\"environment\":");
+			writeEnvironment(environment);
+		}
+		append("},\"drawing\":{\"stroke\":[");
+	}
+
+	/**
+	 * Writes a stroke, strokes without points are skipped
+	 * @param stroke - GmlStroke
+	 * @throws IOException
+	 */
+	public void writeStroke(GmlStroke stroke) throws IOException {
+		if (!started || ended) {
+			throw new IllegalStateException("Strokes must be written between writeStart and writeEnd");
+		}
+		if (stroke.nbPoints() == 0) {
+			return;
+		}
+		if (!firstStroke) {
+			append(',');
+		}
+		firstStroke = false;
+
+		append('{');
+		// ISDRAWING (only set if false, true by default)
+		if (!stroke.getIsDrawing()) {
+			append("\"isDrawing\":false,");
+		}
+		append("\"layer\":");
+		append(String.valueOf(stroke.getLayer()));
+
+		if (null != stroke.getBrush()) {
+			append(",\"brush\":");
+			writeParameters(stroke.getBrush());
+		}
+		if (null != stroke.getInfo() && stroke.getInfo().getParameters().size() > 0) {
+			append(",\"info\":");
+			writeParameters(stroke.getInfo());
+		}
+
+		append(",\"pt\":[");
+		cursor.reset(stroke);
+		while (cursor.next()) {
+			if (!cursor.isFirst()) {
+				append(',');
+			}
+			writePoint(cursor.getPoint());
+		}
+		append("]}");
+	}
+
+	/**
+	 * Closes the stroke array and the enclosing objects, then flushes the output, which isn't closed
+	 * @throws IOException
+	 */
+	public void writeEnd() throws IOException {
+		if (!started || ended) {
+			throw new IllegalStateException("Gml not started or already ended");
+		}
+		ended = true;
+		append("]}}}}");
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Writes the environment members, as GmlWriter does
+	 * @param environment - GmlEnvironment
+	 * @throws IOException
+	 */
+	private void writeEnvironment(GmlEnvironment environment) throws IOException {
+		append('{');
+		boolean first = true;
+		if (null != environment.screenBounds) {
+			first = writeVec3D("screenBounds", environment.screenBounds, FloatUtils.FULL_PRECISION, first);
+		}
+		if (null != environment.up) {
+			first = writeVec3D("up", environment.up, FloatUtils.FULL_PRECISION, first);
+		}
+		if (null != environment.screenBounds) {
+			first = writeName("screenScale", first);
+			append(String.valueOf((int) Vec3DUtils.getLongestAxisSize(environment.screenBounds)));
+		}
+		if (null != environment.offset) {
+			first = writeVec3D("offset", environment.offset, FloatUtils.FULL_PRECISION, first);
+		}
+		if (null != environment.rotation) {
+			first = writeVec3D("rotation", environment.rotation, FloatUtils.FULL_PRECISION, first);
+		}
+		if (null != environment.origin) {
+			first = writeVec3D("origin", environment.origin, FloatUtils.FULL_PRECISION, first);
+		}
+		if (null != environment.realScale) {
+			first = writeName("realscale", first);
+			append('{');
+			writeAxes(environment.realScale, FloatUtils.FULL_PRECISION);
+			append(",\"unit\":");
+			writeString(null == environment.realScaleUnit ? "" : environment.realScaleUnit);
+			append('}');
+		}
+		append('}');
+	}
+
+	/**
+	 * Writes a point and its optional members, as GmlWriter does
+	 * @param point - GmlPoint
+	 * @throws IOException
+	 */
+	private void writePoint(GmlPoint point) throws IOException {
+		append('{');
+		writeAxes(point, precision);
+		if (0 != point.time) {
+			writeFloat("t", point.time, precision, false);
+		}
+		if (!point.rotation.isZeroVector()) {
+			writeVec3D("rot", point.rotation, precision, false);
+		}
+		if (!point.direction.isZeroVector()) {
+			writeVec3D("dir", point.direction, precision, false);
+		}
+		if (0 != point.preasure) {
+			writeFloat("pres", point.preasure, precision, false);
+		}
+		if (0 != point.thickness) {
+			writeFloat("thick", point.thickness, precision, false);
+		}
+		append('}');
+	}
+
+	/**
+	 * Writes the parameters of a brush, info or client as an object, based on their type
+	 * @param container - GmlGenericContainer
+	 * @throws IOException
+	 */
+	private void writeParameters(GmlGenericContainer container) throws IOException {
+		append('{');
+		boolean first = true;
+		for (Map.Entry<String, Object> entry : container.getParameters().entrySet()) {
+			String key = entry.getKey();
+			Object o = entry.getValue();
+			if (o instanceof Vec3D) {
+				first = writeVec3D(key, (Vec3D) o, FloatUtils.FULL_PRECISION, first);
+			}
+			else if (o instanceof Float) {
+				first = writeFloat(key, (Float) o, FloatUtils.FULL_PRECISION, first);
+			}
+			else if (key.indexOf("color") > -1 && o instanceof Integer) {
+				int c = (Integer) o;
+				first = writeName(key, first);
+				append("{\"r\":");
+				append(String.valueOf((c >> 16) & 0xFF));
+				append(",\"g\":");
+				append(String.valueOf((c >> 8) & 0xFF));
+				append(",\"b\":");
+				append(String.valueOf(c & 0xFF));
+				append(",\"a\":");
+				append(String.valueOf((c >> 24) & 0xFF));
+				append('}');
+			}
+			else if (o instanceof GmlLocation) {
+				GmlLocation loc = (GmlLocation) o;
+				first = writeName(key, first);
+				append("{\"lat\":");
+				append(String.valueOf(loc.getLat()));
+				append(",\"lon\":");
+				append(String.valueOf(loc.getLon()));
+				if (0 != loc.getAlt()) { // Optional
+					append(",\"alt\":");
+					append(String.valueOf(loc.getAlt()));
+				}
+				append('}');
+			}
+			else { // Get it as a String
+				first = writeName(key, first);
+				writeString(String.valueOf(o));
+			}
+		}
+		append('}');
+	}
+
+	/**
+	 * Writes a Vec3D member, returns false (the next member isn't the first one anymore)
+	 * @param name - String
+	 * @param v - Vec3D
+	 * @param decimals - int
+	 * @param first - boolean
+	 * @return boolean
+	 * @throws IOException
+	 */
+	private boolean writeVec3D(String name, Vec3D v, int decimals, boolean first) throws IOException {
+		writeName(name, first);
+		append('{');
+		writeAxes(v, decimals);
+		append('}');
+		return false;
+	}
+
+	/**
+	 * Writes the x, y and z members of the given vector
+	 * @param v - Vec3D
+	 * @param decimals - int
+	 * @throws IOException
+	 */
+	private void writeAxes(Vec3D v, int decimals) throws IOException {
+		writeFloat("x", v.x, decimals, true);
+		writeFloat("y", v.y, decimals, false);
+		writeFloat("z", v.z, decimals, false);
+	}
+
+	/**
+	 * Writes a number member, returns false (the next member isn't the first one anymore)<br/>
+	 * NaN and infinite values, not allowed in JSON numbers, are written as Strings
+	 * @param name - String
+	 * @param value - float
+	 * @param decimals - int
+	 * @param first - boolean
+	 * @return boolean
+	 * @throws IOException
+	 */
+	private boolean writeFloat(String name, float value, int decimals, boolean first) throws IOException {
+		writeName(name, first);
+		boolean finite = !Float.isNaN(value) && !Float.isInfinite(value);
+		if (!finite) {
+			append('"');
+		}
+		int length = FloatUtils.formatFloat(value, decimals, chars, 0);
+		if (count + length > buffer.length) {
+			flushBuffer();
+		}
+		System.arraycopy(chars, 0, buffer, count, length);
+		count += length;
+		if (!finite) {
+			append('"');
+		}
+		return false;
+	}
+
+	/**
+	 * Writes a member name preceded by a comma if it isn't the first member, returns false
+	 * @param name - String
+	 * @param first - boolean
+	 * @return boolean
+	 * @throws IOException
+	 */
+	private boolean writeName(String name, boolean first) throws IOException {
+		if (!first) {
+			append(',');
+		}
+		writeString(name);
+		append(':');
+		return false;
+	}
+
+	/**
+	 * Writes a quoted and escaped String
+	 * @param s - String
+	 * @throws IOException
+	 */
+	private void writeString(String s) throws IOException {
+		append('"');
+		for (int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':  append("\\\""); break;
+			case '\\': append("\\\\"); break;
+			case '\n': append("\\n"); break;
+			case '\r': append("\\r"); break;
+			case '\t': append("\\t"); break;
+			default:
+				// Control characters, and line separators which JavaScript doesn't allow in Strings
+				if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+					append("\\u");
+					String hex = Integer.toHexString(c);
+					for (int j=hex.length(); j<4; j++) {
+						append('0');
+					}
+					append(hex);
+				}
+				else {
+					append(c);
+				}
+			}
+		}
+		append('"');
+	}
+
+	/**
+	 * Appends a character to the buffer
+	 * @param c - char
+	 * @throws IOException
+	 */
+	private void append(char c) throws IOException {
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = c;
+	}
+
+	/**
+	 * Appends a String to the buffer
+	 * @param s - String
+	 * @throws IOException
+	 */
+	private void append(String s) throws IOException {
+		int length = s.length();
+		if (count + length > buffer.length) {
+			flushBuffer();
+			if (length > buffer.length) {
+				out.write(s);
+				return;
+			}
+		}
+		s.getChars(0, length, buffer, count);
+		count += length;
+	}
+
+	/**
+	 * Writes the buffer to the output
+	 * @throws IOException
+	 */
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+}
@@ -2,96 +2,198 @@ package gml4u.utils;
 
 
 import gml4u.events.GmlEvent;
+import gml4u.events.GmlMultiParsingEvent;
 import gml4u.events.GmlParsingEvent;
 import gml4u.model.Gml;
 
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class GmlParser extends Thread {
+/**
+ * Parses Gml files in the background using a pool of worker threads.<br/>
+ * Jobs wait in a bounded queue: once it is full, the parse methods block until a worker takes a job.<br/>
+ * Each parsed file is sent back through a GmlParsingEvent, each list of files (parseFiles, parseFolder, parseArchive)
+ * is also sent back as a whole through a GmlMultiParsingEvent once all its files are parsed.<br/>
+ * Callbacks are called from the worker threads, one at a time.<br/>
+ * <br/>
+ * Files can also be parsed without callback: parseAsync returns a Future for a single file
+ * and publishFiles/publishFolder return a GmlPublisher which only parses what its subscriber requested.
+ */
+public class GmlParser {
 
 	private static final Logger LOGGER = Logger.getLogger(GmlParser.class.getName());
-	
-	private boolean running;           // Is the thread running?  Yes or no?
-	private int wait;                  // How many milliseconds should we wait in between executions?
-	private String threadId;           // Thread name
-	private boolean normalize;
-	private List<String> fileList = new ArrayList<String>();
+
+	public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+	private String threadId;           // Worker threads name
+	private int workers;               // Number of worker threads
+	private int queueSize;             // Maximum number of jobs waiting to be parsed
+	private ThreadPoolExecutor executor;
 	private Object parent;
 	private Method callback;
+	private final Object callbackLock = new Object();
+	// Publications not completed, failed or cancelled yet
+	private final Set<Publication> publications = new HashSet<Publication>();
+
+	// Counters
+	private final AtomicInteger completedJobs = new AtomicInteger();
+	private final AtomicInteger failedJobs = new AtomicInteger();
+	private final AtomicInteger peakQueueSize = new AtomicInteger();
+	private final AtomicLong totalParsingTime = new AtomicLong();
 
 	/**
-	 * Creates a new GmlMultiParser thread
-	 * The parent object must implement a <i>public void gmlEvent(GmlEvent event)</i> method.
+	 * Creates a new GmlParser using one worker thread per available processor.<br/>
+	 * The parent object must implement a <i>public void gmlEvent(GmlEvent event)</i> method.<br/>
+	 * Note: the waiting time is not used anymore as workers don't poll for new files.
 	 * @param wait - int (waiting time in ms)
 	 * @param id - String (thread id)
 	 * @param parent - Object
 	 */
 	public GmlParser (int wait, String id, Object parent){
-		try {
-			// Looking for a method called "gmlEvent", with one argument of GmlEvent type
-			callback = parent.getClass().getMethod("gmlEvent", new Class[] { GmlEvent.class });
-		}
-		catch (Exception e) {
-			LOGGER.log(Level.WARNING, parent.getClass()+" shall implement a \"public void gmlEvent(GmlEvent event)\" method to be able to receive GmlEvent");
+		this(id, parent, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * Creates a new GmlParser using the given number of worker threads.<br/>
+	 * The parent object must implement a <i>public void gmlEvent(GmlEvent event)</i> method.
+	 * @param id - String (thread id)
+	 * @param parent - Object
+	 * @param workers - int (number of worker threads)
+	 */
+	public GmlParser (String id, Object parent, int workers){
+		this(id, parent, workers, DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * Creates a new GmlParser without callback, to be used with parseAsync and the publish methods.
+	 * @param id - String (thread id)
+	 * @param workers - int (number of worker threads)
+	 */
+	public GmlParser (String id, int workers){
+		this(id, null, workers, DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * Creates a new GmlParser using the given number of worker threads and queue size.<br/>
+	 * The parent object must implement a <i>public void gmlEvent(GmlEvent event)</i> method.
+	 * @param id - String (thread id)
+	 * @param parent - Object
+	 * @param workers - int (number of worker threads)
+	 * @param queueSize - int (maximum number of files waiting to be parsed)
+	 */
+	public GmlParser (String id, Object parent, int workers, int queueSize){
+		if (null != parent) {
+			try {
+				// Looking for a method called "gmlEvent", with one argument of GmlEvent type
+				callback = parent.getClass().getMethod("gmlEvent", new Class[] { GmlEvent.class });
+			}
+			catch (Exception e) {
+				LOGGER.log(Level.WARNING, parent.getClass()+" shall implement a \"public void gmlEvent(GmlEvent event)\" method to be able to receive GmlEvent");
+			}
 		}
 
 		this.parent = parent;
-		this.wait = wait;
-		this.running = false;
 		this.threadId = id;
-		
+		this.workers = Math.max(1, workers);
+		this.queueSize = Math.max(1, queueSize);
+
 		start();
 	}
 
 	/**
-	 * Starts the thread
+	 * Starts the worker threads
 	 */
-	public void start () {
-		LOGGER.log(Level.FINEST, "Starting thread");
-		if (!running) {
-			running = true;
-			super.start();
+	public synchronized void start () {
+		if (null == executor || executor.isShutdown()) {
+			LOGGER.log(Level.FINEST, "Starting "+workers+" worker thread(s)");
+			executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(queueSize), new WorkerThreadFactory(threadId, "GmlParser"), new BlockingSubmissionHandler());
 		}
 	}
 
 	/**
-	 * Run method triggered by start()
+	 * Returns true if the parser accepts new files
+	 * @return boolean
 	 */
-	public void run () {
-		while (running){
-			try {
-				if (fileList.size() > 0) {
-					LOGGER.log(Level.FINEST, "Start parsing: "+fileList.size()+ "files");
-					
-					for (String fileName : fileList) {
-						Gml gml = GmlParsingHelper.getGml(fileName, normalize);
-						if (null != gml && null !=callback) {
-							try {
-								// Call the method with this object as the argument!
-								LOGGER.log(Level.FINEST, "Invoking callback");
-								callback.invoke(parent, new GmlParsingEvent(gml) );
-							}
-							catch (Exception e) {
-								//LOGGER.debug("Couldn't invoke the callback method for some reason. "+e.getMessage());
-							}
-						}
-					}
-				}
-				fileList.clear();
+	public synchronized boolean isRunning() {
+		return null != executor && !executor.isShutdown();
+	}
 
-				sleep((long)(wait));	
-			}
-			// TODO Lock and loop issue exception when NullPointerExceptions in GmlMultiParsingHelper
-			catch (Exception e) {
-				//LOGGER.warn(e.getMessage());
-			}
-		}
-		LOGGER.log(Level.FINEST, threadId + " thread is done!");  // The thread is done when we get to the end of run()
-		quit();
+	/**
+	 * Returns the number of worker threads
+	 * @return int
+	 */
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Returns the number of files waiting to be parsed
+	 * @return int
+	 */
+	public int getQueueSize() {
+		ThreadPoolExecutor executor = this.executor;
+		return null == executor ? 0 : executor.getQueue().size();
+	}
+
+	/**
+	 * Returns the largest number of files which have been waiting at the same time
+	 * @return int
+	 */
+	public int getPeakQueueSize() {
+		return peakQueueSize.get();
+	}
+
+	/**
+	 * Returns the number of files being parsed right now
+	 * @return int
+	 */
+	public int getActiveJobs() {
+		ThreadPoolExecutor executor = this.executor;
+		return null == executor ? 0 : executor.getActiveCount();
+	}
+
+	/**
+	 * Returns the number of files successfully parsed so far
+	 * @return int
+	 */
+	public int getCompletedJobs() {
+		return completedJobs.get();
+	}
+
+	/**
+	 * Returns the number of files which couldn't be parsed so far
+	 * @return int
+	 */
+	public int getFailedJobs() {
+		return failedJobs.get();
+	}
+
+	/**
+	 * Returns the time spent parsing files so far, summed over all workers (in nanoseconds)
+	 * @return long
+	 */
+	public long getTotalParsingTime() {
+		return totalParsingTime.get();
 	}
 
 	/**
@@ -104,8 +206,7 @@ public class GmlParser extends Thread {
 	public void parseFolder(final String folder, String regex, boolean normalize) {
 		LOGGER.log(Level.FINEST, "Scanning "+folder);
 		List<String> files = FileUtils.scanFolder(folder, regex);
-		this.fileList.addAll(files);
-		this.normalize = normalize;
+		parseFiles(files, normalize);
 	}
 
 	/**
@@ -117,7 +218,7 @@ public class GmlParser extends Thread {
 	public void parseFolder(final String folder, boolean normalize) {
 		parseFolder(folder, FileUtils.GML_FILE_REGEX, normalize);
 	}
-	
+
 	/**
 	 * Parses and normalizes GML files matching the given regex and found in the given folder.<br/>
 	 * Must be a local file <br/>
@@ -127,7 +228,7 @@ public class GmlParser extends Thread {
 	public void parseFolder(final String folder, String regex) {
 		parseFolder(folder, regex, true);
 	}
-	
+
 	/**
 	 * Parses a list of GML file using their given location and normalizes them.<br/>
 	 * Must be a local file <br/>
@@ -137,46 +238,89 @@ public class GmlParser extends Thread {
 		parseFolder(folder, FileUtils.GML_FILE_REGEX, true);
 	}
 
+	/**
+	 * Parses all the Gml stored in the given GmlArchive and normalizes them if explicitly asked.<br/>
+	 * Events use the entry ids as locations. The archive is closed once all its entries are parsed.
+	 * @param location - String
+	 * @param normalize - boolean
+	 */
+	public void parseArchive(final String location, boolean normalize) {
+		GmlArchive archive;
+		try {
+			archive = new GmlArchive(location, true);
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, location+" couldn't be opened. Reason: "+e.getMessage());
+			fire(new GmlMultiParsingEvent(new LinkedHashMap<String, Gml>()));
+			return;
+		}
+		List<String> ids = archive.getIds();
+		if (ids.size() == 0) {
+			archive.close();
+			fire(new GmlMultiParsingEvent(new LinkedHashMap<String, Gml>()));
+			return;
+		}
+		ParsingBatch batch = new ParsingBatch(ids.size());
+		for (String id : ids) {
+			enqueue(new ParsingJob(archive, id, normalize, batch));
+		}
+	}
+
+	/**
+	 * Parses and normalizes all the Gml stored in the given GmlArchive.<br/>
+	 * See parseArchive(String, boolean)
+	 * @param location - String
+	 */
+	public void parseArchive(final String location) {
+		parseArchive(location, true);
+	}
+
 	/**
 	 * Parses a list of GML files using their given location and normalizes them if explicitly asked.<br/>
 	 * Can be local files or http resources as well.<br/>
-	 * Note that you might need a local proxy to access extenal http resources when running inside an unsigned Applet 
+	 * Note that you might need a local proxy to access extenal http resources when running inside an unsigned Applet
 	 * @param fileList - String
 	 * @param normalize - boolean
 	 */
 	public void parseFiles(final List<String> fileList, boolean normalize) {
 		LOGGER.log(Level.FINEST, fileList + " to be parsed");
-		this.fileList.addAll(fileList);
-		this.normalize = normalize;
+		List<String> files = new ArrayList<String>(fileList);
+		if (files.size() == 0) {
+			fire(new GmlMultiParsingEvent(new LinkedHashMap<String, Gml>()));
+			return;
+		}
+		ParsingBatch batch = new ParsingBatch(files.size());
+		for (String file : files) {
+			submit(file, normalize, batch);
+		}
 	}
-	
+
 	/**
 	 * Parses a list of GML files using their given location and normalizes them.<br/>
 	 * Can be local files or http resources as well.<br/>
-	 * Note that you might need a local proxy to access extenal http resources when running inside an unsigned Applet 
+	 * Note that you might need a local proxy to access extenal http resources when running inside an unsigned Applet
 	 * @param fileList - String
 	 */
 	public void parseFiles(final List<String> fileList) {
 		parseFiles(fileList, true);
 	}
-	
+
 	/**
 	 * Parses a GML file using its given location and normalizes it if explicitly asked.<br/>
 	 * Can be a local files or a http resources as well.<br/>
-	 * Note that you might need a local proxy to access extenal http resources when running inside an unsigned Applet 
+	 * Note that you might need a local proxy to access extenal http resources when running inside an unsigned Applet
 	 * @param file - String
 	 * @param normalize - boolean
 	 */
 	public void parse(final String file, boolean normalize) {
 		LOGGER.log(Level.FINEST, file + " to be parsed");
-		this.fileList.add(file);
-		this.normalize = normalize;
+		submit(file, normalize, null);
 	}
-	
+
 	/**
 	 * Parses a GML file using its given location and normalizes it.<br/>
 	 * Can be local file or a http resources as well.<br/>
-	 * Note that you might need a local proxy to access extenal http resources when running inside an unsigned Applet 
+	 * Note that you might need a local proxy to access extenal http resources when running inside an unsigned Applet
 	 * @param file - String
 	 */
 	public void parse(final String file) {
@@ -184,11 +328,456 @@ public class GmlParser extends Thread {
 	}
 
 	/**
-	 * Quits the thread
+	 * Parses a GML file using its given location and normalizes it if explicitly asked.<br/>
+	 * The result is returned through the Future instead of the gmlEvent callback.<br/>
+	 * Future.get() throws an ExecutionException if the file couldn't be parsed
+	 * and a CancellationException if the parser was quit before parsing it.
+	 * @param file - String
+	 * @param normalize - boolean
+	 * @return Future<Gml>
+	 */
+	public Future<Gml> parseAsync(final String file, final boolean normalize) {
+		FutureTask<Gml> task = new FutureTask<Gml>(new Callable<Gml>() {
+			public Gml call() throws Exception {
+				Gml gml = parseTimed(file, normalize);
+				if (null == gml) {
+					throw new IOException(file+" couldn't be parsed");
+				}
+				return gml;
+			}
+		});
+		if (!execute(task)) {
+			task.cancel(false);
+		}
+		return task;
+	}
+
+	/**
+	 * Parses a GML file using its given location and normalizes it.<br/>
+	 * See parseAsync(String, boolean)
+	 * @param file - String
+	 * @return Future<Gml>
+	 */
+	public Future<Gml> parseAsync(final String file) {
+		return parseAsync(file, true);
+	}
+
+	/**
+	 * Returns a GmlPublisher for the given list of files.<br/>
+	 * Files are only parsed when requested by the subscriber, at most one per worker thread at a time,
+	 * and are published in the order they are parsed. Files which can't be parsed are skipped.<br/>
+	 * If the parser is quit before all files are published, the subscriber's onError receives a CancellationException.
+	 * @param fileList - List<String>
+	 * @param normalize - boolean
+	 * @return GmlPublisher
+	 */
+	public GmlPublisher publishFiles(final List<String> fileList, final boolean normalize) {
+		final List<String> files = new ArrayList<String>(fileList);
+		return new GmlPublisher() {
+			public void subscribe(GmlSubscriber subscriber) {
+				Publication publication = new Publication(files, normalize, subscriber);
+				synchronized (publications) {
+					publications.add(publication);
+				}
+				subscriber.onSubscribe(publication);
+				publication.checkEmpty();
+			}
+		};
+	}
+
+	/**
+	 * Returns a GmlPublisher for the GML files matching the regex and found in the given folder.<br/>
+	 * See publishFiles(List<String>, boolean)
+	 * @param folder - String
+	 * @param regex - String
+	 * @param normalize - boolean
+	 * @return GmlPublisher
+	 */
+	public GmlPublisher publishFolder(final String folder, String regex, boolean normalize) {
+		return publishFiles(FileUtils.scanFolder(folder, regex), normalize);
+	}
+
+	/**
+	 * Returns a GmlPublisher for the GML files (with .gml extension) found in the given folder, normalized.<br/>
+	 * See publishFiles(List<String>, boolean)
+	 * @param folder - String
+	 * @return GmlPublisher
+	 */
+	public GmlPublisher publishFolder(final String folder) {
+		return publishFolder(folder, FileUtils.GML_FILE_REGEX, true);
+	}
+
+	/**
+	 * Quits the parser, files waiting to be parsed are dropped.<br/>
+	 * Lists of files are still sent back through a GmlMultiParsingEvent, with the files parsed so far.
+	 * Futures of files not parsed yet are cancelled and publications not completed yet fail
+	 * with a CancellationException.
 	 */
 	public void quit() {
 		LOGGER.log(Level.FINEST, threadId + " quitting.");
-		running = false;
-		interrupt(); // in case the thread is waiting. . .
+		List<Runnable> dropped;
+		synchronized (this) {
+			if (null == executor) {
+				return;
+			}
+			dropped = executor.shutdownNow();
+		}
+		for (Runnable job : dropped) {
+			if (job instanceof ParsingJob) {
+				((ParsingJob) job).drop();
+			}
+			else if (job instanceof Future<?>) {
+				((Future<?>) job).cancel(false);
+			}
+		}
+		List<Publication> pending;
+		synchronized (publications) {
+			pending = new ArrayList<Publication>(publications);
+		}
+		for (Publication publication : pending) {
+			publication.error(new CancellationException("Parser was quit"));
+		}
+	}
+
+	/**
+	 * Adds a new job to the queue, blocks if the queue is full
+	 * @param file - String
+	 * @param normalize - boolean
+	 * @param batch - ParsingBatch (null if not part of a list)
+	 */
+	private void submit(String file, boolean normalize, ParsingBatch batch) {
+		enqueue(new ParsingJob(null, file, normalize, batch));
+	}
+
+	/**
+	 * Adds a parsing job to the queue, blocks if the queue is full.<br/>
+	 * The job is dropped if the parser was quit
+	 * @param job - ParsingJob
+	 */
+	private void enqueue(ParsingJob job) {
+		if (!execute(job)) {
+			job.drop();
+		}
+	}
+
+	/**
+	 * Adds a job to the queue, blocks if the queue is full.<br/>
+	 * Jobs submitted from a worker thread (from the gmlEvent callback) are run right away if the queue is full.<br/>
+	 * Returns false if the parser was quit
+	 * @param job - Runnable
+	 * @return boolean
+	 */
+	private boolean execute(Runnable job) {
+		ThreadPoolExecutor executor;
+		synchronized (this) {
+			executor = this.executor;
+		}
+		try {
+			executor.execute(job);
+		}
+		catch (RejectedExecutionException e) {
+			return false;
+		}
+
+		// Keep track of the queue depth
+		int size = executor.getQueue().size();
+		int peak = peakQueueSize.get();
+		while (size > peak && !peakQueueSize.compareAndSet(peak, size)) {
+			peak = peakQueueSize.get();
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a file and updates the counters, returns null if the file couldn't be parsed
+	 * @param file - String
+	 * @param normalize - boolean
+	 * @return Gml
+	 */
+	private Gml parseTimed(String file, boolean normalize) {
+		return parseTimed(null, file, normalize);
+	}
+
+	/**
+	 * Parses a file or an archive entry and updates the counters, returns null if it couldn't be parsed
+	 * @param archive - GmlArchive (null for files)
+	 * @param file - String (file location or entry id)
+	 * @param normalize - boolean
+	 * @return Gml
+	 */
+	private Gml parseTimed(GmlArchive archive, String file, boolean normalize) {
+		long start = System.nanoTime();
+		Gml gml = null;
+		try {
+			gml = null == archive ? GmlParsingHelper.getGml(file, normalize) : archive.getGml(file, normalize);
+		}
+		catch (Exception e) {
+			LOGGER.log(Level.WARNING, file+" couldn't be parsed. Reason: "+e);
+		}
+		totalParsingTime.addAndGet(System.nanoTime() - start);
+		if (null != gml) {
+			completedJobs.incrementAndGet();
+		}
+		else {
+			failedJobs.incrementAndGet();
+		}
+		return gml;
+	}
+
+	/**
+	 * Sends the event to the parent, one event at a time
+	 * @param event - GmlEvent
+	 */
+	private void fire(GmlEvent event) {
+		if (null == callback) {
+			return;
+		}
+		synchronized (callbackLock) {
+			try {
+				// Call the method with this object as the argument!
+				LOGGER.log(Level.FINEST, "Invoking callback");
+				callback.invoke(parent, event);
+			}
+			catch (Exception e) {
+				LOGGER.log(Level.WARNING, "Couldn't invoke the callback method. Reason: "+e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Parses a single file or archive entry
+	 */
+	private class ParsingJob implements Runnable {
+
+		private final GmlArchive archive;
+		private final String file;
+		private final boolean normalize;
+		private final ParsingBatch batch;
+		private final long submitTime;
+
+		ParsingJob(GmlArchive archive, String file, boolean normalize, ParsingBatch batch) {
+			this.archive = archive;
+			this.file = file;
+			this.normalize = normalize;
+			this.batch = batch;
+			this.submitTime = System.nanoTime();
+		}
+
+		public void run() {
+			long start = System.nanoTime();
+			Gml gml = parseTimed(archive, file, normalize);
+			if (null != gml) {
+				fire(new GmlParsingEvent(gml, file, System.nanoTime() - start, start - submitTime, getQueueSize()));
+			}
+			finish(gml);
+		}
+
+		/**
+		 * Called instead of run if the parser was quit before the job ran
+		 */
+		void drop() {
+			LOGGER.log(Level.WARNING, file+" wasn't parsed. Reason: parser was quit");
+			finish(null);
+		}
+
+		/**
+		 * Sends the list back once its last file is done
+		 * @param gml - Gml (null if not parsed)
+		 */
+		private void finish(Gml gml) {
+			if (null != batch && batch.done(file, gml)) {
+				if (null != archive) {
+					archive.close();
+				}
+				fire(new GmlMultiParsingEvent(batch.getResults()));
+			}
+		}
+	}
+
+	/**
+	 * Publishes a list of files to a single subscriber.<br/>
+	 * Up to one drainer per worker thread parses files while there is demand left,
+	 * so nothing is parsed ahead of what the subscriber requested.
+	 */
+	private class Publication implements GmlSubscription {
+
+		private final List<String> files;
+		private final boolean normalize;
+		private final GmlSubscriber subscriber;
+		private final Object deliveryLock = new Object();
+		private final ThreadLocal<Boolean> draining = new ThreadLocal<Boolean>();
+		private int index;                   // Next file to parse
+		private long demand;                 // Requested but not yet taken
+		private int drainers;                // Running drainers
+		private volatile boolean terminated; // Completed, failed or cancelled
+
+		Publication(List<String> files, boolean normalize, GmlSubscriber subscriber) {
+			this.files = files;
+			this.normalize = normalize;
+			this.subscriber = subscriber;
+		}
+
+		public void request(long n) {
+			if (n <= 0) {
+				error(new IllegalArgumentException("Requested amount must be positive: "+n));
+				return;
+			}
+			int toStart;
+			synchronized (this) {
+				if (terminated) {
+					return;
+				}
+				demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+				// Called from onNext: the current drainer will take care of it
+				if (Boolean.TRUE.equals(draining.get())) {
+					return;
+				}
+				toStart = (int) Math.min(Math.min(demand, files.size() - index), workers - drainers);
+				drainers += Math.max(0, toStart);
+			}
+			for (int i=0; i<toStart; i++) {
+				boolean started = execute(new Runnable() {
+					public void run() {
+						drain();
+					}
+				});
+				if (!started) {
+					error(new CancellationException("Parser was quit"));
+					return;
+				}
+			}
+		}
+
+		public void cancel() {
+			terminated = true;
+			release();
+		}
+
+		/**
+		 * Forgets the publication once it is terminated
+		 */
+		private void release() {
+			synchronized (publications) {
+				publications.remove(this);
+			}
+		}
+
+		/**
+		 * Completes right away if there is nothing to publish
+		 */
+		void checkEmpty() {
+			boolean complete;
+			synchronized (this) {
+				complete = files.isEmpty() && !terminated;
+				terminated |= complete;
+			}
+			if (complete) {
+				release();
+				synchronized (deliveryLock) {
+					subscriber.onComplete();
+				}
+			}
+		}
+
+		/**
+		 * Parses and delivers files until there is no demand left
+		 */
+		private void drain() {
+			draining.set(Boolean.TRUE);
+			try {
+				String file;
+				while (null != (file = take())) {
+					Gml gml = parseTimed(file, normalize);
+					if (null == gml) {
+						// Skipped, its demand goes to the next file
+						synchronized (this) {
+							demand++;
+						}
+						continue;
+					}
+					synchronized (deliveryLock) {
+						if (!terminated) {
+							try {
+								subscriber.onNext(gml);
+							}
+							catch (Throwable t) {
+								LOGGER.log(Level.WARNING, "Subscriber failed, cancelling. Reason: "+t);
+								cancel();
+							}
+						}
+					}
+				}
+			}
+			finally {
+				draining.remove();
+			}
+		}
+
+		/**
+		 * Returns the next file to parse or null if the drainer must stop
+		 * @return String
+		 */
+		private String take() {
+			boolean complete;
+			synchronized (this) {
+				if (!terminated && demand > 0 && index < files.size()) {
+					demand--;
+					return files.get(index++);
+				}
+				drainers--;
+				complete = !terminated && index == files.size() && drainers == 0;
+				terminated |= complete;
+			}
+			if (complete) {
+				release();
+				synchronized (deliveryLock) {
+					subscriber.onComplete();
+				}
+			}
+			return null;
+		}
+
+		void error(Throwable t) {
+			synchronized (this) {
+				if (terminated) {
+					return;
+				}
+				terminated = true;
+			}
+			release();
+			synchronized (deliveryLock) {
+				subscriber.onError(t);
+			}
+		}
+	}
+
+	/**
+	 * Keeps track of a list of files to send them back together
+	 */
+	private static class ParsingBatch {
+
+		private final AtomicInteger remaining;
+		private final Map<String, Gml> results = Collections.synchronizedMap(new LinkedHashMap<String, Gml>());
+
+		ParsingBatch(int size) {
+			remaining = new AtomicInteger(size);
+		}
+
+		/**
+		 * Stores the result and returns true if it was the last file of the batch
+		 * @param file - String
+		 * @param gml - Gml (null if parsing failed)
+		 * @return boolean
+		 */
+		boolean done(String file, Gml gml) {
+			if (null != gml) {
+				results.put(file, gml);
+			}
+			return remaining.decrementAndGet() == 0;
+		}
+
+		Map<String, Gml> getResults() {
+			return results;
+		}
 	}
 }
\ No newline at end of file
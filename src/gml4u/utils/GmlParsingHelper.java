@@ -6,11 +6,14 @@ import gml4u.model.GmlClient;
 import gml4u.model.GmlConstants;
 import gml4u.model.GmlEnvironment;
 import gml4u.model.GmlGenericContainer;
+import gml4u.model.GmlHeader;
 import gml4u.model.GmlInfo;
 import gml4u.model.GmlLocation;
 import gml4u.model.GmlPoint;
 import gml4u.model.GmlStroke;
+import gml4u.model.LazyGml;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -28,7 +31,180 @@ import toxi.geom.Vec3D;
 public class GmlParsingHelper {
 
 	private static final Logger LOGGER = Logger.getLogger(GmlParsingHelper.class.getName());
-	
+
+	/**
+	 * Parsers which can be used to read Gml documents
+	 */
+	public static final int PARSER_JDOM = 0;
+	public static final int PARSER_STAX = 1;
+
+	private static volatile int parser = PARSER_JDOM;
+	private static volatile GmlCache cache;
+
+	/**
+	 * Typed values found in generic containers (brush, info, client), selected by their children names
+	 */
+	private static volatile Map<String, Long> fieldBits = new HashMap<String, Long>();
+	private static volatile ValueType[] valueTypes = new ValueType[0];
+
+	static {
+		registerValueType(new String[] {"x", "y", "z"}, new GmlValueDecoder() {
+			public Object decode(List<Element> elements) {
+				return getGmlVec3D(elements);
+			}
+		});
+		registerValueType(new String[] {"x", "y"}, new GmlValueDecoder() {
+			public Object decode(List<Element> elements) {
+				return getGmlVec2D(elements);
+			}
+		});
+		registerValueType(new String[] {"r", "g", "b"}, new GmlValueDecoder() {
+			public Object decode(List<Element> elements) {
+				return getGmlColor(elements);
+			}
+		});
+		registerValueType(new String[] {"lat", "lon"}, new GmlValueDecoder() {
+			public Object decode(List<Element> elements) {
+				return getGmlLocation(elements);
+			}
+		});
+	}
+
+	/**
+	 * Registers a new typed value for generic containers (brush, info, client).<br/>
+	 * An element is decoded with the given decoder when its children include all the given names, in any order.<br/>
+	 * When several types match, the one requiring the most names wins (ie: x, y, z over x, y),
+	 * then the first registered one.
+	 * @param names - String[] (required children names)
+	 * @param decoder - GmlValueDecoder
+	 */
+	public static synchronized void registerValueType(String[] names, GmlValueDecoder decoder) {
+		Map<String, Long> bits = new HashMap<String, Long>(fieldBits);
+		long mask = 0;
+		for (String name : names) {
+			Long bit = bits.get(name);
+			if (null == bit) {
+				if (bits.size() == Long.SIZE) {
+					throw new IllegalStateException("Too many typed value names");
+				}
+				bit = 1L << bits.size();
+				bits.put(name, bit);
+			}
+			mask |= bit;
+		}
+
+		// Inserted before the first smaller type, after those of the same size
+		ValueType type = new ValueType(mask, Long.bitCount(mask), decoder);
+		ValueType[] existing = valueTypes;
+		int index = 0;
+		while (index < existing.length && existing[index].size >= type.size) {
+			index++;
+		}
+		ValueType[] types = new ValueType[existing.length + 1];
+		System.arraycopy(existing, 0, types, 0, index);
+		types[index] = type;
+		System.arraycopy(existing, index, types, index + 1, existing.length - index);
+
+		fieldBits = bits;
+		valueTypes = types;
+	}
+
+	/**
+	 * Unregisters the typed values using the given decoder, returns false if there was none.<br/>
+	 * Names used by these types only stay known, to keep the other types unchanged.
+	 * @param decoder - GmlValueDecoder
+	 * @return boolean
+	 */
+	public static synchronized boolean unregisterValueType(GmlValueDecoder decoder) {
+		List<ValueType> types = new ArrayList<ValueType>();
+		for (ValueType type : valueTypes) {
+			if (type.decoder != decoder) {
+				types.add(type);
+			}
+		}
+		if (types.size() == valueTypes.length) {
+			return false;
+		}
+		valueTypes = types.toArray(new ValueType[types.size()]);
+		return true;
+	}
+
+	/**
+	 * Returns the typed value matching the given children, null if none
+	 * @param elements - List<Element>
+	 * @return ValueType
+	 */
+	private static ValueType getValueType(List<Element> elements) {
+		Map<String, Long> bits = fieldBits;
+		long mask = 0;
+		for (int i=0; i<elements.size(); i++) {
+			Long bit = bits.get(elements.get(i).getName());
+			if (null != bit) {
+				mask |= bit;
+			}
+		}
+		if (mask != 0) {
+			for (ValueType type : valueTypes) {
+				if ((mask & type.mask) == type.mask) {
+					return type;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A typed value: the children it requires and its decoder
+	 */
+	private static class ValueType {
+
+		final long mask;
+		final int size;
+		final GmlValueDecoder decoder;
+
+		ValueType(long mask, int size, GmlValueDecoder decoder) {
+			this.mask = mask;
+			this.size = size;
+			this.decoder = decoder;
+		}
+	}
+
+	/**
+	 * Sets the parser used by default (PARSER_JDOM or PARSER_STAX)
+	 * @param parser - int
+	 */
+	public static void setParser(int parser) {
+		if (parser != PARSER_JDOM && parser != PARSER_STAX) {
+			LOGGER.log(Level.WARNING, "Unknown parser "+parser+", parser wasn't changed");
+			return;
+		}
+		GmlParsingHelper.parser = parser;
+	}
+
+	/**
+	 * Returns the parser used by default
+	 * @return int
+	 */
+	public static int getParser() {
+		return parser;
+	}
+
+	/**
+	 * Sets the cache used by getGml(String, boolean) and getGmlFromString, null to disable caching
+	 * @param cache - GmlCache
+	 */
+	public static void setCache(GmlCache cache) {
+		GmlParsingHelper.cache = cache;
+	}
+
+	/**
+	 * Returns the cache currently used, null if none
+	 * @return GmlCache
+	 */
+	public static GmlCache getCache() {
+		return cache;
+	}
+
 	/**
 	 * Parses a Gml file given its location
 	 * @param file - String
@@ -45,16 +221,76 @@ public class GmlParsingHelper {
 	 * @return Gml
 	 */
 	public static Gml getGml(String file, boolean normalize) {
+		GmlCache cache = GmlParsingHelper.cache;
+		if (null != cache) {
+			return cache.getGml(file, normalize, parser);
+		}
+		return getGml(file, normalize, parser);
+	}
+
+	/**
+	 * Parses a Gml file given its location using the given parser (PARSER_JDOM or PARSER_STAX)<br/>
+	 * and, if requested, does the appropriate normalisations to match the Gml 1.0 specs<br/>
+	 * The cache isn't used
+	 * @param file - String
+	 * @param normalize - boolean
+	 * @param parser - int
+	 * @return Gml
+	 */
+	public static Gml getGml(String file, boolean normalize, int parser) {
 
 		LOGGER.log(Level.FINEST, "Parsing from file: "+ file);
 
-		Gml gml = parseGml(file, true);
+		Gml gml = parseGml(file, true, parser);
+		if (null == gml) {
+			return null;
+		}
 		gml = cleanGml(gml, normalize);
 		
 		return gml;
 
 	}
 
+	/**
+	 * Reads only the client and environment of a Gml file, along with its number of strokes and points.<br/>
+	 * Points are counted but not decoded, no normalization is done.
+	 * @param file - String
+	 * @return GmlHeader
+	 */
+	public static GmlHeader getGmlHeader(String file) {
+		return getGmlHeader(file, true);
+	}
+
+	/**
+	 * Reads only the client and environment of a Gml file.<br/>
+	 * If count is false, reading stops as soon as the drawing is reached and counts are set to -1.<br/>
+	 * No normalization is done.
+	 * @param file - String
+	 * @param count - boolean
+	 * @return GmlHeader
+	 */
+	public static GmlHeader getGmlHeader(String file, boolean count) {
+		LOGGER.log(Level.FINEST, "Scanning header from file: "+ file);
+		return GmlStaxParsingHelper.scanHeader(file, count);
+	}
+
+	/**
+	 * Opens a Gml file lazily: strokes are only decoded when asked for (see LazyGml).<br/>
+	 * Returns null if the file couldn't be read.
+	 * @param file - String
+	 * @return LazyGml
+	 */
+	public static LazyGml getLazyGml(String file) {
+		LOGGER.log(Level.FINEST, "Indexing file: "+ file);
+		try {
+			return new LazyGml(file);
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, e.getMessage());
+		}
+		return null;
+	}
+
 	/**
 	* Parses a Gml input String and normalizes it
 	* 
@@ -74,9 +310,29 @@ public class GmlParsingHelper {
 	* @return Gml
 	*/
 	public static Gml getGmlFromString(String inputString, boolean normalize) {
+		GmlCache cache = GmlParsingHelper.cache;
+		if (null != cache) {
+			return cache.getGmlFromString(inputString, normalize, parser);
+		}
+		return parseGmlFromString(inputString, normalize, parser);
+	}
+
+	/**
+	* Parses a Gml input String using the given parser, and, if requested, does the appropriate<br/>
+	* normalisations to match the Gml 1.0 specs. The cache isn't used.
+	* 
+	* @param inputString - String
+	* @param normalize - boolean
+	* @param parser - int
+	* @return Gml
+	*/
+	static Gml parseGmlFromString(String inputString, boolean normalize, int parser) {
 		LOGGER.log(Level.FINEST, "Parsing from String");
 		
-		Gml gml = parseGml(inputString, false);
+		Gml gml = parseGml(inputString, false, parser);
+		if (null == gml) {
+			return null;
+		}
 		gml = cleanGml(gml, normalize);
 		
 		return gml;
@@ -118,6 +374,20 @@ public class GmlParsingHelper {
 	}
 	
 	
+	/**
+	 * Parses a Gml file or String with the given parser without doing any normalization.
+	 * @param input - String
+	 * @param isFile - boolean
+	 * @param parser - int
+	 * @return Gml
+	 */
+	private static Gml parseGml(String input, boolean isFile, int parser) {
+		if (parser == PARSER_STAX) {
+			return isFile ? GmlStaxParsingHelper.parseGml(input) : GmlStaxParsingHelper.parseGmlFromString(input);
+		}
+		return parseGml(input, isFile);
+	}
+
 	/**
 	 * Parses a Gml file given its location without doing any normalization.
 	 * @param file - String
@@ -204,7 +474,7 @@ public class GmlParsingHelper {
 	 * @return GmlEnvironment
 	 */
 	@SuppressWarnings("unchecked")
-	private static GmlEnvironment getGmlEnvironment(List<Element> elements) {
+	static GmlEnvironment getGmlEnvironment(List<Element> elements) {
 
 		GmlEnvironment environment = new GmlEnvironment(new Vec3D(1, 1, 1));
 
@@ -369,20 +639,16 @@ public class GmlParsingHelper {
 		point.time = timeVal;
 		
 		// Rotation
-		Vec3D rot = new Vec3D();
-		List<Element> rotation = element.getChildren("rot");
-		if (rotation.size() > 0) {; 
-			rot.set(getGmlVec3D(rotation));
+		Element rotation = element.getChild("rot");
+		if (null != rotation) {
+			point.rotation.set(getGmlVec3D(rotation.getChildren()));
 		}
-		point.rotation.set(rot);
 		
 		// Direction
-		Vec3D dir = new Vec3D();
-		List<Element> direction = element.getChildren("dir");
-		if (rotation.size() > 0) {; 
-		dir.set(getGmlVec3D(direction));
+		Element direction = element.getChild("dir");
+		if (null != direction) {
+			point.direction.set(getGmlVec3D(direction.getChildren()));
 		}
-		point.rotation.set(dir);
 		
 		// Pressure
 		float presVal = GmlPoint.DEFAULT_PRESSURE;
@@ -498,7 +764,7 @@ public class GmlParsingHelper {
 	}
 
 	/**
-	 * Gets the xyz values from the given elements and returns the corresponding Vec3D
+	 * Gets the lat, lon and alt values from the given elements and returns the corresponding GmlLocation
 	 * @param elements - List<Element>
 	 * @return GmlLocation
 	 */
@@ -510,13 +776,13 @@ public class GmlParsingHelper {
 			String value = e.getValue();
 
 			try {
-				if (name.equalsIgnoreCase("alt")) {
+				if (name.equalsIgnoreCase("lat")) {
 					loc.setLat(Long.parseLong(value));
 				}
-				else if (name.equalsIgnoreCase("y")) {
+				else if (name.equalsIgnoreCase("lon")) {
 					loc.setLon(Long.parseLong(value));
 				}
-				else if (name.equalsIgnoreCase("z")) {
+				else if (name.equalsIgnoreCase("alt")) {
 					loc.setAlt(Long.parseLong(value));
 				}
 			}
@@ -532,7 +798,7 @@ public class GmlParsingHelper {
 	 * @param elements - List<Element>
 	 * @param container - GmlGenericContainer
 	 */
-	private static void setGmlGenericContainer(List<Element> elements, GmlGenericContainer container) {
+	static void setGmlGenericContainer(List<Element> elements, GmlGenericContainer container) {
 	
 		if (null != elements && elements.size() > 0) {
 			Map<String, Object> map = new HashMap<String, Object>();
@@ -577,104 +843,14 @@ public class GmlParsingHelper {
 			}		
 		}
 		else {
-			if (isVec3D((List<Element>) element.getChildren())) {
-				Vec3D v = getGmlVec3D((List<Element>) element.getChildren());
-				return v;
+			List<Element> children = (List<Element>) element.getChildren();
+			ValueType type = getValueType(children);
+			if (null != type) {
+				return type.decoder.decode(children);
 			}
-			else if (isVec2D((List<Element>) element.getChildren())) {
-				Vec2D v = getGmlVec2D((List<Element>) element.getChildren());
-				return v;
-			}
-			else if (isColor((List<Element>) element.getChildren())) {
-				Integer c = getGmlColor((List<Element>) element.getChildren());
-				return c;
-			}
-			else if (isLocation((List<Element>) element.getChildren())) {
-				GmlLocation loc = getGmlLocation((List<Element>) element.getChildren());
-				return loc;
-			}
-			else {
-				// Nothing found, returning null
-				LOGGER.log(Level.WARNING, "Unrecognized element type: "+element.toString());
-				return null;
-			}
-		}
-	}
-
-	/**
-	 * Checks if the provided element is a Vec3D
-	 * @param elements - List<Element>
-	 * @return boolean 
-	 */
-	private static boolean isVec3D(List<Element> elements) {
-		String result = "";
-		for (Element e : elements) {
-			result += "_;_"+e.getName();
-		}
-		// TODO better regex if xyz order is changed
-		// Or sort the elements names prior to check
-		String Vec3DRegex = "(.*)_;_x(.*)_;_y(.*)_;_z(.*)";
-		if (result.matches(Vec3DRegex)) {
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Checks if the provided element is a Vec2D
-	 * @param elements - List<Element>
-	 * @return boolean 
-	 */
-	private static boolean isVec2D(List<Element> elements) {
-		String result = "";
-		for (Element e : elements) {
-			result += "_;_"+e.getName();
-		}
-		// TODO better regex if xy order is changed
-		// Or sort the elements names prior to check
-		String Vec2DRegex = "(.*)_;_x(.*)_;_y(.*)";
-		if (result.matches(Vec2DRegex)) {
-			return true;
-		}
-		return false;
-	}
-
-	/**
-	 * Checks if the provided element is a Color
-	 * @param elements - List<Element>
-	 * @return boolean 
-	 */
-	private static boolean isColor(List<Element> elements) {
-		String result = "";
-		for (Element e : elements) {
-			result += "_;_"+e.getName();
-		}
-		// TODO better regex if rgba order is changed
-		// Or sort the elements names prior to check
-		String ColorRegex = "(.*)_;_r(.*)_;_g(.*)_;_b(.*)(_;_a)?(.*)";
-		if (result.matches(ColorRegex)) {
-			return true;
-		}
-		return false;
-	}
-		
-	
-	/**
-	 * Checks if the provided element is a Location
-	 * @param elements - List<Element>
-	 * @return boolean 
-	 */
-	private static boolean isLocation(List<Element> elements) {
-		String result = "";
-		for (Element e : elements) {
-			result += "_;_"+e.getName();
-		}
-		// TODO better regex if lat,lon,alt order is changed
-		// Or sort the elements names prior to check
-		String LocationRegex = "(.*)_;_(lon|lat)(.*)_;_(lat|lon)(.*)(_;_alt)?(.*)";
-		if (result.matches(LocationRegex)) {
-			return true;
+			// Nothing found, returning null
+			LOGGER.log(Level.WARNING, "Unrecognized element type: "+element.toString());
+			return null;
 		}
-		return false;
 	}
 }
\ No newline at end of file
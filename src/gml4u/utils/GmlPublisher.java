@@ -0,0 +1,16 @@
+package gml4u.utils;
+
+/**
+ * Source of Gml objects, produced on demand.<br/>
+ * Nothing is parsed until a subscriber requests it, so a slow subscriber never
+ * causes parsed Gml to pile up in memory.
+ */
+public interface GmlPublisher {
+
+	/**
+	 * Subscribes to this publisher.<br/>
+	 * The subscriber's onSubscribe method is called first with a GmlSubscription which is used to request Gml.
+	 * @param subscriber - GmlSubscriber
+	 */
+	public void subscribe(GmlSubscriber subscriber);
+}
@@ -4,99 +4,220 @@ import gml4u.events.GmlEvent;
 import gml4u.events.GmlSavingEvent;
 import gml4u.model.Gml;
 
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
 import processing.core.PApplet;
 
-public class GmlSaver extends Thread {
+/**
+ * Saves Gml files in the background using a pool of worker threads.<br/>
+ * Saves to the same location are coalesced: if a Gml is waiting to be saved at a location when another one is
+ * asked for, only the latest is written, and a location is never written by two workers at the same time.<br/>
+ * Files are written to a temporary file which then replaces the previous one (see GmlSavingHelper.saveAtomically),
+ * optionally forced to the disk (see setSync).<br/>
+ * Each save is sent back through a GmlSavingEvent, along with the bytes written and the time it took.
+ * Callbacks are called from the worker threads, one at a time.<br/>
+ * <br/>
+ * Note: Gml are written as they are when their turn comes, they shouldn't be modified in the meantime.
+ */
+public class GmlSaver {
 
 	private static final Logger LOGGER = Logger.getLogger(GmlSaver.class.getName());
-	
-	private boolean running;           // Is the thread running?  Yes or no?
-	private int wait;                  // How many milliseconds should we wait in between executions?
-	private String threadId;           // Thread name
-	private Map <String, Gml> gmlLocations = new HashMap<String, Gml>();
+
+	public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+	private String threadId;           // Worker threads name
+	private int workers;               // Number of worker threads
+	private int queueSize;             // Maximum number of locations waiting to be saved
+	private ThreadPoolExecutor executor;
 	private Object parent;
 	private Method callback;
+	private final Object callbackLock = new Object();
+	private volatile int precision = FloatUtils.FULL_PRECISION;
+	private volatile boolean sync;
+
+	// Locations waiting to be saved or being saved
+	private final Map<String, Slot> slots = new HashMap<String, Slot>();
+
+	// Counters
+	private final AtomicInteger completedSaves = new AtomicInteger();
+	private final AtomicInteger failedSaves = new AtomicInteger();
+	private final AtomicInteger coalescedSaves = new AtomicInteger();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final AtomicLong totalSavingTime = new AtomicLong();
 
 	/**
-	 * Constructor for GmlSaver thread
-	 * Checks for a callback in the meantime (gmlEvent with GmlEvent parameter)
-	 * @param wait
-	 * @param id
-	 * @param parent
+	 * Creates a new GmlSaver using a single worker thread.<br/>
+	 * The parent object must implement a <i>public void gmlEvent(GmlEvent event)</i> method.<br/>
+	 * Note: the waiting time is not used anymore as workers don't poll for new files.
+	 * @param wait - int (waiting time in ms)
+	 * @param id - String (thread id)
+	 * @param parent - Object
 	 */
 	public GmlSaver (int wait, String id, Object parent){
-		try {
-			// Looking for a method called "gmlEvent", with one argument of GmlEvent type
-			callback = parent.getClass().getMethod("gmlEvent", new Class[] { GmlEvent.class });
-		}
-		catch (Exception e) {
-			LOGGER.log(Level.WARNING, parent.getClass()+" shall implement a \"public void gmlEvent(GmlEvent event)\" method to be able to receive GmlEvent");
+		this(id, parent, 1, DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * Creates a new GmlSaver using the given number of worker threads.<br/>
+	 * The parent object must implement a <i>public void gmlEvent(GmlEvent event)</i> method.
+	 * @param id - String (thread id)
+	 * @param parent - Object
+	 * @param workers - int (number of worker threads)
+	 */
+	public GmlSaver (String id, Object parent, int workers){
+		this(id, parent, workers, DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * Creates a new GmlSaver using the given number of worker threads and queue size.<br/>
+	 * The parent object must implement a <i>public void gmlEvent(GmlEvent event)</i> method.<br/>
+	 * Once the queue is full, the save methods block until a worker takes a location.
+	 * @param id - String (thread id)
+	 * @param parent - Object
+	 * @param workers - int (number of worker threads)
+	 * @param queueSize - int (maximum number of locations waiting to be saved)
+	 */
+	public GmlSaver (String id, Object parent, int workers, int queueSize){
+		if (null != parent) {
+			try {
+				// Looking for a method called "gmlEvent", with one argument of GmlEvent type
+				callback = parent.getClass().getMethod("gmlEvent", new Class[] { GmlEvent.class });
+			}
+			catch (Exception e) {
+				LOGGER.log(Level.WARNING, parent.getClass()+" shall implement a \"public void gmlEvent(GmlEvent event)\" method to be able to receive GmlEvent");
+			}
 		}
-		
+
 		this.parent = parent;
-		this.wait = wait;
-		this.running = false;
 		this.threadId = id;
-		
+		this.workers = Math.max(1, workers);
+		this.queueSize = Math.max(1, queueSize);
+
 		start();
 	}
 
 	/**
-	 * Starts the thread
+	 * Starts the worker threads
 	 */
-	public void start () {
-		LOGGER.log(Level.FINEST, "Starting thread");
-		if (!running) {
-			running = true;
-			super.start();
+	public synchronized void start () {
+		if (null == executor || executor.isShutdown()) {
+			LOGGER.log(Level.FINEST, "Starting "+workers+" worker thread(s)");
+			executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(queueSize), new WorkerThreadFactory(threadId, "GmlSaver"), new BlockingSubmissionHandler());
 		}
 	}
 
 	/**
-	 * Run method triggered by start()
+	 * Returns true if the saver accepts new files
+	 * @return boolean
 	 */
-	public void run () {
-		while (running){
-			try {
-				if (gmlLocations.size() > 0) {
-
-					LOGGER.log(Level.FINEST, "Start saving: "+ gmlLocations.size() +" file(s)");
-					for (String location : gmlLocations.keySet()) {
-						boolean successful = GmlSavingHelper.save(gmlLocations.get(location), location);
-						
-						if (callback != null) {
-							try {
-								// Call the method with this object as the argument!
-								LOGGER.log(Level.FINEST, "Invoking callback");
-								callback.invoke(parent, new GmlSavingEvent(location, successful) );
-							}
-							catch (Exception e) {
-								LOGGER.log(Level.FINEST, "I couldn't invoke that method for some reason. "+e.getMessage());
-							}
-						}
-					}
-					
-					LOGGER.log(Level.FINEST, "Finished saving");
-				}
-				gmlLocations.clear();						
+	public synchronized boolean isRunning() {
+		return null != executor && !executor.isShutdown();
+	}
 
-				sleep((long)(wait));	
-			}
-			catch (Exception e) {
-				LOGGER.log(Level.WARNING, e.getMessage());
-			}
+	/**
+	 * Sets the number of decimals point values are rounded to (see GmlWriter.setPrecision)
+	 * @param precision - int
+	 */
+	public void setPrecision(int precision) {
+		this.precision = precision;
+	}
+
+	/**
+	 * Returns the number of decimals point values are rounded to
+	 * @return int
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Sets whether files are forced to the disk before replacing the previous ones.<br/>
+	 * Safer in case of a power loss or a system crash, but slower (false by default)
+	 * @param sync - boolean
+	 */
+	public void setSync(boolean sync) {
+		this.sync = sync;
+	}
+
+	/**
+	 * Returns true if files are forced to the disk before replacing the previous ones
+	 * @return boolean
+	 */
+	public boolean isSync() {
+		return sync;
+	}
+
+	/**
+	 * Returns the number of worker threads
+	 * @return int
+	 */
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Returns the number of locations waiting to be saved or being saved
+	 * @return int
+	 */
+	public int getPendingSaves() {
+		synchronized (slots) {
+			return slots.size();
 		}
-		LOGGER.log(Level.FINEST, threadId + " thread is done!");  // The thread is done when we get to the end of run()
-		quit();
 	}
-	
+
+	/**
+	 * Returns the number of files successfully saved so far
+	 * @return int
+	 */
+	public int getCompletedSaves() {
+		return completedSaves.get();
+	}
+
+	/**
+	 * Returns the number of files which couldn't be saved so far
+	 * @return int
+	 */
+	public int getFailedSaves() {
+		return failedSaves.get();
+	}
+
+	/**
+	 * Returns the number of save requests replaced by a later one before being written
+	 * @return int
+	 */
+	public int getCoalescedSaves() {
+		return coalescedSaves.get();
+	}
+
+	/**
+	 * Returns the number of bytes written so far
+	 * @return long
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	/**
+	 * Returns the time spent saving files so far, summed over all workers (in nanoseconds)
+	 * @return long
+	 */
+	public long getTotalSavingTime() {
+		return totalSavingTime.get();
+	}
+
 	/**
 	 * Saves a GML file to root of the sketch
 	 * @param gml - Gml
@@ -104,10 +225,9 @@ public class GmlSaver extends Thread {
 	public void save(Gml gml) {
 		String sketchPath = ((PApplet) parent).sketchPath;
 		String location = sketchPath+"/"+gml.getFileName();
-		LOGGER.log(Level.FINEST, "About to save a file as" + location);
-		this.gmlLocations.put(location, gml);
+		save(gml, location);
 	}
-	
+
 	/**
 	 * Saves a GML file to the given location (path shall include filename)
 	 * If the folder is not found, it will attempt to create it
@@ -116,9 +236,37 @@ public class GmlSaver extends Thread {
 	 */
 	public void save(Gml gml, String location) {
 		LOGGER.log(Level.FINEST, "About to save a Gml to " + location);
-		this.gmlLocations.put(location, gml);
+		boolean submit = false;
+		synchronized (slots) {
+			Slot slot = slots.get(location);
+			if (null == slot) {
+				slot = new Slot();
+				slots.put(location, slot);
+				submit = true;
+			}
+			if (null != slot.gml) {
+				// Not written yet, only the latest will be
+				slot.coalesced++;
+				coalescedSaves.incrementAndGet();
+			}
+			else {
+				slot.requestTime = System.nanoTime();
+			}
+			slot.gml = gml;
+		}
+
+		// Otherwise the job already queued or running for this location will pick it up
+		if (submit && !execute(new SavingJob(location))) {
+			int coalesced;
+			synchronized (slots) {
+				coalesced = slots.remove(location).coalesced;
+			}
+			LOGGER.log(Level.WARNING, "Couldn't save "+location+". Reason: saver was quit");
+			failedSaves.incrementAndGet();
+			fire(new GmlSavingEvent(location, false, -1, 0, 0, coalesced));
+		}
 	}
-	
+
 	/**
 	 * Saves a list of GML file to the given folder using the filename stored in each Gml object
 	 * If the folder is not found, it will attempt to create it
@@ -126,12 +274,12 @@ public class GmlSaver extends Thread {
 	 * @param folder - String
 	 */
 	public void save(List<Gml> gmlList, String folder) {
-		LOGGER.log(Level.FINEST, "About to save "+gmlLocations.size()+" Gml files to" + folder);
+		LOGGER.log(Level.FINEST, "About to save "+gmlList.size()+" Gml files to" + folder);
 		for (Gml gml : gmlList) {
 			save(gml, folder+"/"+gml.getFileName());
 		}
 	}
-	
+
 	/**
 	 * Saves GML files given a location for each file
 	 * If the folder is not found, it will attempt to create it
@@ -139,15 +287,134 @@ public class GmlSaver extends Thread {
 	 */
 	public void save(Map<String, Gml> gmlLocations) {
 		LOGGER.log(Level.FINEST, "About to save "+gmlLocations.size() +" Gml files");
-		this.gmlLocations.putAll(gmlLocations);
+		for (Map.Entry<String, Gml> entry : gmlLocations.entrySet()) {
+			save(entry.getValue(), entry.getKey());
+		}
+	}
+
+	/**
+	 * Stops accepting new files, those already asked for are still saved
+	 */
+	public synchronized void quit() {
+		LOGGER.log(Level.FINEST, threadId + " Quitting.");
+		if (null != executor) {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Waits until all the files asked for before quit() are saved, or the timeout expires.<br/>
+	 * Returns true if they were all saved
+	 * @param timeout - long (ms)
+	 * @return boolean
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout) throws InterruptedException {
+		ThreadPoolExecutor executor;
+		synchronized (this) {
+			executor = this.executor;
+		}
+		return null == executor || executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
 	}
 
 	/**
-	 * Quits the thread
+	 * Submits a job to the executor, returns false if the saver was quit
+	 * @param job - Runnable
+	 * @return boolean
 	 */
-	public void quit() {
-		LOGGER.log(Level.FINEST, threadId + "Quitting.");
-		running = false;
-		interrupt(); // in case the thread is waiting. . .
+	private boolean execute(Runnable job) {
+		ThreadPoolExecutor executor;
+		synchronized (this) {
+			executor = this.executor;
+		}
+		try {
+			executor.execute(job);
+			return true;
+		}
+		catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Sends the event to the parent's callback method, one event at a time
+	 * @param event - GmlEvent
+	 */
+	private void fire(GmlEvent event) {
+		if (null == callback) {
+			return;
+		}
+		synchronized (callbackLock) {
+			try {
+				// Call the method with this object as the argument!
+				LOGGER.log(Level.FINEST, "Invoking callback");
+				callback.invoke(parent, event);
+			}
+			catch (Exception e) {
+				LOGGER.log(Level.WARNING, "Couldn't invoke the callback method. Reason: "+e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Gml waiting to be saved at a location
+	 */
+	private static class Slot {
+
+		Gml gml;           // Latest Gml asked for, null once taken by the worker
+		long requestTime;  // First request not written yet
+		int coalesced;     // Requests replaced since the last write
+	}
+
+	/**
+	 * Saves the latest Gml asked for a location, until none is left
+	 */
+	private class SavingJob implements Runnable {
+
+		private final String location;
+
+		SavingJob(String location) {
+			this.location = location;
+		}
+
+		public void run() {
+			while (true) {
+				Gml gml;
+				long requestTime;
+				int coalesced;
+				synchronized (slots) {
+					Slot slot = slots.get(location);
+					if (null == slot.gml) {
+						slots.remove(location);
+						return;
+					}
+					gml = slot.gml;
+					requestTime = slot.requestTime;
+					coalesced = slot.coalesced;
+					slot.gml = null;
+					slot.coalesced = 0;
+				}
+
+				long start = System.nanoTime();
+				long bytes = -1;
+				try {
+					bytes = GmlSavingHelper.saveAtomically(gml, location, precision, sync);
+					bytesWritten.addAndGet(bytes);
+					completedSaves.incrementAndGet();
+				}
+				catch (IOException e) {
+					LOGGER.log(Level.WARNING, "Saving "+location+" failed. Reason: "+e.getMessage());
+					failedSaves.incrementAndGet();
+				}
+				catch (RuntimeException e) {
+					LOGGER.log(Level.WARNING, "Saving "+location+" failed. Reason: "+e);
+					failedSaves.incrementAndGet();
+				}
+				long savingTime = System.nanoTime() - start;
+				totalSavingTime.addAndGet(savingTime);
+
+				fire(new GmlSavingEvent(location, bytes >= 0, bytes, savingTime, start - requestTime, coalesced));
+			}
+		}
 	}
-}
\ No newline at end of file
+}
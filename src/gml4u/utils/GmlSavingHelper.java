@@ -1,28 +1,20 @@
 package gml4u.utils;
 import gml4u.model.Gml;
-import gml4u.model.GmlBrush;
-import gml4u.model.GmlClient;
-import gml4u.model.GmlEnvironment;
-import gml4u.model.GmlInfo;
-import gml4u.model.GmlLocation;
-import gml4u.model.GmlPoint;
-import gml4u.model.GmlStroke;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.Flushable;
 import java.io.IOException;
-import java.util.Map;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactoryConfigurationError;
-
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
-import toxi.geom.Vec3D;
-
 
 public class GmlSavingHelper {
 
@@ -31,16 +23,6 @@ public class GmlSavingHelper {
 	/**
 	public static void uploadTo000000Book(final Gml gml) {
 		try {
-			// Create document from Gml and get it as a String
-			Document document = createDocument(gml);
-			String gmlString = XmlUtils.getString(document);
-			
-			System.out.println(gmlString);
-
-		    // Construct data
-		    String data = URLEncoder.encode("application", "UTF-8") + "=" + URLEncoder.encode(GmlConstants.GML4U_CLIENT_NAME, "UTF-8");
-		    data += "&" + URLEncoder.encode("data", "UTF-8") + "=" + URLEncoder.encode(gmlString, "UTF-8");
-
 		    // TODO 
 		    
 		    // Send data
@@ -49,8 +31,13 @@ public class GmlSavingHelper {
 		    
 		    URLConnection conn = url.openConnection();
 		    conn.setDoOutput(true);
-		    OutputStreamWriter wr = new OutputStreamWriter(conn.getOutputStream());
-		    wr.write(data);
+		    OutputStream wr = new BufferedOutputStream(conn.getOutputStream());
+
+		    // Stream the Gml URL encoded, without building it as a String
+		    String data = URLEncoder.encode("application", "UTF-8") + "=" + URLEncoder.encode(GmlConstants.GML4U_CLIENT_NAME, "UTF-8");
+		    data += "&" + URLEncoder.encode("data", "UTF-8") + "=";
+		    wr.write(data.getBytes("UTF-8"));
+		    save(gml, new UrlEncodingOutputStream(wr));
 		    wr.flush();
 
 		    // Get the response
@@ -69,428 +56,215 @@ public class GmlSavingHelper {
 	*/
 
 	/**
-	 * Saves a Gml file to the given location (path + filename)
+	 * Saves a Gml file to the given location (path + filename)<br/>
+	 * The file is replaced once completely written (see saveAtomically) and GZIP compressed if its name ends with .gz
 	 * @param gml - Gml
 	 * @param location - String
 	 * @return boolean
 	 */
 	public static boolean save(final Gml gml, final String location) {
+		return save(gml, location, FloatUtils.FULL_PRECISION);
+	}
+
+	/**
+	 * Saves a Gml file to the given location (path + filename), point values being rounded
+	 * to the given number of decimals (see GmlWriter.setPrecision)<br/>
+	 * The file is replaced once completely written (see saveAtomically) and GZIP compressed if its name ends with .gz
+	 * @param gml - Gml
+	 * @param location - String
+	 * @param precision - int
+	 * @return boolean
+	 */
+	public static boolean save(final Gml gml, final String location, final int precision) {
 
 		// TODO choose which version to save into and create a factory
 		
 		LOGGER.log(Level.FINEST, "Start saving GML file to "+location);
 		
 		try {
-			// Make sure the folder exists
-			String folder = FileUtils.getFolder(location);
-			FileUtils.ensureFolderExists(folder);
-			// Save the file
-			Document document = createDocument(gml);
-			XmlUtils.saveDocument(document, location);
+			saveAtomically(gml, location, precision, false);
 			return true;
 		}
 		catch (IOException e) {
 			LOGGER.log(Level.WARNING, "Saving failed. Reason: "+ e.getMessage());
 		}
-		catch (ParserConfigurationException e) {
-			LOGGER.log(Level.WARNING, "Saving failed. Reason: parsing issue, "+ e.getMessage());
-		}
 		return false;
 	}
 	
 	/**
-	* Get the GML document as a String
-	*  
-	* 
-	* @param gml the GML to get the document string for
-	* @return the GML document as a String
-	*/
-	public static String getStringFromGml(Gml gml){
-		String gmlString = new String();
-		try {
-			Document document = createDocument(gml);
-			gmlString = XmlUtils.getString(document);
-		}
-		catch (ParserConfigurationException e) {
-			LOGGER.log(Level.WARNING, "Getting GML document failed. Reason: parsing issue, "+ e.getMessage());
-		} catch (TransformerFactoryConfigurationError e) {
-			LOGGER.log(Level.WARNING, "Getting GML document failed. Reason: transferfactoryconfiguration issue, "+ e.getMessage());
-		} catch (TransformerException e) {
-			LOGGER.log(Level.WARNING, "Getting GML document failed. Reason: transformer issue, "+ e.getMessage());
-		}
-		
-		return gmlString;
-	}
-
-	/**
-	 * Gets Gml as a Xml document
+	 * Saves a Gml file to the given location (path + filename) and returns the number of bytes written.<br/>
+	 * The Gml is first written to a temporary file in the same folder, which then replaces the file at the given location:
+	 * readers find either the previous complete file or the new one, never a partly written one.<br/>
+	 * Where renaming doesn't replace existing files (Windows), the previous file is first moved to a backup file
+	 * (see FileUtils.replace).<br/>
+	 * If sync is true, the temporary file is forced to the disk before being renamed, so the new file also survives a crash
+	 * (slower).<br/>
+	 * Point values are rounded to the given number of decimals (see GmlWriter.setPrecision).<br/>
+	 * The folder is created if needed and the file is GZIP compressed if its name ends with .gz
 	 * @param gml - Gml
-	 * @return Document
-	 * @throws ParserConfigurationException
+	 * @param location - String
+	 * @param precision - int
+	 * @param sync - boolean
+	 * @return long
+	 * @throws IOException
 	 */
-	private static Document createDocument(final Gml gml) throws ParserConfigurationException {
-		LOGGER.log(Level.FINEST, "Start building Xml from Gml");
-
-		Document document = XmlUtils.createDocument();
-
-		// GML
-		Element root = document.createElement("gml");
-		root.setAttribute("spec", "1.0");
-		document.appendChild(root);
-
-		// No plans to support/implement multiple tags elements
-
-		// TAG
-		Element tag = document.createElement("tag");
-		root.appendChild(tag);
-
-
-		// HEADER
-		Element header = document.createElement("header");
-		tag.appendChild(header);
-
-		// CLIENT
-		Element client = createClientElement(document, gml.client);
-		header.appendChild(client);
-
-		// ENVIRONMENT
-		Element environment = createEnvironmentElement(document, gml.environment);
-		header.appendChild(environment);
+	public static long saveAtomically(final Gml gml, final String location, final int precision, final boolean sync) throws IOException {
+		File target = new File(location).getAbsoluteFile();
+		File folder = target.getParentFile();
+		if (!folder.isDirectory()) {
+			FileUtils.ensureFolderExists(folder.getPath());
+		}
 
-		// DRAWING
-		Element drawing = document.createElement("drawing");
-		tag.appendChild(drawing);
+		File temp = File.createTempFile("."+target.getName()+".", ".tmp", folder);
+		// True once the temporary file is handed to FileUtils.replace
+		boolean keepTemp = false;
+		try {
+			OutputStream out = FileUtils.openOutputStream(temp, FileUtils.isCompressed(location));
+			try {
+				GmlWriter.write(gml, out, precision);
+				// Also finishes the compressed stream, if any
+				out.close();
+				out = null;
+			}
+			finally {
+				FileUtils.close(out);
+			}
 
-		// STROKES
-		for (GmlStroke stroke : gml.getStrokes()) {
+			if (sync) {
+				RandomAccessFile file = new RandomAccessFile(temp, "rw");
+				try {
+					file.getFD().sync();
+				}
+				finally {
+					FileUtils.close(file);
+				}
+			}
 
-			if (stroke.nbPoints() > 0) {
-				Element strokeElement = createStrokeElement(document, stroke);
-				strokeElement.setAttribute("layer", ""+stroke.getLayer());
-				drawing.appendChild(strokeElement);
+			long bytes = temp.length();
+			// From here on, FileUtils.replace deletes or keeps the temporary file
+			keepTemp = true;
+			FileUtils.replace(temp, target);
+			LOGGER.log(Level.FINEST, "Saved "+bytes+" bytes to "+target);
+			return bytes;
+		}
+		finally {
+			if (!keepTemp && !temp.delete()) {
+				LOGGER.log(Level.FINE, "Couldn't delete "+temp);
 			}
 		}
-
-		LOGGER.log(Level.FINEST, "Finished building document");
-		return document; 
 	}
 
 	/**
-	 * Creates a client element
-	 * @param document - Document 
-	 * @param client - GmlClient
-	 * @return Element
-	 */
-	private static Element createClientElement(Document document, GmlClient client) {
-		Element element = document.createElement("client");
-
-		// Create child elements
-		createAnyElement(document, element, client.getParameters());
-		
-		return element;
-	}
-
-	/**
-	 * Creates an environement element
-	 * @param document - Document
-	 * @param environment - GmlEnvironment
-	 * @return Element
+	 * Writes the Gml as UTF-8 to the given OutputStream, which is flushed but not closed<br/>
+	 * Memory use doesn't depend on the size of the Gml
+	 * @param gml - Gml
+	 * @param out - OutputStream
+	 * @return boolean
 	 */
-	private static Element createEnvironmentElement(Document document, GmlEnvironment environment) {
-		Element element = document.createElement("environment");		
-
-		// TODO iterate through all elements and create specific ones
-		
-		
-		// SCREENBOUNDS
-		if (environment.screenBounds != null) {
-			Element envScreenBounds = createVec3DElement(document, "screenBounds", environment.screenBounds);
-			element.appendChild(envScreenBounds);
-		}
-
-		// UP (Mandatory)
-		Element envUp = createVec3DElement(document, "up", environment.up);
-		element.appendChild(envUp);
-
-		// SCREENSCALE (Mandatory)
-		// Get largest
-		float scale = Vec3DUtils.getLongestAxisSize(environment.screenBounds);
-		Element envScreenScale = document.createElement("screenScale");
-		envScreenScale.appendChild(document.createTextNode("" + (int) scale));
-		element.appendChild(envScreenScale);
-
-		// OFFSET
-		if (environment.offset !=  null) {
-			Element envOffset = createVec3DElement(document, "offset", environment.offset);
-			element.appendChild(envOffset);
-		}
-
-		// ROTATION
-		if (environment.rotation != null) {
-			Element envRotation = createVec3DElement(document, "rotation", environment.rotation);
-			element.appendChild(envRotation);
-		}
-
-		// ORIGIN
-		if (environment.origin != null) {
-			Element envOrigin = createVec3DElement(document, "origin", environment.origin);
-			element.appendChild(envOrigin);
+	public static boolean save(final Gml gml, final OutputStream out) {
+		try {
+			GmlWriter.write(gml, out);
+			return true;
 		}
-
-		// REALSCALE
-
-		if (environment.realScale != null) {
-			Element envRealscale = createVec3DElement(document, "realscale", environment.realScale);
-			Element envRealScaleUnit= document.createElement("unit");
-			envRealScaleUnit.appendChild(document.createTextNode(environment.realScaleUnit));
-			envRealscale.appendChild(envRealScaleUnit);
-			element.appendChild(envRealscale);
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Saving failed. Reason: "+ e.getMessage());
 		}
-
-		return element;
+		return false;
 	}
 
 	/**
-	 * Creates a stroke element
-	 * @param document - Document
-	 * @param stroke - GmlStroke
-	 * @return Element
+	 * Writes the Gml to the given Writer, which is flushed but not closed<br/>
+	 * Memory use doesn't depend on the size of the Gml
+	 * @param gml - Gml
+	 * @param out - Writer
+	 * @return boolean
 	 */
-	private static Element createStrokeElement(Document document, GmlStroke stroke) {
-		Element element = document.createElement("stroke");		
-
-		// ISDRAWING (only set if false, true by default)
-		if (!stroke.getIsDrawing()) {
-			element.setAttribute("isDrawing", "false");
-		}
-
-		// LAYER
-		element.setAttribute("layer", ""+stroke.getLayer());
-
-		// BRUSH
-		if (null != stroke.getBrush()) {
-			Element brush = createBrushElement(document, stroke.getBrush());
-			element.appendChild(brush);
-		}
-
-		// INFO
-		if (null != stroke.getInfo() && stroke.getInfo().getParameters().size() > 0) {
-			Element info = createInfoElement(document, stroke.getInfo());
-			element.appendChild(info);
+	public static boolean save(final Gml gml, final Writer out) {
+		try {
+			GmlWriter.write(gml, out);
+			return true;
 		}
-
-		// PT
-		for(GmlPoint point: stroke.getPoints()) {
-			element.appendChild(createPointElement(document, point));
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Saving failed. Reason: "+ e.getMessage());
 		}
-
-		return element;
+		return false;
 	}
 
 	/**
-	 * Creates a brush element
-	 * @param document - Document
-	 * @param brush - GmlBrush
-	 * @return Element
-	 */
-	private static Element createBrushElement(Document document, GmlBrush brush) {
-
-		Element element = document.createElement("brush");
-				
-		// Create child elements
-		createAnyElement(document, element, brush.getParameters());
-		
-		return element;
-	}
-	
-	/**
-	 * Creates an info element
-	 * @param document - Document
-	 * @param info - GmlInfo
-	 * @return
+	 * Appends the Gml to the given Appendable (StringBuilder, CharBuffer, ...)
+	 * @param gml - Gml
+	 * @param out - Appendable
+	 * @return boolean
 	 */
-	private static Element createInfoElement(Document document, GmlInfo info) {
-		Element element = document.createElement("info");
-
-		// Create child elements
-		createAnyElement(document, element, info.getParameters());
-
-		return element;
+	public static boolean save(final Gml gml, final Appendable out) {
+		if (out instanceof Writer) {
+			return save(gml, (Writer) out);
+		}
+		return save(gml, new AppendableWriter(out));
 	}
 
 	/**
-	 * Creates a Vec3D element
-	 * @param document - Document
-	 * @param name - String
-	 * @param v - Vec3D
-	 * @return Element
+	 * Writes the Gml as UTF-8 to the given channel, which isn't closed<br/>
+	 * Memory use doesn't depend on the size of the Gml
+	 * @param gml - Gml
+	 * @param channel - WritableByteChannel
+	 * @return boolean
 	 */
-	private static Element createVec3DElement(Document document, String name, Vec3D v) {
-		return createVec3DElement(document, name, v, false);
+	public static boolean save(final Gml gml, final WritableByteChannel channel) {
+		// The stream returned by Channels doesn't buffer
+		return save(gml, new BufferedOutputStream(Channels.newOutputStream(channel), 8192));
 	}
-	
-	/**
-	 * Creates a Vec3D element or Vec2D element if z = 0 and autoVec2D is true
-	 * @param document - Document
-	 * @param name - String
-	 * @param v - Vec3D
-	 * @param autoVec2D - boolean
-	 * @return Element
-	 */
-	private static Element createVec3DElement(Document document, String name, Vec3D v, boolean autoVec2D) {
-		Element element = document.createElement(name);
 
-		Element x = document.createElement("x");
-		x.appendChild(document.createTextNode(""+v.x));
-		element.appendChild(x);
-		Element y = document.createElement("y");
-		y.appendChild(document.createTextNode(""+v.y));
-		element.appendChild(y);
-		
-		//if (0 != v.z ||  !autoVec2D) { // Optional
-			Element z = document.createElement("z");
-			z.appendChild(document.createTextNode(""+v.z));
-			element.appendChild(z);
-		//}
-		return element;
-	}
-	
 	/**
-	 * Creates a Location element
-	 * @param document - Document
-	 * @param name - String
-	 * @param loc - GmlLocation
-	 * @return Element
-	 */
-	private static Element createLocationElement(Document document, String name, GmlLocation loc) {
-		Element element = document.createElement(name);
-
-		Element lat = document.createElement("lat");
-		lat.appendChild(document.createTextNode(""+loc.getLat()));
-		element.appendChild(lat);
-		
-		Element lon = document.createElement("lon");
-		lon.appendChild(document.createTextNode(""+loc.getLon()));
-		element.appendChild(lon);
-		
-		// Optional
-		if (0 != loc.getAlt()) {
-			Element alt = document.createElement("alt");
-			alt.appendChild(document.createTextNode(""+loc.getAlt()));
-			element.appendChild(alt);
+	* Get the GML document as a String
+	*  
+	* 
+	* @param gml the GML to get the document string for
+	* @return the GML document as a String
+	*/
+	public static String getStringFromGml(Gml gml){
+		StringWriter writer = new StringWriter();
+		try {
+			GmlWriter.write(gml, writer);
 		}
-		return element;
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Getting GML document failed. Reason: "+ e.getMessage());
+			return "";
+		}
+		return writer.toString();
 	}
-	
+
 	/**
-	 * Creates a Point element and children
-	 * @param document
-	 * @param point
-	 * @return
+	 * Writer appending to an Appendable
 	 */
-	private static Element createPointElement(Document document, GmlPoint point) {
+	private static class AppendableWriter extends Writer {
 
-		// Coords
-		Element element = createVec3DElement(document, "pt", point, true);
+		private final Appendable out;
 
-		// Time
-		if (0 != point.time) { // Optional
-			Element t = document.createElement("t");
-			t.appendChild(document.createTextNode(""+point.time));
-			element.appendChild(t);
-		}
-		
-		// Rotation
-		if (!point.rotation.isZeroVector()) { // Optional
-			Element rot = createVec3DElement(document, "rot", point.rotation);
-			element.appendChild(rot);
+		AppendableWriter(Appendable out) {
+			this.out = out;
 		}
 
-		// Direction
-		if (!point.direction.isZeroVector()) { // Optional
-			Element dir = createVec3DElement(document, "dir", point.direction);
-			element.appendChild(dir);
+		@Override
+		public void write(char[] chars, int offset, int length) throws IOException {
+			out.append(CharBuffer.wrap(chars, offset, length));
 		}
 
-		// Pressure
-		if (0 != point.preasure) { // Optional
-			Element pres = document.createElement("pres");
-			pres.appendChild(document.createTextNode(""+point.preasure));
-			element.appendChild(pres);
-		}
-		// Thickness
-		if (0 != point.thickness) { // Optional
-			Element pres = document.createElement("thick");
-			pres.appendChild(document.createTextNode(""+point.thickness));
-			element.appendChild(pres);
+		@Override
+		public void write(String s, int offset, int length) throws IOException {
+			out.append(s, offset, offset + length);
 		}
 
-		return element;
-	}
-	
-	/**
-	 * Creates a Color element
-	 * @param document - Document
-	 * @param name - String
-	 * @param c - int
-	 * @return Element
-	 */
-	private static Element createColorElement(Document document, String name, int c) {
-		Element element = document.createElement(name);
-
-		Element r = document.createElement("r");
-		int red = (c >> 16) & 0xFF;
-		r.appendChild(document.createTextNode(""+red));
-		element.appendChild(r);
-		
-		Element g = document.createElement("g");
-		int green = (c >> 8)  & 0xFF; 
-		g.appendChild(document.createTextNode(""+green));
-		element.appendChild(g);
-		
-		Element b = document.createElement("b");
-		int blue = c & 0xFF;
-		b.appendChild(document.createTextNode(""+blue));
-		element.appendChild(b);
-
-		Element a = document.createElement("a");
-		int alpha = (c >> 24) & 0xFF;
-		a.appendChild(document.createTextNode(""+alpha));
-		element.appendChild(a);
-
-		return element;
-	}
-	
-	/**
-	 * Adds child elements from a Map based on their type
-	 * @param document - Document
-	 * @param element - Element
-	 * @param map - Map<String, Object>
-	 */
-	private static void createAnyElement(Document document, Element element, Map<String, Object> map) {
-		
-		for (String key : map.keySet()) {
-			Object o = map.get(key);
-			Element child;
-
-			if (o instanceof Vec3D) {
-				child = createVec3DElement(document, key, (Vec3D) o); 
-			}
-			else if (o instanceof Float) {
-				child = document.createElement(key);
-				child.appendChild(document.createTextNode(""+(Float) o));
-			}
-			else if (key.indexOf("color") > -1) {
-				child = createColorElement(document, key, (Integer) o); 				
+		@Override
+		public void flush() throws IOException {
+			if (out instanceof Flushable) {
+				((Flushable) out).flush();
 			}
-			else if (o instanceof GmlLocation) {
-				child = createLocationElement(document, key, (GmlLocation) o); 				
-			}
-			else { // Get it as a String
-				child = document.createElement(key);
-				child.appendChild(document.createTextNode((String) o));				
-			}
-			element.appendChild(child);				
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
 		}
 	}
 }
\ No newline at end of file
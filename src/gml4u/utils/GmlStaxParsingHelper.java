@@ -0,0 +1,754 @@
+package gml4u.utils;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlBrush;
+import gml4u.model.GmlClient;
+import gml4u.model.GmlEnvironment;
+import gml4u.model.GmlHeader;
+import gml4u.model.GmlInfo;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlStroke;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jdom.Element;
+
+import toxi.geom.Vec3D;
+
+/**
+ * Single pass Gml parser based on a StAX pull parser (javax.xml.stream)<br/>
+ * Strokes and points are built while reading, without any intermediate document.<br/>
+ * Client, environment, brush and info elements are small and are decoded the same way
+ * as GmlParsingHelper does, so that both parsers give the same results.
+ */
+public class GmlStaxParsingHelper {
+
+	private static final Logger LOGGER = Logger.getLogger(GmlStaxParsingHelper.class.getName());
+
+	// XMLInputFactory instances are not guaranteed to be thread safe
+	private static final ThreadLocal<XMLInputFactory> FACTORY = new ThreadLocal<XMLInputFactory>() {
+		@Override
+		protected XMLInputFactory initialValue() {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+			return factory;
+		}
+	};
+
+	/**
+	 * Parses a Gml file given its location without doing any normalization.
+	 * Returns null if the file couldn't be read or parsed
+	 * @param file - String
+	 * @return Gml
+	 */
+	public static Gml parseGml(String file) {
+		InputStream in = null;
+		try {
+			in = FileUtils.openInputStream(file);
+			return parseGml(in);
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, e.getMessage());
+		}
+		finally {
+			FileUtils.close(in);
+		}
+		return null;
+	}
+
+	/**
+	 * Parses a Gml input String without doing any normalization.
+	 * Returns null if the String couldn't be parsed
+	 * @param inputString - String
+	 * @return Gml
+	 */
+	public static Gml parseGmlFromString(String inputString) {
+		return parseGml(new StringReader(inputString));
+	}
+
+	/**
+	 * Parses a Gml from the given InputStream without doing any normalization.<br/>
+	 * The stream is not closed.
+	 * @param in - InputStream
+	 * @return Gml
+	 */
+	public static Gml parseGml(InputStream in) {
+		try {
+			return parseGml(createReader(in));
+		}
+		catch (XMLStreamException e) {
+			LOGGER.log(Level.WARNING, e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Parses a Gml from the given Reader without doing any normalization.<br/>
+	 * The reader is not closed.
+	 * @param in - Reader
+	 * @return Gml
+	 */
+	public static Gml parseGml(Reader in) {
+		try {
+			return parseGml(FACTORY.get().createXMLStreamReader(in));
+		}
+		catch (XMLStreamException e) {
+			LOGGER.log(Level.WARNING, e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Creates a new XMLStreamReader reading from the given InputStream
+	 * @param in - InputStream
+	 * @return XMLStreamReader
+	 * @throws XMLStreamException
+	 */
+	static XMLStreamReader createReader(InputStream in) throws XMLStreamException {
+		return FACTORY.get().createXMLStreamReader(in);
+	}
+
+	/**
+	 * Parses a single stroke element (a document fragment starting with &lt;stroke&gt;) from the given InputStream.<br/>
+	 * Used to decode strokes out of a document on demand. The stream is not closed.
+	 * @param in - InputStream
+	 * @param encoding - String (null for UTF-8)
+	 * @return GmlStroke
+	 * @throws IOException
+	 */
+	public static GmlStroke parseStroke(InputStream in, String encoding) throws IOException {
+		XMLStreamReader reader = null;
+		try {
+			reader = FACTORY.get().createXMLStreamReader(in, null == encoding ? "UTF-8" : encoding);
+			if (!moveToElement(reader)) {
+				throw new IOException("No stroke element found");
+			}
+			return readStroke(reader);
+		}
+		catch (XMLStreamException e) {
+			throw new IOException(e.getMessage());
+		}
+		finally {
+			if (null != reader) {
+				try {
+					reader.close();
+				}
+				catch (XMLStreamException e) {
+					LOGGER.log(Level.FINEST, e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the whole document
+	 * @param reader - XMLStreamReader
+	 * @return Gml
+	 */
+	private static Gml parseGml(XMLStreamReader reader) {
+		try {
+			return readDocument(reader);
+		}
+		catch (XMLStreamException e) {
+			LOGGER.log(Level.WARNING, e.getMessage());
+		}
+		finally {
+			try {
+				reader.close();
+			}
+			catch (XMLStreamException e) {
+				LOGGER.log(Level.FINEST, e.getMessage());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the document from its root element
+	 * @param reader - XMLStreamReader
+	 * @return Gml
+	 * @throws XMLStreamException
+	 */
+	private static Gml readDocument(XMLStreamReader reader) throws XMLStreamException {
+
+		if (!moveToRoot(reader)) {
+			LOGGER.log(Level.WARNING, "Not a Gml document. Reason: root element must be <gml> or <GML>");
+			return null;
+		}
+
+		// Get version
+		String version = reader.getAttributeValue(null, "spec");
+		boolean legacyEnvironment = isLegacyEnvironment(version);
+
+		List<Element> clientElements = new ArrayList<Element>();
+		List<Element> environmentElements = new ArrayList<Element>();
+		List<GmlStroke> strokes = new ArrayList<GmlStroke>();
+
+		// TODO loop through all tags or skip multiple tags
+		while (nextChildElement(reader)) {
+			if ("tag".equals(reader.getLocalName())) {
+				readTag(reader, legacyEnvironment, clientElements, environmentElements, strokes);
+			}
+			else {
+				skipElement(reader);
+			}
+		}
+
+		Gml gml = new Gml();
+
+		// Get Client
+		GmlClient client = new GmlClient();
+		GmlParsingHelper.setGmlGenericContainer(clientElements, client);
+		gml.client = client;
+
+		// Get Environment
+		GmlEnvironment environment = GmlParsingHelper.getGmlEnvironment(environmentElements);
+		gml.environment = environment;
+
+		// Get Drawing
+		gml.addStrokes(strokes);
+
+		return gml;
+	}
+
+	/**
+	 * Reads the client and environment of the given Gml file without reading its points.<br/>
+	 * If count is true, strokes and points are counted (but not decoded), otherwise reading stops
+	 * as soon as the drawing is reached.<br/>
+	 * Returns null if the file couldn't be read.
+	 * @param file - String
+	 * @param count - boolean
+	 * @return GmlHeader
+	 */
+	public static GmlHeader scanHeader(String file, boolean count) {
+		InputStream in = null;
+		try {
+			in = FileUtils.openInputStream(file);
+			return scanHeader(in, count);
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, e.getMessage());
+		}
+		finally {
+			FileUtils.close(in);
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the client and environment of the Gml document read from the given InputStream.<br/>
+	 * See scanHeader(String, boolean). The stream isn't closed.
+	 * @param in - InputStream
+	 * @param count - boolean
+	 * @return GmlHeader
+	 */
+	public static GmlHeader scanHeader(InputStream in, boolean count) {
+		XMLStreamReader reader = null;
+		try {
+			reader = createReader(in);
+			return scanDocument(reader, count);
+		}
+		catch (XMLStreamException e) {
+			LOGGER.log(Level.WARNING, e.getMessage());
+		}
+		finally {
+			if (null != reader) {
+				try {
+					reader.close();
+				}
+				catch (XMLStreamException e) {
+					LOGGER.log(Level.FINEST, e.getMessage());
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the headers from the root element, and counts strokes and points if asked.<br/>
+	 * Counts follow the full parsing rules: strokes without points are not counted.
+	 * @param reader - XMLStreamReader
+	 * @param count - boolean
+	 * @return GmlHeader
+	 * @throws XMLStreamException
+	 */
+	private static GmlHeader scanDocument(XMLStreamReader reader, boolean count) throws XMLStreamException {
+
+		if (!moveToRoot(reader)) {
+			LOGGER.log(Level.WARNING, "Not a Gml document. Reason: root element must be <gml> or <GML>");
+			return null;
+		}
+
+		boolean legacyEnvironment = isLegacyEnvironment(reader.getAttributeValue(null, "spec"));
+
+		List<Element> clientElements = new ArrayList<Element>();
+		List<Element> environmentElements = new ArrayList<Element>();
+		int totalStrokes = 0;
+		int totalPoints = 0;
+
+		scan:
+		while (nextChildElement(reader)) {
+			if (!"tag".equals(reader.getLocalName())) {
+				skipElement(reader);
+				continue;
+			}
+			while (nextChildElement(reader)) {
+				String name = reader.getLocalName();
+				if ("header".equals(name)) {
+					readHeader(reader, legacyEnvironment, clientElements, environmentElements);
+				}
+				else if ("environment".equals(name) && legacyEnvironment) {
+					readChildren(reader, environmentElements);
+				}
+				else if ("drawing".equals(name)) {
+					if (!count) {
+						// Got what we need
+						break scan;
+					}
+					// Strokes
+					while (nextChildElement(reader)) {
+						int points = 0;
+						while (nextChildElement(reader)) {
+							if ("pt".equals(reader.getLocalName())) {
+								points++;
+							}
+							skipElement(reader);
+						}
+						if (points > 0) {
+							totalStrokes++;
+							totalPoints += points;
+						}
+					}
+				}
+				else {
+					skipElement(reader);
+				}
+			}
+		}
+
+		GmlClient client = new GmlClient();
+		GmlParsingHelper.setGmlGenericContainer(clientElements, client);
+		GmlEnvironment environment = GmlParsingHelper.getGmlEnvironment(environmentElements);
+
+		if (!count) {
+			return new GmlHeader(client, environment);
+		}
+		return new GmlHeader(client, environment, totalStrokes, totalPoints);
+	}
+
+	/**
+	 * Moves the reader to the root element and checks it is a Gml root element
+	 * @param reader - XMLStreamReader
+	 * @return boolean
+	 * @throws XMLStreamException
+	 */
+	static boolean moveToRoot(XMLStreamReader reader) throws XMLStreamException {
+		if (moveToElement(reader)) {
+			String root = reader.getLocalName();
+			return "gml".equals(root) || "GML".equals(root);
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the reader to the first element, returns false if there is none
+	 * @param reader - XMLStreamReader
+	 * @return boolean
+	 * @throws XMLStreamException
+	 */
+	private static boolean moveToElement(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the environment is located under tag rather than under header (Gml 0.1a and 0.1b)
+	 * @param version - String
+	 * @return boolean
+	 */
+	static boolean isLegacyEnvironment(String version) {
+		return null == version || version.equalsIgnoreCase("0.1a") || version.equalsIgnoreCase("0.1b");
+	}
+
+	/**
+	 * Reads a tag element
+	 * @param reader - XMLStreamReader
+	 * @param legacyEnvironment - boolean
+	 * @param clientElements - List<Element>
+	 * @param environmentElements - List<Element>
+	 * @param strokes - List<GmlStroke>
+	 * @throws XMLStreamException
+	 */
+	private static void readTag(XMLStreamReader reader, boolean legacyEnvironment, List<Element> clientElements, List<Element> environmentElements, List<GmlStroke> strokes) throws XMLStreamException {
+		while (nextChildElement(reader)) {
+			String name = reader.getLocalName();
+			if ("header".equals(name)) {
+				readHeader(reader, legacyEnvironment, clientElements, environmentElements);
+			}
+			else if ("environment".equals(name) && legacyEnvironment) {
+				readChildren(reader, environmentElements);
+			}
+			else if ("drawing".equals(name)) {
+				while (nextChildElement(reader)) {
+					strokes.add(readStroke(reader));
+				}
+			}
+			else {
+				skipElement(reader);
+			}
+		}
+	}
+
+	/**
+	 * Reads a header element
+	 * @param reader - XMLStreamReader
+	 * @param legacyEnvironment - boolean
+	 * @param clientElements - List<Element>
+	 * @param environmentElements - List<Element>
+	 * @throws XMLStreamException
+	 */
+	static void readHeader(XMLStreamReader reader, boolean legacyEnvironment, List<Element> clientElements, List<Element> environmentElements) throws XMLStreamException {
+		while (nextChildElement(reader)) {
+			String name = reader.getLocalName();
+			if ("client".equals(name)) {
+				readChildren(reader, clientElements);
+			}
+			else if ("environment".equals(name) && !legacyEnvironment) {
+				readChildren(reader, environmentElements);
+			}
+			else {
+				skipElement(reader);
+			}
+		}
+	}
+
+	/**
+	 * Reads a stroke element, the reader must be located on the stroke start element.<br/>
+	 * Note: the merge between two consecutive brushes is not supported
+	 * @param reader - XMLStreamReader
+	 * @return GmlStroke
+	 * @throws XMLStreamException
+	 */
+	static GmlStroke readStroke(XMLStreamReader reader) throws XMLStreamException {
+
+		GmlStroke gmlStroke = new GmlStroke();
+
+		// Get isDrawing value
+		String isDrawing = reader.getAttributeValue(null, "isDrawing");
+		if (null != isDrawing && isDrawing.equalsIgnoreCase("false")) {
+			gmlStroke.setIsDrawing(false);
+		}
+
+		try {
+			gmlStroke.setLayer(Integer.parseInt(reader.getAttributeValue(null, "layer")));
+		}
+		catch (NumberFormatException ex) {
+			gmlStroke.setLayer(Integer.MIN_VALUE);
+		}
+
+		List<Element> infoElements = null;
+		List<Element> brushElements = null;
+		List<GmlPoint> points = new ArrayList<GmlPoint>();
+		TextBuffer buffer = new TextBuffer();
+
+		while (nextChildElement(reader)) {
+			String name = reader.getLocalName();
+			if ("pt".equals(name)) {
+				points.add(readPoint(reader, buffer));
+			}
+			// Only the first info and brush elements are used
+			else if ("info".equals(name) && null == infoElements) {
+				infoElements = new ArrayList<Element>();
+				readChildren(reader, infoElements);
+			}
+			else if ("brush".equals(name) && null == brushElements) {
+				brushElements = new ArrayList<Element>();
+				readChildren(reader, brushElements);
+			}
+			else {
+				skipElement(reader);
+			}
+		}
+
+		// Get info
+		GmlInfo gmlInfo = new GmlInfo();
+		if (null != infoElements) {
+			GmlParsingHelper.setGmlGenericContainer(infoElements, gmlInfo);
+		}
+		gmlStroke.setInfo(gmlInfo);
+
+		// Get Brush
+		GmlBrush gmlBrush = new GmlBrush();
+		if (null != brushElements) {
+			GmlParsingHelper.setGmlGenericContainer(brushElements, gmlBrush);
+		}
+		gmlStroke.setBrush(gmlBrush);
+
+		gmlStroke.addPoints(points);
+		return gmlStroke;
+	}
+
+	/**
+	 * Reads a point element, the reader must be located on the pt start element
+	 * @param reader - XMLStreamReader
+	 * @param buffer - TextBuffer (reused for numbers)
+	 * @return GmlPoint
+	 * @throws XMLStreamException
+	 */
+	private static GmlPoint readPoint(XMLStreamReader reader, TextBuffer buffer) throws XMLStreamException {
+		GmlPoint point = new GmlPoint();
+
+		boolean hasTime = false;
+		boolean hasLegacyTime = false;
+		boolean hasRotation = false;
+		boolean hasDirection = false;
+		boolean hasPressure = false;
+		boolean hasThickness = false;
+
+		point.preasure = GmlPoint.DEFAULT_PRESSURE;
+		point.thickness = GmlPoint.DEFAULT_THICKNESS;
+
+		while (nextChildElement(reader)) {
+			String name = reader.getLocalName();
+
+			// x, y, z
+			if (name.equalsIgnoreCase("x") || name.equalsIgnoreCase("y") || name.equalsIgnoreCase("z")) {
+				setAxis(point, name, reader, buffer);
+			}
+			// Time (gml v0.1b and v0.1c "time" element name differs ...)
+			// "t" always wins over "time"
+			else if ("t".equals(name) && !hasTime) {
+				hasTime = true;
+				point.time = readFloat(reader, buffer, 0);
+			}
+			else if ("time".equals(name) && !hasTime && !hasLegacyTime) {
+				hasLegacyTime = true;
+				point.time = readFloat(reader, buffer, 0);
+			}
+			// Rotation
+			else if ("rot".equals(name) && !hasRotation) {
+				hasRotation = true;
+				readVec3D(reader, point.rotation, buffer);
+			}
+			// Direction
+			else if ("dir".equals(name) && !hasDirection) {
+				hasDirection = true;
+				readVec3D(reader, point.direction, buffer);
+			}
+			// Pressure
+			else if ("pres".equals(name) && !hasPressure) {
+				hasPressure = true;
+				point.preasure = readFloat(reader, buffer, GmlPoint.DEFAULT_PRESSURE);
+			}
+			// Thickness
+			else if ("thick".equals(name) && !hasThickness) {
+				hasThickness = true;
+				point.thickness = readFloat(reader, buffer, GmlPoint.DEFAULT_THICKNESS);
+			}
+			else {
+				skipElement(reader);
+			}
+		}
+		return point;
+	}
+
+	/**
+	 * Reads x, y, z children into the given vector
+	 * @param reader - XMLStreamReader
+	 * @param v - Vec3D
+	 * @param buffer - TextBuffer (reused for numbers)
+	 * @throws XMLStreamException
+	 */
+	private static void readVec3D(XMLStreamReader reader, Vec3D v, TextBuffer buffer) throws XMLStreamException {
+		while (nextChildElement(reader)) {
+			String name = reader.getLocalName();
+			if (name.equalsIgnoreCase("x") || name.equalsIgnoreCase("y") || name.equalsIgnoreCase("z")) {
+				setAxis(v, name, reader, buffer);
+			}
+			else {
+				skipElement(reader);
+			}
+		}
+	}
+
+	/**
+	 * Sets the given axis (x, y or z) of a vector from the current element's text,
+	 * a warning is logged if the value is not a number
+	 * @param v - Vec3D
+	 * @param axis - String
+	 * @param reader - XMLStreamReader
+	 * @param buffer - TextBuffer
+	 * @throws XMLStreamException
+	 */
+	private static void setAxis(Vec3D v, String axis, XMLStreamReader reader, TextBuffer buffer) throws XMLStreamException {
+		try {
+			float f = readFloat(reader, buffer);
+			switch (Character.toLowerCase(axis.charAt(0))) {
+			case 'x': v.x = f; break;
+			case 'y': v.y = f; break;
+			default : v.z = f; break;
+			}
+		}
+		catch (NumberFormatException ex) {
+			LOGGER.log(Level.WARNING, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the current element's text as a float and returns the default value if it is not a number
+	 * @param reader - XMLStreamReader
+	 * @param buffer - TextBuffer
+	 * @param defaultValue - float
+	 * @return float
+	 * @throws XMLStreamException
+	 */
+	private static float readFloat(XMLStreamReader reader, TextBuffer buffer, float defaultValue) throws XMLStreamException {
+		try {
+			return readFloat(reader, buffer);
+		}
+		catch (NumberFormatException ex) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Reads the current element's text (including its descendants' one) as a float.<br/>
+	 * The text is copied to the buffer and parsed from there, no String is created.
+	 * @param reader - XMLStreamReader
+	 * @param buffer - TextBuffer
+	 * @return float
+	 * @throws XMLStreamException
+	 * @throws NumberFormatException
+	 */
+	private static float readFloat(XMLStreamReader reader, TextBuffer buffer) throws XMLStreamException {
+		buffer.length = 0;
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				buffer.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				break;
+			}
+		}
+		return FloatUtils.parseFloat(buffer.chars, 0, buffer.length);
+	}
+
+	/**
+	 * Reads the children of the current element as JDom elements
+	 * @param reader - XMLStreamReader
+	 * @param elements - List<Element>
+	 * @throws XMLStreamException
+	 */
+	static void readChildren(XMLStreamReader reader, List<Element> elements) throws XMLStreamException {
+		while (nextChildElement(reader)) {
+			elements.add(readElement(reader));
+		}
+	}
+
+	/**
+	 * Reads the current element and its content as a JDom element
+	 * @param reader - XMLStreamReader
+	 * @return Element
+	 * @throws XMLStreamException
+	 */
+	private static Element readElement(XMLStreamReader reader) throws XMLStreamException {
+		Element element = new Element(reader.getLocalName());
+		while (reader.hasNext()) {
+			int event = reader.next();
+			switch (event) {
+			case XMLStreamConstants.START_ELEMENT:
+				element.addContent(readElement(reader));
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				element.addContent(reader.getText());
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				return element;
+			}
+		}
+		return element;
+	}
+
+	/**
+	 * Moves the reader to the next child element of the current element.<br/>
+	 * Returns false once the end of the current element is reached
+	 * @param reader - XMLStreamReader
+	 * @return boolean
+	 * @throws XMLStreamException
+	 */
+	static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				return true;
+			}
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Skips the current element and its content
+	 * @param reader - XMLStreamReader
+	 * @throws XMLStreamException
+	 */
+	static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Growable char buffer, reused for all the numbers of a stroke
+	 */
+	private static class TextBuffer {
+
+		char[] chars = new char[32];
+		int length;
+
+		void append(char[] text, int start, int count) {
+			if (length + count > chars.length) {
+				char[] grown = new char[Math.max(chars.length * 2, length + count)];
+				System.arraycopy(chars, 0, grown, 0, length);
+				chars = grown;
+			}
+			System.arraycopy(text, start, chars, length, count);
+			length += count;
+		}
+	}
+}
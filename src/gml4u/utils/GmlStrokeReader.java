@@ -0,0 +1,225 @@
+package gml4u.utils;
+
+import gml4u.model.GmlClient;
+import gml4u.model.GmlEnvironment;
+import gml4u.model.GmlHeader;
+import gml4u.model.GmlStroke;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jdom.Element;
+
+/**
+ * Reads the strokes of a Gml document one by one, without building the whole Gml.<br/>
+ * Memory use only depends on the largest stroke, which makes it suitable for batch jobs
+ * (thumbnails, statistics, re-export) on large files.<br/>
+ * Strokes are returned as found in the document: no normalization is applied.
+ * Strokes without any point are skipped, as Gml.addStroke does, so the reader returns
+ * the same strokes as a parsed Gml (not normalized).<br/>
+ * <br/>
+ * Usage:<br/>
+ * <code>
+ * GmlStrokeReader reader = new GmlStrokeReader(file);<br/>
+ * GmlHeader header = reader.getHeader();<br/>
+ * for (GmlStroke stroke : reader) { ... }<br/>
+ * reader.close();
+ * </code>
+ */
+public class GmlStrokeReader implements Iterator<GmlStroke>, Iterable<GmlStroke>, Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(GmlStrokeReader.class.getName());
+
+	private InputStream in;
+	private XMLStreamReader reader;
+	private boolean legacyEnvironment;
+	private int depth;
+	private GmlStroke nextStroke;
+	private List<Element> clientElements = new ArrayList<Element>();
+	private List<Element> environmentElements = new ArrayList<Element>();
+	private GmlHeader header;
+
+	/**
+	 * Creates a new GmlStrokeReader reading from the given file location
+	 * @param file - String
+	 * @throws IOException
+	 */
+	public GmlStrokeReader(String file) throws IOException {
+		this(FileUtils.openInputStream(file));
+	}
+
+	/**
+	 * Creates a new GmlStrokeReader reading from the given InputStream<br/>
+	 * The stream will be closed along with the reader
+	 * @param in - InputStream
+	 * @throws IOException
+	 */
+	public GmlStrokeReader(InputStream in) throws IOException {
+		this.in = in;
+		try {
+			reader = GmlStaxParsingHelper.createReader(in);
+			if (!GmlStaxParsingHelper.moveToRoot(reader)) {
+				close();
+				throw new IOException("Not a Gml document. Reason: root element must be <gml> or <GML>");
+			}
+			legacyEnvironment = GmlStaxParsingHelper.isLegacyEnvironment(reader.getAttributeValue(null, "spec"));
+			depth = 1;
+			nextStroke = fetch();
+		}
+		catch (XMLStreamException e) {
+			close();
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the header (client and environment) found before the first stroke
+	 * @return GmlHeader
+	 */
+	public GmlHeader getHeader() {
+		if (null == header) {
+			GmlClient client = new GmlClient();
+			GmlParsingHelper.setGmlGenericContainer(clientElements, client);
+			GmlEnvironment environment = GmlParsingHelper.getGmlEnvironment(environmentElements);
+			header = new GmlHeader(client, environment);
+		}
+		return header;
+	}
+
+	/**
+	 * Returns this reader, which can only be iterated once
+	 * @return Iterator<GmlStroke>
+	 */
+	public Iterator<GmlStroke> iterator() {
+		return this;
+	}
+
+	/**
+	 * Returns true if there is another stroke to read
+	 * @return boolean
+	 */
+	public boolean hasNext() {
+		return null != nextStroke;
+	}
+
+	/**
+	 * Reads and returns the next stroke
+	 * @return GmlStroke
+	 */
+	public GmlStroke next() {
+		if (null == nextStroke) {
+			throw new NoSuchElementException();
+		}
+		GmlStroke stroke = nextStroke;
+		try {
+			nextStroke = fetch();
+		}
+		catch (XMLStreamException e) {
+			LOGGER.log(Level.WARNING, "Stopped reading strokes. Reason: "+e.getMessage());
+			close();
+		}
+		return stroke;
+	}
+
+	/**
+	 * Not supported
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException("Strokes cannot be removed from a GmlStrokeReader");
+	}
+
+	/**
+	 * Closes the reader and the underlying stream
+	 */
+	public void close() {
+		nextStroke = null;
+		if (null != reader) {
+			try {
+				reader.close();
+			}
+			catch (XMLStreamException e) {
+				LOGGER.log(Level.FINEST, e.getMessage());
+			}
+			reader = null;
+		}
+		FileUtils.close(in);
+		in = null;
+	}
+
+	/**
+	 * Reads the next stroke having at least one point, returns null once the end of the document is reached
+	 * @return GmlStroke
+	 * @throws XMLStreamException
+	 */
+	private GmlStroke fetch() throws XMLStreamException {
+		while (advance()) {
+			GmlStroke stroke = GmlStaxParsingHelper.readStroke(reader);
+			if (stroke.nbPoints() > 0) {
+				return stroke;
+			}
+			LOGGER.log(Level.FINEST, "Empty stroke skipped");
+		}
+		return null;
+	}
+
+	/**
+	 * Moves the reader to the next stroke start element, reading headers found on the way.<br/>
+	 * Returns false once the end of the document is reached
+	 * @return boolean
+	 * @throws XMLStreamException
+	 */
+	private boolean advance() throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				// Inside root
+				if (depth == 1) {
+					if ("tag".equals(name)) {
+						depth = 2;
+					}
+					else {
+						GmlStaxParsingHelper.skipElement(reader);
+					}
+				}
+				// Inside tag
+				else if (depth == 2) {
+					if ("header".equals(name)) {
+						GmlStaxParsingHelper.readHeader(reader, legacyEnvironment, clientElements, environmentElements);
+					}
+					else if ("environment".equals(name) && legacyEnvironment) {
+						GmlStaxParsingHelper.readChildren(reader, environmentElements);
+					}
+					else if ("drawing".equals(name)) {
+						depth = 3;
+					}
+					else {
+						GmlStaxParsingHelper.skipElement(reader);
+					}
+				}
+				// Inside drawing
+				else {
+					return true;
+				}
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				if (--depth == 0) {
+					break;
+				}
+			}
+		}
+		close();
+		return false;
+	}
+}
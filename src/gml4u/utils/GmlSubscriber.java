@@ -0,0 +1,33 @@
+package gml4u.utils;
+
+import gml4u.model.Gml;
+
+/**
+ * Receives Gml objects from a GmlPublisher.<br/>
+ * Methods are never called concurrently, but may be called from a worker thread.
+ */
+public interface GmlSubscriber {
+
+	/**
+	 * Called once, before anything else
+	 * @param subscription - GmlSubscription
+	 */
+	public void onSubscribe(GmlSubscription subscription);
+
+	/**
+	 * Called for each requested Gml
+	 * @param gml - Gml
+	 */
+	public void onNext(Gml gml);
+
+	/**
+	 * Called if the publication failed, nothing is called after it
+	 * @param error - Throwable
+	 */
+	public void onError(Throwable error);
+
+	/**
+	 * Called once everything has been published, nothing is called after it
+	 */
+	public void onComplete();
+}
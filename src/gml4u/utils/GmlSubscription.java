@@ -0,0 +1,18 @@
+package gml4u.utils;
+
+/**
+ * Link between a GmlPublisher and a GmlSubscriber
+ */
+public interface GmlSubscription {
+
+	/**
+	 * Asks for n more Gml (must be positive)
+	 * @param n - long
+	 */
+	public void request(long n);
+
+	/**
+	 * Stops the publication, Gml being parsed are dropped
+	 */
+	public void cancel();
+}
@@ -61,9 +61,12 @@ public class GmlUtils {
 
 			List<GmlStroke> strokes = (List<GmlStroke>) gml.getStrokes(); 
 			for (GmlStroke stroke: strokes) {
-				for(GmlPoint point: stroke.getPoints()) {
+				List<GmlPoint> points = stroke.getPoints();
+				for(GmlPoint point: points) {
 					Vec3DUtils.reorient(point, up);
 				}
+				// Points may be copies (see GmlCompactStroke)
+				stroke.replacePoints(points);
 			}
 			gml.removeStrokes();
 			gml.addStrokes(strokes);
@@ -208,10 +211,11 @@ public class GmlUtils {
 			LOGGER.log(Level.FINEST, "Z axis too long. Rescaling to fit 0-1");
 		// Else remap between 0 and 1
 			for (GmlStroke strok : gml.getStrokes()) {
-				float nPoints = strok.getPoints().size();
-				for (int i=0; i<nPoints; i++) {
-					strok.getPoints().get(i).z = strok.getPoints().get(i).z/maxZ;
-				} 
+				List<GmlPoint> points = strok.getPoints();
+				for (GmlPoint point : points) {
+					point.z = point.z/maxZ;
+				}
+				strok.replacePoints(points);
 			}		
 		}
 		boundingBox = gml.getBoundingBox();
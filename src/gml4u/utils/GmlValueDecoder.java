@@ -0,0 +1,19 @@
+package gml4u.utils;
+
+import java.util.List;
+
+import org.jdom.Element;
+
+/**
+ * Decodes the children of a generic container element (brush, info, client) into a typed value.<br/>
+ * See GmlParsingHelper.registerValueType
+ */
+public interface GmlValueDecoder {
+
+	/**
+	 * Returns the value decoded from the given children elements
+	 * @param elements - List<Element>
+	 * @return Object
+	 */
+	public Object decode(List<Element> elements);
+}
@@ -0,0 +1,538 @@
+package gml4u.utils;
+
+import gml4u.model.Gml;
+import gml4u.model.GmlClient;
+import gml4u.model.GmlEnvironment;
+import gml4u.model.GmlGenericContainer;
+import gml4u.model.GmlLocation;
+import gml4u.model.GmlPoint;
+import gml4u.model.GmlPointCursor;
+import gml4u.model.GmlStroke;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import toxi.geom.Vec3D;
+
+/**
+ * Writes Gml documents straight to a stream, without building an intermediate Xml document.<br/>
+ * Memory use doesn't depend on the number of points, which makes it suitable for long recordings.<br/>
+ * Strokes can be written one by one, for instance as they are recorded:<br/>
+ * <br/>
+ * Usage:<br/>
+ * <code>
+ * GmlWriter writer = new GmlWriter(out);<br/>
+ * writer.writeStart(gml.client, gml.environment);<br/>
+ * for (GmlStroke stroke : strokes) writer.writeStroke(stroke);<br/>
+ * writer.writeEnd();
+ * </code>
+ * <br/>
+ * Or simply:<br/>
+ * <code>
+ * GmlWriter.write(gml, out);
+ * </code>
+ * <br/>
+ * Point values (coordinates, time, rotation, direction, pressure and thickness) are written with full float precision
+ * unless a number of decimals is set, see setPrecision.
+ */
+public class GmlWriter {
+
+	private static final Logger LOGGER = Logger.getLogger(GmlWriter.class.getName());
+
+	// XMLOutputFactory isn't guaranteed to be thread safe
+	private static final ThreadLocal<XMLOutputFactory> FACTORY = new ThreadLocal<XMLOutputFactory>() {
+		@Override
+		protected XMLOutputFactory initialValue() {
+			return XMLOutputFactory.newInstance();
+		}
+	};
+
+	private static final String ENCODING = "UTF-8";
+	private static final char[] INDENT = "\n\t\t\t\t\t\t".toCharArray();
+
+	private final XMLStreamWriter writer;
+	private final char[] chars = new char[FloatUtils.FORMAT_LENGTH];
+	private final GmlPointCursor cursor = new GmlPointCursor();
+	private int precision = FloatUtils.FULL_PRECISION;
+	private boolean started;
+	private boolean ended;
+
+	/**
+	 * Creates a new GmlWriter writing UTF-8 to the given OutputStream
+	 * @param out - OutputStream
+	 * @throws IOException
+	 */
+	public GmlWriter(OutputStream out) throws IOException {
+		try {
+			writer = FACTORY.get().createXMLStreamWriter(out, ENCODING);
+		}
+		catch (XMLStreamException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates a new GmlWriter writing to the given Writer
+	 * @param out - Writer
+	 * @throws IOException
+	 */
+	public GmlWriter(Writer out) throws IOException {
+		try {
+			writer = FACTORY.get().createXMLStreamWriter(out);
+		}
+		catch (XMLStreamException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the whole Gml to the given OutputStream, which is flushed but not closed
+	 * @param gml - Gml
+	 * @param out - OutputStream
+	 * @throws IOException
+	 */
+	public static void write(Gml gml, OutputStream out) throws IOException {
+		new GmlWriter(out).write(gml);
+	}
+
+	/**
+	 * Writes the whole Gml to the given OutputStream, which is flushed but not closed.<br/>
+	 * Point values are rounded to the given number of decimals, see setPrecision
+	 * @param gml - Gml
+	 * @param out - OutputStream
+	 * @param precision - int
+	 * @throws IOException
+	 */
+	public static void write(Gml gml, OutputStream out, int precision) throws IOException {
+		GmlWriter writer = new GmlWriter(out);
+		writer.setPrecision(precision);
+		writer.write(gml);
+	}
+
+	/**
+	 * Writes the whole Gml to the given Writer, which is flushed but not closed
+	 * @param gml - Gml
+	 * @param out - Writer
+	 * @throws IOException
+	 */
+	public static void write(Gml gml, Writer out) throws IOException {
+		new GmlWriter(out).write(gml);
+	}
+
+	/**
+	 * Sets the number of decimals point values are rounded to (between 0 and FloatUtils.MAX_DECIMALS),
+	 * or FloatUtils.FULL_PRECISION (default) to write them as Float.toString does.<br/>
+	 * Normalized Gml rarely need more than 4 decimals (a tenth of a pixel on a 1000 pixels wide screen),
+	 * 3 decimals are enough for time (milliseconds).
+	 * @param precision - int
+	 */
+	public void setPrecision(int precision) {
+		if (precision > FloatUtils.MAX_DECIMALS) {
+			LOGGER.log(Level.WARNING, "Precision "+precision+" not supported, using "+FloatUtils.MAX_DECIMALS+" decimals");
+			precision = FloatUtils.MAX_DECIMALS;
+		}
+		this.precision = precision < 0 ? FloatUtils.FULL_PRECISION : precision;
+	}
+
+	/**
+	 * Returns the number of decimals point values are rounded to, or FloatUtils.FULL_PRECISION
+	 * @return int
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Writes the whole Gml
+	 * @param gml - Gml
+	 * @throws IOException
+	 */
+	public void write(Gml gml) throws IOException {
+		LOGGER.log(Level.FINEST, "Start writing Gml");
+		writeStart(gml.client, gml.environment);
+		for (GmlStroke stroke : gml.getStrokes()) {
+			writeStroke(stroke);
+		}
+		writeEnd();
+		LOGGER.log(Level.FINEST, "Finished writing Gml");
+	}
+
+	/**
+	 * Writes everything found before the strokes: the root, tag and header elements, and opens the drawing element
+	 * @param client - GmlClient
+	 * @param environment - GmlEnvironment
+	 * @throws IOException
+	 */
+	public void writeStart(GmlClient client, GmlEnvironment environment) throws IOException {
+		if (started) {
+			throw new IllegalStateException("Gml already started");
+		}
+		started = true;
+		try {
+			writer.writeStartDocument(ENCODING, "1.0");
+			newLine(0);
+
+			// GML
+			writer.writeStartElement("gml");
+			writer.writeAttribute("spec", "1.0");
+
+			// No plans to support/implement multiple tags elements
+
+			// TAG
+			newLine(1);
+			writer.writeStartElement("tag");
+
+			// HEADER
+			newLine(2);
+			writer.writeStartElement("header");
+
+			// CLIENT
+			newLine(3);
+			writer.writeStartElement("client");
+			writeParameters(client, 4);
+			newLine(3);
+			writer.writeEndElement();
+
+			// ENVIRONMENT
+			newLine(3);
+			writeEnvironment(environment);
+
+			newLine(2);
+			writer.writeEndElement();
+
+			// DRAWING
+			newLine(2);
+			writer.writeStartElement("drawing");
+		}
+		catch (XMLStreamException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes a stroke, strokes without points are skipped
+	 * @param stroke - GmlStroke
+	 * @throws IOException
+	 */
+	public void writeStroke(GmlStroke stroke) throws IOException {
+		if (!started || ended) {
+			throw new IllegalStateException("Strokes must be written between writeStart and writeEnd");
+		}
+		if (stroke.nbPoints() == 0) {
+			return;
+		}
+		try {
+			newLine(3);
+			writer.writeStartElement("stroke");
+
+			// ISDRAWING (only set if false, true by default)
+			if (!stroke.getIsDrawing()) {
+				writer.writeAttribute("isDrawing", "false");
+			}
+
+			// LAYER
+			writer.writeAttribute("layer", String.valueOf(stroke.getLayer()));
+
+			// BRUSH
+			if (null != stroke.getBrush()) {
+				newLine(4);
+				writer.writeStartElement("brush");
+				writeParameters(stroke.getBrush(), 5);
+				newLine(4);
+				writer.writeEndElement();
+			}
+
+			// INFO
+			if (null != stroke.getInfo() && stroke.getInfo().getParameters().size() > 0) {
+				newLine(4);
+				writer.writeStartElement("info");
+				writeParameters(stroke.getInfo(), 5);
+				newLine(4);
+				writer.writeEndElement();
+			}
+
+			// PT
+			cursor.reset(stroke);
+			while (cursor.next()) {
+				newLine(4);
+				writePoint(cursor.getPoint());
+			}
+
+			newLine(3);
+			writer.writeEndElement();
+		}
+		catch (XMLStreamException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Closes the drawing, tag and root elements and flushes the output, which isn't closed
+	 * @throws IOException
+	 */
+	public void writeEnd() throws IOException {
+		if (!started || ended) {
+			throw new IllegalStateException("Gml not started or already ended");
+		}
+		ended = true;
+		try {
+			newLine(2);
+			writer.writeEndElement();
+			newLine(1);
+			writer.writeEndElement();
+			newLine(0);
+			writer.writeEndElement();
+			newLine(0);
+			writer.writeEndDocument();
+			writer.flush();
+		}
+		catch (XMLStreamException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes an environment element
+	 * @param environment - GmlEnvironment
+	 * @throws XMLStreamException
+	 */
+	private void writeEnvironment(GmlEnvironment environment) throws XMLStreamException {
+		writer.writeStartElement("environment");
+
+		// SCREENBOUNDS
+		if (null != environment.screenBounds) {
+			newLine(4);
+			writeVec3D("screenBounds", environment.screenBounds);
+		}
+
+		// UP (Mandatory)
+		if (null != environment.up) {
+			newLine(4);
+			writeVec3D("up", environment.up);
+		}
+
+		// SCREENSCALE (Mandatory)
+		// Get largest
+		if (null != environment.screenBounds) {
+			newLine(4);
+			writeText("screenScale", String.valueOf((int) Vec3DUtils.getLongestAxisSize(environment.screenBounds)));
+		}
+
+		// OFFSET
+		if (null != environment.offset) {
+			newLine(4);
+			writeVec3D("offset", environment.offset);
+		}
+
+		// ROTATION
+		if (null != environment.rotation) {
+			newLine(4);
+			writeVec3D("rotation", environment.rotation);
+		}
+
+		// ORIGIN
+		if (null != environment.origin) {
+			newLine(4);
+			writeVec3D("origin", environment.origin);
+		}
+
+		// REALSCALE
+		if (null != environment.realScale) {
+			newLine(4);
+			writer.writeStartElement("realscale");
+			writeAxes(environment.realScale, FloatUtils.FULL_PRECISION);
+			writeText("unit", null == environment.realScaleUnit ? "" : environment.realScaleUnit);
+			writer.writeEndElement();
+		}
+
+		newLine(3);
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Writes a point element and its optional children
+	 * @param point - GmlPoint
+	 * @throws XMLStreamException
+	 */
+	private void writePoint(GmlPoint point) throws XMLStreamException {
+		writer.writeStartElement("pt");
+
+		// Coords
+		writeAxes(point, precision);
+
+		// Time
+		if (0 != point.time) { // Optional
+			writeFloat("t", point.time, precision);
+		}
+
+		// Rotation
+		if (!point.rotation.isZeroVector()) { // Optional
+			writeVec3D("rot", point.rotation, precision);
+		}
+
+		// Direction
+		if (!point.direction.isZeroVector()) { // Optional
+			writeVec3D("dir", point.direction, precision);
+		}
+
+		// Pressure
+		if (0 != point.preasure) { // Optional
+			writeFloat("pres", point.preasure, precision);
+		}
+
+		// Thickness
+		if (0 != point.thickness) { // Optional
+			writeFloat("thick", point.thickness, precision);
+		}
+
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Writes the parameters of a brush, info or client as child elements, based on their type
+	 * @param container - GmlGenericContainer
+	 * @param depth - int (indentation)
+	 * @throws XMLStreamException
+	 */
+	private void writeParameters(GmlGenericContainer container, int depth) throws XMLStreamException {
+		for (Map.Entry<String, Object> entry : container.getParameters().entrySet()) {
+			String key = entry.getKey();
+			Object o = entry.getValue();
+			newLine(depth);
+
+			if (o instanceof Vec3D) {
+				writeVec3D(key, (Vec3D) o);
+			}
+			else if (o instanceof Float) {
+				writeFloat(key, (Float) o);
+			}
+			else if (key.indexOf("color") > -1 && o instanceof Integer) {
+				writeColor(key, (Integer) o);
+			}
+			else if (o instanceof GmlLocation) {
+				writeLocation(key, (GmlLocation) o);
+			}
+			else { // Get it as a String
+				writeText(key, String.valueOf(o));
+			}
+		}
+	}
+
+	/**
+	 * Writes a Vec3D element
+	 * @param name - String
+	 * @param v - Vec3D
+	 * @throws XMLStreamException
+	 */
+	private void writeVec3D(String name, Vec3D v) throws XMLStreamException {
+		writeVec3D(name, v, FloatUtils.FULL_PRECISION);
+	}
+
+	/**
+	 * Writes a Vec3D element rounded to the given number of decimals
+	 * @param name - String
+	 * @param v - Vec3D
+	 * @param decimals - int
+	 * @throws XMLStreamException
+	 */
+	private void writeVec3D(String name, Vec3D v, int decimals) throws XMLStreamException {
+		writer.writeStartElement(name);
+		writeAxes(v, decimals);
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Writes the x, y and z elements of the given vector rounded to the given number of decimals
+	 * @param v - Vec3D
+	 * @param decimals - int
+	 * @throws XMLStreamException
+	 */
+	private void writeAxes(Vec3D v, int decimals) throws XMLStreamException {
+		writeFloat("x", v.x, decimals);
+		writeFloat("y", v.y, decimals);
+		writeFloat("z", v.z, decimals);
+	}
+
+	/**
+	 * Writes a location element (altitude is optional)
+	 * @param name - String
+	 * @param loc - GmlLocation
+	 * @throws XMLStreamException
+	 */
+	private void writeLocation(String name, GmlLocation loc) throws XMLStreamException {
+		writer.writeStartElement(name);
+		writeText("lat", String.valueOf(loc.getLat()));
+		writeText("lon", String.valueOf(loc.getLon()));
+		if (0 != loc.getAlt()) { // Optional
+			writeText("alt", String.valueOf(loc.getAlt()));
+		}
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Writes a color element
+	 * @param name - String
+	 * @param c - int (ARGB)
+	 * @throws XMLStreamException
+	 */
+	private void writeColor(String name, int c) throws XMLStreamException {
+		writer.writeStartElement(name);
+		writeText("r", String.valueOf((c >> 16) & 0xFF));
+		writeText("g", String.valueOf((c >> 8) & 0xFF));
+		writeText("b", String.valueOf(c & 0xFF));
+		writeText("a", String.valueOf((c >> 24) & 0xFF));
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Writes a float element
+	 * @param name - String
+	 * @param value - float
+	 * @throws XMLStreamException
+	 */
+	private void writeFloat(String name, float value) throws XMLStreamException {
+		writeFloat(name, value, FloatUtils.FULL_PRECISION);
+	}
+
+	/**
+	 * Writes a float element rounded to the given number of decimals
+	 * @param name - String
+	 * @param value - float
+	 * @param decimals - int
+	 * @throws XMLStreamException
+	 */
+	private void writeFloat(String name, float value, int decimals) throws XMLStreamException {
+		writer.writeStartElement(name);
+		writer.writeCharacters(chars, 0, FloatUtils.formatFloat(value, decimals, chars, 0));
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Writes an element containing the given text
+	 * @param name - String
+	 * @param text - String
+	 * @throws XMLStreamException
+	 */
+	private void writeText(String name, String text) throws XMLStreamException {
+		writer.writeStartElement(name);
+		writer.writeCharacters(text);
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Starts a new line indented with the given number of tabs
+	 * @param depth - int
+	 * @throws XMLStreamException
+	 */
+	private void newLine(int depth) throws XMLStreamException {
+		writer.writeCharacters(INDENT, 0, depth + 1);
+	}
+}
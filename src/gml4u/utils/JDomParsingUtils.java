@@ -1,6 +1,8 @@
 package gml4u.utils;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.util.List;
 import java.util.logging.Level;
@@ -22,9 +24,14 @@ public class JDomParsingUtils {
 	 * @return Document
 	 */
 	public static Document buildDocument(String file) {
+		InputStream in = null;
 		try {
+			// Large local files are memory mapped (see FileUtils.openInputStream)
+			in = FileUtils.openInputStream(file);
+			File localFile = new File(file);
+			String systemId = localFile.isFile() ? localFile.toURI().toString() : file;
 			SAXBuilder saxBuilder = new SAXBuilder("org.apache.xerces.parsers.SAXParser");
-			Document document = saxBuilder.build(file);
+			Document document = saxBuilder.build(in, systemId);
 			return document;
 		}
 		catch (IOException e) {
@@ -32,6 +39,9 @@ public class JDomParsingUtils {
 		} catch (JDOMException e) {
 			LOGGER.log(Level.WARNING, e.getMessage());
 		}
+		finally {
+			FileUtils.close(in);
+		}
 		return null;
 	}
 	
@@ -0,0 +1,103 @@
+package gml4u.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutputStream URL encoding the bytes written to it (application/x-www-form-urlencoded), typically
+ * to post a Gml as a form field without building the whole document as a String first.<br/>
+ * Bytes are encoded as URLEncoder does with UTF-8: letters, digits and ".-*_" are kept,
+ * spaces become '+' and other bytes become %XX.<br/>
+ * <br/>
+ * Usage:<br/>
+ * <code>
+ * out.write("data=".getBytes("UTF-8"));<br/>
+ * GmlSavingHelper.save(gml, new UrlEncodingOutputStream(out));
+ * </code>
+ */
+public class UrlEncodingOutputStream extends FilterOutputStream {
+
+	private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+	private static final boolean[] SAFE = new boolean[256];
+	static {
+		for (int c='a'; c<='z'; c++) {
+			SAFE[c] = true;
+		}
+		for (int c='A'; c<='Z'; c++) {
+			SAFE[c] = true;
+		}
+		for (int c='0'; c<='9'; c++) {
+			SAFE[c] = true;
+		}
+		SAFE['.'] = true;
+		SAFE['-'] = true;
+		SAFE['*'] = true;
+		SAFE['_'] = true;
+	}
+
+	// Room for 3 bytes per encoded byte
+	private final byte[] buffer = new byte[3 * 1024];
+	private int count;
+
+	/**
+	 * Creates a new UrlEncodingOutputStream writing encoded bytes to the given OutputStream
+	 * @param out - OutputStream
+	 */
+	public UrlEncodingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (count > buffer.length - 3) {
+			flushBuffer();
+		}
+		encode(b & 0xFF);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		for (int i=offset; i<offset + length; i++) {
+			if (count > buffer.length - 3) {
+				flushBuffer();
+			}
+			encode(bytes[i] & 0xFF);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Encodes a byte into the buffer
+	 * @param b - int
+	 */
+	private void encode(int b) {
+		if (SAFE[b]) {
+			buffer[count++] = (byte) b;
+		}
+		else if (b == ' ') {
+			buffer[count++] = '+';
+		}
+		else {
+			buffer[count++] = '%';
+			buffer[count++] = HEX[b >> 4];
+			buffer[count++] = HEX[b & 0xF];
+		}
+	}
+
+	/**
+	 * Writes the encoded bytes to the underlying stream
+	 * @throws IOException
+	 */
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+}
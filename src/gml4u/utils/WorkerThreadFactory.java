@@ -0,0 +1,44 @@
+package gml4u.utils;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon worker threads named after their pool id (GmlParser, GmlSaver)
+ */
+class WorkerThreadFactory implements ThreadFactory {
+
+	// Factory of the pool the current thread works for, if any
+	private static final ThreadLocal<WorkerThreadFactory> OWNER = new ThreadLocal<WorkerThreadFactory>();
+
+	private final String name;
+	private final AtomicInteger count = new AtomicInteger();
+
+	/**
+	 * Creates a new WorkerThreadFactory
+	 * @param name - String (pool id)
+	 * @param defaultName - String (used if the id is empty)
+	 */
+	WorkerThreadFactory(String name, String defaultName) {
+		this.name = (null == name || name.length() == 0) ? defaultName : name;
+	}
+
+	public Thread newThread(final Runnable r) {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				OWNER.set(WorkerThreadFactory.this);
+				r.run();
+			}
+		}, name+"-"+count.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Returns true if the current thread was created by this factory
+	 * @return boolean
+	 */
+	boolean isWorkerThread() {
+		return OWNER.get() == this;
+	}
+}
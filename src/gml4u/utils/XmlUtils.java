@@ -3,6 +3,7 @@ package gml4u.utils;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -54,8 +55,14 @@ public class XmlUtils {
 		OutputFormat format = new OutputFormat(document);
 		format.setIndenting(true);
 
-		XMLSerializer serializer = new XMLSerializer(new FileOutputStream(new File(filename)), format);
-		serializer.serialize(document);
+		OutputStream out = new FileOutputStream(new File(filename));
+		try {
+			XMLSerializer serializer = new XMLSerializer(out, format);
+			serializer.serialize(document);
+		}
+		finally {
+			FileUtils.close(out);
+		}
 		LOGGER.log(Level.FINEST, "Finished writing file "+filename);
 	}
 